@@ -0,0 +1,120 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.ZFSObject;
+import org.jvnet.solaris.libzfs.fake.FakeLibzfs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of picking the ABI-specific native call, which is paid on every
+ * {@link ZFSObject#snapshots()}, {@link ZFSObject#destroy()} and so on.
+ *
+ * <p>
+ * {@link #stringDispatch()} reproduces how it used to be done: a map lookup of the
+ * setting, a chain of string comparisons, and a FINE log message built whether or
+ * not it gets logged. {@link #strategyDispatch()} makes the same call through the
+ * library, which uses the implementation it picked once up front. Both use the
+ * NO-OP configuration, so no libzfs function gets called and only the dispatch is
+ * measured; this needs no ZFS on the host. The library call also builds the snapshot
+ * name and goes through the operation tracer, so it's an upper bound of the dispatch.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AbiDispatchBenchmark {
+    private static final String TOGGLE = "LIBZFS4J_ABI_zfs_destroy_snaps";
+
+    private final Map<String,String> features = new HashMap<String,String>();
+    private LibZFS zfs;
+    private ZFSObject dataset;
+
+    @Setup
+    public void setUp() {
+        features.put("LIBZFS4J_ABI", "NO-OP");
+        for (String f : new String[]{"zfs_iter_snapshots","zfs_destroy","zfs_destroy_snaps","zfs_snapshot","zfs_perm_set","zfs_perm_remove"})
+            features.put("LIBZFS4J_ABI_"+f, "NO-OP");
+
+        FakeLibzfs fake = new FakeLibzfs() {
+            @Override
+            public Map<String,String> getAbiFeatures() {
+                return features;
+            }
+        };
+        fake.createPool(SimulatedZFS.POOL);
+        zfs = new LibZFS(fake);
+        dataset = zfs.open(SimulatedZFS.POOL);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataset.dispose();
+        zfs.dispose();
+    }
+
+    @Benchmark
+    public int stringDispatch() {
+        String abi_thisfunc = "destroySnapshot";
+        String abi_toggle = TOGGLE;
+        String abi = features.get(abi_toggle);
+        if (abi.equals("NO-OP")) {
+            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
+            return 0;
+        } else
+        if (abi.equals("openzfs")) {
+            return 1;
+        } else
+        if (abi.equals("legacy")) {
+            return 2;
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
+    @Benchmark
+    public void strategyDispatch() {
+        dataset.destroySnapshot("s");
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LibZFS.class.getName());
+}
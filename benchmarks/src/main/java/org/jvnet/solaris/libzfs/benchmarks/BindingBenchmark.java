@@ -0,0 +1,106 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.ZFSObject;
+import org.jvnet.solaris.libzfs.ZFSType;
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the proxy binding to libzfs against the direct-mapped one
+ * ({@code LIBZFS4J_BINDING}) on the calls that dominate listing and property reads.
+ *
+ * <p>
+ * The dataset to read from is given by the {@code libzfs.bench.dataset}
+ * system property.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+    @Param({"proxy", "direct"})
+    public String binding;
+
+    private LibZFS zfs;
+    private ZFSObject dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("LIBZFS4J_BINDING", binding);
+        zfs = new LibZFS();
+        String name = System.getProperty("libzfs.bench.dataset", "rpool");
+        dataset = zfs.open(name);
+        if (dataset == null)
+            throw new IllegalStateException("No such dataset: " + name);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.dispose();
+        zfs.dispose();
+    }
+
+    /**
+     * A single zfs_prop_get.
+     */
+    @Benchmark
+    public String propertyRead() {
+        return dataset.getZfsProperty(zfs_prop_t.ZFS_PROP_USED);
+    }
+
+    /**
+     * A single zfs_get_type.
+     */
+    @Benchmark
+    public ZFSType type() {
+        return dataset.getType();
+    }
+
+    /**
+     * zfs_iter_filesystems, zfs_get_name and zfs_close over the subtree.
+     */
+    @Benchmark
+    public List<String> listNames() {
+        return dataset.listNames(ZFSObject.class, true);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.jna.Callback;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Measures what it takes to hand an iterator callback to native code.
+ *
+ * <p>
+ * {@link #perCallCallback()} reproduces how every listing used to do it: a fresh anonymous
+ * callback, for which JNA has to build a native trampoline when it gets passed to native
+ * code. {@link #sharedCallback()} passes the same callback object every time, and hands
+ * the per-call state to it through a thread local, the way the library does it now.
+ *
+ * <p>
+ * To go through the same native transition as a {@code zfs_iter_*} call without touching
+ * any dataset, the callback is handed to libc's {@code qsort} over two elements instead,
+ * which calls it back once. The callback has the same shape as {@code zfs_iter_f}, but
+ * is declared here, since JNA loads libzfs when it first sees {@code libzfs.zfs_iter_f};
+ * this way it runs without ZFS on the host.
+ *
+ * <p>
+ * Run it with {@code -prof gc} to see the allocation per operation.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackBenchmark {
+    public interface libc extends Library {
+        /**
+         * Same signature as {@code zfs_iter_f}.
+         */
+        interface iter_f extends Callback {
+            int callback(zfs_handle_t handle, Pointer arg);
+        }
+
+        void qsort(Pointer base, NativeLong nmemb, NativeLong size, iter_f compar);
+    }
+
+    private static final libc LIBC = (libc) Native.loadLibrary("c", libc.class);
+
+    private static final NativeLong TWO = new NativeLong(2);
+    private static final NativeLong SIZE = new NativeLong(Pointer.SIZE);
+
+    private final Memory elements = new Memory(2*Pointer.SIZE);
+
+    private int visited;
+
+    /**
+     * Where {@link #SHARED} reports to during the call in progress on the current thread.
+     */
+    private static final ThreadLocal<CallbackBenchmark> CURRENT = new ThreadLocal<CallbackBenchmark>();
+
+    private static final libc.iter_f SHARED = new libc.iter_f() {
+        public int callback(zfs_handle_t handle, Pointer arg) {
+            CURRENT.get().visited++;
+            return 0;
+        }
+    };
+
+    @Benchmark
+    public int perCallCallback() {
+        LIBC.qsort(elements, TWO, SIZE, new libc.iter_f() {
+            public int callback(zfs_handle_t handle, Pointer arg) {
+                visited++;
+                return 0;
+            }
+        });
+        return visited;
+    }
+
+    @Benchmark
+    public int sharedCallback() {
+        CallbackBenchmark prev = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            LIBC.qsort(elements, TWO, SIZE, SHARED);
+        } finally {
+            CURRENT.set(prev);
+        }
+        return visited;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.ACLBuilder;
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.ZFSObject;
+import org.jvnet.solaris.libzfs.ZFSPermission;
+import org.jvnet.solaris.libzfs.fake.FakeLibzfs;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building an {@link ACLBuilder} and turning it into the name/value pair lists
+ * that {@link ZFSObject#allow(ACLBuilder)} hands to libzfs, against a {@link FakeLibzfs}.
+ *
+ * <p>
+ * The ACL functions themselves aren't available on current libzfs, so the simulated
+ * library here claims the old Solaris ABI that has them, and only frees the lists it gets.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedAclBenchmark {
+    private LibZFS zfs;
+    private ZFSObject dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FakeLibzfs fake = new FakeLibzfs() {
+            @Override
+            public Map<String,String> getAbiFeatures() {
+                Map<String,String> r = super.getAbiFeatures();
+                r.put("LIBZFS4J_ABI_zfs_perm_set", "pre-sol10u8");
+                return r;
+            }
+
+            @Override
+            public int zfs_perm_set(zfs_handle_t handle, nvlist_t perms) {
+                getLibnvpair().nvlist_free(perms);
+                return 0;
+            }
+        };
+        fake.createPool(SimulatedZFS.POOL);
+        fake.createFileSystem(SimulatedZFS.POOL+"/fs0");
+        zfs = new LibZFS(fake);
+        dataset = zfs.open(SimulatedZFS.POOL+"/fs0");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.dispose();
+        zfs.dispose();
+    }
+
+    @Benchmark
+    public ACLBuilder buildAcl() {
+        ACLBuilder acl = new ACLBuilder();
+        acl.user("kohsuke").withEverything();
+        acl.group("staff").with(ZFSPermission.CREATE, ZFSPermission.MOUNT, ZFSPermission.SNAPSHOT).onDescendants();
+        acl.everyone().with(ZFSPermission.SEND).onThisDataset();
+
+        dataset.allow(acl);
+        return acl;
+    }
+}
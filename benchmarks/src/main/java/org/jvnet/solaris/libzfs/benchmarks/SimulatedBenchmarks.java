@@ -0,0 +1,53 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks that use {@link SimulatedZFS}, with the GC profiler,
+ * so that the allocation rate is reported next to the throughput.
+ *
+ * <p>
+ * This works on any machine, ZFS or not:
+ * {@code java -cp target/benchmarks.jar org.jvnet.solaris.libzfs.benchmarks.SimulatedBenchmarks}.
+ * The usual JMH command line options can be given, for example {@code -p latency=20000}
+ * to make every libzfs call take 20µs, or a regular expression to run only some of them.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SimulatedBenchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder b = new OptionsBuilder();
+        b.parent(cmd);
+        if (cmd.getIncludes().isEmpty())
+            b.include("\\.Simulated\\w+Benchmark\\.");
+        Options opts = b.addProfiler(GCProfiler.class).build();
+        new Runner(opts).run();
+    }
+}
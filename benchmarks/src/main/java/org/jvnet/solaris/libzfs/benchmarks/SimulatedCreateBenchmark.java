@@ -0,0 +1,97 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.ZFSFileSystem;
+import org.jvnet.solaris.libzfs.fake.FakeLibzfs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link LibZFS#create(String, Class)} of a dataset whose parents don't exist yet,
+ * which checks and creates every intermediate file system along the way.
+ *
+ * <p>
+ * Every operation creates {@link #levels} new file systems, so each iteration starts over
+ * with an empty {@link FakeLibzfs} to keep the heap from filling up.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedCreateBenchmark {
+    @Param({"3"})
+    public int levels;
+
+    /**
+     * Nanoseconds added to every libzfs call.
+     */
+    @Param({"0"})
+    public long latency;
+
+    private LibZFS zfs;
+    private String suffix;
+    private int n;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool(SimulatedZFS.POOL);
+        fake.setLatency(latency);
+        zfs = new LibZFS(fake);
+
+        StringBuilder b = new StringBuilder();
+        for (int i=1; i<levels; i++)
+            b.append("/d").append(i);
+        suffix = b.toString();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        zfs.dispose();
+    }
+
+    @Benchmark
+    public String create() {
+        ZFSFileSystem fs = zfs.create(SimulatedZFS.POOL+"/c"+(n++)+suffix, ZFSFileSystem.class);
+        String name = fs.getName();
+        fs.dispose();
+        return name;
+    }
+}
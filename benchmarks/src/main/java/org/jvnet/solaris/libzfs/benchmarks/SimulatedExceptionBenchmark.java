@@ -0,0 +1,82 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.ZFSException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what a failing call costs on the Java side, against {@link SimulatedZFS}.
+ *
+ * <p>
+ * {@link #failedOpen()} is the whole round trip of opening a dataset that doesn't exist,
+ * which throws a {@link ZFSException} that asks libzfs for the error code and description
+ * and fills in the stack trace. {@link #exists()} looks up the same dataset without
+ * throwing, so the difference between the two is what the exception costs.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedExceptionBenchmark {
+    private static final String MISSING = SimulatedZFS.POOL+"/no-such-dataset";
+
+    private LibZFS zfs;
+
+    @Setup(Level.Trial)
+    public void setUp(SimulatedZFS sim) {
+        zfs = sim.zfs;
+        if (zfs.exists(MISSING))
+            throw new IllegalStateException(MISSING+" shouldn't exist");
+    }
+
+    @Benchmark
+    public boolean exists() {
+        return zfs.exists(MISSING);
+    }
+
+    @Benchmark
+    public ZFSException failedOpen() {
+        try {
+            zfs.open(MISSING);
+            return null;
+        } catch (ZFSException e) {
+            return e;
+        }
+    }
+}
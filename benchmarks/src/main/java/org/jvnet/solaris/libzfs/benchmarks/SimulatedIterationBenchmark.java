@@ -0,0 +1,129 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.ZFSFileSystem;
+import org.jvnet.solaris.libzfs.ZFSObject;
+import org.jvnet.solaris.libzfs.ZFSSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lists datasets and snapshots, against {@link SimulatedZFS}.
+ *
+ * <p>
+ * The listing benchmarks work on "tank/fs0", which with the default parameters
+ * has 110 file systems and 2220 snapshots under it. Every object listed is
+ * disposed right away, so the cost of releasing the handles is included.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedIterationBenchmark {
+    private ZFSFileSystem subtree;
+    private ZFSFileSystem leaf;
+    /**
+     * Snapshots of {@link #leaf} in random order, which have already read the "createtxg" they sort by.
+     */
+    private ZFSSnapshot[] shuffled;
+
+    @Setup(Level.Trial)
+    public void setUp(SimulatedZFS sim) {
+        subtree = sim.zfs.open(SimulatedZFS.POOL+"/fs0", ZFSFileSystem.class);
+        leaf = sim.zfs.open(SimulatedZFS.POOL+"/fs0/fs0", ZFSFileSystem.class);
+
+        List<ZFSSnapshot> snapshots = leaf.children(ZFSSnapshot.class);
+        Collections.shuffle(snapshots, new Random(0));
+        shuffled = snapshots.toArray(new ZFSSnapshot[snapshots.size()]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (ZFSSnapshot s : shuffled)
+            s.dispose();
+        leaf.dispose();
+        subtree.dispose();
+    }
+
+    @Benchmark
+    public void descendants(Blackhole bh) {
+        consume(bh, subtree.descendants());
+    }
+
+    @Benchmark
+    public void fileSystems(Blackhole bh) {
+        consume(bh, subtree.descendants(ZFSFileSystem.class));
+    }
+
+    @Benchmark
+    public List<String> listNames() {
+        return subtree.listNames(ZFSObject.class, true);
+    }
+
+    /**
+     * {@link ZFSObject#snapshots()} sorts by {@link ZFSObject#compareTo(ZFSObject)} as it goes,
+     * which reads the creation transaction group of every new snapshot object.
+     */
+    @Benchmark
+    public void snapshots(Blackhole bh) {
+        consume(bh, leaf.snapshots());
+    }
+
+    /**
+     * Just the {@link ZFSObject#compareTo(ZFSObject)} part of sorting.
+     */
+    @Benchmark
+    public ZFSSnapshot[] sortSnapshots() {
+        ZFSSnapshot[] a = shuffled.clone();
+        Arrays.sort(a);
+        return a;
+    }
+
+    private static void consume(Blackhole bh, Iterable<? extends ZFSObject> objects) {
+        for (ZFSObject o : objects) {
+            bh.consume(o);
+            o.dispose();
+        }
+    }
+}
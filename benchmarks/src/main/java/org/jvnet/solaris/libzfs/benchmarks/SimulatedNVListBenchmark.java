@@ -0,0 +1,187 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.fake.FakeLibnvpair;
+import org.jvnet.solaris.nvlist.NVListDecoder;
+import org.jvnet.solaris.nvlist.NVListEncoder;
+import org.jvnet.solaris.nvlist.jna.libnvpair;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads a big name/value pair list key by key, pair by pair, and packed in one go,
+ * and builds a small one a pair at a time and packed, against {@link FakeLibnvpair}.
+ *
+ * <p>
+ * The list looks like what {@code zpool_get_history} returns: an array of
+ * {@link #records} lists with a time, a command, a user and a host each.
+ * {@link #latency} is added to every libnvpair call; the packed forms only take
+ * two calls however big the list is, where the others take a few per record.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedNVListBenchmark {
+    private static final String RECORDS = "history record";
+    private static final String TIME = "history time";
+    private static final String CMD = "history command";
+    private static final String WHO = "history who";
+    private static final String HOST = "history hostname";
+
+    /**
+     * Properties like the ones {@code LibZFS.create} passes to libzfs.
+     */
+    private static final Map<String,String> PROPS = new LinkedHashMap<String,String>();
+
+    static {
+        for (int i=0; i<32; i++)
+            PROPS.put("bench:prop"+i, "value"+i);
+    }
+
+    @Param({"10000"})
+    public int records;
+
+    /**
+     * Nanoseconds added to every libnvpair call.
+     */
+    @Param({"0"})
+    public long latency;
+
+    private FakeLibnvpair nvpair;
+    private nvlist_t history;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        nvpair = new FakeLibnvpair();
+        nvlist_t[] r = new nvlist_t[records];
+        for (int i=0; i<records; i++) {
+            r[i] = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+            r[i].putUInt64(TIME, 1400000000L+i);
+            r[i].put(CMD, "zfs snapshot tank/fs"+(i%100)+"@backup-"+i);
+            r[i].putUInt64(WHO, 0);
+            r[i].put(HOST, "build"+(i%8)+".example.org");
+        }
+        history = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+        history.putNVListArray(RECORDS, r);
+        for (nvlist_t l : r)
+            l.dispose();
+        nvpair.setLatency(latency);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        history.dispose();
+    }
+
+    /**
+     * Looks up every value of every record by its name.
+     */
+    @Benchmark
+    public void keyByKey(Blackhole bh) {
+        for (nvlist_t r : history.getNVListArray(RECORDS)) {
+            bh.consume(r.getUInt64(TIME));
+            bh.consume(r.getString(CMD));
+            bh.consume(r.getUInt64(WHO));
+            bh.consume(r.getString(HOST));
+        }
+    }
+
+    /**
+     * Walks all the pairs with {@link nvlist_t#toMap()}.
+     */
+    @Benchmark
+    public Map<String,Object> pairByPair() {
+        return history.toMap();
+    }
+
+    @Benchmark
+    public Map<String,Object> packedNative() {
+        return NVListDecoder.decode(history.pack(libnvpair.NV_ENCODE_NATIVE));
+    }
+
+    @Benchmark
+    public Map<String,Object> packedXdr() {
+        return NVListDecoder.decode(history.pack(libnvpair.NV_ENCODE_XDR));
+    }
+
+    /**
+     * Only the Java side of {@link #packedNative()}, without copying the list out.
+     */
+    @Benchmark
+    public Object decodeOnly(Packed p) {
+        Map<String,Object> m = NVListDecoder.decode(p.buf);
+        return ((List<?>)m.get(RECORDS)).size();
+    }
+
+    /**
+     * Builds a property list with a call per pair.
+     */
+    @Benchmark
+    public void buildPairByPair() {
+        nvlist_t l = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+        for (Map.Entry<String,String> e : PROPS.entrySet())
+            l.put(e.getKey(), e.getValue());
+        l.dispose();
+    }
+
+    /**
+     * Builds the same list with {@link NVListEncoder}, which takes a single call.
+     */
+    @Benchmark
+    public void buildEncoded() {
+        new NVListEncoder().putAll(PROPS).toNVList(nvpair).dispose();
+    }
+
+    @State(Scope.Thread)
+    public static class Packed {
+        ByteBuffer buf;
+
+        @Setup(Level.Trial)
+        public void setUp(SimulatedNVListBenchmark b) {
+            buf = b.history.pack(libnvpair.NV_ENCODE_NATIVE);
+        }
+    }
+}
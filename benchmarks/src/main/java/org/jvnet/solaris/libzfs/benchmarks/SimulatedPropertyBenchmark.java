@@ -0,0 +1,127 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.jvnet.solaris.libzfs.PropertySnapshot;
+import org.jvnet.solaris.libzfs.ZFSObject;
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads properties one at a time and in bulk, against {@link SimulatedZFS}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatedPropertyBenchmark {
+    private static final EnumSet<zfs_prop_t> PROPS = EnumSet.range(zfs_prop_t.ZFS_PROP_TYPE, zfs_prop_t.ZFS_PROP_EXEC);
+
+    private static final PropertySnapshot.Template TEMPLATE = PropertySnapshot.template(PROPS);
+
+    private ZFSObject dataset;
+
+    /**
+     * The same dataset, with its properties cached.
+     */
+    private ZFSObject cached;
+
+    @Setup(Level.Trial)
+    public void setUp(SimulatedZFS sim) {
+        sim.fake.setProperty(SimulatedZFS.POOL, "bench:owner", "kohsuke");
+        dataset = sim.zfs.open(SimulatedZFS.POOL+"/fs0/fs0");
+        cached = sim.zfs.open(SimulatedZFS.POOL+"/fs0/fs0");
+        cached.setPropertyCacheTtl(1, TimeUnit.HOURS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataset.dispose();
+        cached.dispose();
+    }
+
+    @Benchmark
+    public String singleString() {
+        return dataset.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION);
+    }
+
+    @Benchmark
+    public long singleLong() {
+        return dataset.getLong(zfs_prop_t.ZFS_PROP_USED);
+    }
+
+    @Benchmark
+    public Object bulkLookup() {
+        return dataset.getZfsProperty(PROPS);
+    }
+
+    @Benchmark
+    public Object bulkLongs() {
+        return dataset.getLongs(PROPS);
+    }
+
+    @Benchmark
+    public PropertySnapshot bulkSnapshot() {
+        return dataset.getPropertySnapshot(TEMPLATE);
+    }
+
+    /**
+     * Inherited user property, which goes through the name/value pair list.
+     */
+    @Benchmark
+    public Object userProperty() {
+        return dataset.getUserProperty(Collections.singleton("bench:owner"));
+    }
+
+    @Benchmark
+    public String cachedSingleString() {
+        return cached.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION);
+    }
+
+    @Benchmark
+    public long cachedSingleLong() {
+        return cached.getLong(zfs_prop_t.ZFS_PROP_USED);
+    }
+
+    @Benchmark
+    public PropertySnapshot cachedBulkSnapshot() {
+        return cached.getPropertySnapshot(TEMPLATE);
+    }
+}
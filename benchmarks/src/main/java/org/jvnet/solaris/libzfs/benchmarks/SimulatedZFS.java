@@ -0,0 +1,79 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.benchmarks;
+
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.fake.FakeLibzfs;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * {@link LibZFS} backed by {@link FakeLibzfs}, for benchmarks that need to run without ZFS on the host.
+ *
+ * <p>
+ * The pool {@link #POOL} gets a tree of file systems named "fs0", "fs1", ... with
+ * {@link #fanout} children per file system, {@link #depth} levels deep, and
+ * {@link #snapshots} snapshots of every one of them. {@link #latency} is added
+ * to every libzfs call, to see how the Java side compares to a real library;
+ * all of these can be changed with JMH's {@code -p}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@State(Scope.Thread)
+public class SimulatedZFS {
+    public static final String POOL = "tank";
+
+    @Param({"10"})
+    public int fanout;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"20"})
+    public int snapshots;
+
+    /**
+     * Nanoseconds added to every libzfs call.
+     */
+    @Param({"0"})
+    public long latency;
+
+    public FakeLibzfs fake;
+    public LibZFS zfs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fake = new FakeLibzfs();
+        fake.createPool(POOL);
+        fake.populate(POOL, fanout, depth, snapshots);
+        fake.setLatency(latency);
+        zfs = new LibZFS(fake);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        zfs.dispose();
+    }
+}
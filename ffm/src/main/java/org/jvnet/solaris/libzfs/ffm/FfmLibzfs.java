@@ -0,0 +1,975 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.ffm;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.PointerType;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.EnumByReference;
+import org.jvnet.solaris.jna.PtrByReference;
+import org.jvnet.solaris.libzfs.jna.libzfs;
+import org.jvnet.solaris.libzfs.jna.libzfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.pool_scrub_type_t;
+import org.jvnet.solaris.libzfs.jna.vdev_aux_t;
+import org.jvnet.solaris.libzfs.jna.vdev_state_t;
+import org.jvnet.solaris.libzfs.jna.zfs_cmd;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+import org.jvnet.solaris.libzfs.jna.zfs_type_t;
+import org.jvnet.solaris.libzfs.jna.zpool_handle_t;
+import org.jvnet.solaris.libzfs.jna.zpool_prop_t;
+import org.jvnet.solaris.libzfs.jna.zprop_get_cbdata_t;
+import org.jvnet.solaris.libzfs.jna.zprop_list_t;
+import org.jvnet.solaris.libzfs.jna.zprop_source_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+
+/**
+ * {@link libzfs} that calls the most frequently used functions through the
+ * Foreign Function &amp; Memory API instead of JNA.
+ *
+ * <p>
+ * Covers the same functions as {@link org.jvnet.solaris.libzfs.jna.DirectLibzfs}: opening,
+ * naming and closing datasets, reading dataset and pool properties, and iterating datasets
+ * and pools. Each is bound once to a downcall handle; strings passed to libzfs are allocated
+ * in a confined arena that is freed as soon as the call returns. Everything else is delegated
+ * to {@link libzfs#LIBZFS}, so the two can be mixed freely on the same handles.
+ *
+ * <p>
+ * Iterator callbacks get an upcall stub each, which is kept for as long as the callback
+ * object itself is reachable. The library passes the same few callbacks to every iteration,
+ * so these are created once. Unlike JNA, FFM can't let an exception escape an upcall,
+ * so one thrown from a callback is logged and stops the iteration.
+ *
+ * <p>
+ * Selected by setting {@code LIBZFS4J_BINDING=ffm}. Needs Java 22 or later, with
+ * {@code --enable-native-access=ALL-UNNAMED} to avoid the restricted method warnings.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FfmLibzfs implements libzfs {
+    private static final Linker LINKER = Linker.nativeLinker();
+
+    /**
+     * The same libzfs that JNA has loaded, so that handles from either side are interchangeable.
+     */
+    private static final SymbolLookup ZFS = SymbolLookup.libraryLookup(
+            NativeLibrary.getInstance("zfs").getFile().toPath(), Arena.global());
+
+    private static final FunctionDescriptor ITER_F = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
+
+    private static final MethodHandle ZFS_OPEN = downcall("zfs_open",
+            FunctionDescriptor.of(ADDRESS, ADDRESS, ADDRESS, JAVA_INT));
+    private static final MethodHandle ZFS_CLOSE = downcall("zfs_close",
+            FunctionDescriptor.ofVoid(ADDRESS));
+    private static final MethodHandle ZFS_GET_NAME = downcall("zfs_get_name",
+            FunctionDescriptor.of(ADDRESS, ADDRESS));
+    private static final MethodHandle ZFS_GET_TYPE = downcall("zfs_get_type",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS));
+    /* zfs_handle_t*, zfs_prop_t, char *buf, size_t, zprop_source_t*, char *statbuf, size_t, boolean_t literal */
+    private static final MethodHandle ZFS_PROP_GET = downcall("zfs_prop_get",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT));
+    /* zfs_handle_t*, zfs_prop_t, uint64_t*, zprop_source_t*, char *statbuf, size_t */
+    private static final MethodHandle ZFS_PROP_GET_NUMERIC = downcall("zfs_prop_get_numeric",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG));
+    /* zpool_handle_t*, zpool_prop_t, char *buf, size_t, zprop_source_t* */
+    private static final MethodHandle ZPOOL_GET_PROP = downcall("zpool_get_prop",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS));
+    private static final MethodHandle ZPOOL_GET_PROP_INT = downcall("zpool_get_prop_int",
+            FunctionDescriptor.of(JAVA_LONG, ADDRESS, JAVA_INT, ADDRESS));
+    private static final MethodHandle ZFS_ITER_ROOT = downcall("zfs_iter_root",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+    private static final MethodHandle ZFS_ITER_CHILDREN = downcall("zfs_iter_children",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+    private static final MethodHandle ZFS_ITER_FILESYSTEMS = downcall("zfs_iter_filesystems",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+    /* legacy signature */
+    private static final MethodHandle ZFS_ITER_SNAPSHOTS = downcall("zfs_iter_snapshots",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+    /* openzfs signature, with boolean_t simple */
+    private static final MethodHandle ZFS_ITER_SNAPSHOTS_SIMPLE = downcall("zfs_iter_snapshots",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, ADDRESS));
+    private static final MethodHandle ZFS_ITER_SNAPSHOTS_SORTED = downcall("zfs_iter_snapshots_sorted",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+    private static final MethodHandle ZPOOL_ITER = downcall("zpool_iter",
+            FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+
+    private static final MethodHandle DATASET_UPCALL;
+    private static final MethodHandle POOL_UPCALL;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            DATASET_UPCALL = l.findStatic(FfmLibzfs.class, "datasetUpcall",
+                    MethodType.methodType(int.class, WeakReference.class, MemorySegment.class, MemorySegment.class));
+            POOL_UPCALL = l.findStatic(FfmLibzfs.class, "poolUpcall",
+                    MethodType.methodType(int.class, WeakReference.class, MemorySegment.class, MemorySegment.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Upcall stubs of the callbacks seen so far. A stub lives in an automatic arena,
+     * so it's freed once its callback is gone and the entry gets expunged.
+     */
+    private static final Map<Object,MemorySegment> STUBS = new WeakHashMap<>();
+
+    /**
+     * Binds the given function. If libzfs doesn't have it, calling the handle throws
+     * {@link UnsatisfiedLinkError}, just like JNA does on the first call.
+     */
+    private static MethodHandle downcall(String name, FunctionDescriptor fd) {
+        Optional<MemorySegment> symbol = ZFS.find(name);
+        if (symbol.isPresent())
+            return LINKER.downcallHandle(symbol.get(), fd);
+
+        MethodType type = fd.toMethodType();
+        MethodHandle thrower = MethodHandles.insertArguments(
+                MethodHandles.throwException(type.returnType(), UnsatisfiedLinkError.class),
+                0, new UnsatisfiedLinkError("libzfs has no "+name));
+        return MethodHandles.dropArguments(thrower, 0, type.parameterList());
+    }
+
+    /*
+     * Conversions between JNA types and FFM addresses
+     */
+
+    private static MemorySegment address(Pointer p) {
+        return p==null ? MemorySegment.NULL : MemorySegment.ofAddress(Pointer.nativeValue(p));
+    }
+
+    private static MemorySegment address(PointerType p) {
+        return p==null ? MemorySegment.NULL : address(p.getPointer());
+    }
+
+    private static Pointer pointer(MemorySegment s) {
+        return s.address()==0 ? null : new Pointer(s.address());
+    }
+
+    private static <T extends PointerType> T wrap(MemorySegment s, T t) {
+        if (s.address()==0)
+            return null;
+        t.setPointer(new Pointer(s.address()));
+        return t;
+    }
+
+    private static String string(MemorySegment s) {
+        return s.address()==0 ? null : s.reinterpret(Long.MAX_VALUE).getString(0);
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException)
+            throw (RuntimeException)t;
+        if (t instanceof Error)
+            throw (Error)t;
+        throw new IllegalStateException(t);
+    }
+
+    /*
+     * Iterator callbacks
+     */
+
+    private static MemorySegment stub(Object callback, MethodHandle upcall) {
+        if (callback==null)
+            return MemorySegment.NULL;
+        synchronized (STUBS) {
+            MemorySegment s = STUBS.get(callback);
+            if (s==null) {
+                MethodHandle target = MethodHandles.insertArguments(upcall, 0, new WeakReference<>(callback));
+                s = LINKER.upcallStub(target, ITER_F, Arena.ofAuto());
+                STUBS.put(callback, s);
+            }
+            return s;
+        }
+    }
+
+    private static MemorySegment stub(libzfs.zfs_iter_f callback) {
+        return stub(callback, DATASET_UPCALL);
+    }
+
+    private static MemorySegment stub(libzfs.zpool_iter_f callback) {
+        return stub(callback, POOL_UPCALL);
+    }
+
+    private static int datasetUpcall(WeakReference<?> ref, MemorySegment handle, MemorySegment arg) {
+        libzfs.zfs_iter_f callback = (libzfs.zfs_iter_f) ref.get();
+        if (callback==null)
+            return 1;
+        try {
+            return callback.callback(wrap(handle, new zfs_handle_t()), pointer(arg));
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING, "zfs_iter_f callback failed; stopping the iteration", t);
+            return 1;
+        }
+    }
+
+    private static int poolUpcall(WeakReference<?> ref, MemorySegment handle, MemorySegment arg) {
+        libzfs.zpool_iter_f callback = (libzfs.zpool_iter_f) ref.get();
+        if (callback==null)
+            return 1;
+        try {
+            return callback.callback(wrap(handle, new zpool_handle_t()), pointer(arg));
+        } catch (Throwable t) {
+            LOGGER.log(Level.WARNING, "zpool_iter_f callback failed; stopping the iteration", t);
+            return 1;
+        }
+    }
+
+    /*
+     * Functions bound through FFM
+     */
+
+    public zfs_handle_t zfs_open(libzfs_handle_t lib, String name, int typeMask) {
+        try (Arena arena = Arena.ofConfined()) {
+            return wrap((MemorySegment) ZFS_OPEN.invokeExact(address(lib), arena.allocateFrom(name), typeMask), new zfs_handle_t());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public void zfs_close(zfs_handle_t handle) {
+        try {
+            ZFS_CLOSE.invokeExact(address(handle));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public String zfs_get_name(zfs_handle_t handle) {
+        try {
+            return string((MemorySegment) ZFS_GET_NAME.invokeExact(address(handle)));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public int zfs_get_type(zfs_handle_t handle) {
+        try {
+            return (int) ZFS_GET_TYPE.invokeExact(address(handle));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public int zfs_prop_get(zfs_handle_t handle, NativeLong prop, Pointer _4, int cbSize, IntByReference _5, char[] _6, NativeLong _7, boolean _8) {
+        if (_6!=null)   // leave the char[] conversion to JNA
+            return LIBZFS.zfs_prop_get(handle, prop, _4, cbSize, _5, _6, _7, _8);
+        try {
+            return (int) ZFS_PROP_GET.invokeExact(address(handle), prop.intValue(), address(_4), (long) cbSize,
+                    address(_5), MemorySegment.NULL, 0L, _8 ? 1 : 0);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public int zfs_prop_get_numeric(zfs_handle_t handle, NativeLong prop, LongByReference r, IntByReference _4, char[] _5, NativeLong _6) {
+        if (_5!=null)   // leave the char[] conversion to JNA
+            return LIBZFS.zfs_prop_get_numeric(handle, prop, r, _4, _5, _6);
+        try {
+            return (int) ZFS_PROP_GET_NUMERIC.invokeExact(address(handle), prop.intValue(), address(r),
+                    address(_4), MemorySegment.NULL, 0L);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public int zpool_get_prop(zpool_handle_t pool, NativeLong prop, Pointer buf, NativeLong len, EnumByReference<zprop_source_t> srctype) {
+        try {
+            return (int) ZPOOL_GET_PROP.invokeExact(address(pool), prop.intValue(), address(buf), len.longValue(), address(srctype));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public long zpool_get_prop_int(zpool_handle_t pool, NativeLong prop, EnumByReference<zprop_source_t> src) {
+        try {
+            return (long) ZPOOL_GET_PROP_INT.invokeExact(address(pool), prop.intValue(), address(src));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public int zfs_iter_root(libzfs_handle_t lib, libzfs.zfs_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZFS_ITER_ROOT.invokeExact(address(lib), stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    public int zfs_iter_children(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZFS_ITER_CHILDREN.invokeExact(address(handle), stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    public int zfs_iter_filesystems(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZFS_ITER_FILESYSTEMS.invokeExact(address(handle), stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    public int zfs_iter_snapshots(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZFS_ITER_SNAPSHOTS.invokeExact(address(handle), stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    public int zfs_iter_snapshots(zfs_handle_t handle, boolean simple, libzfs.zfs_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZFS_ITER_SNAPSHOTS_SIMPLE.invokeExact(address(handle), simple ? 1 : 0, stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    public int zfs_iter_snapshots_sorted(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZFS_ITER_SNAPSHOTS_SORTED.invokeExact(address(handle), stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    public int zpool_iter(libzfs_handle_t lib, libzfs.zpool_iter_f callback, Pointer arg) {
+        try {
+            return (int) ZPOOL_ITER.invokeExact(address(lib), stub(callback), address(arg));
+        } catch (Throwable t) {
+            throw rethrow(t);
+        } finally {
+            Reference.reachabilityFence(callback);
+        }
+    }
+
+    /*
+     * Everything else goes through the proxy
+     */
+
+    public boolean is_mounted(libzfs_handle_t lib, String special, PointerByReference _2) {
+        return LIBZFS.is_mounted(lib, special, _2);
+    }
+
+    public int libzfs_errno(libzfs_handle_t lib) {
+        return LIBZFS.libzfs_errno(lib);
+    }
+
+    public String libzfs_error_action(libzfs_handle_t lib) {
+        return LIBZFS.libzfs_error_action(lib);
+    }
+
+    public String libzfs_error_description(libzfs_handle_t lib) {
+        return LIBZFS.libzfs_error_description(lib);
+    }
+
+    public void libzfs_fini(libzfs_handle_t handle) {
+        LIBZFS.libzfs_fini(handle);
+    }
+
+    public libzfs_handle_t libzfs_init() {
+        return LIBZFS.libzfs_init();
+    }
+
+    public void libzfs_mnttab_add(libzfs_handle_t lib, String specal, String mountp, String mntopts) {
+        LIBZFS.libzfs_mnttab_add(lib, specal, mountp, mntopts);
+    }
+
+    public void libzfs_mnttab_cache(libzfs_handle_t lib, boolean flag) {
+        LIBZFS.libzfs_mnttab_cache(lib, flag);
+    }
+
+    public void libzfs_mnttab_fini(libzfs_handle_t lib) {
+        LIBZFS.libzfs_mnttab_fini(lib);
+    }
+
+    public void libzfs_mnttab_init(libzfs_handle_t lib) {
+        LIBZFS.libzfs_mnttab_init(lib);
+    }
+
+    public void libzfs_mnttab_remove(libzfs_handle_t lib, String fsname) {
+        LIBZFS.libzfs_mnttab_remove(lib, fsname);
+    }
+
+    public void libzfs_print_on_error(libzfs_handle_t lib, boolean flag) {
+        LIBZFS.libzfs_print_on_error(lib, flag);
+    }
+
+    public int zfs_build_perms(zfs_handle_t handle, String who, String perms, int who_type, int deleg_type, PtrByReference<nvlist_t> ppchNVList) {
+        return LIBZFS.zfs_build_perms(handle, who, perms, who_type, deleg_type, ppchNVList);
+    }
+
+    public int zfs_clone(zfs_handle_t handle, String name, nvlist_t _3) {
+        return LIBZFS.zfs_clone(handle, name, _3);
+    }
+
+    public int zfs_create(libzfs_handle_t lib, String name, int type, nvlist_t props) {
+        return LIBZFS.zfs_create(lib, name, type, props);
+    }
+
+    public int zfs_create_ancestors(libzfs_handle_t lib, String _2) {
+        return LIBZFS.zfs_create_ancestors(lib, _2);
+    }
+
+    public boolean zfs_dataset_exists(libzfs_handle_t lib, String name, int type) {
+        return LIBZFS.zfs_dataset_exists(lib, name, type);
+    }
+
+    public void zfs_deleg_permissions() {
+        LIBZFS.zfs_deleg_permissions();
+    }
+
+    public int zfs_destroy(zfs_handle_t handle) {
+        return LIBZFS.zfs_destroy(handle);
+    }
+
+    public int zfs_destroy(zfs_handle_t handle, boolean defer) {
+        return LIBZFS.zfs_destroy(handle, defer);
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name) {
+        return LIBZFS.zfs_destroy_snaps(handle, name);
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name, boolean defer) {
+        return LIBZFS.zfs_destroy_snaps(handle, name, defer);
+    }
+
+    public int zfs_expand_proplist(zfs_handle_t handle, PointerByReference _2) {
+        return LIBZFS.zfs_expand_proplist(handle, _2);
+    }
+
+    public void zfs_free_allows(libzfs.zfs_allow_t p) {
+        LIBZFS.zfs_free_allows(p);
+    }
+
+    public libzfs_handle_t zfs_get_handle(zfs_handle_t handle) {
+        return LIBZFS.zfs_get_handle(handle);
+    }
+
+    public zpool_handle_t zfs_get_pool_handle(zfs_handle_t h) {
+        return LIBZFS.zfs_get_pool_handle(h);
+    }
+
+    public nvlist_t zfs_get_user_props(zfs_handle_t handle) {
+        return LIBZFS.zfs_get_user_props(handle);
+    }
+
+    public zfs_handle_t zfs_handle_dup(zfs_handle_t src) {
+        return LIBZFS.zfs_handle_dup(src);
+    }
+
+    public int zfs_ioctl(libzfs_handle_t lib, int _2, zfs_cmd cmd) {
+        return LIBZFS.zfs_ioctl(lib, _2, cmd);
+    }
+
+    public boolean zfs_is_mounted(zfs_handle_t handle, PointerByReference _3) {
+        return LIBZFS.zfs_is_mounted(handle, _3);
+    }
+
+    public boolean zfs_is_shared(zfs_handle_t handle) {
+        return LIBZFS.zfs_is_shared(handle);
+    }
+
+    public boolean zfs_is_shared_iscsi(zfs_handle_t handle) {
+        return LIBZFS.zfs_is_shared_iscsi(handle);
+    }
+
+    public boolean zfs_is_shared_nfs(zfs_handle_t handle, PointerByReference ppch) {
+        return LIBZFS.zfs_is_shared_nfs(handle, ppch);
+    }
+
+    public boolean zfs_is_shared_smb(zfs_handle_t handle, PointerByReference ppch) {
+        return LIBZFS.zfs_is_shared_smb(handle, ppch);
+    }
+
+    public int zfs_iter_dependents(zfs_handle_t handle, boolean _2, libzfs.zfs_iter_f callback, Pointer arg) {
+        return LIBZFS.zfs_iter_dependents(handle, _2, callback, arg);
+    }
+
+    public int zfs_iter_snapspec(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg) {
+        return LIBZFS.zfs_iter_snapspec(handle, callback, arg);
+    }
+
+    public int zfs_mount(zfs_handle_t handle, String options, int mountFlags) {
+        return LIBZFS.zfs_mount(handle, options, mountFlags);
+    }
+
+    public int zfs_name_valid(String name, zfs_type_t type) {
+        return LIBZFS.zfs_name_valid(name, type);
+    }
+
+    public void zfs_nicenum(long _1, char[] buf, NativeLong size) {
+        LIBZFS.zfs_nicenum(_1, buf, size);
+    }
+
+    public int zfs_nicestrtonum(libzfs_handle_t lib, String _2, LongByReference r) {
+        return LIBZFS.zfs_nicestrtonum(lib, _2, r);
+    }
+
+    public zfs_handle_t zfs_path_to_zhandle(libzfs_handle_t lib, String path, int type) {
+        return LIBZFS.zfs_path_to_zhandle(lib, path, type);
+    }
+
+    public int zfs_perm_get(zfs_handle_t handle, PointerByReference _2) {
+        return LIBZFS.zfs_perm_get(handle, _2);
+    }
+
+    public int zfs_perm_remove(zfs_handle_t handle, nvlist_t perms) {
+        return LIBZFS.zfs_perm_remove(handle, perms);
+    }
+
+    public int zfs_perm_set(zfs_handle_t handle, nvlist_t perms) {
+        return LIBZFS.zfs_perm_set(handle, perms);
+    }
+
+    public int zfs_promote(zfs_handle_t handle) {
+        return LIBZFS.zfs_promote(handle);
+    }
+
+    public boolean zfs_prop_align_right(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_align_right(prop);
+    }
+
+    public String zfs_prop_column_name(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_column_name(prop);
+    }
+
+    public long zfs_prop_default_numeric(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_default_numeric(prop);
+    }
+
+    public String zfs_prop_default_string(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_default_string(prop);
+    }
+
+    public long zfs_prop_get_int(zfs_handle_t handle, zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_get_int(handle, prop);
+    }
+
+    public int zfs_prop_inherit(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_prop_inherit(handle, _2);
+    }
+
+    public int zfs_prop_is_string(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_is_string(prop);
+    }
+
+    public int zfs_prop_set(zfs_handle_t handle, String propertyName, String propertyValue) {
+        return LIBZFS.zfs_prop_set(handle, propertyName, propertyValue);
+    }
+
+    public String zfs_prop_to_name(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_to_name(prop);
+    }
+
+    public String zfs_prop_values(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_values(prop);
+    }
+
+    public void zfs_refresh_properties(zfs_handle_t handle) {
+        LIBZFS.zfs_refresh_properties(handle);
+    }
+
+    public int zfs_rename(zfs_handle_t handle, String name, boolean _3) {
+        return LIBZFS.zfs_rename(handle, name, _3);
+    }
+
+    public int zfs_rollback(zfs_handle_t handle1, zfs_handle_t handle2, boolean _3) {
+        return LIBZFS.zfs_rollback(handle1, handle2, _3);
+    }
+
+    public int zfs_share(zfs_handle_t handle) {
+        return LIBZFS.zfs_share(handle);
+    }
+
+    public int zfs_share_iscsi(zfs_handle_t handle) {
+        return LIBZFS.zfs_share_iscsi(handle);
+    }
+
+    public int zfs_share_nfs(zfs_handle_t handle) {
+        return LIBZFS.zfs_share_nfs(handle);
+    }
+
+    public int zfs_share_smb(zfs_handle_t handle) {
+        return LIBZFS.zfs_share_smb(handle);
+    }
+
+    public int zfs_shareall(zfs_handle_t handle) {
+        return LIBZFS.zfs_shareall(handle);
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive) {
+        return LIBZFS.zfs_snapshot(lib, fullNameWithAtSnapShot, recursive);
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive, nvlist_t props) {
+        return LIBZFS.zfs_snapshot(lib, fullNameWithAtSnapShot, recursive, props);
+    }
+
+    public int zfs_spa_version(zfs_handle_t handle, IntByReference r) {
+        return LIBZFS.zfs_spa_version(handle, r);
+    }
+
+    public String zfs_type_to_name(zfs_type_t type) {
+        return LIBZFS.zfs_type_to_name(type);
+    }
+
+    public int zfs_unmount(zfs_handle_t handle, String _2, int umountFlags) {
+        return LIBZFS.zfs_unmount(handle, _2, umountFlags);
+    }
+
+    public int zfs_unmountall(zfs_handle_t handle, int umountFlags) {
+        return LIBZFS.zfs_unmountall(handle, umountFlags);
+    }
+
+    public int zfs_unshare(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshare(handle);
+    }
+
+    public int zfs_unshare_iscsi(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshare_iscsi(handle);
+    }
+
+    public int zfs_unshare_nfs(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_unshare_nfs(handle, _2);
+    }
+
+    public int zfs_unshare_smb(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_unshare_smb(handle, _2);
+    }
+
+    public int zfs_unshareall(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshareall(handle);
+    }
+
+    public int zfs_unshareall_bypath(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_unshareall_bypath(handle, _2);
+    }
+
+    public int zfs_unshareall_nfs(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshareall_nfs(handle);
+    }
+
+    public int zfs_unshareall_smb(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshareall_smb(handle);
+    }
+
+    public int zpool_add(zpool_handle_t pool, nvlist_t _1) {
+        return LIBZFS.zpool_add(pool, _1);
+    }
+
+    public int zpool_clear(zpool_handle_t pool, String name) {
+        return LIBZFS.zpool_clear(pool, name);
+    }
+
+    public void zpool_close(zpool_handle_t pool) {
+        LIBZFS.zpool_close(pool);
+    }
+
+    public int zpool_create(libzfs_handle_t lib, String poolName, nvlist_t nvroot, nvlist_t props) {
+        return LIBZFS.zpool_create(lib, poolName, nvroot, props);
+    }
+
+    public int zpool_create_zvol_links(zpool_handle_t pool) {
+        return LIBZFS.zpool_create_zvol_links(pool);
+    }
+
+    public int zpool_destroy(zpool_handle_t pool) {
+        return LIBZFS.zpool_destroy(pool);
+    }
+
+    public int zpool_disable_datasets(zpool_handle_t pool, boolean force) {
+        return LIBZFS.zpool_disable_datasets(pool, force);
+    }
+
+    public int zpool_enable_datasets(zpool_handle_t pool, String _2, int _3) {
+        return LIBZFS.zpool_enable_datasets(pool, _2, _3);
+    }
+
+    public int zpool_expand_proplist(zpool_handle_t pool, PointerByReference _2) {
+        return LIBZFS.zpool_expand_proplist(pool, _2);
+    }
+
+    public int zpool_export(zpool_handle_t pool, boolean force) {
+        return LIBZFS.zpool_export(pool, force);
+    }
+
+    public int zpool_export_force(zpool_handle_t pool) {
+        return LIBZFS.zpool_export_force(pool);
+    }
+
+    public nvlist_t zpool_find_import(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        return LIBZFS.zpool_find_import(lib, argc, argv);
+    }
+
+    public nvlist_t zpool_find_import_activeok(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        return LIBZFS.zpool_find_import_activeok(lib, argc, argv);
+    }
+
+    public nvlist_t zpool_find_import_byguid(libzfs_handle_t lib, int argc, PointerByReference argv, long guid) {
+        return LIBZFS.zpool_find_import_byguid(lib, argc, argv, guid);
+    }
+
+    public nvlist_t zpool_find_import_byname(libzfs_handle_t lib, int argc, PointerByReference argv, String pool) {
+        return LIBZFS.zpool_find_import_byname(lib, argc, argv, pool);
+    }
+
+    public nvlist_t zpool_find_import_cached(libzfs_handle_t lib, String cachefile, String poolname, long guid) {
+        return LIBZFS.zpool_find_import_cached(lib, cachefile, poolname, guid);
+    }
+
+    public nvlist_t zpool_find_vdev(zpool_handle_t pool, String path, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        return LIBZFS.zpool_find_vdev(pool, path, avail_spare, l2cache, log);
+    }
+
+    public nvlist_t zpool_find_vdev_by_physpath(zpool_handle_t pool, String ppath, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        return LIBZFS.zpool_find_vdev_by_physpath(pool, ppath, avail_spare, l2cache, log);
+    }
+
+    public void zpool_free_handles(libzfs_handle_t lib) {
+        LIBZFS.zpool_free_handles(lib);
+    }
+
+    public nvlist_t zpool_get_config(zpool_handle_t pool, PointerByReference ppchNVList) {
+        return LIBZFS.zpool_get_config(pool, ppchNVList);
+    }
+
+    public int zpool_get_errlog(zpool_handle_t pool, PointerByReference ppchNVList) {
+        return LIBZFS.zpool_get_errlog(pool, ppchNVList);
+    }
+
+    public libzfs_handle_t zpool_get_handle(zpool_handle_t handle) {
+        return LIBZFS.zpool_get_handle(handle);
+    }
+
+    public int zpool_get_history(zpool_handle_t pool, PointerByReference ppNVList) {
+        return LIBZFS.zpool_get_history(pool, ppNVList);
+    }
+
+    public String zpool_get_name(zpool_handle_t pool) {
+        return LIBZFS.zpool_get_name(pool);
+    }
+
+    public int zpool_get_state(zpool_handle_t pool) {
+        return LIBZFS.zpool_get_state(pool);
+    }
+
+    public int zpool_get_status(zpool_handle_t handle, PointerByReference msgid) {
+        return LIBZFS.zpool_get_status(handle, msgid);
+    }
+
+    public int zpool_import(libzfs_handle_t lib, nvlist_t config, String newname, String altroot) {
+        return LIBZFS.zpool_import(lib, config, newname, altroot);
+    }
+
+    public int zpool_import_props(libzfs_handle_t lib, nvlist_t config, String newname, nvlist_t props, BooleanByReference importfaulted) {
+        return LIBZFS.zpool_import_props(lib, config, newname, props, importfaulted);
+    }
+
+    public int zpool_import_status(nvlist_t config, PointerByReference misgid) {
+        return LIBZFS.zpool_import_status(config, misgid);
+    }
+
+    public int zpool_in_use(libzfs_handle_t lib, int _2, IntByReference r, PointerByReference ppch, BooleanByReference _5) {
+        return LIBZFS.zpool_in_use(lib, _2, r, ppch, _5);
+    }
+
+    public int zpool_label_disk(libzfs_handle_t lib, zpool_handle_t pool, String label) {
+        return LIBZFS.zpool_label_disk(lib, pool, label);
+    }
+
+    public void zpool_obj_to_path(zpool_handle_t pool, long _2, long _3, String _4, NativeLong len) {
+        LIBZFS.zpool_obj_to_path(pool, _2, _3, _4, len);
+    }
+
+    public zpool_handle_t zpool_open(libzfs_handle_t lib, String name) {
+        return LIBZFS.zpool_open(lib, name);
+    }
+
+    public zpool_handle_t zpool_open_canfail(libzfs_handle_t lib, String name) {
+        return LIBZFS.zpool_open_canfail(lib, name);
+    }
+
+    public boolean zpool_prop_align_right(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_align_right(prop);
+    }
+
+    public String zpool_prop_column_name(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_column_name(prop);
+    }
+
+    public long zpool_prop_default_numeric(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_default_numeric(prop);
+    }
+
+    public String zpool_prop_default_string(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_default_string(prop);
+    }
+
+    public String zpool_prop_to_name(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_to_name(prop);
+    }
+
+    public String zpool_prop_values(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_values(prop);
+    }
+
+    public int zpool_read_label(int _1, PointerByReference ppnvlist) {
+        return LIBZFS.zpool_read_label(_1, ppnvlist);
+    }
+
+    public int zpool_refresh_stats(zpool_handle_t pool, BooleanByReference missing) {
+        return LIBZFS.zpool_refresh_stats(pool, missing);
+    }
+
+    public int zpool_remove_zvol_links(zpool_handle_t pool) {
+        return LIBZFS.zpool_remove_zvol_links(pool);
+    }
+
+    public int zpool_scrub(zpool_handle_t pool, pool_scrub_type_t scrub) {
+        return LIBZFS.zpool_scrub(pool, scrub);
+    }
+
+    public void zpool_set_history_str(String subcommand, int argc, String[] argv, String history_str) {
+        LIBZFS.zpool_set_history_str(subcommand, argc, argv, history_str);
+    }
+
+    public int zpool_set_prop(zpool_handle_t pool, String name, String value) {
+        return LIBZFS.zpool_set_prop(pool, name, value);
+    }
+
+    public int zpool_stage_history(libzfs_handle_t lib, String _2) {
+        return LIBZFS.zpool_stage_history(lib, _2);
+    }
+
+    public String zpool_state_to_name(vdev_state_t state, vdev_aux_t aux) {
+        return LIBZFS.zpool_state_to_name(state, aux);
+    }
+
+    public int zpool_upgrade(zpool_handle_t pool, long new_version) {
+        return LIBZFS.zpool_upgrade(pool, new_version);
+    }
+
+    public int zpool_vdev_attach(zpool_handle_t pool, String old_disk, String new_disk, nvlist_t nvroot, int replacing) {
+        return LIBZFS.zpool_vdev_attach(pool, old_disk, new_disk, nvroot, replacing);
+    }
+
+    public int zpool_vdev_clear(zpool_handle_t pool, long guid) {
+        return LIBZFS.zpool_vdev_clear(pool, guid);
+    }
+
+    public int zpool_vdev_degrade(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        return LIBZFS.zpool_vdev_degrade(pool, guid, aux);
+    }
+
+    public int zpool_vdev_detach(zpool_handle_t pool, String path) {
+        return LIBZFS.zpool_vdev_detach(pool, path);
+    }
+
+    public int zpool_vdev_fault(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        return LIBZFS.zpool_vdev_fault(pool, guid, aux);
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv) {
+        return LIBZFS.zpool_vdev_name(lib, pool, nv);
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv, BooleanByReference verbose) {
+        return LIBZFS.zpool_vdev_name(lib, pool, nv, verbose);
+    }
+
+    public int zpool_vdev_offline(zpool_handle_t pool, String path, boolean istmp) {
+        return LIBZFS.zpool_vdev_offline(pool, path, istmp);
+    }
+
+    public int zpool_vdev_online(zpool_handle_t pool, String path, int flags, vdev_state_t newstate) {
+        return LIBZFS.zpool_vdev_online(pool, path, flags, newstate);
+    }
+
+    public int zpool_vdev_remove(zpool_handle_t pool, String path) {
+        return LIBZFS.zpool_vdev_remove(pool, path);
+    }
+
+    public void zprop_free_list(zprop_list_t arg) {
+        LIBZFS.zprop_free_list(arg);
+    }
+
+    public int zprop_get_list(libzfs_handle_t lib, String buf, PointerByReference result, int type) {
+        return LIBZFS.zprop_get_list(lib, buf, result, type);
+    }
+
+    public int zprop_iter(libzfs.zprop_func func, Pointer arg, boolean show_all, boolean ordered, zfs_type_t type) {
+        return LIBZFS.zprop_iter(func, arg, show_all, ordered, type);
+    }
+
+    public void zprop_print_one_property(String _1, zprop_get_cbdata_t _2, String _3, String _4, zprop_source_t _5, String _6) {
+        LIBZFS.zprop_print_one_property(_1, _2, _3, _4, _5, _6);
+    }
+
+    public int zvol_check_dump_config(String _1) {
+        return LIBZFS.zvol_check_dump_config(_1);
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FfmLibzfs.class.getName());
+}
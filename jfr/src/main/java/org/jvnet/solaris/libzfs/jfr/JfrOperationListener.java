@@ -0,0 +1,64 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.jfr;
+
+import jdk.jfr.EventType;
+
+import org.jvnet.solaris.libzfs.ErrorCode;
+import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.ZFSOperation;
+import org.jvnet.solaris.libzfs.ZFSOperationListener;
+
+/**
+ * Records {@link ZFSOperation}s as {@link ZFSOperationEvent}s.
+ *
+ * <p>
+ * Selected with {@code LIBZFS4J_OPERATION_LISTENER=jfr}, or installed with
+ * {@link LibZFS#setOperationListener(ZFSOperationListener)}. When no recording
+ * has the event enabled, {@link #begin(ZFSOperation, String)} returns right away
+ * without allocating anything.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class JfrOperationListener implements ZFSOperationListener {
+    private static final EventType TYPE = EventType.getEventType(ZFSOperationEvent.class);
+
+    public Object begin(ZFSOperation operation, String dataset) {
+        if (!TYPE.isEnabled())
+            return null;
+        ZFSOperationEvent e = new ZFSOperationEvent();
+        e.begin();
+        return e;
+    }
+
+    public void end(Object context, ZFSOperation operation, String dataset, long durationNanos, ErrorCode error) {
+        if (context==null)
+            return;
+        ZFSOperationEvent e = (ZFSOperationEvent) context;
+        e.end();
+        if (e.shouldCommit()) {
+            e.dataset = dataset;
+            e.operation = operation.name();
+            e.errorCode = error==null ? null : error.name();
+            e.commit();
+        }
+    }
+}
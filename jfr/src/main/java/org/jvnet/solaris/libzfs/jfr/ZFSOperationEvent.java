@@ -0,0 +1,56 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import org.jvnet.solaris.libzfs.ZFSOperation;
+
+/**
+ * Flight Recorder event for one {@link ZFSOperation}.
+ *
+ * <p>
+ * The duration is the one of the event itself, measured by Flight Recorder.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@Name("org.jvnet.solaris.libzfs.Operation")
+@Label("ZFS Operation")
+@Category({"libzfs4j"})
+@Description("Operation on a ZFS dataset or pool")
+@StackTrace(false)
+public class ZFSOperationEvent extends Event {
+    @Label("Dataset")
+    @Description("Name of the dataset or pool, or null for operations on all of them")
+    public String dataset;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Error Code")
+    @Description("libzfs error code if the operation failed, or null")
+    public String errorCode;
+}
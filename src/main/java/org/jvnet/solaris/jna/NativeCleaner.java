@@ -0,0 +1,179 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.jna;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Releases native resources of objects that got garbage collected without being closed.
+ *
+ * <p>
+ * This replaces {@link Object#finalize()}, which keeps every dead object alive until
+ * the finalizer thread gets to it, and makes the native resources wait in the same queue.
+ * Here the owner is collected right away, and only the small {@link Cleanable} that
+ * knows how to release its native resource waits for the cleaner thread.
+ *
+ * <p>
+ * Setting the system property or the environment variable {@code LIBZFS4J_LEAK_DETECTION}
+ * to "true" records where each resource was allocated, so that the ones that are never
+ * closed can be reported by {@link #getUnclosed()}, and get logged once they are collected.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class NativeCleaner {
+    private NativeCleaner() {}
+
+    /**
+     * Native resource owned by some Java object.
+     *
+     * <p>
+     * Subclasses must not refer to the owner, or else it will never be collected.
+     */
+    public static abstract class Cleanable extends PhantomReference<Object> {
+        private final String description;
+        private final Throwable allocation;
+        private boolean cleaned;
+
+        protected Cleanable(Object owner, String description) {
+            super(owner, QUEUE);
+            this.description = description;
+            this.allocation = LEAK_DETECTION ? new Throwable("Allocated "+description) : null;
+            register(this);
+        }
+
+        /**
+         * Releases the native resource. Called at most once.
+         */
+        protected abstract void release();
+
+        /**
+         * Releases the native resource now, unless it's been already released.
+         */
+        public final void clean() {
+            synchronized (this) {
+                if (cleaned)    return;
+                cleaned = true;
+            }
+            unregister(this);
+            release();
+        }
+
+        public final synchronized boolean isCleaned() {
+            return cleaned;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /**
+     * Gets the allocation stack traces of the resources that haven't been released yet.
+     *
+     * @return
+     *      always empty unless the leak detection is enabled.
+     */
+    public static List<Throwable> getUnclosed() {
+        List<Throwable> r = new ArrayList<Throwable>();
+        synchronized (LIVE) {
+            for (Cleanable c : LIVE) {
+                if (c.allocation!=null)
+                    r.add(c.allocation);
+            }
+        }
+        return r;
+    }
+
+    public static boolean isLeakDetectionEnabled() {
+        return LEAK_DETECTION;
+    }
+
+    private static void register(Cleanable c) {
+        synchronized (LIVE) {
+            // the references themselves need to stay reachable until they are enqueued
+            LIVE.add(c);
+            if (thread==null) {
+                thread = new Thread("libzfs4j cleaner") {
+                    @Override
+                    public void run() {
+                        cleanLoop();
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    private static void unregister(Cleanable c) {
+        synchronized (LIVE) {
+            LIVE.remove(c);
+        }
+    }
+
+    private static void cleanLoop() {
+        while (true) {
+            Cleanable c;
+            try {
+                c = (Cleanable)QUEUE.remove();
+            } catch (InterruptedException e) {
+                continue;   // there's nobody to stop us but the JVM shutdown
+            }
+
+            if (c.isCleaned())
+                continue;
+            if (c.allocation!=null)
+                LOGGER.log(Level.WARNING, "Leaked "+c+" that was never closed", c.allocation);
+            try {
+                c.clean();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to release "+c, e);
+            } catch (Error e) {
+                LOGGER.log(Level.WARNING, "Failed to release "+c, e);
+            }
+        }
+    }
+
+    private static boolean getLeakDetectionSetting() {
+        String v = System.getProperty("LIBZFS4J_LEAK_DETECTION");
+        if (v==null)
+            v = System.getenv("LIBZFS4J_LEAK_DETECTION");
+        return Boolean.valueOf(v);
+    }
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+    private static final Set<Cleanable> LIVE = new HashSet<Cleanable>();
+
+    private static Thread thread;
+
+    private static final boolean LEAK_DETECTION = getLeakDetectionSetting();
+
+    private static final Logger LOGGER = Logger.getLogger(NativeCleaner.class.getName());
+}
@@ -115,7 +115,7 @@ public class ACLBuilder {
                 inheritanceBits = 3;
 
             PtrByReference<nvlist_t> r = new PtrByReference<nvlist_t>();
-            if(libzfs.LIBZFS.zfs_build_perms(dataset.handle,
+            if(dataset.library.api.zfs_build_perms(dataset.handle,
                     who(), buf.toString().toLowerCase(), whoType.code, inheritanceBits, r)!=0)
                 throw new ZFSException(dataset.library);
 
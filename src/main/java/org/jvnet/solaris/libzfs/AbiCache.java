@@ -0,0 +1,220 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.jna.NativeLibrary;
+
+/**
+ * Remembers what {@link LibZFS} found out by probing the native libraries,
+ * so that short-lived processes don't have to probe them all over again.
+ *
+ * <p>
+ * The results are stored in a properties file along with the path, size and
+ * timestamp of libzfs and libnvpair, and are only used while those stay the same.
+ * Only the probing results are stored; the {@code LIBZFS4J_ABI*} settings are
+ * still read every time and take precedence.
+ *
+ * <p>
+ * The cache is off unless the {@code LIBZFS4J_ABI_CACHE} setting is given, either as
+ * "on" to use {@code ~/.libzfs4j/abi-cache.properties}, or as the path of the file.
+ * When the file can't be written, the results are silently not cached.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class AbiCache {
+    /**
+     * Bump this whenever the meaning of the stored values changes.
+     */
+    private static final String FORMAT = "1";
+
+    private final File file;
+    /**
+     * Identifies the native libraries the results are for, or null if we can't tell,
+     * in which case nothing is read or written.
+     */
+    private final String libraries;
+    private final Properties values = new Properties();
+    private boolean dirty;
+
+    /**
+     * @param file
+     *      the cache file, or null to disable the cache.
+     * @param libraries
+     *      the native libraries that the results are for.
+     */
+    /*package*/ AbiCache(File file, File... libraries) {
+        this.file = file;
+        this.libraries = file==null ? null : describe(libraries);
+        if (this.libraries!=null)
+            load();
+    }
+
+    /**
+     * Opens the cache for the loaded libzfs and libnvpair.
+     *
+     * @param location
+     *      value of the {@code LIBZFS4J_ABI_CACHE} setting.
+     */
+    /*package*/ static AbiCache open(String location) {
+        if (location.length()==0 || location.equals("off"))
+            return new AbiCache(null);
+        File file = location.equals("on") ? getDefaultLocation() : new File(location);
+        return new AbiCache(file, locate("zfs"), locate("nvpair"));
+    }
+
+    /**
+     * Gets the location of the cache file when it's just turned on.
+     */
+    /*package*/ static File getDefaultLocation() {
+        return new File(new File(System.getProperty("user.home"), ".libzfs4j"), "abi-cache.properties");
+    }
+
+    /**
+     * Gets a stored probing result.
+     *
+     * @return
+     *      null if it hasn't been stored for the current native libraries.
+     */
+    /*package*/ String get(String key) {
+        return values.getProperty(key);
+    }
+
+    /*package*/ void put(String key, String value) {
+        values.setProperty(key, value);
+        dirty = true;
+    }
+
+    /**
+     * Writes out the results, if anything new was stored.
+     * Failures are only logged, since the cache is just an optimization.
+     */
+    /*package*/ void save() {
+        if (!dirty || libraries==null)
+            return;
+
+        Properties p = new Properties();
+        p.putAll(values);
+        p.setProperty("format", FORMAT);
+        p.setProperty("libraries", libraries);
+
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Failed to create "+dir);
+            if (!dir.canWrite())
+                throw new IOException(dir+" is not writable");
+
+            // write to a temporary file first, so that concurrent readers never see a partial file
+            File tmp = File.createTempFile("abi-cache", ".tmp", dir);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                p.store(out, "libzfs4j ABI detection results");
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                // some platforms refuse to rename over an existing file
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    throw new IOException("Failed to rename "+tmp+" to "+file);
+                }
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "libzfs4j: failed to write the ABI cache "+file, e);
+        }
+    }
+
+    private void load() {
+        if (!file.exists())
+            return;
+
+        Properties p = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "libzfs4j: failed to read the ABI cache "+file, e);
+            return;
+        }
+
+        if (!FORMAT.equals(p.getProperty("format")) || !libraries.equals(p.getProperty("libraries"))) {
+            LOGGER.log(Level.FINE, "libzfs4j: ABI cache {0} is for different libraries, ignoring it", file);
+            return;
+        }
+        p.remove("format");
+        p.remove("libraries");
+        values.putAll(p);
+        LOGGER.log(Level.FINER, "libzfs4j: using the ABI cache {0}", file);
+    }
+
+    /**
+     * Finds the file the given native library got loaded from.
+     *
+     * @return
+     *      null if we can't tell.
+     */
+    private static File locate(String name) {
+        try {
+            return NativeLibrary.getInstance(name).getFile();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Describes the native libraries in a way that changes whenever they get replaced.
+     *
+     * @return
+     *      null if any of them can't be located.
+     */
+    private static String describe(File... libraries) {
+        StringBuilder sb = new StringBuilder();
+        for (File f : libraries) {
+            if (f==null || !f.isAbsolute() || !f.exists()) {
+                // loaded through the system search path, so we can't tell which file it is
+                LOGGER.log(Level.FINE, "libzfs4j: can't locate {0}, not using the ABI cache", f);
+                return null;
+            }
+            if (sb.length()>0)
+                sb.append(';');
+            sb.append(f.getPath()).append(',').append(f.length()).append(',').append(f.lastModified());
+        }
+        return sb.toString();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LibZFS.class.getName());
+}
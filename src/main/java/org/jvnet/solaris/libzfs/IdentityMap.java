@@ -0,0 +1,124 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Weak-valued map from dataset names to the {@link ZFSObject}s that represent them,
+ * so that a {@link LibZFS} can hand out the same object for the same dataset.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see LibZFS#setIdentityMapEnabled(boolean)
+ */
+/*package*/ final class IdentityMap {
+    private final Map<String,Entry> map = new HashMap<String,Entry>();
+    private final ReferenceQueue<ZFSObject> queue = new ReferenceQueue<ZFSObject>();
+
+    private static final class Entry extends WeakReference<ZFSObject> {
+        final String name;
+
+        Entry(ZFSObject o, ReferenceQueue<ZFSObject> queue) {
+            super(o, queue);
+            this.name = o.getName();
+        }
+    }
+
+    /**
+     * Gets the live object for the given dataset, if any.
+     *
+     * <p>
+     * The object returned is marked as shared, so that it's no longer
+     * disposed by the library code that created it.
+     */
+    /*package*/ synchronized ZFSObject get(String name) {
+        expunge();
+        Entry e = map.get(name);
+        if (e==null)
+            return null;
+        ZFSObject o = e.get();
+        if (o==null || o.handle==null) {
+            map.remove(name);
+            return null;
+        }
+        o.shared = true;
+        return o;
+    }
+
+    /**
+     * Adds the given object unless there's already a live one for the same dataset.
+     *
+     * @return
+     *      the object that's in the map now.
+     */
+    /*package*/ synchronized ZFSObject intern(ZFSObject o) {
+        ZFSObject existing = get(o.getName());
+        if (existing!=null)
+            return existing;
+        map.put(o.getName(), new Entry(o, queue));
+        return o;
+    }
+
+    /**
+     * Removes the given object, if it's the one in the map.
+     */
+    /*package*/ synchronized void remove(ZFSObject o) {
+        Entry e = map.get(o.getName());
+        if (e!=null && e.get()==o)
+            map.remove(o.getName());
+    }
+
+    /**
+     * Removes the given object unless it has been handed out by {@link #get(String)}.
+     *
+     * @return
+     *      true if nobody else can have the object, so the caller may dispose it.
+     */
+    /*package*/ synchronized boolean release(ZFSObject o) {
+        if (o.shared)
+            return false;
+        remove(o);
+        return true;
+    }
+
+    /**
+     * Removes the given dataset and all its descendants, after they got renamed or destroyed.
+     */
+    /*package*/ synchronized void evict(String name) {
+        for (Iterator<String> itr = map.keySet().iterator(); itr.hasNext(); ) {
+            String n = itr.next();
+            if (n.equals(name) || n.startsWith(name+'/') || n.startsWith(name+'@'))
+                itr.remove();
+        }
+    }
+
+    private void expunge() {
+        Entry e;
+        while ((e = (Entry)queue.poll())!=null) {
+            if (map.get(e.name)==e)
+                map.remove(e.name);
+        }
+    }
+}
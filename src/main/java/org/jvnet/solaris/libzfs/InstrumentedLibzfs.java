@@ -0,0 +1,1170 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.EnumByReference;
+import org.jvnet.solaris.jna.PtrByReference;
+import org.jvnet.solaris.libzfs.jna.libzfs;
+import org.jvnet.solaris.libzfs.jna.libzfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.pool_scrub_type_t;
+import org.jvnet.solaris.libzfs.jna.vdev_aux_t;
+import org.jvnet.solaris.libzfs.jna.vdev_state_t;
+import org.jvnet.solaris.libzfs.jna.zfs_cmd;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+import org.jvnet.solaris.libzfs.jna.zfs_type_t;
+import org.jvnet.solaris.libzfs.jna.zpool_handle_t;
+import org.jvnet.solaris.libzfs.jna.zpool_prop_t;
+import org.jvnet.solaris.libzfs.jna.zprop_get_cbdata_t;
+import org.jvnet.solaris.libzfs.jna.zprop_list_t;
+import org.jvnet.solaris.libzfs.jna.zprop_source_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * {@link libzfs} that records every call into {@link NativeCallMetrics} before passing it on.
+ *
+ * <p>
+ * A call counts as a failure if it returns null instead of a handle or list, or a non-zero
+ * status. Functions that return some other number, like {@code zfs_get_type}, and the
+ * iterators, which return whatever the callback returned, never fail. The time of an
+ * iterator includes the callbacks, which record their own calls as well.
+ * Calls that throw instead of returning aren't recorded.
+ *
+ * <p>
+ * Every method is written out, instead of going through a {@link java.lang.reflect.Proxy},
+ * because a proxy initializes the {@link libzfs} interface, which loads libzfs even when
+ * it's not being used, and would box every argument.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class InstrumentedLibzfs implements libzfs {
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    private final libzfs delegate;
+    private final NativeCallMetrics metrics;
+    /**
+     * Handle to read the error codes from, once libzfs has been initialized.
+     */
+    /*package*/ volatile libzfs_handle_t handle;
+
+    /*package*/ InstrumentedLibzfs(libzfs delegate, NativeCallMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    private long start() {
+        return metrics.isEnabled() ? System.nanoTime() : DISABLED;
+    }
+
+    private void end(String function, long start, boolean failed) {
+        if (start==DISABLED)
+            return;
+        long elapsed = System.nanoTime()-start;
+        ErrorCode error = null;
+        if (failed) {
+            libzfs_handle_t h = handle;
+            if (h!=null)
+                error = ErrorCode.fromCode(delegate.libzfs_errno(h));
+        }
+        metrics.record(function, elapsed, failed, error);
+    }
+
+    public void zfs_close(zfs_handle_t handle) {
+        long t = start();
+        delegate.zfs_close(handle);
+        end("zfs_close", t, false);
+    }
+
+    public String zfs_get_name(zfs_handle_t handle) {
+        long t = start();
+        String ret = delegate.zfs_get_name(handle);
+        end("zfs_get_name", t, false);
+        return ret;
+    }
+
+    public int zfs_get_type(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_get_type(handle);
+        end("zfs_get_type", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_children(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_children(handle, callback, arg);
+        end("zfs_iter_children", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_filesystems(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_filesystems(handle, callback, arg);
+        end("zfs_iter_filesystems", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_root(libzfs_handle_t lib, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_root(lib, callback, arg);
+        end("zfs_iter_root", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_snapshots(zfs_handle_t handle, boolean simple, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_snapshots(handle, simple, callback, arg);
+        end("zfs_iter_snapshots", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_snapshots(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_snapshots(handle, callback, arg);
+        end("zfs_iter_snapshots", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_snapshots_sorted(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_snapshots_sorted(handle, callback, arg);
+        end("zfs_iter_snapshots_sorted", t, false);
+        return ret;
+    }
+
+    public zfs_handle_t zfs_open(libzfs_handle_t lib, String name, int typeMask) {
+        long t = start();
+        zfs_handle_t ret = delegate.zfs_open(lib, name, typeMask);
+        end("zfs_open", t, ret==null);
+        return ret;
+    }
+
+    public int zfs_prop_get(zfs_handle_t handle, NativeLong prop, Pointer _4, int cbSize, IntByReference _5, char[] _6, NativeLong _7, boolean _8) {
+        long t = start();
+        int ret = delegate.zfs_prop_get(handle, prop, _4, cbSize, _5, _6, _7, _8);
+        end("zfs_prop_get", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_prop_get_numeric(zfs_handle_t handle, NativeLong prop, LongByReference r, IntByReference _4, char[] _5, NativeLong _6) {
+        long t = start();
+        int ret = delegate.zfs_prop_get_numeric(handle, prop, r, _4, _5, _6);
+        end("zfs_prop_get_numeric", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_get_prop(zpool_handle_t pool, NativeLong prop, Pointer buf, NativeLong len, EnumByReference<zprop_source_t> srctype) {
+        long t = start();
+        int ret = delegate.zpool_get_prop(pool, prop, buf, len, srctype);
+        end("zpool_get_prop", t, ret!=0);
+        return ret;
+    }
+
+    public long zpool_get_prop_int(zpool_handle_t pool, NativeLong prop, EnumByReference<zprop_source_t> src) {
+        long t = start();
+        long ret = delegate.zpool_get_prop_int(pool, prop, src);
+        end("zpool_get_prop_int", t, false);
+        return ret;
+    }
+
+    public int zpool_iter(libzfs_handle_t lib, zpool_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zpool_iter(lib, callback, arg);
+        end("zpool_iter", t, false);
+        return ret;
+    }
+
+    public boolean is_mounted(libzfs_handle_t lib, String special, PointerByReference _2) {
+        long t = start();
+        boolean ret = delegate.is_mounted(lib, special, _2);
+        end("is_mounted", t, false);
+        return ret;
+    }
+
+    public int libzfs_errno(libzfs_handle_t lib) {
+        long t = start();
+        int ret = delegate.libzfs_errno(lib);
+        end("libzfs_errno", t, false);
+        return ret;
+    }
+
+    public String libzfs_error_action(libzfs_handle_t lib) {
+        long t = start();
+        String ret = delegate.libzfs_error_action(lib);
+        end("libzfs_error_action", t, false);
+        return ret;
+    }
+
+    public String libzfs_error_description(libzfs_handle_t lib) {
+        long t = start();
+        String ret = delegate.libzfs_error_description(lib);
+        end("libzfs_error_description", t, false);
+        return ret;
+    }
+
+    public void libzfs_fini(libzfs_handle_t handle) {
+        long t = start();
+        delegate.libzfs_fini(handle);
+        end("libzfs_fini", t, false);
+    }
+
+    public libzfs_handle_t libzfs_init() {
+        long t = start();
+        libzfs_handle_t ret = delegate.libzfs_init();
+        end("libzfs_init", t, ret==null);
+        return ret;
+    }
+
+    public void libzfs_mnttab_add(libzfs_handle_t lib, String specal, String mountp, String mntopts) {
+        long t = start();
+        delegate.libzfs_mnttab_add(lib, specal, mountp, mntopts);
+        end("libzfs_mnttab_add", t, false);
+    }
+
+    public void libzfs_mnttab_cache(libzfs_handle_t lib, boolean flag) {
+        long t = start();
+        delegate.libzfs_mnttab_cache(lib, flag);
+        end("libzfs_mnttab_cache", t, false);
+    }
+
+    public void libzfs_mnttab_fini(libzfs_handle_t lib) {
+        long t = start();
+        delegate.libzfs_mnttab_fini(lib);
+        end("libzfs_mnttab_fini", t, false);
+    }
+
+    public void libzfs_mnttab_init(libzfs_handle_t lib) {
+        long t = start();
+        delegate.libzfs_mnttab_init(lib);
+        end("libzfs_mnttab_init", t, false);
+    }
+
+    public void libzfs_mnttab_remove(libzfs_handle_t lib, String fsname) {
+        long t = start();
+        delegate.libzfs_mnttab_remove(lib, fsname);
+        end("libzfs_mnttab_remove", t, false);
+    }
+
+    public void libzfs_print_on_error(libzfs_handle_t lib, boolean flag) {
+        long t = start();
+        delegate.libzfs_print_on_error(lib, flag);
+        end("libzfs_print_on_error", t, false);
+    }
+
+    public int zfs_build_perms(zfs_handle_t handle, String who, String perms, int who_type, int deleg_type, PtrByReference<nvlist_t> ppchNVList) {
+        long t = start();
+        int ret = delegate.zfs_build_perms(handle, who, perms, who_type, deleg_type, ppchNVList);
+        end("zfs_build_perms", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_clone(zfs_handle_t handle, String name, nvlist_t _3) {
+        long t = start();
+        int ret = delegate.zfs_clone(handle, name, _3);
+        end("zfs_clone", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_create(libzfs_handle_t lib, String name, int type, nvlist_t props) {
+        long t = start();
+        int ret = delegate.zfs_create(lib, name, type, props);
+        end("zfs_create", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_create_ancestors(libzfs_handle_t lib, String _2) {
+        long t = start();
+        int ret = delegate.zfs_create_ancestors(lib, _2);
+        end("zfs_create_ancestors", t, ret!=0);
+        return ret;
+    }
+
+    public boolean zfs_dataset_exists(libzfs_handle_t lib, String name, int type) {
+        long t = start();
+        boolean ret = delegate.zfs_dataset_exists(lib, name, type);
+        end("zfs_dataset_exists", t, false);
+        return ret;
+    }
+
+    public void zfs_deleg_permissions() {
+        long t = start();
+        delegate.zfs_deleg_permissions();
+        end("zfs_deleg_permissions", t, false);
+    }
+
+    public int zfs_destroy(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_destroy(handle);
+        end("zfs_destroy", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_destroy(zfs_handle_t handle, boolean defer) {
+        long t = start();
+        int ret = delegate.zfs_destroy(handle, defer);
+        end("zfs_destroy", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name) {
+        long t = start();
+        int ret = delegate.zfs_destroy_snaps(handle, name);
+        end("zfs_destroy_snaps", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name, boolean defer) {
+        long t = start();
+        int ret = delegate.zfs_destroy_snaps(handle, name, defer);
+        end("zfs_destroy_snaps", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_expand_proplist(zfs_handle_t handle, PointerByReference _2) {
+        long t = start();
+        int ret = delegate.zfs_expand_proplist(handle, _2);
+        end("zfs_expand_proplist", t, ret!=0);
+        return ret;
+    }
+
+    public void zfs_free_allows(zfs_allow_t p) {
+        long t = start();
+        delegate.zfs_free_allows(p);
+        end("zfs_free_allows", t, false);
+    }
+
+    public libzfs_handle_t zfs_get_handle(zfs_handle_t handle) {
+        long t = start();
+        libzfs_handle_t ret = delegate.zfs_get_handle(handle);
+        end("zfs_get_handle", t, ret==null);
+        return ret;
+    }
+
+    public zpool_handle_t zfs_get_pool_handle(zfs_handle_t h) {
+        long t = start();
+        zpool_handle_t ret = delegate.zfs_get_pool_handle(h);
+        end("zfs_get_pool_handle", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zfs_get_user_props(zfs_handle_t handle) {
+        long t = start();
+        nvlist_t ret = delegate.zfs_get_user_props(handle);
+        end("zfs_get_user_props", t, ret==null);
+        return ret;
+    }
+
+    public zfs_handle_t zfs_handle_dup(zfs_handle_t src) {
+        long t = start();
+        zfs_handle_t ret = delegate.zfs_handle_dup(src);
+        end("zfs_handle_dup", t, ret==null);
+        return ret;
+    }
+
+    public int zfs_ioctl(libzfs_handle_t lib, int _2, zfs_cmd cmd) {
+        long t = start();
+        int ret = delegate.zfs_ioctl(lib, _2, cmd);
+        end("zfs_ioctl", t, ret!=0);
+        return ret;
+    }
+
+    public boolean zfs_is_mounted(zfs_handle_t handle, PointerByReference _3) {
+        long t = start();
+        boolean ret = delegate.zfs_is_mounted(handle, _3);
+        end("zfs_is_mounted", t, false);
+        return ret;
+    }
+
+    public boolean zfs_is_shared(zfs_handle_t handle) {
+        long t = start();
+        boolean ret = delegate.zfs_is_shared(handle);
+        end("zfs_is_shared", t, false);
+        return ret;
+    }
+
+    public boolean zfs_is_shared_iscsi(zfs_handle_t handle) {
+        long t = start();
+        boolean ret = delegate.zfs_is_shared_iscsi(handle);
+        end("zfs_is_shared_iscsi", t, false);
+        return ret;
+    }
+
+    public boolean zfs_is_shared_nfs(zfs_handle_t handle, PointerByReference ppch) {
+        long t = start();
+        boolean ret = delegate.zfs_is_shared_nfs(handle, ppch);
+        end("zfs_is_shared_nfs", t, false);
+        return ret;
+    }
+
+    public boolean zfs_is_shared_smb(zfs_handle_t handle, PointerByReference ppch) {
+        long t = start();
+        boolean ret = delegate.zfs_is_shared_smb(handle, ppch);
+        end("zfs_is_shared_smb", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_dependents(zfs_handle_t handle, boolean _2, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_dependents(handle, _2, callback, arg);
+        end("zfs_iter_dependents", t, false);
+        return ret;
+    }
+
+    public int zfs_iter_snapspec(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        long t = start();
+        int ret = delegate.zfs_iter_snapspec(handle, callback, arg);
+        end("zfs_iter_snapspec", t, false);
+        return ret;
+    }
+
+    public int zfs_mount(zfs_handle_t handle, String options, int mountFlags) {
+        long t = start();
+        int ret = delegate.zfs_mount(handle, options, mountFlags);
+        end("zfs_mount", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_name_valid(String name, zfs_type_t type) {
+        long t = start();
+        int ret = delegate.zfs_name_valid(name, type);
+        end("zfs_name_valid", t, false);
+        return ret;
+    }
+
+    public void zfs_nicenum(long _1, char[] buf, NativeLong size) {
+        long t = start();
+        delegate.zfs_nicenum(_1, buf, size);
+        end("zfs_nicenum", t, false);
+    }
+
+    public int zfs_nicestrtonum(libzfs_handle_t lib, String _2, LongByReference r) {
+        long t = start();
+        int ret = delegate.zfs_nicestrtonum(lib, _2, r);
+        end("zfs_nicestrtonum", t, ret!=0);
+        return ret;
+    }
+
+    public zfs_handle_t zfs_path_to_zhandle(libzfs_handle_t lib, String path, int type) {
+        long t = start();
+        zfs_handle_t ret = delegate.zfs_path_to_zhandle(lib, path, type);
+        end("zfs_path_to_zhandle", t, ret==null);
+        return ret;
+    }
+
+    public int zfs_perm_get(zfs_handle_t handle, PointerByReference _2) {
+        long t = start();
+        int ret = delegate.zfs_perm_get(handle, _2);
+        end("zfs_perm_get", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_perm_remove(zfs_handle_t handle, nvlist_t perms) {
+        long t = start();
+        int ret = delegate.zfs_perm_remove(handle, perms);
+        end("zfs_perm_remove", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_perm_set(zfs_handle_t handle, nvlist_t perms) {
+        long t = start();
+        int ret = delegate.zfs_perm_set(handle, perms);
+        end("zfs_perm_set", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_promote(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_promote(handle);
+        end("zfs_promote", t, ret!=0);
+        return ret;
+    }
+
+    public boolean zfs_prop_align_right(zfs_prop_t prop) {
+        long t = start();
+        boolean ret = delegate.zfs_prop_align_right(prop);
+        end("zfs_prop_align_right", t, false);
+        return ret;
+    }
+
+    public String zfs_prop_column_name(zfs_prop_t prop) {
+        long t = start();
+        String ret = delegate.zfs_prop_column_name(prop);
+        end("zfs_prop_column_name", t, false);
+        return ret;
+    }
+
+    public long zfs_prop_default_numeric(zfs_prop_t prop) {
+        long t = start();
+        long ret = delegate.zfs_prop_default_numeric(prop);
+        end("zfs_prop_default_numeric", t, false);
+        return ret;
+    }
+
+    public String zfs_prop_default_string(zfs_prop_t prop) {
+        long t = start();
+        String ret = delegate.zfs_prop_default_string(prop);
+        end("zfs_prop_default_string", t, false);
+        return ret;
+    }
+
+    public long zfs_prop_get_int(zfs_handle_t handle, zfs_prop_t prop) {
+        long t = start();
+        long ret = delegate.zfs_prop_get_int(handle, prop);
+        end("zfs_prop_get_int", t, false);
+        return ret;
+    }
+
+    public int zfs_prop_inherit(zfs_handle_t handle, String _2) {
+        long t = start();
+        int ret = delegate.zfs_prop_inherit(handle, _2);
+        end("zfs_prop_inherit", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_prop_is_string(zfs_prop_t prop) {
+        long t = start();
+        int ret = delegate.zfs_prop_is_string(prop);
+        end("zfs_prop_is_string", t, false);
+        return ret;
+    }
+
+    public int zfs_prop_set(zfs_handle_t handle, String propertyName, String propertyValue) {
+        long t = start();
+        int ret = delegate.zfs_prop_set(handle, propertyName, propertyValue);
+        end("zfs_prop_set", t, ret!=0);
+        return ret;
+    }
+
+    public String zfs_prop_to_name(zfs_prop_t prop) {
+        long t = start();
+        String ret = delegate.zfs_prop_to_name(prop);
+        end("zfs_prop_to_name", t, false);
+        return ret;
+    }
+
+    public String zfs_prop_values(zfs_prop_t prop) {
+        long t = start();
+        String ret = delegate.zfs_prop_values(prop);
+        end("zfs_prop_values", t, false);
+        return ret;
+    }
+
+    public void zfs_refresh_properties(zfs_handle_t handle) {
+        long t = start();
+        delegate.zfs_refresh_properties(handle);
+        end("zfs_refresh_properties", t, false);
+    }
+
+    public int zfs_rename(zfs_handle_t handle, String name, boolean _3) {
+        long t = start();
+        int ret = delegate.zfs_rename(handle, name, _3);
+        end("zfs_rename", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_rollback(zfs_handle_t handle1, zfs_handle_t handle2, boolean _3) {
+        long t = start();
+        int ret = delegate.zfs_rollback(handle1, handle2, _3);
+        end("zfs_rollback", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_share(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_share(handle);
+        end("zfs_share", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_share_iscsi(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_share_iscsi(handle);
+        end("zfs_share_iscsi", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_share_nfs(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_share_nfs(handle);
+        end("zfs_share_nfs", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_share_smb(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_share_smb(handle);
+        end("zfs_share_smb", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_shareall(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_shareall(handle);
+        end("zfs_shareall", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive) {
+        long t = start();
+        int ret = delegate.zfs_snapshot(lib, fullNameWithAtSnapShot, recursive);
+        end("zfs_snapshot", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive, nvlist_t props) {
+        long t = start();
+        int ret = delegate.zfs_snapshot(lib, fullNameWithAtSnapShot, recursive, props);
+        end("zfs_snapshot", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_spa_version(zfs_handle_t handle, IntByReference r) {
+        long t = start();
+        int ret = delegate.zfs_spa_version(handle, r);
+        end("zfs_spa_version", t, ret!=0);
+        return ret;
+    }
+
+    public String zfs_type_to_name(zfs_type_t type) {
+        long t = start();
+        String ret = delegate.zfs_type_to_name(type);
+        end("zfs_type_to_name", t, false);
+        return ret;
+    }
+
+    public int zfs_unmount(zfs_handle_t handle, String _2, int umountFlags) {
+        long t = start();
+        int ret = delegate.zfs_unmount(handle, _2, umountFlags);
+        end("zfs_unmount", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unmountall(zfs_handle_t handle, int umountFlags) {
+        long t = start();
+        int ret = delegate.zfs_unmountall(handle, umountFlags);
+        end("zfs_unmountall", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshare(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_unshare(handle);
+        end("zfs_unshare", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshare_iscsi(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_unshare_iscsi(handle);
+        end("zfs_unshare_iscsi", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshare_nfs(zfs_handle_t handle, String _2) {
+        long t = start();
+        int ret = delegate.zfs_unshare_nfs(handle, _2);
+        end("zfs_unshare_nfs", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshare_smb(zfs_handle_t handle, String _2) {
+        long t = start();
+        int ret = delegate.zfs_unshare_smb(handle, _2);
+        end("zfs_unshare_smb", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshareall(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_unshareall(handle);
+        end("zfs_unshareall", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshareall_bypath(zfs_handle_t handle, String _2) {
+        long t = start();
+        int ret = delegate.zfs_unshareall_bypath(handle, _2);
+        end("zfs_unshareall_bypath", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshareall_nfs(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_unshareall_nfs(handle);
+        end("zfs_unshareall_nfs", t, ret!=0);
+        return ret;
+    }
+
+    public int zfs_unshareall_smb(zfs_handle_t handle) {
+        long t = start();
+        int ret = delegate.zfs_unshareall_smb(handle);
+        end("zfs_unshareall_smb", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_add(zpool_handle_t pool, nvlist_t _1) {
+        long t = start();
+        int ret = delegate.zpool_add(pool, _1);
+        end("zpool_add", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_clear(zpool_handle_t pool, String name) {
+        long t = start();
+        int ret = delegate.zpool_clear(pool, name);
+        end("zpool_clear", t, ret!=0);
+        return ret;
+    }
+
+    public void zpool_close(zpool_handle_t pool) {
+        long t = start();
+        delegate.zpool_close(pool);
+        end("zpool_close", t, false);
+    }
+
+    public int zpool_create(libzfs_handle_t lib, String poolName, nvlist_t nvroot, nvlist_t props) {
+        long t = start();
+        int ret = delegate.zpool_create(lib, poolName, nvroot, props);
+        end("zpool_create", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_create_zvol_links(zpool_handle_t pool) {
+        long t = start();
+        int ret = delegate.zpool_create_zvol_links(pool);
+        end("zpool_create_zvol_links", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_destroy(zpool_handle_t pool) {
+        long t = start();
+        int ret = delegate.zpool_destroy(pool);
+        end("zpool_destroy", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_disable_datasets(zpool_handle_t pool, boolean force) {
+        long t = start();
+        int ret = delegate.zpool_disable_datasets(pool, force);
+        end("zpool_disable_datasets", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_enable_datasets(zpool_handle_t pool, String _2, int _3) {
+        long t = start();
+        int ret = delegate.zpool_enable_datasets(pool, _2, _3);
+        end("zpool_enable_datasets", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_expand_proplist(zpool_handle_t pool, PointerByReference _2) {
+        long t = start();
+        int ret = delegate.zpool_expand_proplist(pool, _2);
+        end("zpool_expand_proplist", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_export(zpool_handle_t pool, boolean force) {
+        long t = start();
+        int ret = delegate.zpool_export(pool, force);
+        end("zpool_export", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_export_force(zpool_handle_t pool) {
+        long t = start();
+        int ret = delegate.zpool_export_force(pool);
+        end("zpool_export_force", t, ret!=0);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_import(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_import(lib, argc, argv);
+        end("zpool_find_import", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_import_activeok(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_import_activeok(lib, argc, argv);
+        end("zpool_find_import_activeok", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_import_byguid(libzfs_handle_t lib, int argc, PointerByReference argv, long guid) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_import_byguid(lib, argc, argv, guid);
+        end("zpool_find_import_byguid", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_import_byname(libzfs_handle_t lib, int argc, PointerByReference argv, String pool) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_import_byname(lib, argc, argv, pool);
+        end("zpool_find_import_byname", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_import_cached(libzfs_handle_t lib, String cachefile, String poolname, long guid) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_import_cached(lib, cachefile, poolname, guid);
+        end("zpool_find_import_cached", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_vdev(zpool_handle_t pool, String path, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_vdev(pool, path, avail_spare, l2cache, log);
+        end("zpool_find_vdev", t, ret==null);
+        return ret;
+    }
+
+    public nvlist_t zpool_find_vdev_by_physpath(zpool_handle_t pool, String ppath, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_find_vdev_by_physpath(pool, ppath, avail_spare, l2cache, log);
+        end("zpool_find_vdev_by_physpath", t, ret==null);
+        return ret;
+    }
+
+    public void zpool_free_handles(libzfs_handle_t lib) {
+        long t = start();
+        delegate.zpool_free_handles(lib);
+        end("zpool_free_handles", t, false);
+    }
+
+    public nvlist_t zpool_get_config(zpool_handle_t pool, PointerByReference ppchNVList) {
+        long t = start();
+        nvlist_t ret = delegate.zpool_get_config(pool, ppchNVList);
+        end("zpool_get_config", t, ret==null);
+        return ret;
+    }
+
+    public int zpool_get_errlog(zpool_handle_t pool, PointerByReference ppchNVList) {
+        long t = start();
+        int ret = delegate.zpool_get_errlog(pool, ppchNVList);
+        end("zpool_get_errlog", t, ret!=0);
+        return ret;
+    }
+
+    public libzfs_handle_t zpool_get_handle(zpool_handle_t handle) {
+        long t = start();
+        libzfs_handle_t ret = delegate.zpool_get_handle(handle);
+        end("zpool_get_handle", t, ret==null);
+        return ret;
+    }
+
+    public int zpool_get_history(zpool_handle_t pool, PointerByReference ppNVList) {
+        long t = start();
+        int ret = delegate.zpool_get_history(pool, ppNVList);
+        end("zpool_get_history", t, ret!=0);
+        return ret;
+    }
+
+    public String zpool_get_name(zpool_handle_t pool) {
+        long t = start();
+        String ret = delegate.zpool_get_name(pool);
+        end("zpool_get_name", t, false);
+        return ret;
+    }
+
+    public int zpool_get_state(zpool_handle_t pool) {
+        long t = start();
+        int ret = delegate.zpool_get_state(pool);
+        end("zpool_get_state", t, false);
+        return ret;
+    }
+
+    public int zpool_get_status(zpool_handle_t handle, PointerByReference msgid) {
+        long t = start();
+        int ret = delegate.zpool_get_status(handle, msgid);
+        end("zpool_get_status", t, false);
+        return ret;
+    }
+
+    public int zpool_import(libzfs_handle_t lib, nvlist_t config, String newname, String altroot) {
+        long t = start();
+        int ret = delegate.zpool_import(lib, config, newname, altroot);
+        end("zpool_import", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_import_props(libzfs_handle_t lib, nvlist_t config, String newname, nvlist_t props, BooleanByReference importfaulted) {
+        long t = start();
+        int ret = delegate.zpool_import_props(lib, config, newname, props, importfaulted);
+        end("zpool_import_props", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_import_status(nvlist_t config, PointerByReference misgid) {
+        long t = start();
+        int ret = delegate.zpool_import_status(config, misgid);
+        end("zpool_import_status", t, false);
+        return ret;
+    }
+
+    public int zpool_in_use(libzfs_handle_t lib, int _2, IntByReference r, PointerByReference ppch, BooleanByReference _5) {
+        long t = start();
+        int ret = delegate.zpool_in_use(lib, _2, r, ppch, _5);
+        end("zpool_in_use", t, false);
+        return ret;
+    }
+
+    public int zpool_label_disk(libzfs_handle_t lib, zpool_handle_t pool, String label) {
+        long t = start();
+        int ret = delegate.zpool_label_disk(lib, pool, label);
+        end("zpool_label_disk", t, ret!=0);
+        return ret;
+    }
+
+    public void zpool_obj_to_path(zpool_handle_t pool, long _2, long _3, String _4, NativeLong len) {
+        long t = start();
+        delegate.zpool_obj_to_path(pool, _2, _3, _4, len);
+        end("zpool_obj_to_path", t, false);
+    }
+
+    public zpool_handle_t zpool_open(libzfs_handle_t lib, String name) {
+        long t = start();
+        zpool_handle_t ret = delegate.zpool_open(lib, name);
+        end("zpool_open", t, ret==null);
+        return ret;
+    }
+
+    public zpool_handle_t zpool_open_canfail(libzfs_handle_t lib, String name) {
+        long t = start();
+        zpool_handle_t ret = delegate.zpool_open_canfail(lib, name);
+        end("zpool_open_canfail", t, ret==null);
+        return ret;
+    }
+
+    public boolean zpool_prop_align_right(zpool_prop_t prop) {
+        long t = start();
+        boolean ret = delegate.zpool_prop_align_right(prop);
+        end("zpool_prop_align_right", t, false);
+        return ret;
+    }
+
+    public String zpool_prop_column_name(zpool_prop_t prop) {
+        long t = start();
+        String ret = delegate.zpool_prop_column_name(prop);
+        end("zpool_prop_column_name", t, false);
+        return ret;
+    }
+
+    public long zpool_prop_default_numeric(zpool_prop_t prop) {
+        long t = start();
+        long ret = delegate.zpool_prop_default_numeric(prop);
+        end("zpool_prop_default_numeric", t, false);
+        return ret;
+    }
+
+    public String zpool_prop_default_string(zpool_prop_t prop) {
+        long t = start();
+        String ret = delegate.zpool_prop_default_string(prop);
+        end("zpool_prop_default_string", t, false);
+        return ret;
+    }
+
+    public String zpool_prop_to_name(zpool_prop_t prop) {
+        long t = start();
+        String ret = delegate.zpool_prop_to_name(prop);
+        end("zpool_prop_to_name", t, false);
+        return ret;
+    }
+
+    public String zpool_prop_values(zpool_prop_t prop) {
+        long t = start();
+        String ret = delegate.zpool_prop_values(prop);
+        end("zpool_prop_values", t, false);
+        return ret;
+    }
+
+    public int zpool_read_label(int _1, PointerByReference ppnvlist) {
+        long t = start();
+        int ret = delegate.zpool_read_label(_1, ppnvlist);
+        end("zpool_read_label", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_refresh_stats(zpool_handle_t pool, BooleanByReference missing) {
+        long t = start();
+        int ret = delegate.zpool_refresh_stats(pool, missing);
+        end("zpool_refresh_stats", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_remove_zvol_links(zpool_handle_t pool) {
+        long t = start();
+        int ret = delegate.zpool_remove_zvol_links(pool);
+        end("zpool_remove_zvol_links", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_scrub(zpool_handle_t pool, pool_scrub_type_t scrub) {
+        long t = start();
+        int ret = delegate.zpool_scrub(pool, scrub);
+        end("zpool_scrub", t, ret!=0);
+        return ret;
+    }
+
+    public void zpool_set_history_str(String subcommand, int argc, String[] argv, String history_str) {
+        long t = start();
+        delegate.zpool_set_history_str(subcommand, argc, argv, history_str);
+        end("zpool_set_history_str", t, false);
+    }
+
+    public int zpool_set_prop(zpool_handle_t pool, String name, String value) {
+        long t = start();
+        int ret = delegate.zpool_set_prop(pool, name, value);
+        end("zpool_set_prop", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_stage_history(libzfs_handle_t lib, String _2) {
+        long t = start();
+        int ret = delegate.zpool_stage_history(lib, _2);
+        end("zpool_stage_history", t, ret!=0);
+        return ret;
+    }
+
+    public String zpool_state_to_name(vdev_state_t state, vdev_aux_t aux) {
+        long t = start();
+        String ret = delegate.zpool_state_to_name(state, aux);
+        end("zpool_state_to_name", t, false);
+        return ret;
+    }
+
+    public int zpool_upgrade(zpool_handle_t pool, long new_version) {
+        long t = start();
+        int ret = delegate.zpool_upgrade(pool, new_version);
+        end("zpool_upgrade", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_attach(zpool_handle_t pool, String old_disk, String new_disk, nvlist_t nvroot, int replacing) {
+        long t = start();
+        int ret = delegate.zpool_vdev_attach(pool, old_disk, new_disk, nvroot, replacing);
+        end("zpool_vdev_attach", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_clear(zpool_handle_t pool, long guid) {
+        long t = start();
+        int ret = delegate.zpool_vdev_clear(pool, guid);
+        end("zpool_vdev_clear", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_degrade(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        long t = start();
+        int ret = delegate.zpool_vdev_degrade(pool, guid, aux);
+        end("zpool_vdev_degrade", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_detach(zpool_handle_t pool, String path) {
+        long t = start();
+        int ret = delegate.zpool_vdev_detach(pool, path);
+        end("zpool_vdev_detach", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_fault(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        long t = start();
+        int ret = delegate.zpool_vdev_fault(pool, guid, aux);
+        end("zpool_vdev_fault", t, ret!=0);
+        return ret;
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv) {
+        long t = start();
+        String ret = delegate.zpool_vdev_name(lib, pool, nv);
+        end("zpool_vdev_name", t, false);
+        return ret;
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv, BooleanByReference verbose) {
+        long t = start();
+        String ret = delegate.zpool_vdev_name(lib, pool, nv, verbose);
+        end("zpool_vdev_name", t, false);
+        return ret;
+    }
+
+    public int zpool_vdev_offline(zpool_handle_t pool, String path, boolean istmp) {
+        long t = start();
+        int ret = delegate.zpool_vdev_offline(pool, path, istmp);
+        end("zpool_vdev_offline", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_online(zpool_handle_t pool, String path, int flags, vdev_state_t newstate) {
+        long t = start();
+        int ret = delegate.zpool_vdev_online(pool, path, flags, newstate);
+        end("zpool_vdev_online", t, ret!=0);
+        return ret;
+    }
+
+    public int zpool_vdev_remove(zpool_handle_t pool, String path) {
+        long t = start();
+        int ret = delegate.zpool_vdev_remove(pool, path);
+        end("zpool_vdev_remove", t, ret!=0);
+        return ret;
+    }
+
+    public void zprop_free_list(zprop_list_t arg) {
+        long t = start();
+        delegate.zprop_free_list(arg);
+        end("zprop_free_list", t, false);
+    }
+
+    public int zprop_get_list(libzfs_handle_t lib, String buf, PointerByReference result, int type) {
+        long t = start();
+        int ret = delegate.zprop_get_list(lib, buf, result, type);
+        end("zprop_get_list", t, ret!=0);
+        return ret;
+    }
+
+    public int zprop_iter(zprop_func func, Pointer arg, boolean show_all, boolean ordered, zfs_type_t type) {
+        long t = start();
+        int ret = delegate.zprop_iter(func, arg, show_all, ordered, type);
+        end("zprop_iter", t, false);
+        return ret;
+    }
+
+    public void zprop_print_one_property(String _1, zprop_get_cbdata_t _2, String _3, String _4, zprop_source_t _5, String _6) {
+        long t = start();
+        delegate.zprop_print_one_property(_1, _2, _3, _4, _5, _6);
+        end("zprop_print_one_property", t, false);
+    }
+
+    public int zvol_check_dump_config(String _1) {
+        long t = start();
+        int ret = delegate.zvol_check_dump_config(_1);
+        end("zvol_check_dump_config", t, ret!=0);
+        return ret;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.util.Collection;
+
+import org.jvnet.solaris.libzfs.jna.libzfs;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.zpool_handle_t;
+
+import com.sun.jna.Pointer;
+
+/**
+ * Shared libzfs iterator callbacks.
+ *
+ * <p>
+ * JNA builds a native trampoline for every {@link com.sun.jna.Callback} instance it sees,
+ * so passing a fresh anonymous {@link libzfs.zfs_iter_f} to every {@code zfs_iter_*} call
+ * made each listing pay for one, and a recursive walk for thousands. Instead, the callbacks
+ * here are created once, and dispatch to a {@link DatasetSink} or {@link PoolSink} that the
+ * iterating thread installs for the duration of the call. libzfs calls back on the thread that
+ * started the iteration, so a thread-local is all it takes, and nested iterations simply
+ * restore the sink of the outer one when they are done.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class IterCallbacks {
+    private IterCallbacks() {}
+
+    /**
+     * Receives the datasets libzfs iterates over.
+     */
+    interface DatasetSink {
+        /**
+         * @param handle
+         *      The sink takes over the ownership of this handle.
+         * @return
+         *      0 to continue, non-zero to stop the iteration.
+         */
+        int accept(zfs_handle_t handle);
+    }
+
+    /**
+     * Receives the pools libzfs iterates over.
+     */
+    interface PoolSink {
+        int accept(zpool_handle_t handle);
+    }
+
+    /**
+     * Sink of the iteration in progress on the current thread.
+     */
+    private static final ThreadLocal<Object> CURRENT = new ThreadLocal<Object>();
+
+    /*package*/ static final libzfs.zfs_iter_f DATASET = new libzfs.zfs_iter_f() {
+        public int callback(zfs_handle_t handle, Pointer arg) {
+            return ((DatasetSink)CURRENT.get()).accept(handle);
+        }
+    };
+
+    /*package*/ static final libzfs.zpool_iter_f POOL = new libzfs.zpool_iter_f() {
+        public int callback(zpool_handle_t handle, Pointer arg) {
+            return ((PoolSink)CURRENT.get()).accept(handle);
+        }
+    };
+
+    /**
+     * Installs the given sink for the current thread.
+     *
+     * @return
+     *      the previously installed sink, to be passed to {@link #exit(Object)}.
+     */
+    /*package*/ static Object enter(Object sink) {
+        Object prev = CURRENT.get();
+        CURRENT.set(sink);
+        return prev;
+    }
+
+    /*package*/ static void exit(Object prev) {
+        CURRENT.set(prev);
+    }
+
+    /*package*/ static int iterRoot(LibZFS library, DatasetSink sink) {
+        Object prev = enter(sink);
+        try {
+            return library.api.zfs_iter_root(library.getHandle(), DATASET, null);
+        } finally {
+            exit(prev);
+        }
+    }
+
+    /*package*/ static int iterFilesystems(LibZFS library, zfs_handle_t handle, DatasetSink sink) {
+        Object prev = enter(sink);
+        try {
+            return library.api.zfs_iter_filesystems(handle, DATASET, null);
+        } finally {
+            exit(prev);
+        }
+    }
+
+    /*package*/ static int iterChildren(LibZFS library, zfs_handle_t handle, DatasetSink sink) {
+        Object prev = enter(sink);
+        try {
+            return library.api.zfs_iter_children(handle, DATASET, null);
+        } finally {
+            exit(prev);
+        }
+    }
+
+    /**
+     * Calls {@code zfs_iter_snapshots} with the signature of the current ABI.
+     *
+     * @param simple
+     *      If true and the ABI supports it, libzfs only fills in the names of the
+     *      snapshot handles passed to the sink, which is much cheaper.
+     * @return
+     *      the return value from libzfs, which is the non-zero value
+     *      from the sink if it stopped the iteration.
+     */
+    /*package*/ static int iterSnapshots(LibZFS library, zfs_handle_t handle, String name, boolean simple, DatasetSink sink) {
+        Object prev = enter(sink);
+        try {
+            return library.abi.iterSnapshots.iterSnapshots(library, handle, name, simple, DATASET);
+        } finally {
+            exit(prev);
+        }
+    }
+
+    /*package*/ static int iterPools(LibZFS library, PoolSink sink) {
+        Object prev = enter(sink);
+        try {
+            return library.api.zpool_iter(library.getHandle(), POOL, null);
+        } finally {
+            exit(prev);
+        }
+    }
+
+    /**
+     * {@link DatasetSink} that wraps every dataset into a {@link ZFSObject} and adds it to a collection.
+     */
+    /*package*/ static final class Collector<T extends ZFSObject> implements DatasetSink {
+        private final LibZFS library;
+        private final Class<T> type;
+        private final Collection<? super T> to;
+
+        Collector(LibZFS library, Class<T> type, Collection<? super T> to) {
+            this.library = library;
+            this.type = type;
+            this.to = to;
+        }
+
+        public int accept(zfs_handle_t handle) {
+            to.add(type.cast(ZFSObject.create(library, handle)));
+            return 0;
+        }
+    }
+}
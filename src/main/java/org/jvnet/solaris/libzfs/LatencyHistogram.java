@@ -0,0 +1,147 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, with buckets whose width grows with the value
+ * like HdrHistogram, so that it stays small while any value is within 12.5% of what it reports.
+ *
+ * <p>
+ * Recording is lock-free and can be done from any number of threads.
+ * Reads made while other threads are recording may be slightly out of step with each other;
+ * use {@link #copy()} for a consistent view.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class LatencyHistogram {
+    /**
+     * Each power of 2 is split into 2^SUB_BITS buckets.
+     */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1<<SUB_BITS;
+    private static final int BUCKETS = (64-SUB_BITS+1)*SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos<0)    nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m;
+        while (nanos>(m=max.get()) && !max.compareAndSet(m,nanos))
+            ;
+    }
+
+    private static int indexOf(long v) {
+        if (v<SUB_COUNT)
+            return (int)v;
+        int e = 63-Long.numberOfLeadingZeros(v);
+        return (e-SUB_BITS+1)*SUB_COUNT + (int)((v>>>(e-SUB_BITS))&(SUB_COUNT-1));
+    }
+
+    /**
+     * Largest value that falls into the given bucket.
+     */
+    private static long highestValueOf(int index) {
+        if (index<SUB_COUNT)
+            return index;
+        int shift = index/SUB_COUNT-1;
+        long sub = SUB_COUNT+index%SUB_COUNT;
+        return ((sub+1)<<shift)-1;
+    }
+
+    /**
+     * Number of values recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Sum of all the values recorded, in nanoseconds.
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n==0 ? 0 : (double)total.get()/n;
+    }
+
+    /**
+     * Gets the value that the given percentage of the recorded values are at or below,
+     * such as 99 for the 99th percentile.
+     *
+     * @return
+     *      0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = 0;
+        for (int i=0; i<BUCKETS; i++)
+            n += counts.get(i);
+        if (n==0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(Math.min(percentile,100)/100*n));
+        long seen = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen>=rank)
+                return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Makes an independent copy of the current state.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram r = new LatencyHistogram();
+        for (int i=0; i<BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c!=0) {
+                r.counts.set(i,c);
+                r.count.addAndGet(c);
+            }
+        }
+        r.total.set(total.get());
+        r.max.set(max.get());
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns max=%dns",
+                getCount(), getMean(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+}
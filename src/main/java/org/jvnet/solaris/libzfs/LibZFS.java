@@ -23,27 +23,35 @@ package org.jvnet.solaris.libzfs;
 import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
 import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_UNIQUE_NAME;
 
+import java.io.Closeable;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.sun.jna.Function;
+import com.sun.jna.Memory;
+import org.jvnet.solaris.jna.NativeCleaner;
+import org.jvnet.solaris.libzfs.jna.DirectLibzfs;
+import org.jvnet.solaris.libzfs.jna.LibzfsBinding;
 import org.jvnet.solaris.libzfs.jna.libzfs;
-import org.jvnet.solaris.libzfs.jna.libzfs.zpool_iter_f;
 import org.jvnet.solaris.libzfs.jna.libzfs_handle_t;
 import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
 import org.jvnet.solaris.libzfs.jna.zfs_type_t;
 import org.jvnet.solaris.libzfs.jna.zpool_handle_t;
+import org.jvnet.solaris.nvlist.jna.libnvpair;
 import org.jvnet.solaris.nvlist.jna.nvlist_t;
 
-import com.sun.jna.Pointer;
+import com.sun.jna.ptr.LongByReference;
 
 /**
  * Entry point to ZFS functionality in Java.
@@ -51,11 +59,21 @@ import com.sun.jna.Pointer;
  * @author Kohsuke Kawaguchi
  * @author Jim Klimov
  */
-public class LibZFS implements ZFSContainer {
+public class LibZFS implements ZFSContainer, Closeable {
 
     private libzfs_handle_t handle;
+    private HandleReleaser releaser;
     private boolean libzfs_enabled = false;
     private String libzfsNotEnabledReason = "";
+    private Memory propertyBuffer;
+    private LongByReference numericBuffer;
+    private volatile IdentityMap identityMap;
+    /**
+     * Default time to live of {@link ZFSObject} property caches, in nanoseconds. 0 to not cache.
+     */
+    private volatile long propertyCacheTtl;
+    private MountPointIndex mountPoints;
+    private boolean mountTableCached;
 
     /*
      * Track features available in current host ZFS ABI so we can use specific JNA
@@ -78,6 +96,32 @@ public class LibZFS implements ZFSContainer {
      */
     private final Map<String,String> features = new HashMap<String, String>();
 
+    /**
+     * ABI-dependent native calls, resolved from {@link #features}.
+     */
+    /*package*/ ZFSAbi abi;
+
+    /**
+     * Binding used to call into libzfs, selected by {@code LIBZFS4J_BINDING}.
+     * Every native call made on behalf of this instance goes through here.
+     */
+    /*package*/ final libzfs api;
+
+    /**
+     * {@link #api} without the instrumentation of {@link #metrics}.
+     */
+    private final libzfs binding;
+
+    /**
+     * Non-null if {@code LIBZFS4J_METRICS} is on.
+     */
+    private final NativeCallMetrics metrics;
+
+    /**
+     * Reports operations to the {@link ZFSOperationListener}, if any.
+     */
+    /*package*/ final OperationTracer tracer;
+
     /*package*/ String getFeature(String key) {
         return features.get(key);
     }
@@ -95,12 +139,28 @@ public class LibZFS implements ZFSContainer {
             return;
         }
 
+        if (binding instanceof LibzfsBinding) {
+            /* There's nothing native to probe if the binding knows which ABI it implements */
+            Map<String,String> preset = ((LibzfsBinding)binding).getAbiFeatures();
+            if (preset!=null) {
+                features.putAll(preset);
+                return;
+            }
+        }
+
+        /* Probing the native libraries is slow, so remember the results across runs */
+        AbiCache cache = AbiCache.open(getSetting("LIBZFS4J_ABI_CACHE", "off"));
+
         if (v.equals("legacy") || v.equals("openzfs")) {
             /* Currently we recognize two values; later it may be more like openzfs-YYYY */
             abi = v;
         } else {
             /* Detect presence of e.g. feature flags routines == openzfs */
-            abi = detectCurrentABI();
+            abi = cache.get("abi");
+            if (abi == null) {
+                abi = detectCurrentABI();
+                cache.put("abi", abi);
+            }
         }
         features.put(n,abi);
 
@@ -131,36 +191,44 @@ public class LibZFS implements ZFSContainer {
         n = "LIBZFS4J_ABI_zfs_perm_set";
         v = getSetting(n,"");
         if (v.isEmpty()) {
-            try {
-                Function.getFunction("zfs","zfs_perm_set");
-                v = getSetting(n,"pre-sol10u8");
-            } catch (Throwable e) {
-                LOGGER.log(Level.FINEST, "While looking for zfs_perm_set() got this: " + e.toString());
-                v = getSetting(n,null);
-            }
+            v = hasFunction(cache, "zfs_perm_set") ? "pre-sol10u8" : "NO-OP";
         }
         features.put(n,v);
 
         n = "LIBZFS4J_ABI_zfs_perm_remove";
         v = getSetting(n,"");
         if (v.isEmpty()) {
-            try {
-                Function.getFunction("zfs","zfs_perm_remove");
-                v = getSetting(n,"pre-sol10u8");
-            } catch (Throwable e) {
-                LOGGER.log(Level.FINEST, "While looking for zfs_perm_remove() got this: " + e.toString());
-                v = getSetting(n,null);
-            }
+            v = hasFunction(cache, "zfs_perm_remove") ? "pre-sol10u8" : "NO-OP";
         }
         features.put(n,v);
 
+        cache.save();
         LOGGER.log(Level.FINE, "libzfs4j features: "+features);
     }
 
+    /**
+     * Checks if libzfs has the given function, consulting the cache first.
+     */
+    private boolean hasFunction(AbiCache cache, String func) {
+        String key = "function." + func;
+        String v = cache.get(key);
+        if (v == null) {
+            try {
+                Function.getFunction("zfs",func);
+                v = "true";
+            } catch (Throwable e) {
+                LOGGER.log(Level.FINEST, "While looking for " + func + "() got this: " + e.toString());
+                v = "false";
+            }
+            cache.put(key, v);
+        }
+        return Boolean.valueOf(v);
+    }
+
     /**
      * Retrieves a feature setting from system property, then from env var.
      */
-    private String getSetting(String key, String defaultValue) {
+    private static String getSetting(String key, String defaultValue) {
         String v = System.getProperty(key);
         if (v!=null)    return v;
 
@@ -176,6 +244,56 @@ public class LibZFS implements ZFSContainer {
         return defaultValue;
     }
 
+    private static final String FFM_BINDING = "org.jvnet.solaris.libzfs.ffm.FfmLibzfs";
+
+    /**
+     * Picks the {@link libzfs} implementation to call libzfs through.
+     *
+     * <p>
+     * "proxy" (the default) is the JNA interface mapping, "direct" uses {@link DirectLibzfs},
+     * which binds the functions used for listing datasets and reading properties as native
+     * methods. "ffm" uses the Foreign Function &amp; Memory binding from the separate
+     * libzfs-ffm jar, which needs Java 22. Anything else is taken as the name of a class
+     * implementing {@link libzfs}. If the requested binding can't be loaded, we fall back to the proxy.
+     */
+    private static libzfs selectBinding(String name) {
+        if (name.equals("proxy"))
+            return LIBZFS;
+        try {
+            if (name.equals("direct"))
+                return new DirectLibzfs();
+            if (name.equals("ffm"))
+                name = FFM_BINDING;
+            return (libzfs) Class.forName(name).newInstance();
+        } catch (Throwable e) {
+            LOGGER.log(Level.WARNING, "libzfs4j: failed to load LIBZFS4J_BINDING=" + name + ", falling back to the proxy binding", e);
+            return LIBZFS;
+        }
+    }
+
+    private static final String JFR_LISTENER = "org.jvnet.solaris.libzfs.jfr.JfrOperationListener";
+
+    /**
+     * Instantiates the {@link ZFSOperationListener} that {@code LIBZFS4J_OPERATION_LISTENER} names.
+     *
+     * <p>
+     * "jfr" records Java Flight Recorder events through the listener in the separate
+     * libzfs-jfr jar, which needs Java 11. Anything else is taken as the name of a class
+     * implementing {@link ZFSOperationListener}.
+     */
+    private static ZFSOperationListener selectOperationListener(String name) {
+        if (name.length()==0)
+            return null;
+        try {
+            if (name.equals("jfr"))
+                name = JFR_LISTENER;
+            return (ZFSOperationListener) Class.forName(name).newInstance();
+        } catch (Throwable e) {
+            LOGGER.log(Level.WARNING, "libzfs4j: failed to load LIBZFS4J_OPERATION_LISTENER=" + name, e);
+            return null;
+        }
+    }
+
     /**
      * Makes some effort to find the current ABI (openzfs vs legacy)
      *
@@ -229,15 +347,43 @@ public class LibZFS implements ZFSContainer {
      * Or expect such exceptions in callers of classes that might use ZFS.
      */
     public LibZFS() {
+        this(selectBinding(getSetting("LIBZFS4J_BINDING","proxy")));
+    }
+
+    /**
+     * Uses the given {@link libzfs} instead of the binding {@code LIBZFS4J_BINDING} selects,
+     * such as a simulated one that implements {@link LibzfsBinding} to run without ZFS on the host.
+     */
+    public LibZFS(libzfs api) {
+        binding = api;
         libzfs_enabled = false;
         libzfsNotEnabledReason = "";
 
-        handle = LIBZFS.libzfs_init();
+        tracer = new OperationTracer();
+        tracer.setListener(selectOperationListener(getSetting("LIBZFS4J_OPERATION_LISTENER","")));
+
+        propertyCacheTtl = parsePropertyCacheTtl(getSetting("LIBZFS4J_PROPERTY_CACHE_TTL","0"));
+
+        String v = getSetting("LIBZFS4J_METRICS","off");
+        if (v.equals("on") || v.equals("yes") || v.equals("enabled") || v.equals("true")) {
+            metrics = new NativeCallMetrics();
+            InstrumentedLibzfs i = new InstrumentedLibzfs(binding, metrics);
+            this.api = i;
+            handle = this.api.libzfs_init();
+            i.handle = handle;
+        } else {
+            metrics = null;
+            this.api = binding;
+            handle = this.api.libzfs_init();
+        }
+
         if (handle==null) {
             libzfsNotEnabledReason = "Failed to initialize libzfs";
         } else {
+            releaser = new HandleReleaser(this, this.api, handle);
             LOGGER.log(Level.WARNING, "libzfs4j is used on this system. If your JVM crashes with clues pointing to Java Native Interface link errors, please read documentation at https://github.com/kohsuke/libzfs4j/ regarding setup of LIBZFS4J_ABI family of variables.");
             initFeatures();
+            abi = new ZFSAbi(features);
         }
 
         if (!libzfsNotEnabledReason.isEmpty()) {
@@ -248,6 +394,32 @@ public class LibZFS implements ZFSContainer {
         libzfs_enabled = true;
     }
 
+    /**
+     * Opens another libzfs handle that shares the ABI settings already detected by the given instance.
+     * Used to give each thread its own handle, as a libzfs handle can't be used from multiple threads at once.
+     */
+    /*package*/ LibZFS(LibZFS parent) {
+        binding = parent.binding;
+        metrics = parent.metrics;
+        tracer = parent.tracer;
+        propertyCacheTtl = parent.propertyCacheTtl;
+        if (metrics!=null) {
+            InstrumentedLibzfs i = new InstrumentedLibzfs(binding, metrics);
+            api = i;
+            handle = api.libzfs_init();
+            i.handle = handle;
+        } else {
+            api = parent.api;
+            handle = api.libzfs_init();
+        }
+        if (handle==null)
+            throw new LinkageError("Failed to initialize libzfs");
+        releaser = new HandleReleaser(this, api, handle);
+        features.putAll(parent.features);
+        abi = parent.abi;
+        libzfs_enabled = true;
+    }
+
     /**
      * Used in routines below to report if this LibZFS instance is not
      * enabled and allow a clean abortion of the corresponding call
@@ -273,12 +445,14 @@ public class LibZFS implements ZFSContainer {
         if (!is_libzfs_enabled("roots"))
             return r;
 
-        LIBZFS.zfs_iter_root(handle, new libzfs.zfs_iter_f() {
-            public int callback(zfs_handle_t handle, Pointer arg) {
-                r.add(new ZFSFileSystem(LibZFS.this, handle));
-                return 0;
-            }
-        }, null);
+        OperationTracer.Span s = tracer.begin(ZFSOperation.ITERATE, null);
+        try {
+            IterCallbacks.iterRoot(this, new IterCallbacks.Collector<ZFSFileSystem>(this, ZFSFileSystem.class, r));
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
         return r;
     }
 
@@ -292,12 +466,12 @@ public class LibZFS implements ZFSContainer {
         if (!is_libzfs_enabled("pools"))
             return r;
 
-        LIBZFS.zpool_iter(handle, new zpool_iter_f() {
-            public int callback(zpool_handle_t handle, Pointer arg) {
+        IterCallbacks.iterPools(this, new IterCallbacks.PoolSink() {
+            public int accept(zpool_handle_t handle) {
                 r.add(new ZFSPool(LibZFS.this, handle));
                 return 0;
             }
-        }, null);
+        });
         return r;
     }
 
@@ -305,7 +479,7 @@ public class LibZFS implements ZFSContainer {
      * Gets the pool of the given name.
      */
     public ZFSPool getPool(String name) {
-        zpool_handle_t h = LIBZFS.zpool_open(handle, name);
+        zpool_handle_t h = api.zpool_open(handle, name);
         if (!is_libzfs_enabled("getPool"))
             return null;
 
@@ -346,7 +520,7 @@ public class LibZFS implements ZFSContainer {
             mask |= t.code;
         }
 
-        final boolean exists = LIBZFS.zfs_dataset_exists(handle, name, mask);
+        final boolean exists = api.zfs_dataset_exists(handle, name, mask);
         return exists;
     }
 
@@ -367,6 +541,13 @@ public class LibZFS implements ZFSContainer {
         return exists;
     }
 
+    /**
+     * libnvpair that goes with {@link #api}.
+     */
+    private libnvpair nvpair() {
+        return binding instanceof LibzfsBinding ? ((LibzfsBinding)binding).getLibnvpair() : libnvpair.LIBNVPAIR;
+    }
+
     /**
      * Create a ZFS Data Set of a given name and zfs type.
      *
@@ -400,24 +581,29 @@ public class LibZFS implements ZFSContainer {
         if (!is_libzfs_enabled("create"))
             return null;
 
-        final nvlist_t nvl = nvlist_t.alloc(NV_UNIQUE_NAME);
+        final nvlist_t nvl = nvlist_t.alloc(nvpair(), NV_UNIQUE_NAME);
         if(props!=null) {
             for (Map.Entry<String, String> e : props.entrySet()) {
                 nvl.put(e.getKey(), e.getValue());
             }
         }
 
-        /* create intermediate directories */
-        final String[] dirs = dataSetName.split("/");
-        final StringBuilder sb = new StringBuilder(dirs[0]);
-        for (int i = 1; i < dirs.length; i++) {
-            sb.append('/').append(dirs[i]);
-            if (!exists(sb.toString())) {
-                if (LIBZFS.zfs_create(handle, sb.toString(), type.code, nvl) != 0) {
-                    throw new ZFSException(this,"Failed to create "+dataSetName);
+        try {
+            /* create intermediate directories */
+            final String[] dirs = dataSetName.split("/");
+            final StringBuilder sb = new StringBuilder(dirs[0]);
+            for (int i = 1; i < dirs.length; i++) {
+                sb.append('/').append(dirs[i]);
+                if (!exists(sb.toString())) {
+                    if (api.zfs_create(handle, sb.toString(), type.code, nvl) != 0) {
+                        throw new ZFSException(this,"Failed to create "+dataSetName);
+                    }
                 }
             }
+        } finally {
+            nvl.dispose();
         }
+        refreshMountPoints();
 
         final ZFSObject dataSet = open(dataSetName);
         return dataSet;
@@ -451,13 +637,30 @@ public class LibZFS implements ZFSContainer {
         if (!is_libzfs_enabled("open"))
             return null;
 
-        zfs_handle_t h = LIBZFS.zfs_open(handle, dataSetName, mask);
-        if(h==null) {
-            int err = LIBZFS.libzfs_errno(handle);
-            if(err==0)  return null;
-            throw new ZFSException(this);
+        IdentityMap m = identityMap;
+        if (m!=null) {
+            ZFSObject o = m.get(dataSetName);
+            if (o!=null && (ZFSType.fromType(o.getClass()).code & mask)!=0)
+                return o;
+        }
+
+        OperationTracer.Span s = tracer.begin(ZFSOperation.OPEN, dataSetName);
+        try {
+            zfs_handle_t h = api.zfs_open(handle, dataSetName, mask);
+            if(h==null) {
+                int err = api.libzfs_errno(handle);
+                if(err==0) {
+                    s.fail(ErrorCode.EZFS_NOENT);
+                    return null;
+                }
+                throw new ZFSException(this);
+            }
+            return ZFSObject.create(this,h);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
-        return ZFSObject.create(this,h);
     }
 
     /**
@@ -473,6 +676,11 @@ public class LibZFS implements ZFSContainer {
     /**
      * Gets a {@link ZFSFileSystem} mounted at the given directory.
      *
+     * <p>
+     * This is answered from the index of all the mount points, which is built on the first call.
+     * The index follows the changes made through this library, but mount points set by others,
+     * such as the {@code zfs} command, are only found after {@link #refreshMountPoints()}.
+     *
      * @return
      *      null if no such file system exists.
      */
@@ -481,14 +689,179 @@ public class LibZFS implements ZFSContainer {
             return null;
 
         dir = dir.getAbsoluteFile();
-        for (ZFSFileSystem f : descendants(ZFSFileSystem.class)) {
-            File mp = f.getMountPoint();
-            if(mp!=null && mp.equals(dir))
+        for (int attempt=0; attempt<2; attempt++) {
+            // most directories aren't mount points, so a miss must not cost a walk of every dataset
+            String name = getMountPointIndex(attempt>0).get(dir);
+            if (name==null)
+                return null;
+            ZFSFileSystem f = openMountedAt(name, dir);
+            if (f!=null)
                 return f;
+            // the file system is gone or moved, so the index is out of date
         }
         return null;
     }
 
+    /**
+     * Gets the {@link ZFSFileSystem} that contains the given file or directory,
+     * which is the one whose mount point is the longest prefix of the path.
+     *
+     * <p>
+     * Mounted file systems are looked up by libzfs from the system mount table,
+     * and others from the index of all the mount points, as in {@link #getFileSystemByMountPoint(File)}.
+     *
+     * @return
+     *      null if the path isn't in any ZFS file system.
+     */
+    public ZFSFileSystem getFileSystemContaining(File path) {
+        if (!is_libzfs_enabled("getFileSystemContaining"))
+            return null;
+
+        path = path.getAbsoluteFile();
+        for (int attempt=0; attempt<2; attempt++) {
+            MountPointIndex index = getMountPointIndex(attempt>0);
+            File mp = index.findMountPoint(path);
+            if (mp==null)
+                return null;
+
+            // zfs_path_to_zhandle complains to stderr about paths that don't exist or aren't in ZFS,
+            // so only ask once we know the path is under a ZFS mount point
+            if (path.exists()) {
+                zfs_handle_t h = api.zfs_path_to_zhandle(handle, path.getPath(), zfs_type_t.FILESYSTEM);
+                if (h!=null)
+                    return (ZFSFileSystem)ZFSObject.create(this, h);
+            }
+
+            ZFSFileSystem f = openMountedAt(index.get(mp), mp);
+            if (f!=null)
+                return f;
+            // the index is out of date
+        }
+        return null;
+    }
+
+    /**
+     * Opens the given file system if its mount point is still the given directory.
+     */
+    private ZFSFileSystem openMountedAt(String name, File dir) {
+        // unlike open(), a dataset that's gone is not an error here
+        zfs_handle_t h = api.zfs_open(handle, name, zfs_type_t.FILESYSTEM);
+        if (h==null)
+            return null;
+        ZFSFileSystem f = (ZFSFileSystem)ZFSObject.create(this, h);
+        if (dir.equals(f.getMountPoint()))
+            return f;
+        f.discard();
+        return null;
+    }
+
+    /**
+     * Makes libzfs keep the system mount table in memory, instead of reading it
+     * again every time {@link ZFSFileSystem#isMounted()} and the like are called.
+     *
+     * <p>
+     * File systems mounted and unmounted through this library are kept up to date
+     * in the cached table, but changes made by others, such as the {@code zfs} command,
+     * are only seen after {@link #refreshMountTable()}. Newer OpenZFS always caches
+     * the mount table, and this setting makes no difference there.
+     */
+    public synchronized void setMountTableCached(boolean cached) {
+        if (!is_libzfs_enabled("setMountTableCached"))
+            return;
+
+        api.libzfs_mnttab_cache(handle, cached);
+        mountTableCached = cached;
+    }
+
+    public synchronized boolean isMountTableCached() {
+        return mountTableCached;
+    }
+
+    /**
+     * Discards the cached mount table, so that it's read again on the next query.
+     */
+    public synchronized void refreshMountTable() {
+        if (!is_libzfs_enabled("refreshMountTable"))
+            return;
+
+        discardMountTable();
+    }
+
+    /**
+     * Empties the mount table cached in the libzfs handle, so that it's read in full on the next lookup.
+     * Turning the cache off and on again isn't enough, as older libzfs only drops the table
+     * when it's looked up with the cache off.
+     */
+    private void discardMountTable() {
+        api.libzfs_mnttab_fini(handle);
+        api.libzfs_mnttab_init(handle);
+    }
+
+    /**
+     * Checks which of the given file systems are mounted, reading the system mount table just once.
+     *
+     * @param names
+     *      names of the file systems to check, like "rpool/foo".
+     * @return
+     *      those of the given names that are mounted.
+     */
+    public synchronized Set<String> getMounted(Collection<String> names) {
+        Set<String> r = new HashSet<String>();
+        if (!is_libzfs_enabled("getMounted"))
+            return r;
+
+        if (!mountTableCached) {
+            // read the current table once for all the queries below, then go back to the uncached behaviour
+            discardMountTable();
+            api.libzfs_mnttab_cache(handle, true);
+        }
+        try {
+            for (String name : names) {
+                if (api.is_mounted(handle, name, null))
+                    r.add(name);
+            }
+        } finally {
+            if (!mountTableCached) {
+                api.libzfs_mnttab_cache(handle, false);
+                discardMountTable();
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Updates the cached mount table after a file system got mounted or unmounted through this library.
+     */
+    /*package*/ synchronized void mountStateChanged(ZFSFileSystem fs, boolean mounted) {
+        // others may have changed the mount point before this, so read them all again next time
+        mountPoints = null;
+        if (!mountTableCached)
+            return;
+
+        // libzfs itself updates the cache in newer versions, so remove first to avoid a duplicate entry
+        api.libzfs_mnttab_remove(handle, fs.getName());
+        if (mounted) {
+            File mp = fs.getMountPoint();
+            if (mp!=null)
+                api.libzfs_mnttab_add(handle, fs.getName(), mp.getPath(), "");
+        }
+    }
+
+    /**
+     * Discards what's known about the mount points of file systems, so that
+     * {@link #getFileSystemByMountPoint(File)} and {@link #getFileSystemContaining(File)}
+     * read them afresh.
+     */
+    public synchronized void refreshMountPoints() {
+        mountPoints = null;
+    }
+
+    private synchronized MountPointIndex getMountPointIndex(boolean rebuild) {
+        if (mountPoints==null || rebuild)
+            mountPoints = new MountPointIndex(this);
+        return mountPoints;
+    }
+
     public List<ZFSFileSystem> children() {
         if (!is_libzfs_enabled("children"))
             return null;
@@ -525,6 +898,74 @@ public class LibZFS implements ZFSContainer {
         return r;
     }
 
+    /**
+     * Lists the names of the root file systems, or all the datasets, of the given type.
+     *
+     * <p>
+     * Same as {@link #children(Class)} and {@link #descendants(Class)}, except that
+     * only the names are returned, which is much cheaper when that's all the caller needs.
+     * See {@link ZFSObject#listNames(Class, boolean)}.
+     */
+    public List<String> listNames(Class<? extends ZFSObject> type, boolean recursive) {
+        if (!is_libzfs_enabled("listNames"))
+            return null;
+
+        OperationTracer.Span s = tracer.begin(ZFSOperation.ITERATE, null);
+        try {
+            return new NameLister(this, type, recursive).listRoots();
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
+
+    /**
+     * Same as {@link #descendants(Class)}, but lists the datasets with multiple threads.
+     *
+     * <p>
+     * Each thread opens its own libzfs handle, so this pays off on pools with many
+     * file systems, where the walk is dominated by the time libzfs spends in the kernel.
+     * The datasets are returned in the same order as {@link #descendants(Class)}, but
+     * they belong to different {@link LibZFS} instances, which {@link ZFSObject#getLibrary()} reports.
+     *
+     * @param parallelism
+     *      Number of threads to use.
+     */
+    public <T extends ZFSObject> List<T> descendants(Class<T> type, int parallelism) {
+        if (!is_libzfs_enabled("descendants"))
+            return null;
+        if (parallelism<1)
+            throw new IllegalArgumentException("parallelism must be positive: "+parallelism);
+
+        return new ParallelWalker<T>(this, type, parallelism).descendants();
+    }
+
+    /**
+     * Visits all the datasets one by one as libzfs finds them, instead of
+     * building up a list of all of them first like {@link #descendants(Class)} does.
+     *
+     * <p>
+     * Each root file system is visited right before its descendants, which are
+     * visited as {@link ZFSObject#walk(Class, ZFSVisitor)} does.
+     *
+     * @return
+     *      false if the visitor stopped the walk, true if it visited everything.
+     */
+    public <T extends ZFSObject> boolean walk(Class<T> type, ZFSVisitor<? super T> visitor) {
+        if (!is_libzfs_enabled("walk"))
+            return true;
+
+        OperationTracer.Span s = tracer.begin(ZFSOperation.ITERATE, null);
+        try {
+            return new Walker<T>(this, type, visitor).walkRoots();
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
+
     /**
      * Returns {@link libzfs_handle_t} that this object wraps.
      * <p>
@@ -536,24 +977,242 @@ public class LibZFS implements ZFSContainer {
         return handle;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        dispose();
+    /**
+     * Gets the per-function statistics of the calls into libzfs made by this object,
+     * and by the other {@link LibZFS}es it opened for other threads.
+     *
+     * @return
+     *      null unless {@code LIBZFS4J_METRICS} is on.
+     */
+    public NativeCallMetrics getNativeCallMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the listener that gets notified of the operations this object performs,
+     * such as opening datasets, reading properties and taking snapshots.
+     *
+     * <p>
+     * The listener is shared with the {@link LibZFS}es this object opened for other threads.
+     *
+     * @param listener
+     *      null to stop reporting operations.
+     * @see #getOperationListener()
+     */
+    public void setOperationListener(ZFSOperationListener listener) {
+        tracer.setListener(listener);
+    }
+
+    /**
+     * Gets the listener set by {@link #setOperationListener(ZFSOperationListener)}
+     * or the {@code LIBZFS4J_OPERATION_LISTENER} setting.
+     *
+     * @return
+     *      null if none is set.
+     */
+    public ZFSOperationListener getOperationListener() {
+        return tracer.getListener();
+    }
+
+    /**
+     * Gets the buffer used to receive property values from libzfs.
+     *
+     * <p>
+     * Callers must hold the lock on the returned buffer while using it,
+     * as it's shared by all the datasets and pools opened from this library.
+     */
+    /*package*/ synchronized Memory getPropertyBuffer() {
+        if (propertyBuffer == null)
+            propertyBuffer = new Memory(Math.max(libzfs.ZFS_MAXPROPLEN, libzfs.ZPOOL_MAXPROPLEN));
+        return propertyBuffer;
+    }
+
+    /**
+     * Gets the buffer used to receive numeric property values from libzfs.
+     * The same locking rule as {@link #getPropertyBuffer()} applies.
+     */
+    /*package*/ synchronized LongByReference getNumericBuffer() {
+        if (numericBuffer == null)
+            numericBuffer = new LongByReference();
+        return numericBuffer;
+    }
+
+    /**
+     * Makes this library hand out the same {@link ZFSObject} for the same dataset.
+     *
+     * <p>
+     * By default, every {@link #open(String)}, {@link ZFSObject#children()} and so on
+     * creates a new {@link ZFSObject} with its own native handle, even if the caller
+     * already has one for the same dataset. When the identity map is enabled, such calls
+     * return the existing object as long as it's still reachable and not disposed,
+     * which saves opening native handles over and over again.
+     *
+     * <p>
+     * Since objects are shared, callers shouldn't {@link ZFSObject#dispose()} them
+     * while others might still be using them, and should call {@link ZFSObject#refresh()}
+     * to see property changes made since the object was first opened.
+     */
+    public void setIdentityMapEnabled(boolean enabled) {
+        if (enabled) {
+            synchronized (this) {
+                if (identityMap==null)
+                    identityMap = new IdentityMap();
+            }
+        } else {
+            identityMap = null;
+        }
+    }
+
+    public boolean isIdentityMapEnabled() {
+        return identityMap!=null;
+    }
+
+    /**
+     * Sets the time {@link ZFSObject}s from this library keep their properties cached,
+     * unless set on the object itself with {@link ZFSObject#setPropertyCacheTtl(long, TimeUnit)}.
+     *
+     * <p>
+     * The default is 0, which doesn't cache at all, or the number of milliseconds
+     * given in the {@code LIBZFS4J_PROPERTY_CACHE_TTL} setting.
+     *
+     * @see ZFSObject#setPropertyCacheTtl(long, TimeUnit)
+     */
+    public void setPropertyCacheTtl(long ttl, TimeUnit unit) {
+        propertyCacheTtl = Math.max(0, unit.toNanos(ttl));
+    }
+
+    public long getPropertyCacheTtl(TimeUnit unit) {
+        return unit.convert(propertyCacheTtl, TimeUnit.NANOSECONDS);
+    }
+
+    private static long parsePropertyCacheTtl(String v) {
+        try {
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(Long.parseLong(v.trim())));
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Ignoring LIBZFS4J_PROPERTY_CACHE_TTL="+v+", which isn't a number of milliseconds");
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the identity map, or null if it's not enabled.
+     */
+    /*package*/ IdentityMap getIdentityMap() {
+        return identityMap;
+    }
+
+    /**
+     * Forgets the given dataset and its descendants after they got renamed or destroyed.
+     */
+    /*package*/ void evict(String name) {
+        IdentityMap m = identityMap;
+        if (m!=null)
+            m.evict(name);
+    }
+
+    /**
+     * Opens a new {@link ZFSSession} for the current thread.
+     *
+     * <p>
+     * Until the session is closed, datasets and pools that this thread opens
+     * from this library are closed along with the session.
+     */
+    public ZFSSession openSession() {
+        return new ZFSSession(this);
+    }
+
+    /**
+     * Called by each {@link ZFSObject} and {@link ZFSPool} created from this library,
+     * so that the libzfs handle is kept open until all of them are closed.
+     */
+    /*package*/ synchronized HandleReleaser acquireHandle() {
+        // not a ZFSException, which would ask the closed handle for the error
+        if (handle == null || !releaser.acquire())
+            throw new IllegalStateException("libzfs handle is already closed");
+        return releaser;
     }
 
     /**
      * Eagerly releases the native resource associated with this wrapper,
      * instead of waiting for GC to take care of it.
+     *
+     * <p>
+     * This instance can't be used any more after this method is called.
+     * The libzfs handle itself is closed once all the datasets and pools
+     * opened from it get closed.
      */
     public synchronized void dispose() {
         if (handle != null) {
-            LIBZFS.libzfs_fini(handle);
+            releaser.clean();
             handle = null;
             libzfs_enabled = false;
             libzfsNotEnabledReason = "";
         }
     }
 
+    /**
+     * Closes the libzfs handle once all the datasets and pools opened from it get closed.
+     *
+     * <p>
+     * Unlike {@link #dispose()}, this instance stays usable until then, so that those objects
+     * keep working when they call back into it, such as to report an error.
+     */
+    /*package*/ synchronized void disposeWhenUnused() {
+        if (handle != null)
+            releaser.clean();
+    }
+
+    /**
+     * Same as {@link #dispose()}.
+     */
+    public void close() {
+        dispose();
+    }
+
+    /**
+     * Calls {@code libzfs_fini} once the {@link LibZFS} is closed or collected,
+     * and all the handles opened from it are closed as well.
+     */
+    /*package*/ static final class HandleReleaser extends NativeCleaner.Cleanable {
+        /*package*/ final libzfs api;
+        private final libzfs_handle_t handle;
+        private int users;
+        private boolean released;
+        private boolean closed;
+
+        HandleReleaser(LibZFS owner, libzfs api, libzfs_handle_t handle) {
+            super(owner, "libzfs handle");
+            this.api = api;
+            this.handle = handle;
+        }
+
+        /**
+         * @return false if the handle is already closed.
+         */
+        private synchronized boolean acquire() {
+            if (closed)
+                return false;
+            users++;
+            return true;
+        }
+
+        /*package*/ synchronized void unacquire() {
+            if (--users==0 && released)
+                close();
+        }
+
+        @Override
+        protected synchronized void release() {
+            released = true;
+            if (users==0)
+                close();
+        }
+
+        private void close() {
+            closed = true;
+            api.libzfs_fini(handle);
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(LibZFS.class.getName());
 }
@@ -0,0 +1,76 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Map from mount points to the names of the file systems mounted there,
+ * for {@link LibZFS#getFileSystemByMountPoint(File)} and {@link LibZFS#getFileSystemContaining(File)}.
+ *
+ * <p>
+ * Building the index requires reading the mount point of every file system,
+ * so it's built once and then reused until {@link LibZFS#refreshMountPoints()},
+ * until a file system gets created, renamed, mounted or unmounted or has its mount point
+ * changed through the library, or until a lookup finds an entry out of date.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class MountPointIndex {
+    /**
+     * From {@link File#getPath()} of mount points to dataset names.
+     */
+    private final Map<String,String> datasets = new HashMap<String,String>();
+
+    /*package*/ MountPointIndex(LibZFS library) {
+        library.walk(ZFSFileSystem.class, new ZFSVisitor<ZFSFileSystem>() {
+            public boolean visit(ZFSFileSystem fs) {
+                File mp = fs.getMountPoint();
+                if (mp!=null)
+                    datasets.put(mp.getPath(), fs.getName());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Gets the name of the file system mounted exactly at the given directory.
+     */
+    /*package*/ String get(File dir) {
+        return datasets.get(dir.getPath());
+    }
+
+    /**
+     * Finds the file system with the longest mount point that contains the given path.
+     *
+     * @return
+     *      the mount point of that file system, or null if none contains the path.
+     */
+    /*package*/ File findMountPoint(File path) {
+        for (File f=path; f!=null; f=f.getParentFile()) {
+            if (datasets.containsKey(f.getPath()))
+                return f;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+
+/**
+ * Lists dataset names straight from the libzfs iterator callbacks, for {@code listNames}.
+ *
+ * <p>
+ * Every handle is closed as soon as its name (and its children, if recursive) has been read,
+ * so no {@link ZFSObject} is ever created and nothing is left for the finalizer.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class NameLister {
+    private final LibZFS library;
+    private final Set<ZFSType> types;
+    private final boolean recursive;
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * Problem thrown while in the callback, to be rethrown once we are out of the native code.
+     */
+    private RuntimeException failure;
+
+    private final IterCallbacks.DatasetSink snapshotSink = new IterCallbacks.DatasetSink() {
+        public int accept(zfs_handle_t handle) {
+            names.add(library.api.zfs_get_name(handle));
+            library.api.zfs_close(handle);
+            return 0;
+        }
+    };
+
+    private final IterCallbacks.DatasetSink childSink = new IterCallbacks.DatasetSink() {
+        public int accept(zfs_handle_t handle) {
+            try {
+                String name = library.api.zfs_get_name(handle);
+                if (types.contains(ZFSType.fromCode(library.api.zfs_get_type(handle))))
+                    names.add(name);
+                if (recursive)
+                    listChildren(handle, name);
+            } catch (RuntimeException e) {
+                failure = e;
+                return 1;
+            } finally {
+                library.api.zfs_close(handle);
+            }
+            return failure!=null ? 1 : 0;
+        }
+    };
+
+    /*package*/ NameLister(LibZFS library, Class<? extends ZFSObject> type, boolean recursive) {
+        this.library = library;
+        this.types = ZFSType.typesOf(type);
+        this.recursive = recursive;
+    }
+
+    /**
+     * Lists the children, or the descendants, of the given dataset.
+     */
+    /*package*/ List<String> list(zfs_handle_t parent, String name) {
+        listChildren(parent, name);
+        return done();
+    }
+
+    /**
+     * Lists the root file systems, and their descendants if recursive.
+     */
+    /*package*/ List<String> listRoots() {
+        // all the roots come first, just like LibZFS.descendants()
+        final List<zfs_handle_t> roots = new ArrayList<zfs_handle_t>();
+        IterCallbacks.iterRoot(library, new IterCallbacks.DatasetSink() {
+            public int accept(zfs_handle_t handle) {
+                roots.add(handle);
+                return 0;
+            }
+        });
+
+        try {
+            for (zfs_handle_t root : roots) {
+                if (types.contains(ZFSType.FILESYSTEM))
+                    names.add(library.api.zfs_get_name(root));
+            }
+            if (recursive) {
+                for (zfs_handle_t root : roots) {
+                    if (failure==null)
+                        listChildren(root, library.api.zfs_get_name(root));
+                }
+            }
+        } finally {
+            for (zfs_handle_t root : roots)
+                library.api.zfs_close(root);
+        }
+        return done();
+    }
+
+    private void listChildren(zfs_handle_t parent, String name) {
+        if (types.contains(ZFSType.SNAPSHOT))
+            IterCallbacks.iterSnapshots(library, parent, name, true, snapshotSink);
+
+        if (recursive || types.contains(ZFSType.FILESYSTEM) || types.contains(ZFSType.VOLUME))
+            IterCallbacks.iterFilesystems(library, parent, childSink);
+    }
+
+    private List<String> done() {
+        if (failure!=null)
+            throw failure;
+        return names;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the calls into libzfs and measures how long they take, per function.
+ *
+ * <p>
+ * Enabled by the {@code LIBZFS4J_METRICS=on} setting, in which case {@link LibZFS#getNativeCallMetrics()}
+ * returns the instance that collects for it, and for the {@link LibZFS}es opened from it.
+ * The calls are recorded by a wrapper around the {@link org.jvnet.solaris.libzfs.jna.libzfs} binding,
+ * so without the setting nothing changes. With it, {@link #setEnabled(boolean)} turns the
+ * recording off and on at runtime; while off, the wrapper just passes the calls through.
+ *
+ * <p>
+ * When a call fails, {@code libzfs_errno} is read right after it to find out why,
+ * which isn't counted as a call.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class NativeCallMetrics {
+    private final ConcurrentMap<String,Recorder> recorders = new ConcurrentHashMap<String,Recorder>();
+    private volatile boolean enabled = true;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets the statistics of every function called so far, by function name.
+     */
+    public Map<String,NativeCallStats> snapshot() {
+        Map<String,NativeCallStats> r = new TreeMap<String,NativeCallStats>();
+        for (Map.Entry<String,Recorder> e : recorders.entrySet())
+            r.put(e.getKey(), e.getValue().snapshot(e.getKey()));
+        return Collections.unmodifiableMap(r);
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     * Calls that are in progress may still be counted afterward.
+     */
+    public void reset() {
+        recorders.clear();
+    }
+
+    /**
+     * Records one call.
+     *
+     * @param error
+     *      what libzfs reported about the failure, if known.
+     */
+    /*package*/ void record(String function, long nanos, boolean failed, ErrorCode error) {
+        Recorder r = recorders.get(function);
+        if (r==null) {
+            Recorder n = new Recorder();
+            r = recorders.putIfAbsent(function, n);
+            if (r==null)    r = n;
+        }
+        r.latency.record(nanos);
+        if (failed) {
+            r.failures.incrementAndGet();
+            if (error!=null)
+                r.errors.incrementAndGet(error.ordinal());
+        }
+    }
+
+    private static final class Recorder {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLongArray errors = new AtomicLongArray(ErrorCode.values().length);
+
+        NativeCallStats snapshot(String function) {
+            EnumMap<ErrorCode,Long> m = new EnumMap<ErrorCode,Long>(ErrorCode.class);
+            for (ErrorCode c : ErrorCode.values()) {
+                long n = errors.get(c.ordinal());
+                if (n!=0)
+                    m.put(c,n);
+            }
+            return new NativeCallStats(function, latency.copy(), failures.get(), m);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable statistics of one libzfs function, taken by {@link NativeCallMetrics#snapshot()}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class NativeCallStats {
+    private final String function;
+    private final LatencyHistogram latency;
+    private final long failures;
+    private final Map<ErrorCode,Long> errors;
+
+    /*package*/ NativeCallStats(String function, LatencyHistogram latency, long failures, EnumMap<ErrorCode,Long> errors) {
+        this.function = function;
+        this.latency = latency;
+        this.failures = failures;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * Name of the libzfs function, like "zfs_open".
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    /**
+     * Number of calls made.
+     */
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    /**
+     * How long the calls took. Don't record into this; it's a copy.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Number of calls that reported a failure through their return value.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Number of failures by the error code {@code libzfs_errno} reported right after them.
+     * Failures for which libzfs didn't set an error code are counted as {@link ErrorCode#EZFS_UNKNOWN}.
+     */
+    public Map<ErrorCode,Long> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return function+": "+latency+" failures="+failures+(errors.isEmpty() ? "" : " "+errors);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+/**
+ * Holds the {@link ZFSOperationListener} of a {@link LibZFS}, shared with the
+ * instances it opens for other threads.
+ *
+ * <p>
+ * Operations are reported like this:
+ *
+ * <pre>
+ * OperationTracer.Span s = library.tracer.begin(ZFSOperation.MOUNT, name);
+ * try {
+ *     ...
+ * } catch (RuntimeException e) {
+ *     throw s.fail(e);
+ * } finally {
+ *     s.end();
+ * }
+ * </pre>
+ *
+ * When no listener is set, {@link #begin(ZFSOperation, String)} returns a shared no-op
+ * {@link Span}, so this costs a volatile read and nothing else.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class OperationTracer {
+    private volatile ZFSOperationListener listener;
+
+    /*package*/ ZFSOperationListener getListener() {
+        return listener;
+    }
+
+    /*package*/ void setListener(ZFSOperationListener listener) {
+        this.listener = listener;
+    }
+
+    /*package*/ Span begin(ZFSOperation operation, String dataset) {
+        ZFSOperationListener l = listener;
+        if (l==null)
+            return NONE;
+        return new Span(l, operation, dataset);
+    }
+
+    /**
+     * An operation in progress.
+     */
+    /*package*/ static class Span {
+        private final ZFSOperationListener listener;
+        private final ZFSOperation operation;
+        private final String dataset;
+        private final Object context;
+        private final long start;
+        private ErrorCode error;
+
+        private Span() {
+            listener = null;
+            operation = null;
+            dataset = null;
+            context = null;
+            start = 0;
+        }
+
+        private Span(ZFSOperationListener listener, ZFSOperation operation, String dataset) {
+            this.listener = listener;
+            this.operation = operation;
+            this.dataset = dataset;
+            this.context = listener.begin(operation, dataset);
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Records that the operation failed with the given exception, and returns it to be rethrown.
+         */
+        /*package*/ <E extends RuntimeException> E fail(E e) {
+            if (e instanceof ZFSException)
+                error = ((ZFSException)e).getCode();
+            else
+                error = ErrorCode.EZFS_UNKNOWN;
+            return e;
+        }
+
+        /**
+         * Records that the operation failed without an exception, like a null return from libzfs.
+         */
+        /*package*/ void fail(ErrorCode code) {
+            error = code;
+        }
+
+        /*package*/ void end() {
+            listener.end(context, operation, dataset, System.nanoTime()-start, error);
+        }
+    }
+
+    private static final Span NONE = new Span() {
+        @Override
+        <E extends RuntimeException> E fail(E e) {
+            return e;
+        }
+
+        @Override
+        void fail(ErrorCode code) {
+        }
+
+        @Override
+        void end() {
+        }
+    };
+}
@@ -0,0 +1,264 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.zfs_type_t;
+
+/**
+ * Lists descendants with multiple threads, for {@link LibZFS#descendants(Class, int)}.
+ *
+ * <p>
+ * libzfs handles can't be shared between threads, so each worker thread gets
+ * its own {@link LibZFS}. The tree is split at file system boundaries: expanding
+ * a file system (listing its snapshots and child file systems) is one task.
+ * A task expands the child file systems itself, through the handles the iterator
+ * gave it, unless some threads might be idle, in which case it submits tasks for them,
+ * which have to open the file systems again on their own libzfs handles.
+ * Only the calling thread waits for submitted tasks, so they can never deadlock on each
+ * other, and it stitches the results back together in the same order as
+ * {@link LibZFS#descendants(Class)}.
+ *
+ * <p>
+ * The objects returned belong to the worker's {@link LibZFS}, so they must not be
+ * used concurrently with other objects from the same worker, just like any other
+ * objects that share a {@link LibZFS}. The worker libraries stay usable after the walk
+ * for the sake of those objects, and each libzfs handle gets closed as soon as
+ * the objects listed through it are disposed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class ParallelWalker<T extends ZFSObject> {
+    private final LibZFS library;
+    private final Class<T> type;
+    private final Set<ZFSType> types;
+    private final int parallelism;
+    private final ExecutorService executor;
+    /**
+     * Number of tasks submitted and not started yet.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * {@link LibZFS} of each worker thread, created when the thread runs its first task.
+     */
+    private final List<LibZFS> workers = new ArrayList<LibZFS>();
+
+    private final ThreadLocal<LibZFS> workerLibrary = new ThreadLocal<LibZFS>() {
+        @Override
+        protected LibZFS initialValue() {
+            LibZFS lib = new LibZFS(library);
+            synchronized (workers) {
+                workers.add(lib);
+            }
+            return lib;
+        }
+    };
+
+    /**
+     * Result of expanding one file system.
+     */
+    private final class Node {
+        final List<T> snapshots = new ArrayList<T>();
+        /**
+         * Child file systems and volumes, or null for those that the caller didn't ask for.
+         */
+        final List<T> children = new ArrayList<T>();
+        final List<Future<Node>> subtrees = new ArrayList<Future<Node>>();
+    }
+
+    /**
+     * Expands a file system on whichever worker thread picks the task up.
+     */
+    private final class Expand implements Callable<Node> {
+        private final String name;
+
+        Expand(String name) {
+            this.name = name;
+        }
+
+        public Node call() {
+            queued.decrementAndGet();
+
+            // the handle that listed it belongs to another thread's libzfs handle
+            LibZFS lib = workerLibrary.get();
+            zfs_handle_t h = lib.api.zfs_open(lib.getHandle(), name, zfs_type_t.FILESYSTEM|zfs_type_t.VOLUME);
+            if (h==null)
+                return new Node();    // destroyed since its parent got listed
+
+            ZFSObject fs = ZFSObject.create(lib, h);
+            try {
+                return expand(fs);
+            } finally {
+                fs.dispose();
+            }
+        }
+    }
+
+    /**
+     * Lists the snapshots and child file systems of the given file system,
+     * which must belong to the library of the current thread.
+     */
+    private Node expand(ZFSObject fs) {
+        Node node = new Node();
+        if (types.contains(ZFSType.SNAPSHOT)) {
+            for (ZFSObject snap : fs.snapshots())
+                node.snapshots.add(type.cast(snap));
+        }
+        for (ZFSObject child : fs.filesystems()) {
+            node.subtrees.add(subtree(child));
+            if (type.isInstance(child)) {
+                node.children.add(type.cast(child));
+            } else {
+                node.children.add(null);
+                child.dispose();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Expands the given child file system, on another thread if one might be idle.
+     */
+    private Future<Node> subtree(final ZFSObject fs) {
+        if (queued.get()<parallelism) {
+            queued.incrementAndGet();
+            return executor.submit(new Expand(fs.getName()));
+        }
+
+        FutureTask<Node> f = new FutureTask<Node>(new Callable<Node>() {
+            public Node call() {
+                return expand(fs);
+            }
+        });
+        f.run();
+        return f;
+    }
+
+    /*package*/ ParallelWalker(LibZFS library, Class<T> type, final int parallelism) {
+        this.library = library;
+        this.type = type;
+        this.types = ZFSType.typesOf(type);
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger n = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "libzfs4j walker #"+n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Lists all the root file systems and their descendants.
+     */
+    /*package*/ List<T> descendants() {
+        try {
+            List<ZFSFileSystem> roots = library.roots();
+            List<Future<Node>> subtrees = new ArrayList<Future<Node>>();
+            for (ZFSFileSystem root : roots) {
+                queued.incrementAndGet();
+                subtrees.add(executor.submit(new Expand(root.getName())));
+            }
+
+            List<T> r = new ArrayList<T>();
+            for (ZFSFileSystem root : roots) {
+                if (type.isInstance(root))
+                    r.add(type.cast(root));
+                else
+                    root.dispose();
+            }
+            for (Future<Node> subtree : subtrees)
+                collect(subtree, r);
+            return r;
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops the worker threads and lets go of their libraries.
+     *
+     * <p>
+     * When the walk fails halfway, tasks can still be running on the worker libraries,
+     * so wait for them to finish first. The libraries aren't disposed, as the objects
+     * they listed still call into them, but each one gets closed along with the last of those.
+     */
+    private void shutdown() {
+        executor.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS))
+                    break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        synchronized (workers) {
+            for (LibZFS lib : workers)
+                lib.disposeWhenUnused();
+            workers.clear();
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void collect(Future<Node> f, List<T> r) {
+        Node node;
+        try {
+            node = f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing datasets", e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if (t instanceof Error)
+                throw (Error)t;
+            throw new IllegalStateException(t);
+        }
+
+        r.addAll(node.snapshots);
+        for (int i=0; i<node.children.size(); i++) {
+            T child = node.children.get(i);
+            if (child!=null)
+                r.add(child);
+            collect(node.subtrees.get(i), r);
+        }
+    }
+}
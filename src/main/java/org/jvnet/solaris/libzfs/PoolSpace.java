@@ -0,0 +1,88 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+/**
+ * Space accounting of a {@link ZFSPool}, taken at one point in time.
+ *
+ * <p>
+ * All the sizes are exact byte counts.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see ZFSPool#getSpace()
+ */
+public final class PoolSpace {
+    private final long size;
+    private final long free;
+    private final long allocated;
+    private final long freeing;
+    private final long expandSize;
+
+    /*package*/ PoolSpace(long size, long free, long allocated, long freeing, long expandSize) {
+        this.size = size;
+        this.free = free;
+        this.allocated = allocated;
+        this.freeing = freeing;
+        this.expandSize = expandSize;
+    }
+
+    /**
+     * Total size of the pool.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Space in the pool that's not allocated.
+     */
+    public long getFree() {
+        return free;
+    }
+
+    /**
+     * Space in the pool that's physically allocated.
+     */
+    public long getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * Space that's still being freed in the background after datasets or snapshots got destroyed.
+     * Always 0 with libzfs that predates asynchronous destroy.
+     */
+    public long getFreeing() {
+        return freeing;
+    }
+
+    /**
+     * Uninitialized space within the pool that can be used to grow it,
+     * or 0 if the underlying devices haven't grown.
+     */
+    public long getExpandSize() {
+        return expandSize;
+    }
+
+    @Override
+    public String toString() {
+        return "size="+size+",free="+free+",allocated="+allocated+",freeing="+freeing+",expandsz="+expandSize;
+    }
+}
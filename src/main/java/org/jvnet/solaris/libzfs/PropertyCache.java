@@ -0,0 +1,70 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+
+/**
+ * Properties of a {@link ZFSObject} kept around for a while.
+ *
+ * <p>
+ * The string values are all read in one go when this is created. The numeric ones
+ * are added as they are read, since only libzfs knows which properties have them.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see ZFSObject#setPropertyCacheTtl(long, java.util.concurrent.TimeUnit)
+ */
+/*package*/ final class PropertyCache {
+    /*package*/ final PropertySnapshot values;
+    private final Map<zfs_prop_t,Long> longs = new EnumMap<zfs_prop_t,Long>(zfs_prop_t.class);
+    /**
+     * {@link System#nanoTime()} when this expires.
+     */
+    private final long expiry;
+
+    /*package*/ PropertyCache(PropertySnapshot values, long ttl) {
+        this.values = values;
+        this.expiry = System.nanoTime()+ttl;
+    }
+
+    /*package*/ boolean isExpired() {
+        return System.nanoTime()-expiry >= 0;
+    }
+
+    /**
+     * @return
+     *      null if the numeric value hasn't been read yet.
+     */
+    /*package*/ synchronized Long getLong(zfs_prop_t prop) {
+        return longs.get(prop);
+    }
+
+    /*package*/ synchronized void putLong(zfs_prop_t prop, long value) {
+        longs.put(prop, value);
+    }
+
+    /*package*/ synchronized void putLongs(Map<zfs_prop_t,Long> values) {
+        longs.putAll(values);
+    }
+}
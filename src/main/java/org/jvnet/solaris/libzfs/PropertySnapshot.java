@@ -0,0 +1,157 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+
+import com.sun.jna.NativeLong;
+
+/**
+ * Immutable set of ZFS property values of a {@link ZFSObject}, read in a single pass.
+ *
+ * <p>
+ * Obtained from {@link ZFSObject#getPropertySnapshot()} or
+ * {@link ZFSObject#getPropertySnapshot(Template)}. Properties that libzfs
+ * doesn't report for the dataset (for example {@code volsize} on a file system)
+ * are simply absent.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class PropertySnapshot {
+    private final String name;
+    private final Map<zfs_prop_t,String> values;
+
+    /*package*/ PropertySnapshot(String name, EnumMap<zfs_prop_t,String> values) {
+        this.name = name;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Name of the dataset this snapshot was taken from, like "rpool/foo/bar".
+     */
+    public String getDatasetName() {
+        return name;
+    }
+
+    /**
+     * Gets the value of the given property.
+     *
+     * @return
+     *      null if the property wasn't requested, or if libzfs didn't report it.
+     */
+    public String get(zfs_prop_t prop) {
+        return values.get(prop);
+    }
+
+    public boolean has(zfs_prop_t prop) {
+        return values.containsKey(prop);
+    }
+
+    /**
+     * Properties present in this snapshot.
+     */
+    public Set<zfs_prop_t> keySet() {
+        return values.keySet();
+    }
+
+    /**
+     * Read-only view of this snapshot as a map.
+     */
+    public Map<zfs_prop_t,String> asMap() {
+        return values;
+    }
+
+    /**
+     * Narrows this snapshot down to the properties of the given template.
+     */
+    /*package*/ PropertySnapshot select(Template template) {
+        EnumMap<zfs_prop_t,String> r = new EnumMap<zfs_prop_t,String>(zfs_prop_t.class);
+        for (zfs_prop_t p : template.props) {
+            String v = values.get(p);
+            if (v!=null)
+                r.put(p, v);
+        }
+        return new PropertySnapshot(name, r);
+    }
+
+    @Override
+    public String toString() {
+        return name+values;
+    }
+
+    /**
+     * Precompiled set of properties to read into a {@link PropertySnapshot}.
+     *
+     * <p>
+     * Creating a template once and reusing it for many datasets avoids
+     * recomputing the native property codes on every read.
+     */
+    public static final class Template {
+        /*package*/ final zfs_prop_t[] props;
+        /*package*/ final NativeLong[] codes;
+
+        private Template(Collection<zfs_prop_t> props) {
+            EnumSet<zfs_prop_t> s = EnumSet.noneOf(zfs_prop_t.class);
+            s.addAll(props);
+            // this is just a marker for the number of properties, not a real one
+            s.remove(zfs_prop_t.ZFS_NUM_PROPS);
+
+            this.props = s.toArray(new zfs_prop_t[s.size()]);
+            this.codes = new NativeLong[this.props.length];
+            for (int i=0; i<this.props.length; i++)
+                this.codes[i] = ZFSObject.nativeCode(this.props[i]);
+        }
+
+        /**
+         * Properties this template reads.
+         */
+        public Set<zfs_prop_t> getProperties() {
+            EnumSet<zfs_prop_t> s = EnumSet.noneOf(zfs_prop_t.class);
+            Collections.addAll(s,props);
+            return s;
+        }
+    }
+
+    /**
+     * Template that reads every known property.
+     */
+    public static final Template ALL = new Template(EnumSet.allOf(zfs_prop_t.class));
+
+    /**
+     * Creates a template that reads the given set of properties.
+     */
+    public static Template template(Collection<zfs_prop_t> props) {
+        return new Template(props);
+    }
+
+    public static Template template(zfs_prop_t... props) {
+        EnumSet<zfs_prop_t> s = EnumSet.noneOf(zfs_prop_t.class);
+        Collections.addAll(s,props);
+        return new Template(s);
+    }
+}
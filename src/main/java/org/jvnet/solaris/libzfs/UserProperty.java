@@ -0,0 +1,69 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+/**
+ * Value of a user-defined property of a {@link ZFSObject}, like "com.example:owner",
+ * along with where it comes from.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see ZFSObject#getUserProperties()
+ */
+public final class UserProperty {
+    private final String name;
+    private final String value;
+    private final String source;
+    private final boolean inherited;
+
+    /*package*/ UserProperty(String name, String value, String source, String dataset) {
+        this.name = name;
+        this.value = value;
+        this.source = source;
+        this.inherited = source!=null && !source.equals(dataset);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Name of the dataset the property is set on, as reported by libzfs.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * True if the property is set on an ancestor, rather than on the dataset itself.
+     */
+    public boolean isInherited() {
+        return inherited;
+    }
+
+    @Override
+    public String toString() {
+        return name+'='+value;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+
+/**
+ * Walks the dataset tree and feeds a {@link ZFSVisitor} straight from the libzfs iterator callbacks.
+ *
+ * <p>
+ * Only the datasets on the path from the starting point to the current one
+ * have their native handles open at any given time, plus whatever the visitor retains.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+/*package*/ final class Walker<T extends ZFSObject> {
+    private final LibZFS library;
+    private final Class<T> type;
+    private final ZFSVisitor<? super T> visitor;
+
+    /**
+     * If false, we don't need to iterate snapshots at all.
+     */
+    private final boolean wantSnapshots;
+
+    /**
+     * Set once the visitor asks to stop, or fails.
+     */
+    private boolean stopped;
+
+    /**
+     * Problem thrown from the visitor, to be rethrown once we are out of the native code.
+     * Letting it propagate through JNA would just get it logged and swallowed.
+     */
+    private Throwable failure;
+
+    private final IterCallbacks.DatasetSink snapshotSink = new IterCallbacks.DatasetSink() {
+        public int accept(zfs_handle_t handle) {
+            return onDataset(handle, false);
+        }
+    };
+
+    private final IterCallbacks.DatasetSink childSink = new IterCallbacks.DatasetSink() {
+        public int accept(zfs_handle_t handle) {
+            return onDataset(handle, true);
+        }
+    };
+
+    /*package*/ Walker(LibZFS library, Class<T> type, ZFSVisitor<? super T> visitor) {
+        this.library = library;
+        this.type = type;
+        this.visitor = visitor;
+        this.wantSnapshots = ZFSType.typesOf(type).contains(ZFSType.SNAPSHOT);
+    }
+
+    /**
+     * Walks the descendants of the given dataset.
+     */
+    /*package*/ boolean walk(ZFSObject root) {
+        walkChildren(root);
+        return done();
+    }
+
+    /**
+     * Walks all the root file systems and their descendants.
+     */
+    /*package*/ boolean walkRoots() {
+        IterCallbacks.iterRoot(library, childSink);
+        return done();
+    }
+
+    private boolean done() {
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException)failure;
+        if (failure instanceof Error)
+            throw (Error)failure;
+        return !stopped;
+    }
+
+    private void walkChildren(ZFSObject parent) {
+        if (wantSnapshots)
+            parent.iterSnapshots(snapshotSink);
+        if (!stopped)
+            IterCallbacks.iterFilesystems(library, parent.handle, childSink);
+    }
+
+    private int onDataset(zfs_handle_t handle, boolean descend) {
+        if (stopped) {
+            library.api.zfs_close(handle);
+            return 1;
+        }
+
+        ZFSObject o = null;
+        try {
+            o = ZFSObject.create(library, handle);
+            if (type.isInstance(o) && !visitor.visit(type.cast(o)))
+                stopped = true;
+
+            if (descend && !stopped)
+                walkChildren(o);
+        } catch (RuntimeException e) {
+            failure = e;
+            stopped = true;
+        } catch (Error e) {
+            failure = e;
+            stopped = true;
+        } finally {
+            if (o == null)
+                library.api.zfs_close(handle);
+            else if (!o.isRetained())
+                o.discard();
+        }
+        return stopped ? 1 : 0;
+    }
+}
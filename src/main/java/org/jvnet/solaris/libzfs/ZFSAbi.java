@@ -0,0 +1,273 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jvnet.solaris.libzfs.ACLBuilder.PermissionBuilder;
+import org.jvnet.solaris.libzfs.jna.libzfs;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+
+/**
+ * Native calls whose signature differs between ABIs, resolved once per {@link LibZFS}
+ * from the {@code LIBZFS4J_ABI*} settings.
+ *
+ * <p>
+ * Each operation is an interface with an implementation per signature, so callers
+ * just make one virtual call instead of looking up the setting and comparing strings
+ * every time. Settings that disable a call, or that we don't recognize, get an implementation
+ * that logs why the call was skipped, and throws {@link ZFSException} in the latter case.
+ *
+ * @author Kohsuke Kawaguchi
+ * @author Jim Klimov
+ */
+/*package*/ final class ZFSAbi {
+    /*package*/ interface Snapshot {
+        void snapshot(LibZFS library, String fullName, boolean recursive);
+    }
+
+    /*package*/ interface Destroy {
+        void destroy(ZFSObject dataset);
+    }
+
+    /*package*/ interface DestroySnapshot {
+        void destroySnapshot(ZFSObject dataset, String snapshotName);
+    }
+
+    /*package*/ interface IterSnapshots {
+        /**
+         * @return
+         *      the return value from libzfs, which is the non-zero value
+         *      from the callback if it stopped the iteration.
+         */
+        int iterSnapshots(LibZFS library, zfs_handle_t handle, String name, boolean simple, libzfs.zfs_iter_f callback);
+    }
+
+    /*package*/ interface Permission {
+        void apply(ZFSObject dataset, ACLBuilder acl);
+    }
+
+    /*package*/ final Snapshot snapshot;
+    /*package*/ final Destroy destroy;
+    /*package*/ final DestroySnapshot destroySnapshot;
+    /*package*/ final IterSnapshots iterSnapshots;
+    /*package*/ final Permission allow;
+    /*package*/ final Permission unallow;
+
+    /*package*/ ZFSAbi(Map<String,String> features) {
+        String n, v;
+
+        n = "LIBZFS4J_ABI_zfs_snapshot";
+        v = value(features, n);
+        if (v.equals("openzfs") || v.equals("legacy")) {
+            /* good for both "openzfs" and "legacy" as we know them today */
+            snapshot = new Snapshot() {
+                public void snapshot(LibZFS library, String fullName, boolean recursive) {
+                    if (library.api.zfs_snapshot(library.getHandle(), fullName, recursive, null) != 0)
+                        throw new ZFSException(library);
+                }
+            };
+        } else
+        if (v.equals("pre-nv96")) {
+            /* Very-very old, prehistoric signature */
+            /* Be careful to not call this signature on newer OSes though,
+             * because it is a subset of newer ABI and so does not cause a
+             * link error - but may provide random data as the last arg. */
+            snapshot = new Snapshot() {
+                public void snapshot(LibZFS library, String fullName, boolean recursive) {
+                    if (library.api.zfs_snapshot(library.getHandle(), fullName, recursive) != 0)
+                        throw new ZFSException(library);
+                }
+            };
+        } else {
+            snapshot = new Skipped("createSnapshot", n, v);
+        }
+
+        n = "LIBZFS4J_ABI_zfs_destroy";
+        v = value(features, n);
+        if (v.equals("openzfs")) {
+            destroy = new Destroy() {
+                public void destroy(ZFSObject dataset) {
+                    if (dataset.library.api.zfs_destroy(dataset.handle,false/*?*/) != 0)
+                        throw new ZFSException(dataset.library,"Failed to destroy "+dataset.getName());
+                }
+            };
+        } else
+        if (v.equals("legacy")) {
+            destroy = new Destroy() {
+                public void destroy(ZFSObject dataset) {
+                    if (dataset.library.api.zfs_destroy(dataset.handle) != 0)
+                        throw new ZFSException(dataset.library,"Failed to destroy "+dataset.getName());
+                }
+            };
+        } else {
+            destroy = new Skipped("destroy", n, v);
+        }
+
+        n = "LIBZFS4J_ABI_zfs_destroy_snaps";
+        v = value(features, n);
+        if (v.equals("openzfs")) {
+            destroySnapshot = new DestroySnapshot() {
+                public void destroySnapshot(ZFSObject dataset, String snapshotName) {
+                    if (dataset.library.api.zfs_destroy_snaps(dataset.handle, snapshotName, false/*?*/) != 0)
+                        throw new ZFSException(dataset.library,"Failed to destroy "+dataset.getName());
+                }
+            };
+        } else
+        if (v.equals("legacy")) {
+            destroySnapshot = new DestroySnapshot() {
+                public void destroySnapshot(ZFSObject dataset, String snapshotName) {
+                    if (dataset.library.api.zfs_destroy_snaps(dataset.handle, snapshotName) != 0)
+                        throw new ZFSException(dataset.library,"Failed to destroy "+dataset.getName());
+                }
+            };
+        } else {
+            destroySnapshot = new Skipped("destroySnapshot", n, v);
+        }
+
+        n = "LIBZFS4J_ABI_zfs_iter_snapshots";
+        v = value(features, n);
+        if (v.equals("openzfs")) {
+            iterSnapshots = new IterSnapshots() {
+                public int iterSnapshots(LibZFS library, zfs_handle_t handle, String name, boolean simple, libzfs.zfs_iter_f callback) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, "CALLING LIBZFS4J: libzfs4j::snapshots() was called while LIBZFS4J_ABI_zfs_iter_snapshots=='openzfs' for dataset '" + name + "' ...");
+                    return library.api.zfs_iter_snapshots(handle, simple, callback, null);
+                }
+            };
+        } else
+        if (v.equals("legacy")) {
+            iterSnapshots = new IterSnapshots() {
+                public int iterSnapshots(LibZFS library, zfs_handle_t handle, String name, boolean simple, libzfs.zfs_iter_f callback) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, "CALLING LIBZFS4J: libzfs4j::snapshots() was called while LIBZFS4J_ABI_zfs_iter_snapshots=='legacy' for dataset '" + name + "' ...");
+                    return library.api.zfs_iter_snapshots(handle, callback, null);
+                }
+            };
+        } else {
+            iterSnapshots = new Skipped("snapshots", n, v);
+        }
+
+        /*
+         * The zfs_perm_* routines are gone since Sol10u8,
+         * see the comments in ZFSObject.allow() for details.
+         */
+        n = "LIBZFS4J_ABI_zfs_perm_set";
+        v = value(features, n);
+        if (v.equals("pre-sol10u8")) {
+            allow = new Permission() {
+                public void apply(ZFSObject dataset, ACLBuilder acl) {
+                    for (PermissionBuilder b : acl.builders) {
+                        if(dataset.library.api.zfs_perm_set(dataset.handle,b.toNativeFormat(dataset))!=0)
+                            throw new ZFSException(dataset.library);
+                    }
+                }
+            };
+        } else {
+            allow = new Skipped("allow", n, v);
+        }
+
+        n = "LIBZFS4J_ABI_zfs_perm_remove";
+        v = value(features, n);
+        if (v.equals("pre-sol10u8")) {
+            unallow = new Permission() {
+                public void apply(ZFSObject dataset, ACLBuilder acl) {
+                    for (PermissionBuilder b : acl.builders) {
+                        if(dataset.library.api.zfs_perm_remove(dataset.handle,b.toNativeFormat(dataset))!=0)
+                            throw new ZFSException(dataset.library);
+                    }
+                }
+            };
+        } else {
+            unallow = new Skipped("unallow", n, v);
+        }
+    }
+
+    private static String value(Map<String,String> features, String key) {
+        String v = features.get(key);
+        return v==null ? "NO-OP" : v;
+    }
+
+    /**
+     * Used when the setting disables the call, or isn't something we know how to call.
+     */
+    private static final class Skipped implements Snapshot, Destroy, DestroySnapshot, IterSnapshots, Permission {
+        private final String func;
+        private final String toggle;
+        private final String value;
+        /**
+         * True if the call is skipped because we don't know the value, which is an error.
+         */
+        private final boolean unknown;
+        private final String reason;
+
+        Skipped(String func, String toggle, String value) {
+            this.func = func;
+            this.toggle = toggle;
+            this.value = value;
+            if (value.equals("NO-OP")) {
+                this.unknown = false;
+                this.reason = " - skipped due to config";
+            } else
+            if (value.equals("openzfs") || value.equals("legacy")) {
+                // known ABIs that don't have this call, like zfs_perm_* in anything newer than Sol10u8
+                this.unknown = false;
+                this.reason = " and this is currently not implemented";
+            } else {
+                this.unknown = true;
+                this.reason = " and this is currently not a known value";
+            }
+        }
+
+        private void skip(LibZFS library) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + func + "() was called while " + toggle + "=='" + value + "'" + reason);
+            if (unknown)
+                throw new ZFSException(library);
+        }
+
+        public void snapshot(LibZFS library, String fullName, boolean recursive) {
+            skip(library);
+        }
+
+        public void destroy(ZFSObject dataset) {
+            skip(dataset.library);
+        }
+
+        public void destroySnapshot(ZFSObject dataset, String snapshotName) {
+            skip(dataset.library);
+        }
+
+        public int iterSnapshots(LibZFS library, zfs_handle_t handle, String name, boolean simple, libzfs.zfs_iter_f callback) {
+            skip(library);
+            return 0;
+        }
+
+        public void apply(ZFSObject dataset, ACLBuilder acl) {
+            skip(dataset.library);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(LibZFS.class.getName());
+}
@@ -20,7 +20,6 @@
  */
 package org.jvnet.solaris.libzfs;
 
-import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
 
 import org.jvnet.solaris.libzfs.jna.libzfs_handle_t;
 
@@ -43,10 +42,10 @@ public class ZFSException extends RuntimeException {
     }
 
     /*package*/ ZFSException(LibZFS zfs, String message) {
-        super((message==null?"":message+" : ")+LIBZFS.libzfs_error_description(zfs.getHandle()));
+        super((message==null?"":message+" : ")+zfs.api.libzfs_error_description(zfs.getHandle()));
 
         final libzfs_handle_t h = zfs.getHandle();
-        code = ErrorCode.fromCode(LIBZFS.libzfs_errno(h));
+        code = ErrorCode.fromCode(zfs.api.libzfs_errno(h));
     }
 
     /**
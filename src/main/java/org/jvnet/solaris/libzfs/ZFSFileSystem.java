@@ -20,7 +20,6 @@
  */
 package org.jvnet.solaris.libzfs;
 
-import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
 
 import java.io.File;
 
@@ -41,10 +40,14 @@ public final class ZFSFileSystem extends ZFSObject {
     /**
      * Is this dataset mounted.
      *
+     * <p>
+     * To check many file systems at once, {@link LibZFS#getMounted(java.util.Collection)} is faster.
+     * See also {@link LibZFS#setMountTableCached(boolean)}.
+     *
      * @return is dataset mounted.
      */
     public boolean isMounted() {
-        final boolean isMounted = LIBZFS.zfs_is_mounted(handle, null);
+        final boolean isMounted = library.api.zfs_is_mounted(handle, null);
         return isMounted;
     }
 
@@ -86,9 +89,17 @@ public final class ZFSFileSystem extends ZFSObject {
      *      See {@link MountFlags}.
      */
     public void mount(int flags) {
-        int r = LIBZFS.zfs_mount(handle, null, flags);
-        if (r != 0)
-            throw new ZFSException(library,"Failed to mount "+getName()+": code="+r);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.MOUNT, getName());
+        try {
+            int r = library.api.zfs_mount(handle, null, flags);
+            if (r != 0)
+                throw new ZFSException(library,"Failed to mount "+getName()+": code="+r);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+        library.mountStateChanged(this, true);
     }
 
     /**
@@ -105,16 +116,24 @@ public final class ZFSFileSystem extends ZFSObject {
      *      See {@link MountFlags}.
      */
     public void unmount(int flags) {
-        if (LIBZFS.zfs_unmount(handle, null, flags) != 0) {
-            throw new ZFSException(library,"Failed to unmount "+getName());
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.UNMOUNT, getName());
+        try {
+            if (library.api.zfs_unmount(handle, null, flags) != 0) {
+                throw new ZFSException(library,"Failed to unmount "+getName());
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
+        library.mountStateChanged(this, false);
     }
 
     /**
      * Share this dataset.
      */
     public void share() {
-        if (LIBZFS.zfs_share(handle) != 0) {
+        if (library.api.zfs_share(handle) != 0) {
             throw new ZFSException(library);
         }
     }
@@ -123,7 +142,7 @@ public final class ZFSFileSystem extends ZFSObject {
      * Unshare this dataset.
      */
     public void unshare() {
-        if (LIBZFS.zfs_unshare(handle) != 0) {
+        if (library.api.zfs_unshare(handle) != 0) {
             throw new ZFSException(library);
         }
     }
@@ -20,29 +20,35 @@
  */
 package org.jvnet.solaris.libzfs;
 
-import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
 
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_XDR;
+
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.logging.Level;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import org.jvnet.solaris.libzfs.ACLBuilder.PermissionBuilder;
+import org.jvnet.solaris.jna.NativeCleaner;
 import org.jvnet.solaris.libzfs.jna.libzfs;
 import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
 import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
 import org.jvnet.solaris.libzfs.jna.zfs_type_t;
+import org.jvnet.solaris.nvlist.NVListDecoder;
 import org.jvnet.solaris.nvlist.jna.nvlist_t;
 
 import com.sun.jna.Memory;
 import com.sun.jna.NativeLong;
-import com.sun.jna.Pointer;
-import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
 
 /**
  * Represents ZFS snapshot, file system, volume, or pool.
@@ -50,11 +56,35 @@ import com.sun.jna.ptr.IntByReference;
  * @author Kohsuke Kawaguchi
  * @author Jim Klimov
  */
-public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
+public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer, Closeable {
 
     /*package*/ final LibZFS library;
+    /**
+     * Stays the same until this object is disposed, since with the identity map,
+     * other threads may be passing it to libzfs at any time.
+     */
     /*package*/ zfs_handle_t handle;
+    private final Releaser releaser;
     private final String name;
+    private long createTxg = -1;
+    /**
+     * Cache of {@link #getUserProperties()} for the current handle, or null.
+     */
+    private volatile Map<String,UserProperty> userProperties;
+    /**
+     * Properties read while caching is enabled, or null.
+     */
+    private volatile PropertyCache propertyCache;
+    /**
+     * Time to live of {@link #propertyCache} in nanoseconds, or -1 to use that of the library.
+     */
+    private volatile long propertyCacheTtl = -1;
+    private boolean retained;
+    /**
+     * Whether {@link IdentityMap} has handed out this object to anyone but the code that created it.
+     * Guarded by the identity map.
+     */
+    /*package*/ boolean shared;
 
     ZFSObject(final LibZFS library, final zfs_handle_t handle) {
         this.library = library;
@@ -67,19 +97,39 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
             throw new ZFSException(library);
         }
         this.handle = handle;
-        this.name = LIBZFS.zfs_get_name(this.handle);
+        this.name = library.api.zfs_get_name(this.handle);
+        this.releaser = new Releaser(this, handle, library.acquireHandle());
+        ZFSSession.track(library, this);
     }
 
     /**
      * Instantiate the right subtype.
      */
     /*package*/ static ZFSObject create(LibZFS parent, zfs_handle_t handle) {
-        switch (ZFSType.fromCode(LIBZFS.zfs_get_type(handle))) {
-        case FILESYSTEM:    return new ZFSFileSystem(parent,handle);
-        case SNAPSHOT:      return new ZFSSnapshot(parent,handle);
-        case VOLUME:        return new ZFSVolume(parent,handle);
+        IdentityMap m = parent.getIdentityMap();
+        if (m!=null) {
+            ZFSObject o = m.get(parent.api.zfs_get_name(handle));
+            if (o!=null) {
+                parent.api.zfs_close(handle);
+                return o;
+            }
+        }
+
+        ZFSObject o;
+        switch (ZFSType.fromCode(parent.api.zfs_get_type(handle))) {
+        case FILESYSTEM:    o = new ZFSFileSystem(parent,handle); break;
+        case SNAPSHOT:      o = new ZFSSnapshot(parent,handle); break;
+        case VOLUME:        o = new ZFSVolume(parent,handle); break;
         default:            throw new AssertionError();
         }
+
+        if (m!=null) {
+            ZFSObject r = m.intern(o);
+            if (r!=o)
+                o.dispose();    // lost the race with another thread
+            return r;
+        }
+        return o;
     }
 
     public LibZFS getLibrary() {
@@ -98,9 +148,21 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
         return library.getPool(name.substring(0,idx));
     }
 
+    /**
+     * Gets the transaction group in which this dataset was created.
+     *
+     * <p>
+     * This never changes for a dataset, so it's read only once.
+     */
+    private long getCreateTxg() {
+        if (createTxg<0)
+            createTxg = getLong(zfs_prop_t.ZFS_PROP_CREATETXG);
+        return createTxg;
+    }
+
     public int compareTo(ZFSObject that) {
-        long a = Long.parseLong(this.getZfsProperty(zfs_prop_t.ZFS_PROP_CREATETXG));
-        long b = Long.parseLong(that.getZfsProperty(zfs_prop_t.ZFS_PROP_CREATETXG));
+        long a = this.getCreateTxg();
+        long b = that.getCreateTxg();
 
         if (a > b) {
             return 1;
@@ -117,7 +179,14 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
     }
 
     public <T extends ZFSObject> List<T> children(Class<T> type) {
-        return children(type, new ArrayList<T>(), false);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.ITERATE, name);
+        try {
+            return children(type, new ArrayList<T>(), false);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
     }
 
     public List<ZFSObject> descendants() {
@@ -126,32 +195,107 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
     }
 
     public <T extends ZFSObject> List<T> descendants(Class<T> type) {
-        return children(type, new ArrayList<T>(), true);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.ITERATE, name);
+        try {
+            return children(type, new ArrayList<T>(), true);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
+
+    /**
+     * Lists the names of the children, or all the descendants, of the given type.
+     *
+     * <p>
+     * This returns the same datasets in the same order as {@link #children(Class)}
+     * and {@link #descendants(Class)}, but it's much cheaper when the caller only
+     * needs the names, as no {@link ZFSObject} gets created along the way.
+     * The only difference is that snapshots of a dataset are listed in the order
+     * libzfs reports them, as sorting them by creation would require reading their properties.
+     */
+    public List<String> listNames(Class<? extends ZFSObject> type, boolean recursive) {
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.ITERATE, name);
+        try {
+            return new NameLister(library, type, recursive).list(handle, name);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
     }
 
     private <T extends ZFSObject> List<T> children(Class<T> type, List<T> list, boolean recursive) {
-        for (ZFSObject snap : snapshots()) {
-            if(type.isInstance(snap))
+        Set<ZFSType> types = ZFSType.typesOf(type);
+
+        // don't even look at snapshots if the caller isn't interested in them
+        if (types.contains(ZFSType.SNAPSHOT)) {
+            for (ZFSObject snap : collectSnapshots())
                 list.add(type.cast(snap));
         }
-        for (ZFSObject child : getChildren()) {
-            if (!child.getName().contains("@")) {
-                if(type.isInstance(child))
+
+        if (recursive || types.contains(ZFSType.FILESYSTEM) || types.contains(ZFSType.VOLUME)) {
+            // zfs_iter_filesystems reports volumes as well, but unlike zfs_iter_children, not snapshots
+            for (ZFSObject child : collectFilesystems()) {
+                boolean wanted = type.isInstance(child);
+                if (wanted)
                     list.add(type.cast(child));
-                if(recursive)
+                if (recursive)
                     child.children(type,list,recursive);
+                if (!wanted)
+                    child.discard();
             }
         }
         return list;
     }
 
+    /**
+     * Visits the descendants of this dataset one by one as libzfs finds them,
+     * instead of building up a list of all of them first like {@link #descendants(Class)} does.
+     *
+     * <p>
+     * Datasets are visited in the same order as {@link #descendants(Class)}, except
+     * that snapshots come in the order libzfs reports them instead of being sorted.
+     * Each object handed to the visitor is disposed as soon as the visitor returns,
+     * unless the visitor calls {@link #retain()} on it.
+     *
+     * @return
+     *      false if the visitor stopped the walk, true if it visited everything.
+     */
+    public <T extends ZFSObject> boolean walk(Class<T> type, ZFSVisitor<? super T> visitor) {
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.ITERATE, name);
+        try {
+            return new Walker<T>(library, type, visitor).walk(this);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
+
+    /**
+     * Keeps this object usable after the {@link ZFSVisitor} it was handed to returns.
+     *
+     * <p>
+     * This only matters for objects that a walk hands out; objects obtained in
+     * other ways are never disposed behind the caller's back.
+     */
+    public void retain() {
+        retained = true;
+    }
+
+    /*package*/ boolean isRetained() {
+        return retained;
+    }
+
     /**
      * Creates a clone from this snapshot.
      * 
      * This method fails if this {@link ZFSObject} is not a snapshot.
      */
     public ZFSFileSystem clone(String fullDestinationName) {
-        if (LIBZFS.zfs_clone(handle, fullDestinationName, null) != 0)
+        if (library.api.zfs_clone(handle, fullDestinationName, null) != 0)
             throw new ZFSException(library);
         ZFSFileSystem target = (ZFSFileSystem) library.open(fullDestinationName);
         // this behavior mimics "zfs clone"
@@ -206,29 +350,13 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
     public ZFSSnapshot createSnapshot(final String snapshotName,
             final boolean recursive) {
         String fullName = name + '@' + snapshotName;
-        String abi_thisfunc = "createSnapshot";
-        String abi_toggle = "LIBZFS4J_ABI_zfs_snapshot";
-        String abi = library.getFeature(abi_toggle);
-        if (abi.equals("NO-OP")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
-        } else
-        if (abi.equals("openzfs") || abi.equals("legacy")) {
-            /* good for both "openzfs" and "legacy" as we know them today */
-            if (LIBZFS.zfs_snapshot(library.getHandle(), fullName, recursive, null) != 0) {
-                throw new ZFSException(library);
-            }
-        } else
-        if (abi.equals("pre-nv96")) {
-            /* Very-very old, prehistoric signature */
-            /* Be careful to not call this signature on newer OSes though,
-             * because it is a subset of newer ABI and so does not cause a
-             * link error - but may provide random data as the last arg. */
-            if (LIBZFS.zfs_snapshot(library.getHandle(), fullName, recursive) != 0) {
-                throw new ZFSException(library);
-            }
-        } else {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not a known value");
-            throw new ZFSException(library);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.CREATE_SNAPSHOT, fullName);
+        try {
+            library.abi.snapshot.snapshot(library, fullName, recursive);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
 
         final ZFSSnapshot dataSet = (ZFSSnapshot) library.open(fullName, zfs_type_t.SNAPSHOT);
@@ -257,23 +385,15 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * {@link ErrorCode#EZFS_EXISTS}.
      */
     public void destroy() {
-        String abi_thisfunc = "destroy";
-        String abi_toggle = "LIBZFS4J_ABI_zfs_destroy";
-        String abi = library.getFeature(abi_toggle);
-        if (abi.equals("NO-OP")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
-        } else
-        if (abi.equals("openzfs")) {
-            if (LIBZFS.zfs_destroy(handle,false/*?*/) != 0)
-                throw new ZFSException(library,"Failed to destroy "+getName());
-        } else
-        if (abi.equals("legacy")) {
-            if (LIBZFS.zfs_destroy(handle) != 0)
-                throw new ZFSException(library,"Failed to destroy "+getName());
-        } else {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not a known value");
-            throw new ZFSException(library);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.DESTROY, name);
+        try {
+            library.abi.destroy.destroy(this);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
+        library.evict(name);
     }
 
     /**
@@ -291,23 +411,16 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * Destroy a named snapshot of this dataset.
      */
     public void destroySnapshot(String name) {
-        String abi_thisfunc = "destroySnapshot";
-        String abi_toggle = "LIBZFS4J_ABI_zfs_destroy_snaps";
-        String abi = library.getFeature(abi_toggle);
-        if (abi.equals("NO-OP")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
-        } else
-        if (abi.equals("openzfs")) {
-            if (LIBZFS.zfs_destroy_snaps(handle, name, false/*?*/) != 0)
-                throw new ZFSException(library,"Failed to destroy "+getName());
-        } else
-        if (abi.equals("legacy")) {
-            if (LIBZFS.zfs_destroy_snaps(handle, name) != 0)
-                throw new ZFSException(library,"Failed to destroy "+getName());
-        } else {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not a known value");
-            throw new ZFSException(library);
+        String fullName = getName()+'@'+name;
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.DESTROY, fullName);
+        try {
+            library.abi.destroySnapshot.destroySnapshot(this, name);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
+        library.evict(fullName);
     }
 
     /**
@@ -321,15 +434,69 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
         destroySnapshot(name);
     }
 
+    /**
+     * Eagerly releases the native resource associated with this wrapper,
+     * instead of waiting for GC to take care of it.
+     */
     public synchronized void dispose() {
-        if (handle != null)
-            LIBZFS.zfs_close(handle);
+        if (handle != null) {
+            IdentityMap m = library.getIdentityMap();
+            if (m != null)
+                m.remove(this);
+            OperationTracer.Span s = library.tracer.begin(ZFSOperation.CLOSE, name);
+            try {
+                releaser.clean();
+            } finally {
+                s.end();
+            }
+            ZFSSession.untrack(library, this);
+        }
         handle = null;
     }
 
+    /**
+     * Disposes this object after the library used it internally,
+     * unless the identity map has handed it out to others as well.
+     */
+    /*package*/ void discard() {
+        IdentityMap m = library.getIdentityMap();
+        if (m==null || m.release(this))
+            dispose();
+    }
+
+    /**
+     * Has libzfs read the state of this dataset again, so that subsequent reads reflect it.
+     *
+     * <p>
+     * libzfs reads the properties of a dataset when it's opened, and keeps returning
+     * the same values until they are read again. This is done on the existing handle,
+     * rather than by reopening it, since other threads may be using the handle.
+     * Same as {@link #refreshProperties()}.
+     */
+    public void refresh() {
+        refreshProperties();
+    }
+
+    /**
+     * Has libzfs read the properties of this dataset again, without reopening the handle,
+     * and drops those cached.
+     *
+     * @see #setPropertyCacheTtl(long, TimeUnit)
+     */
+    public void refreshProperties() {
+        library.api.zfs_refresh_properties(handle);
+        invalidateProperties();
+    }
+
+    /**
+     * Same as {@link #dispose()}.
+     */
+    public void close() {
+        dispose();
+    }
+
     @Override
     public final boolean equals(Object o) {
-        // todo would using zfs_prop_t.ZFS_PROP_CREATETXG be more accurate?
         if (this == o) {
             return true;
         }
@@ -337,36 +504,32 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
             return false;
         }
 
+        // two objects that were opened separately for the same dataset are equal
         final ZFSObject zfsObject = (ZFSObject) o;
-        final boolean equals = handle.equals(zfsObject.handle);
+        final boolean equals = name.equals(zfsObject.name);
         return equals;
     }
 
     public List<ZFSObject> filesystems() {
-        final List<ZFSObject> r = new ArrayList<ZFSObject>();
-        LIBZFS.zfs_iter_filesystems(handle, new libzfs.zfs_iter_f() {
-            public int callback(zfs_handle_t handle, Pointer arg) {
-                r.add(ZFSObject.create(library, handle));
-                return 0;
-            }
-        }, null);
-        return r;
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.ITERATE, name);
+        try {
+            return collectFilesystems();
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        dispose();
-        super.finalize();
+    private List<ZFSObject> collectFilesystems() {
+        final List<ZFSObject> r = new ArrayList<ZFSObject>();
+        IterCallbacks.iterFilesystems(library, handle, new IterCallbacks.Collector<ZFSObject>(library, ZFSObject.class, r));
+        return r;
     }
 
     public List<ZFSObject> getChildren() {
         final List<ZFSObject> list = new ArrayList<ZFSObject>();
-        LIBZFS.zfs_iter_children(handle, new libzfs.zfs_iter_f() {
-            public int callback(zfs_handle_t handle, Pointer arg) {
-                list.add(ZFSObject.create(library, handle));
-                return 0;
-            }
-        }, null);
+        IterCallbacks.iterChildren(library, handle, new IterCallbacks.Collector<ZFSObject>(library, ZFSObject.class, list));
         return list;
     }
 
@@ -383,76 +546,402 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * Gets the type of this {@link ZFSObject}.
      */
     public ZFSType getType() {
-        return ZFSType.fromCode(LIBZFS.zfs_get_type(handle));
+        return ZFSType.fromCode(library.api.zfs_get_type(handle));
     }
 
     public Map<zfs_prop_t,String> getZfsProperty(Collection<zfs_prop_t> props) {
-        Memory propbuf = new Memory(libzfs.ZFS_MAXPROPLEN);
-        char[] buf = null;
-        IntByReference ibr = null;
-
         Hashtable<zfs_prop_t, String> map = new Hashtable<zfs_prop_t, String>();
-        for (zfs_prop_t prop : props) {
-            int ret = LIBZFS.zfs_prop_get(handle, new NativeLong(prop.ordinal()),
-                    propbuf, libzfs.ZFS_MAXPROPLEN, ibr, buf,
-                    new NativeLong(0), true);
-            if(ret==0)
-                map.put(prop, propbuf.getString(0));
+        PropertyCache c = cachedProperties();
+        if (c != null) {
+            for (zfs_prop_t prop : props) {
+                String v = c.values.get(prop);
+                if (v!=null)
+                    map.put(prop, v);
+            }
+            return map;
+        }
+
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_PROPERTY, name);
+        try {
+            Memory propbuf = library.getPropertyBuffer();
+            synchronized (propbuf) {
+                for (zfs_prop_t prop : props) {
+                    String v = readProperty(propbuf, nativeCode(prop));
+                    if (v!=null)
+                        map.put(prop, v);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
         return map;
     }
 
     public String getZfsProperty(zfs_prop_t prop) {
-        Memory propbuf = new Memory(libzfs.ZFS_MAXPROPLEN);
-        char[] buf = null;
-        IntByReference ibr = null;
+        PropertyCache c = cachedProperties();
+        if (c != null)
+            return c.values.get(prop);
+
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_PROPERTY, name);
+        try {
+            Memory propbuf = library.getPropertyBuffer();
+            synchronized (propbuf) {
+                return readProperty(propbuf, nativeCode(prop));
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
+
+    /**
+     * Gets the raw numeric value of a property, such as sizes in bytes,
+     * transaction group numbers, or counts.
+     *
+     * <p>
+     * Unlike {@link #getZfsProperty(zfs_prop_t)}, this doesn't go through
+     * the string formatting and parsing. The value is an unsigned 64bit integer,
+     * although in practice it never gets big enough to look negative.
+     *
+     * @throws ZFSException
+     *      if the property isn't numeric or isn't available for this dataset.
+     */
+    public long getLong(zfs_prop_t prop) {
+        PropertyCache c = cachedProperties();
+        if (c != null) {
+            Long v = c.getLong(prop);
+            if (v == null) {
+                v = readLong(prop);
+                c.putLong(prop, v);
+            }
+            return v;
+        }
+        return readLong(prop);
+    }
+
+    private long readLong(zfs_prop_t prop) {
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_PROPERTY, name);
+        try {
+            LongByReference r = library.getNumericBuffer();
+            synchronized (r) {
+                if (library.api.zfs_prop_get_numeric(handle, nativeCode(prop), r, null, null, ZERO) != 0)
+                    throw new ZFSException(library,"Failed to get property "+prop+" of "+getName());
+                return r.getValue();
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
 
-        int ret = LIBZFS.zfs_prop_get(handle, new NativeLong(prop.ordinal()),
-                propbuf, libzfs.ZFS_MAXPROPLEN, ibr, buf,
-                new NativeLong(0), true);
+    /**
+     * Gets the raw numeric values of multiple properties.
+     * Properties that aren't available for this dataset are left out.
+     *
+     * @see #getLong(zfs_prop_t)
+     */
+    public Map<zfs_prop_t,Long> getLongs(Set<zfs_prop_t> props) {
+        PropertyCache c = cachedProperties();
+        if (c == null)
+            return readLongs(props);
 
+        EnumMap<zfs_prop_t,Long> map = new EnumMap<zfs_prop_t,Long>(zfs_prop_t.class);
+        Set<zfs_prop_t> missing = EnumSet.noneOf(zfs_prop_t.class);
+        for (zfs_prop_t prop : props) {
+            Long v = c.getLong(prop);
+            if (v != null)
+                map.put(prop, v);
+            else
+                missing.add(prop);
+        }
+        if (!missing.isEmpty()) {
+            Map<zfs_prop_t,Long> read = readLongs(missing);
+            c.putLongs(read);
+            map.putAll(read);
+        }
+        return map;
+    }
+
+    private EnumMap<zfs_prop_t,Long> readLongs(Set<zfs_prop_t> props) {
+        EnumMap<zfs_prop_t,Long> map = new EnumMap<zfs_prop_t,Long>(zfs_prop_t.class);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_PROPERTY, name);
+        try {
+            LongByReference r = library.getNumericBuffer();
+            synchronized (r) {
+                for (zfs_prop_t prop : props) {
+                    if (library.api.zfs_prop_get_numeric(handle, nativeCode(prop), r, null, null, ZERO) == 0)
+                        map.put(prop, r.getValue());
+                }
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+        return map;
+    }
+
+    /**
+     * Gets the space consumed by this dataset and all its descendants, in bytes.
+     */
+    public long getUsedSize() {
+        return getLong(zfs_prop_t.ZFS_PROP_USED);
+    }
+
+    /**
+     * Gets the space available to this dataset and all its children, in bytes.
+     */
+    public long getAvailableSize() {
+        return getLong(zfs_prop_t.ZFS_PROP_AVAILABLE);
+    }
+
+    /**
+     * Gets the amount of data accessible by this dataset, in bytes.
+     */
+    public long getReferencedSize() {
+        return getLong(zfs_prop_t.ZFS_PROP_REFERENCED);
+    }
+
+    /**
+     * Reads all the known properties of this dataset in one pass.
+     */
+    public PropertySnapshot getPropertySnapshot() {
+        return getPropertySnapshot(PropertySnapshot.ALL);
+    }
+
+    /**
+     * Reads the properties listed in the given template in one pass.
+     *
+     * <p>
+     * This is considerably cheaper than calling {@link #getZfsProperty(zfs_prop_t)}
+     * repeatedly, as the native buffer and the property codes are reused.
+     */
+    public PropertySnapshot getPropertySnapshot(PropertySnapshot.Template template) {
+        PropertyCache c = cachedProperties();
+        if (c != null)
+            return template == PropertySnapshot.ALL ? c.values : c.values.select(template);
+        return readPropertySnapshot(template);
+    }
+
+    private PropertySnapshot readPropertySnapshot(PropertySnapshot.Template template) {
+        EnumMap<zfs_prop_t,String> values = new EnumMap<zfs_prop_t,String>(zfs_prop_t.class);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_PROPERTY, name);
+        try {
+            Memory propbuf = library.getPropertyBuffer();
+            synchronized (propbuf) {
+                for (int i=0; i<template.props.length; i++) {
+                    String v = readProperty(propbuf, template.codes[i]);
+                    if (v!=null)
+                        values.put(template.props[i], v);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+        return new PropertySnapshot(name, values);
+    }
+
+    /**
+     * Caches the properties of this dataset for the given time, overriding
+     * {@link LibZFS#setPropertyCacheTtl(long, TimeUnit) the setting of the library}.
+     *
+     * <p>
+     * While cached, {@link #getZfsProperty(zfs_prop_t)}, {@link #getLong(zfs_prop_t)},
+     * {@link #getPropertySnapshot()} and the like answer from memory. All the string values
+     * are read in one go on the first such call after the cache expires, and numeric ones as
+     * they are asked for. The cache is dropped by {@link #setProperty(String, String)},
+     * {@link #inheritProperty(String)}, {@link #rename(String, boolean)}, {@link #rollback(boolean)},
+     * {@link #refresh()} and {@link #refreshProperties()}. Once it expires, libzfs is made to
+     * read the properties again, so the time to live bounds how long changes made by others,
+     * including the space used by new data and snapshots, go unnoticed.
+     *
+     * @param ttl
+     *      0 to not cache.
+     */
+    public void setPropertyCacheTtl(long ttl, TimeUnit unit) {
+        propertyCacheTtl = Math.max(0, unit.toNanos(ttl));
+        invalidateProperties();
+    }
+
+    /**
+     * Gets the time properties of this dataset are cached for, be it set on this object or on the library.
+     */
+    public long getPropertyCacheTtl(TimeUnit unit) {
+        long ttl = propertyCacheTtl;
+        return ttl >= 0 ? unit.convert(ttl, TimeUnit.NANOSECONDS) : library.getPropertyCacheTtl(unit);
+    }
+
+    /**
+     * Gets the cached properties, reading them if they have expired.
+     *
+     * @return
+     *      null if caching isn't enabled.
+     */
+    private PropertyCache cachedProperties() {
+        long ttl = getPropertyCacheTtl(TimeUnit.NANOSECONDS);
+        if (ttl <= 0)
+            return null;
+
+        PropertyCache c = propertyCache;
+        if (c != null && !c.isExpired())
+            return c;
+        synchronized (this) {
+            c = propertyCache;
+            if (c == null || c.isExpired()) {
+                // libzfs keeps answering with what it read when the handle was opened or last
+                // refreshed, which may be long ago even when the cache was just dropped
+                library.api.zfs_refresh_properties(handle);
+                userProperties = null;
+                c = new PropertyCache(readPropertySnapshot(PropertySnapshot.ALL), ttl);
+                propertyCache = c;
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Reads a single property into the given buffer.
+     *
+     * @return
+     *      null if libzfs doesn't report this property for this dataset.
+     */
+    private String readProperty(Memory propbuf, NativeLong prop) {
+        int ret = library.api.zfs_prop_get(handle, prop,
+                propbuf, libzfs.ZFS_MAXPROPLEN, null, null,
+                ZERO, true);
         return ((ret != 0) ? null : propbuf.getString(0));
     }
 
+    /**
+     * Gets the {@link NativeLong} that represents the given property in native calls.
+     */
+    /*package*/ static NativeLong nativeCode(zfs_prop_t prop) {
+        return PROP_CODES[prop.ordinal()];
+    }
+
+    private static final NativeLong ZERO = new NativeLong(0);
+
+    private static final NativeLong[] PROP_CODES = new NativeLong[zfs_prop_t.values().length];
+
+    static {
+        for (zfs_prop_t p : zfs_prop_t.values())
+            PROP_CODES[p.ordinal()] = new NativeLong(p.ordinal());
+    }
+
+    /**
+     * Gets the values of the given user-defined properties.
+     *
+     * @return
+     *      null if any of them isn't set.
+     * @see #getUserProperties()
+     */
     public Hashtable<String, String> getUserProperty(Collection<String> keys) {
-        // don't we need to release userProps later?
+        Map<String,UserProperty> props = getUserProperties();
         Hashtable<String, String> map = new Hashtable<String, String>();
-
-        nvlist_t userProps = LIBZFS.zfs_get_user_props(handle);
         for (String key : keys) {
-            nvlist_t v = userProps.getNVList(key);
-            if (v == null)
+            UserProperty p = props.get(key);
+            if (p == null)
                 return null;
-            map.put(key, v.getString("value"));
+            map.put(key, p.getValue());
         }
         return map;
     }
 
+    /**
+     * Gets the value of the given user-defined property.
+     *
+     * @return
+     *      null if it isn't set.
+     * @see #getUserProperties()
+     */
     public String getUserProperty(String key) {
-        // don't we need to release userProps later?
-        nvlist_t userProps = LIBZFS.zfs_get_user_props(handle);
-        nvlist_t v = userProps.getNVList(key);
-        if (v == null)
-            return null;
+        UserProperty p = getUserProperties().get(key);
+        return p == null ? null : p.getValue();
+    }
+
+    /**
+     * Gets all the user-defined properties of this dataset, including inherited ones.
+     *
+     * <p>
+     * They are read from libzfs in one go the first time, and then kept until
+     * {@link #setProperty(String, String)}, {@link #inheritProperty(String)},
+     * {@link #refresh()} or {@link #refreshProperties()}. Just like the other properties,
+     * changes made elsewhere show up only after one of the latter two, or once the
+     * {@link #setPropertyCacheTtl(long, TimeUnit) property cache} expires.
+     *
+     * @return
+     *      Read-only map from property names to their values.
+     */
+    public Map<String,UserProperty> getUserProperties() {
+        Map<String,UserProperty> r = userProperties;
+        if (r != null)
+            return r;
+
+        synchronized (this) {
+            r = userProperties;
+            if (r != null)
+                return r;
+            OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_PROPERTY, name);
+            try {
+                r = readUserProperties();
+            } catch (RuntimeException e) {
+                throw s.fail(e);
+            } finally {
+                s.end();
+            }
+            userProperties = r;
+            return r;
+        }
+    }
+
+    private Map<String,UserProperty> readUserProperties() {
+        // this list belongs to the handle, which frees it when it's closed
+        nvlist_t userProps = library.api.zfs_get_user_props(handle);
+        if (userProps == null)
+            throw new ZFSException(library);
+
+        // packed and decoded in Java, instead of a few lookups per property.
+        // XDR, so that this doesn't depend on how the host lays out nvpair_t
+        Map<String,UserProperty> r = new LinkedHashMap<String,UserProperty>();
+        for (Map.Entry<String,Object> e : NVListDecoder.decode(userProps.pack(NV_ENCODE_XDR)).entrySet()) {
+            if (!(e.getValue() instanceof Map))
+                continue;
+            Map<?,?> v = (Map<?,?>) e.getValue();
+            r.put(e.getKey(), new UserProperty(e.getKey(), (String) v.get("value"), (String) v.get("source"), name));
+        }
+        return Collections.unmodifiableMap(r);
+    }
 
-        return v.getString("value");
+    /**
+     * Drops the cached properties, after they've been changed.
+     */
+    private synchronized void invalidateProperties() {
+        userProperties = null;
+        propertyCache = null;
     }
 
     @Override
     public final int hashCode() {
-        return handle.hashCode();
+        return name.hashCode();
     }
 
     /**
      * Clears the given property on this dataset, causing it to be inherited from its parent.
      */
     public void inheritProperty(String key) {
-        if (LIBZFS.zfs_prop_inherit(handle, key) != 0)
+        if (library.api.zfs_prop_inherit(handle, key) != 0)
             throw new ZFSException(library);
+        if (key.equals("mountpoint"))
+            library.refreshMountPoints();
 
-        // libzfs doesn't show us a new value until we reopen the handle, so do it now
-        dispose();
-        handle = LIBZFS.zfs_open(library.getHandle(), name, zfs_type_t.DATASET);
+        // libzfs doesn't always show us a new value until the properties are read again, so do it now
+        refresh();
     }
 
     /**
@@ -461,7 +950,7 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * @return is dataset shared.
      */
     public boolean isShared() {
-        final boolean isShared = LIBZFS.zfs_is_shared(handle);
+        final boolean isShared = library.api.zfs_is_shared(handle);
         return isShared;
     }
 
@@ -472,8 +961,11 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      *      {@link ZFSObject} representing the new renamed dataset.
      */
     public ZFSObject rename(String fullName, boolean recursive) {
-        if (LIBZFS.zfs_rename(handle, fullName, recursive) != 0)
+        if (library.api.zfs_rename(handle, fullName, recursive) != 0)
             throw new ZFSException(library);
+        library.evict(name);
+        invalidateProperties();
+        library.refreshMountPoints();
 
         return library.open(fullName);
     }
@@ -502,8 +994,10 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
                 }
             }
         }
-        if (LIBZFS.zfs_rollback(fs.handle, handle, recursive) != 0)
+        if (library.api.zfs_rollback(fs.handle, handle, recursive) != 0)
             throw new ZFSException(library);
+        fs.invalidateProperties();
+        invalidateProperties();
 
         return library.open(filesystem);
     }
@@ -512,8 +1006,11 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * Sets a user-defined property.
      */
     public void setProperty(String key, String value) {
-        if (LIBZFS.zfs_prop_set(handle, key, value) != 0)
+        if (library.api.zfs_prop_set(handle, key, value) != 0)
             throw new ZFSException(library,"Failed to set property "+key+" on "+getName());
+        invalidateProperties();
+        if (key.equals("mountpoint"))
+            library.refreshMountPoints();
     }
 
     /**
@@ -522,37 +1019,31 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * @return all snapshot datasets.
      */
     public Set<ZFSSnapshot> snapshots() {
-        final Set<ZFSSnapshot> set = new TreeSet<ZFSSnapshot>();
-        String abi_thisfunc = "snapshots";
-        String abi_toggle = "LIBZFS4J_ABI_zfs_iter_snapshots";
-        String abi = library.getFeature(abi_toggle);
-        if (abi.equals("NO-OP")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
-        } else
-        if (abi.equals("openzfs")) {
-            LOGGER.log(Level.FINE, "CALLING LIBZFS4J: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' for dataset '" + getName() + "' ...");
-            LIBZFS.zfs_iter_snapshots(handle, false, new libzfs.zfs_iter_f() {
-                public int callback(zfs_handle_t handle, Pointer arg) {
-                    set.add((ZFSSnapshot)ZFSObject.create(library, handle));
-                    return 0;
-                }
-            }, null);
-        } else
-        if (abi.equals("legacy")) {
-            LOGGER.log(Level.FINE, "CALLING LIBZFS4J: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' for dataset '" + getName() + "' ...");
-            LIBZFS.zfs_iter_snapshots(handle, new libzfs.zfs_iter_f() {
-                public int callback(zfs_handle_t handle, Pointer arg) {
-                    set.add((ZFSSnapshot)ZFSObject.create(library, handle));
-                    return 0;
-                }
-            }, null);
-        } else {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not a known value");
-            throw new ZFSException(library);
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.ITERATE, name);
+        try {
+            return collectSnapshots();
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
         }
+    }
+
+    private Set<ZFSSnapshot> collectSnapshots() {
+        final Set<ZFSSnapshot> set = new TreeSet<ZFSSnapshot>();
+        iterSnapshots(new IterCallbacks.Collector<ZFSSnapshot>(library, ZFSSnapshot.class, set));
         return set;
     }
 
+    /**
+     * Iterates the snapshots of this dataset into the given sink.
+     *
+     * @see IterCallbacks#iterSnapshots(LibZFS, zfs_handle_t, String, boolean, IterCallbacks.DatasetSink)
+     */
+    /*package*/ int iterSnapshots(IterCallbacks.DatasetSink sink) {
+        return IterCallbacks.iterSnapshots(library, handle, name, false, sink);
+    }
+
     /**
      * Grants the specified set of permissions to this dataset.
      * NOTE that the "zfs_perm_*" libzfs.so routines are not present at
@@ -562,25 +1053,7 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * related data types and comments are still present in the headers.
      */
     public void allow(ACLBuilder acl) {
-        String abi_thisfunc = "allow";
-        String abi_toggle = "LIBZFS4J_ABI_zfs_perm_set";
-        String abi = library.getFeature(abi_toggle);
-        if (abi.equals("NO-OP")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
-        } else
-        if (abi.equals("openzfs") || abi.equals("legacy")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not implemented");
-        } else
-        if (abi.equals("pre-sol10u8")) {
-            for (PermissionBuilder b : acl.builders) {
-                if(LIBZFS.zfs_perm_set(handle,b.toNativeFormat(this))!=0)
-                    throw new ZFSException(library);
-            }
-        } else {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not a known value");
-            throw new ZFSException(library);
-        }
-
+        library.abi.allow.apply(this, acl);
     }
 
     /**
@@ -588,24 +1061,7 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
      * See also the detailed "NOTE" comment above.
      */
     public void unallow(ACLBuilder acl) {
-        String abi_thisfunc = "unallow";
-        String abi_toggle = "LIBZFS4J_ABI_zfs_perm_remove";
-        String abi = library.getFeature(abi_toggle);
-        if (abi.equals("NO-OP")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' - skipped due to config");
-        } else
-        if (abi.equals("openzfs") || abi.equals("legacy")) {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not implemented");
-        } else
-        if (abi.equals("pre-sol10u8")) {
-            for (PermissionBuilder b : acl.builders) {
-                if(LIBZFS.zfs_perm_remove(handle,b.toNativeFormat(this))!=0)
-                    throw new ZFSException(library);
-            }
-        } else {
-            LOGGER.log(Level.FINE, "NO-OP: libzfs4j::" + abi_thisfunc + "() was called while " + abi_toggle + "=='" + abi + "' and this is currently not a known value");
-            throw new ZFSException(library);
-        }
+        library.abi.unallow.apply(this, acl);
     }
 
 
@@ -617,5 +1073,25 @@ public abstract class ZFSObject implements Comparable<ZFSObject>, ZFSContainer {
         return getName();
     }
 
+    /**
+     * Closes the {@code zfs_handle_t} once the {@link ZFSObject} is closed or collected.
+     */
+    private static final class Releaser extends NativeCleaner.Cleanable {
+        private final zfs_handle_t handle;
+        private final LibZFS.HandleReleaser library;
+
+        Releaser(ZFSObject owner, zfs_handle_t handle, LibZFS.HandleReleaser library) {
+            super(owner, "zfs handle of "+owner.name);
+            this.handle = handle;
+            this.library = library;
+        }
+
+        @Override
+        protected void release() {
+            library.api.zfs_close(handle);
+            library.unacquire();
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(LibZFS.class.getName());
 }
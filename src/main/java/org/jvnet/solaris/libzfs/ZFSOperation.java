@@ -0,0 +1,58 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+/**
+ * Operations reported to {@link ZFSOperationListener}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public enum ZFSOperation {
+    /**
+     * Opening a dataset handle, from {@link LibZFS#open(String, int)} and the like.
+     * Looking up a dataset that doesn't exist is reported with {@link ErrorCode#EZFS_NOENT}.
+     */
+    OPEN,
+    /**
+     * Releasing a dataset handle with {@link ZFSObject#dispose()}.
+     */
+    CLOSE,
+    /**
+     * Reading properties of a dataset, such as {@link ZFSObject#getZfsProperty(org.jvnet.solaris.libzfs.jna.zfs_prop_t)}
+     * or {@link ZFSObject#getPropertySnapshot()}. A read of many properties at once is reported once.
+     */
+    GET_PROPERTY,
+    /**
+     * Listing or walking the datasets under a dataset, or the root file systems.
+     */
+    ITERATE,
+    CREATE_SNAPSHOT,
+    /**
+     * Destroying a dataset or a snapshot.
+     */
+    DESTROY,
+    MOUNT,
+    UNMOUNT,
+    /**
+     * Reading properties of a pool, such as {@link ZFSPool#getProperty(org.jvnet.solaris.libzfs.jna.zpool_prop_t)}.
+     */
+    GET_POOL_PROPERTY
+}
@@ -0,0 +1,59 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+/**
+ * Gets notified of the operations {@link LibZFS} and the datasets and pools it opened perform,
+ * for example to record them as Java Flight Recorder events.
+ *
+ * <p>
+ * Install one with {@link LibZFS#setOperationListener(ZFSOperationListener)}, or with the
+ * {@code LIBZFS4J_OPERATION_LISTENER} setting. Both methods are called on the thread
+ * that performs the operation, so they need to be thread-safe and quick.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public interface ZFSOperationListener {
+    /**
+     * Called right before an operation starts.
+     *
+     * @param dataset
+     *      Name of the dataset or pool the operation is about, like "rpool/foo@snap".
+     *      Null for operations that aren't about a particular dataset, like listing the root file systems.
+     * @return
+     *      Anything the listener wants back in {@link #end(Object, ZFSOperation, String, long, ErrorCode)},
+     *      such as an event that's been started. Can be null.
+     */
+    Object begin(ZFSOperation operation, String dataset);
+
+    /**
+     * Called when the operation started with {@link #begin(ZFSOperation, String)} completes.
+     *
+     * @param context
+     *      What {@link #begin(ZFSOperation, String)} returned.
+     * @param durationNanos
+     *      How long the operation took, in nanoseconds.
+     * @param error
+     *      Null if the operation succeeded. {@link ErrorCode#EZFS_UNKNOWN} if it failed
+     *      with an exception other than {@link ZFSException}.
+     */
+    void end(Object context, ZFSOperation operation, String dataset, long durationNanos, ErrorCode error);
+}
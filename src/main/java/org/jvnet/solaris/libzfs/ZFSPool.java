@@ -20,8 +20,10 @@
  */
 package org.jvnet.solaris.libzfs;
 
-import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
 
+import java.io.Closeable;
+
+import org.jvnet.solaris.jna.NativeCleaner;
 import org.jvnet.solaris.libzfs.jna.libzfs;
 import org.jvnet.solaris.libzfs.jna.zpool_handle_t;
 import org.jvnet.solaris.libzfs.jna.zpool_prop_t;
@@ -35,9 +37,14 @@ import com.sun.jna.ptr.PointerByReference;
  *
  * @author Kohsuke Kawaguchi
  */
-public final class ZFSPool {
+public final class ZFSPool implements Closeable {
     /*package*/ final LibZFS library;
+    /**
+     * Guarded by {@code this}, so that the handle can't be closed
+     * while another thread is passing it to libzfs.
+     */
     /*package*/ zpool_handle_t handle;
+    private Releaser releaser;
     private final String name;
 
     ZFSPool(final LibZFS parent, final zpool_handle_t handle) {
@@ -47,78 +54,144 @@ public final class ZFSPool {
 
         this.library = parent;
         this.handle = handle;
-        this.name = LIBZFS.zpool_get_name(handle);
+        this.name = library.api.zpool_get_name(handle);
+        this.releaser = new Releaser(this, handle, parent.acquireHandle());
+        ZFSSession.track(parent, this);
     }
 
     public String getName() {
         return name;
     }
 
-    public String getProperty(zpool_prop_t prop) {
-        Memory propbuf = new Memory(libzfs.ZPOOL_MAXPROPLEN);
-        int ret = LIBZFS.zpool_get_prop(handle, new NativeLong(prop
-                .ordinal()), propbuf, new NativeLong(
-                libzfs.ZPOOL_MAXPROPLEN), null);
-        return ((ret != 0) ? null : propbuf.getString(0));
+    public synchronized String getProperty(zpool_prop_t prop) {
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_POOL_PROPERTY, name);
+        try {
+            zpool_handle_t h = handle();
+            Memory propbuf = library.getPropertyBuffer();
+            synchronized (propbuf) {
+                int ret = library.api.zpool_get_prop(h, nativeCode(prop), propbuf, MAXPROPLEN, null);
+                return ((ret != 0) ? null : propbuf.getString(0));
+            }
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
     }
 
-    public ZPoolStatus getStatus() {
-        return ZPoolStatus.values()[LIBZFS.zpool_get_status(handle,new PointerByReference())];
+    /**
+     * Gets the raw numeric value of a pool property, such as sizes in bytes.
+     *
+     * <p>
+     * Unlike {@link #getProperty(zpool_prop_t)}, this returns the exact value
+     * and not a human-readable approximation like "1.2G".
+     *
+     * <p>
+     * libzfs reads all the pool properties into the handle the first time one is read,
+     * and keeps returning those values. {@link #refresh()} reopens the handle, so call it
+     * to see the current values of a pool that's kept open for long.
+     */
+    public synchronized long getLong(zpool_prop_t prop) {
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_POOL_PROPERTY, name);
+        try {
+            return library.api.zpool_get_prop_int(handle(), nativeCode(prop), null);
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
+    }
+
+    public synchronized ZPoolStatus getStatus() {
+        OperationTracer.Span s = library.tracer.begin(ZFSOperation.GET_POOL_PROPERTY, name);
+        try {
+            return ZPoolStatus.values()[library.api.zpool_get_status(handle(),new PointerByReference())];
+        } catch (RuntimeException e) {
+            throw s.fail(e);
+        } finally {
+            s.end();
+        }
     }
 
     /**
      * Gets the total size of this pool in bytes.
-     *
-     * <p>
-     * Because of the way libzfs report the size information
-     * (as strings like 1.2G), the precision of this information is low.
      */
     public long getSize() {
-        return toSize(getProperty(zpool_prop_t.ZPOOL_PROP_SIZE));
+        return getLong(zpool_prop_t.ZPOOL_PROP_SIZE);
     }
 
     /**
      * Gets the remaining free space size of this pool in bytes.
-     *
-     * <p>
-     * Because of the way libzfs report the size information
-     * (as strings like 1.2G), the precision of this information is low.
      */
     public long getAvailableSize() {
-        return toSize(getProperty(zpool_prop_t.ZPOOL_PROP_FREE));
+        return getLong(zpool_prop_t.ZPOOL_PROP_FREE);
     }
 
     /**
      * Gets the size of this pool that's already used in bytes.
-     *
-     * <p>
-     * Because of the way libzfs report the size information
-     * (as strings like 1.2G), the precision of this information is low.
      */
     public long getUsedSize() {
         return Math.max(0, getSize()-getAvailableSize());
     }
 
     /**
-     * @param value
-     *      String that represents a size
+     * Gets the current space accounting of this pool.
+     *
+     * <p>
+     * This refreshes the pool information once and reads all the numbers
+     * from it, so they are consistent with each other.
      */
-    private long toSize(String value) {
-        value = value.toUpperCase();
-        double d = Double.parseDouble(value.substring(0,value.length()-1));
-        long multiplier = 1;
-        switch(value.charAt(value.length()-1)) {
-        case 'P':   multiplier *= 1024; // fall through
-        case 'T':   multiplier *= 1024; // fall through
-        case 'G':   multiplier *= 1024; // fall through
-        case 'M':   multiplier *= 1024; // fall through
-        case 'K':   multiplier *= 1024; // fall through
-        }
+    public synchronized PoolSpace getSpace() {
+        refresh();
+        return new PoolSpace(
+                getLong(zpool_prop_t.ZPOOL_PROP_SIZE),
+                getLong(zpool_prop_t.ZPOOL_PROP_FREE),
+                getLong(zpool_prop_t.ZPOOL_PROP_ALLOCATED),
+                getLong(zpool_prop_t.ZPOOL_PROP_FREEING),
+                getLong(zpool_prop_t.ZPOOL_PROP_EXPANDSZ));
+    }
+
+    /**
+     * Discards the pool properties libzfs has cached in this handle,
+     * so that subsequent reads reflect the current state of the pool.
+     */
+    public synchronized void refresh() {
+        handle();
+        // zpool_refresh_stats() only reloads the pool configuration, and the properties
+        // stay cached in the handle until it's closed, so reopen it. Every use of the
+        // handle holds the lock of this object, so closing the old one here is safe.
+        zpool_handle_t h = library.api.zpool_open(library.getHandle(), name);
+        if (h==null)
+            throw new ZFSException(library,"Failed to reopen pool "+name);
+        Releaser r = new Releaser(this, h, library.acquireHandle());
+        releaser.clean();
+        handle = h;
+        releaser = r;
+    }
 
-        if(multiplier==1)   return (long)d;
+    /**
+     * Gets the handle to pass to libzfs. The caller must hold the lock of this object.
+     */
+    private zpool_handle_t handle() {
+        if (handle==null)
+            throw new IllegalStateException("Pool "+name+" is already disposed");
+        return handle;
+    }
 
-        // this is to control the rounding error
-        return ((long)(d*1024))*(multiplier/1024);
+    /**
+     * Gets the {@link NativeLong} that represents the given property in native calls.
+     */
+    private static NativeLong nativeCode(zpool_prop_t prop) {
+        return PROP_CODES[prop.ordinal()];
+    }
+
+    private static final NativeLong MAXPROPLEN = new NativeLong(libzfs.ZPOOL_MAXPROPLEN);
+
+    private static final NativeLong[] PROP_CODES = new NativeLong[zpool_prop_t.values().length];
+
+    static {
+        for (zpool_prop_t p : zpool_prop_t.values())
+            PROP_CODES[p.ordinal()] = new NativeLong(p.ordinal());
     }
 
     /**
@@ -127,8 +200,8 @@ public final class ZFSPool {
      * @param force
      *      Not exactly sure what this does.
      */
-    public void disableDatasets(boolean force) {
-        check(LIBZFS.zpool_disable_datasets(handle,force));
+    public synchronized void disableDatasets(boolean force) {
+        check(library.api.zpool_disable_datasets(handle(),force));
     }
 
     private void check(int r) {
@@ -139,23 +212,50 @@ public final class ZFSPool {
     /**
      * Does "zpool export".
      */
-    public void export(boolean force, boolean hardForce) {
+    public synchronized void export(boolean force, boolean hardForce) {
         disableDatasets(force);
         if(hardForce)
-            check(LIBZFS.zpool_export_force(handle));
+            check(library.api.zpool_export_force(handle()));
         else
-            check(LIBZFS.zpool_export(handle,force));
+            check(library.api.zpool_export(handle(),force));
     }
 
+    /**
+     * Eagerly releases the native resource associated with this wrapper,
+     * instead of waiting for GC to take care of it.
+     */
     public synchronized void dispose() {
-        if (handle != null)
-            LIBZFS.zpool_close(handle);
+        if (handle != null) {
+            releaser.clean();
+            ZFSSession.untrack(library, this);
+        }
         handle = null;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
+    /**
+     * Same as {@link #dispose()}.
+     */
+    public void close() {
         dispose();
-        super.finalize();
+    }
+
+    /**
+     * Closes the {@code zpool_handle_t} once the {@link ZFSPool} is closed or collected.
+     */
+    private static final class Releaser extends NativeCleaner.Cleanable {
+        private final zpool_handle_t handle;
+        private final LibZFS.HandleReleaser library;
+
+        Releaser(ZFSPool owner, zpool_handle_t handle, LibZFS.HandleReleaser library) {
+            super(owner, "zpool handle of "+owner.name);
+            this.handle = handle;
+            this.library = library;
+        }
+
+        @Override
+        protected void release() {
+            library.api.zpool_close(handle);
+            library.unacquire();
+        }
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scope that closes all the datasets and pools opened within it.
+ *
+ * <p>
+ * Obtained from {@link LibZFS#openSession()}. While the session is open, every
+ * {@link ZFSObject} and {@link ZFSPool} that the same thread gets from the same
+ * {@link LibZFS} is recorded, and {@link #close()} closes all of them at once:
+ *
+ * <pre>
+ * ZFSSession s = zfs.openSession();
+ * try {
+ *     for (ZFSFileSystem fs : zfs.descendants(ZFSFileSystem.class))
+ *         ...
+ * } finally {
+ *     s.close();
+ * }
+ * </pre>
+ *
+ * <p>
+ * Objects that need to outlive the session can be taken out of it with {@link #keep(Closeable)}.
+ * Sessions can be nested, in which case objects go to the innermost one, and
+ * they have to be closed in the reverse order they were opened.
+ * Datasets listed by other threads, such as those of {@link LibZFS#descendants(Class, int)},
+ * are not recorded.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class ZFSSession implements Closeable {
+    private final LibZFS library;
+    private final ZFSSession outer;
+    private final List<Closeable> opened = new ArrayList<Closeable>();
+    private boolean closed;
+
+    /*package*/ ZFSSession(LibZFS library) {
+        this.library = library;
+        this.outer = CURRENT.get();
+        CURRENT.set(this);
+    }
+
+    /**
+     * Takes the given object out of this session, so that it stays open after the session is closed.
+     *
+     * @return
+     *      the same object, for chaining.
+     */
+    public <T extends Closeable> T keep(T object) {
+        remove(object);
+        return object;
+    }
+
+    private boolean remove(Closeable object) {
+        // objects tend to be closed in the reverse order they are opened, so search from the end
+        for (int i=opened.size()-1; i>=0; i--) {
+            if (opened.get(i)==object) {
+                opened.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes all the objects opened in this session, newest first.
+     */
+    public void close() {
+        if (closed)
+            return;
+        if (CURRENT.get()!=this)
+            throw new IllegalStateException("Sessions have to be closed by the thread that opened them, innermost first");
+
+        closed = true;
+        if (outer==null)
+            CURRENT.remove();
+        else
+            CURRENT.set(outer);
+
+        for (int i=opened.size()-1; i>=0; i--) {
+            try {
+                opened.get(i).close();
+            } catch (IOException e) {
+                throw new AssertionError(e);    // our objects never throw this
+            }
+        }
+        opened.clear();
+    }
+
+    /**
+     * Records a newly opened object in the innermost session of the current thread for the given library, if any.
+     */
+    /*package*/ static void track(LibZFS library, Closeable object) {
+        for (ZFSSession s=CURRENT.get(); s!=null; s=s.outer) {
+            if (s.library==library) {
+                s.opened.add(object);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called when an object gets closed on its own, so that sessions don't hold on to closed objects.
+     */
+    /*package*/ static void untrack(LibZFS library, Closeable object) {
+        for (ZFSSession s=CURRENT.get(); s!=null; s=s.outer) {
+            if (s.library==library && s.remove(object))
+                return;
+        }
+    }
+
+    private static final ThreadLocal<ZFSSession> CURRENT = new ThreadLocal<ZFSSession>();
+}
@@ -20,6 +20,9 @@
  */
 package org.jvnet.solaris.libzfs;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.jvnet.solaris.libzfs.jna.zfs_type_t;
 
 /**
@@ -79,6 +82,18 @@ public enum ZFSType {
         return null;
     }
 
+    /**
+     * Gets the types of datasets that are instances of the given class.
+     * For example, {@link ZFSObject} covers all of them.
+     */
+    /*package*/ static Set<ZFSType> typesOf(Class<? extends ZFSObject> type) {
+        EnumSet<ZFSType> r = EnumSet.noneOf(ZFSType.class);
+        for( ZFSType t : ZFSType.class.getEnumConstants() )
+            if(type.isAssignableFrom(t.type))
+                r.add(t);
+        return r;
+    }
+
     /*package*/ static ZFSType fromType(Class<? extends ZFSObject> subType) {
         for( ZFSType t : ZFSType.class.getEnumConstants() )
             if(t.type==subType)
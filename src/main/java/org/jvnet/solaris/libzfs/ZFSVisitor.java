@@ -0,0 +1,42 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs;
+
+/**
+ * Receives datasets one by one from {@link ZFSObject#walk(Class, ZFSVisitor)}
+ * and {@link LibZFS#walk(Class, ZFSVisitor)}.
+ *
+ * <p>
+ * The dataset handed to {@link #visit(ZFSObject)} is disposed once the call returns,
+ * unless the visitor calls {@link ZFSObject#retain()} on it.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public interface ZFSVisitor<T extends ZFSObject> {
+    /**
+     * Called for each dataset found during the walk.
+     *
+     * @return
+     *      true to continue the walk, false to stop it right away,
+     *      for example when the visitor found what it was looking for.
+     */
+    boolean visit(T dataset);
+}
@@ -20,7 +20,6 @@
  */
 package org.jvnet.solaris.libzfs;
 
-import static org.jvnet.solaris.libzfs.jna.libzfs.LIBZFS;
 
 import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
 
@@ -37,7 +36,7 @@ public final class ZFSVolume extends ZFSObject {
      * Share this dataset.
      */
     public void shareISCSI() {
-        if (LIBZFS.zfs_share_iscsi(handle) != 0) {
+        if (library.api.zfs_share_iscsi(handle) != 0) {
             throw new ZFSException(library);
         }
     }
@@ -46,7 +45,7 @@ public final class ZFSVolume extends ZFSObject {
      * Unshare this dataset.
      */
     public void unshareISCSI() {
-        if (LIBZFS.zfs_unshare_iscsi(handle) != 0) {
+        if (library.api.zfs_unshare_iscsi(handle) != 0) {
             throw new ZFSException(library);
         }
     }
@@ -0,0 +1,640 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.jna;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.EnumByReference;
+import org.jvnet.solaris.jna.PtrByReference;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+
+/**
+ * {@link libzfs} that calls the most frequently used functions through JNA direct mapping.
+ *
+ * <p>
+ * {@link libzfs#LIBZFS} goes through a dynamic proxy, which looks up the function
+ * and converts the arguments reflectively on every call. The functions used to list
+ * datasets and read their properties are called far more often than anything else,
+ * so they are bound here as native methods instead, which JNA links to libzfs once
+ * when this class is loaded. Everything else is delegated to {@link libzfs#LIBZFS}.
+ *
+ * <p>
+ * Selected by setting {@code LIBZFS4J_BINDING=direct}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class DirectLibzfs implements libzfs {
+    static {
+        Native.register("zfs");
+    }
+
+    /*
+     * Directly mapped functions
+     */
+    public native void zfs_close(zfs_handle_t handle);
+    public native String zfs_get_name(zfs_handle_t handle);
+    public native int zfs_get_type(zfs_handle_t handle);
+    public native int zfs_iter_children(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg);
+    public native int zfs_iter_filesystems(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg);
+    public native int zfs_iter_root(libzfs_handle_t lib, libzfs.zfs_iter_f callback, Pointer arg);
+    public native int zfs_iter_snapshots(zfs_handle_t handle, boolean simple, libzfs.zfs_iter_f callback, Pointer arg);
+    public native int zfs_iter_snapshots(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg);
+    public native int zfs_iter_snapshots_sorted(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg);
+    public native zfs_handle_t zfs_open(libzfs_handle_t lib, String name, int typeMask);
+    public native int zfs_prop_get(zfs_handle_t handle, NativeLong prop, Pointer _4, int cbSize, IntByReference _5, char[] _6, NativeLong _7, boolean _8);
+    public native int zfs_prop_get_numeric(zfs_handle_t handle, NativeLong prop, LongByReference r, IntByReference _4, char[] _5, NativeLong _6);
+    public native int zpool_get_prop(zpool_handle_t pool, NativeLong prop, Pointer buf, NativeLong len, EnumByReference<zprop_source_t> srctype);
+    public native long zpool_get_prop_int(zpool_handle_t pool, NativeLong prop, EnumByReference<zprop_source_t> src);
+    public native int zpool_iter(libzfs_handle_t lib, libzfs.zpool_iter_f callback, Pointer arg);
+
+    /*
+     * Everything else goes through the proxy
+     */
+
+    public boolean is_mounted(libzfs_handle_t lib, String special, PointerByReference _2) {
+        return LIBZFS.is_mounted(lib, special, _2);
+    }
+
+    public int libzfs_errno(libzfs_handle_t lib) {
+        return LIBZFS.libzfs_errno(lib);
+    }
+
+    public String libzfs_error_action(libzfs_handle_t lib) {
+        return LIBZFS.libzfs_error_action(lib);
+    }
+
+    public String libzfs_error_description(libzfs_handle_t lib) {
+        return LIBZFS.libzfs_error_description(lib);
+    }
+
+    public void libzfs_fini(libzfs_handle_t handle) {
+        LIBZFS.libzfs_fini(handle);
+    }
+
+    public libzfs_handle_t libzfs_init() {
+        return LIBZFS.libzfs_init();
+    }
+
+    public void libzfs_mnttab_add(libzfs_handle_t lib, String specal, String mountp, String mntopts) {
+        LIBZFS.libzfs_mnttab_add(lib, specal, mountp, mntopts);
+    }
+
+    public void libzfs_mnttab_cache(libzfs_handle_t lib, boolean flag) {
+        LIBZFS.libzfs_mnttab_cache(lib, flag);
+    }
+
+    public void libzfs_mnttab_fini(libzfs_handle_t lib) {
+        LIBZFS.libzfs_mnttab_fini(lib);
+    }
+
+    public void libzfs_mnttab_init(libzfs_handle_t lib) {
+        LIBZFS.libzfs_mnttab_init(lib);
+    }
+
+    public void libzfs_mnttab_remove(libzfs_handle_t lib, String fsname) {
+        LIBZFS.libzfs_mnttab_remove(lib, fsname);
+    }
+
+    public void libzfs_print_on_error(libzfs_handle_t lib, boolean flag) {
+        LIBZFS.libzfs_print_on_error(lib, flag);
+    }
+
+    public int zfs_build_perms(zfs_handle_t handle, String who, String perms, int who_type, int deleg_type, PtrByReference<nvlist_t> ppchNVList) {
+        return LIBZFS.zfs_build_perms(handle, who, perms, who_type, deleg_type, ppchNVList);
+    }
+
+    public int zfs_clone(zfs_handle_t handle, String name, nvlist_t _3) {
+        return LIBZFS.zfs_clone(handle, name, _3);
+    }
+
+    public int zfs_create(libzfs_handle_t lib, String name, int type, nvlist_t props) {
+        return LIBZFS.zfs_create(lib, name, type, props);
+    }
+
+    public int zfs_create_ancestors(libzfs_handle_t lib, String _2) {
+        return LIBZFS.zfs_create_ancestors(lib, _2);
+    }
+
+    public boolean zfs_dataset_exists(libzfs_handle_t lib, String name, int type) {
+        return LIBZFS.zfs_dataset_exists(lib, name, type);
+    }
+
+    public void zfs_deleg_permissions() {
+        LIBZFS.zfs_deleg_permissions();
+    }
+
+    public int zfs_destroy(zfs_handle_t handle) {
+        return LIBZFS.zfs_destroy(handle);
+    }
+
+    public int zfs_destroy(zfs_handle_t handle, boolean defer) {
+        return LIBZFS.zfs_destroy(handle, defer);
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name) {
+        return LIBZFS.zfs_destroy_snaps(handle, name);
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name, boolean defer) {
+        return LIBZFS.zfs_destroy_snaps(handle, name, defer);
+    }
+
+    public int zfs_expand_proplist(zfs_handle_t handle, PointerByReference _2) {
+        return LIBZFS.zfs_expand_proplist(handle, _2);
+    }
+
+    public void zfs_free_allows(libzfs.zfs_allow_t p) {
+        LIBZFS.zfs_free_allows(p);
+    }
+
+    public libzfs_handle_t zfs_get_handle(zfs_handle_t handle) {
+        return LIBZFS.zfs_get_handle(handle);
+    }
+
+    public zpool_handle_t zfs_get_pool_handle(zfs_handle_t h) {
+        return LIBZFS.zfs_get_pool_handle(h);
+    }
+
+    public nvlist_t zfs_get_user_props(zfs_handle_t handle) {
+        return LIBZFS.zfs_get_user_props(handle);
+    }
+
+    public zfs_handle_t zfs_handle_dup(zfs_handle_t src) {
+        return LIBZFS.zfs_handle_dup(src);
+    }
+
+    public int zfs_ioctl(libzfs_handle_t lib, int _2, zfs_cmd cmd) {
+        return LIBZFS.zfs_ioctl(lib, _2, cmd);
+    }
+
+    public boolean zfs_is_mounted(zfs_handle_t handle, PointerByReference _3) {
+        return LIBZFS.zfs_is_mounted(handle, _3);
+    }
+
+    public boolean zfs_is_shared(zfs_handle_t handle) {
+        return LIBZFS.zfs_is_shared(handle);
+    }
+
+    public boolean zfs_is_shared_iscsi(zfs_handle_t handle) {
+        return LIBZFS.zfs_is_shared_iscsi(handle);
+    }
+
+    public boolean zfs_is_shared_nfs(zfs_handle_t handle, PointerByReference ppch) {
+        return LIBZFS.zfs_is_shared_nfs(handle, ppch);
+    }
+
+    public boolean zfs_is_shared_smb(zfs_handle_t handle, PointerByReference ppch) {
+        return LIBZFS.zfs_is_shared_smb(handle, ppch);
+    }
+
+    public int zfs_iter_dependents(zfs_handle_t handle, boolean _2, libzfs.zfs_iter_f callback, Pointer arg) {
+        return LIBZFS.zfs_iter_dependents(handle, _2, callback, arg);
+    }
+
+    public int zfs_iter_snapspec(zfs_handle_t handle, libzfs.zfs_iter_f callback, Pointer arg) {
+        return LIBZFS.zfs_iter_snapspec(handle, callback, arg);
+    }
+
+    public int zfs_mount(zfs_handle_t handle, String options, int mountFlags) {
+        return LIBZFS.zfs_mount(handle, options, mountFlags);
+    }
+
+    public int zfs_name_valid(String name, zfs_type_t type) {
+        return LIBZFS.zfs_name_valid(name, type);
+    }
+
+    public void zfs_nicenum(long _1, char[] buf, NativeLong size) {
+        LIBZFS.zfs_nicenum(_1, buf, size);
+    }
+
+    public int zfs_nicestrtonum(libzfs_handle_t lib, String _2, LongByReference r) {
+        return LIBZFS.zfs_nicestrtonum(lib, _2, r);
+    }
+
+    public zfs_handle_t zfs_path_to_zhandle(libzfs_handle_t lib, String path, int type) {
+        return LIBZFS.zfs_path_to_zhandle(lib, path, type);
+    }
+
+    public int zfs_perm_get(zfs_handle_t handle, PointerByReference _2) {
+        return LIBZFS.zfs_perm_get(handle, _2);
+    }
+
+    public int zfs_perm_remove(zfs_handle_t handle, nvlist_t perms) {
+        return LIBZFS.zfs_perm_remove(handle, perms);
+    }
+
+    public int zfs_perm_set(zfs_handle_t handle, nvlist_t perms) {
+        return LIBZFS.zfs_perm_set(handle, perms);
+    }
+
+    public int zfs_promote(zfs_handle_t handle) {
+        return LIBZFS.zfs_promote(handle);
+    }
+
+    public boolean zfs_prop_align_right(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_align_right(prop);
+    }
+
+    public String zfs_prop_column_name(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_column_name(prop);
+    }
+
+    public long zfs_prop_default_numeric(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_default_numeric(prop);
+    }
+
+    public String zfs_prop_default_string(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_default_string(prop);
+    }
+
+    public long zfs_prop_get_int(zfs_handle_t handle, zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_get_int(handle, prop);
+    }
+
+    public int zfs_prop_inherit(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_prop_inherit(handle, _2);
+    }
+
+    public int zfs_prop_is_string(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_is_string(prop);
+    }
+
+    public int zfs_prop_set(zfs_handle_t handle, String propertyName, String propertyValue) {
+        return LIBZFS.zfs_prop_set(handle, propertyName, propertyValue);
+    }
+
+    public String zfs_prop_to_name(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_to_name(prop);
+    }
+
+    public String zfs_prop_values(zfs_prop_t prop) {
+        return LIBZFS.zfs_prop_values(prop);
+    }
+
+    public void zfs_refresh_properties(zfs_handle_t handle) {
+        LIBZFS.zfs_refresh_properties(handle);
+    }
+
+    public int zfs_rename(zfs_handle_t handle, String name, boolean _3) {
+        return LIBZFS.zfs_rename(handle, name, _3);
+    }
+
+    public int zfs_rollback(zfs_handle_t handle1, zfs_handle_t handle2, boolean _3) {
+        return LIBZFS.zfs_rollback(handle1, handle2, _3);
+    }
+
+    public int zfs_share(zfs_handle_t handle) {
+        return LIBZFS.zfs_share(handle);
+    }
+
+    public int zfs_share_iscsi(zfs_handle_t handle) {
+        return LIBZFS.zfs_share_iscsi(handle);
+    }
+
+    public int zfs_share_nfs(zfs_handle_t handle) {
+        return LIBZFS.zfs_share_nfs(handle);
+    }
+
+    public int zfs_share_smb(zfs_handle_t handle) {
+        return LIBZFS.zfs_share_smb(handle);
+    }
+
+    public int zfs_shareall(zfs_handle_t handle) {
+        return LIBZFS.zfs_shareall(handle);
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive) {
+        return LIBZFS.zfs_snapshot(lib, fullNameWithAtSnapShot, recursive);
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive, nvlist_t props) {
+        return LIBZFS.zfs_snapshot(lib, fullNameWithAtSnapShot, recursive, props);
+    }
+
+    public int zfs_spa_version(zfs_handle_t handle, IntByReference r) {
+        return LIBZFS.zfs_spa_version(handle, r);
+    }
+
+    public String zfs_type_to_name(zfs_type_t type) {
+        return LIBZFS.zfs_type_to_name(type);
+    }
+
+    public int zfs_unmount(zfs_handle_t handle, String _2, int umountFlags) {
+        return LIBZFS.zfs_unmount(handle, _2, umountFlags);
+    }
+
+    public int zfs_unmountall(zfs_handle_t handle, int umountFlags) {
+        return LIBZFS.zfs_unmountall(handle, umountFlags);
+    }
+
+    public int zfs_unshare(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshare(handle);
+    }
+
+    public int zfs_unshare_iscsi(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshare_iscsi(handle);
+    }
+
+    public int zfs_unshare_nfs(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_unshare_nfs(handle, _2);
+    }
+
+    public int zfs_unshare_smb(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_unshare_smb(handle, _2);
+    }
+
+    public int zfs_unshareall(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshareall(handle);
+    }
+
+    public int zfs_unshareall_bypath(zfs_handle_t handle, String _2) {
+        return LIBZFS.zfs_unshareall_bypath(handle, _2);
+    }
+
+    public int zfs_unshareall_nfs(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshareall_nfs(handle);
+    }
+
+    public int zfs_unshareall_smb(zfs_handle_t handle) {
+        return LIBZFS.zfs_unshareall_smb(handle);
+    }
+
+    public int zpool_add(zpool_handle_t pool, nvlist_t _1) {
+        return LIBZFS.zpool_add(pool, _1);
+    }
+
+    public int zpool_clear(zpool_handle_t pool, String name) {
+        return LIBZFS.zpool_clear(pool, name);
+    }
+
+    public void zpool_close(zpool_handle_t pool) {
+        LIBZFS.zpool_close(pool);
+    }
+
+    public int zpool_create(libzfs_handle_t lib, String poolName, nvlist_t nvroot, nvlist_t props) {
+        return LIBZFS.zpool_create(lib, poolName, nvroot, props);
+    }
+
+    public int zpool_create_zvol_links(zpool_handle_t pool) {
+        return LIBZFS.zpool_create_zvol_links(pool);
+    }
+
+    public int zpool_destroy(zpool_handle_t pool) {
+        return LIBZFS.zpool_destroy(pool);
+    }
+
+    public int zpool_disable_datasets(zpool_handle_t pool, boolean force) {
+        return LIBZFS.zpool_disable_datasets(pool, force);
+    }
+
+    public int zpool_enable_datasets(zpool_handle_t pool, String _2, int _3) {
+        return LIBZFS.zpool_enable_datasets(pool, _2, _3);
+    }
+
+    public int zpool_expand_proplist(zpool_handle_t pool, PointerByReference _2) {
+        return LIBZFS.zpool_expand_proplist(pool, _2);
+    }
+
+    public int zpool_export(zpool_handle_t pool, boolean force) {
+        return LIBZFS.zpool_export(pool, force);
+    }
+
+    public int zpool_export_force(zpool_handle_t pool) {
+        return LIBZFS.zpool_export_force(pool);
+    }
+
+    public nvlist_t zpool_find_import(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        return LIBZFS.zpool_find_import(lib, argc, argv);
+    }
+
+    public nvlist_t zpool_find_import_activeok(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        return LIBZFS.zpool_find_import_activeok(lib, argc, argv);
+    }
+
+    public nvlist_t zpool_find_import_byguid(libzfs_handle_t lib, int argc, PointerByReference argv, long guid) {
+        return LIBZFS.zpool_find_import_byguid(lib, argc, argv, guid);
+    }
+
+    public nvlist_t zpool_find_import_byname(libzfs_handle_t lib, int argc, PointerByReference argv, String pool) {
+        return LIBZFS.zpool_find_import_byname(lib, argc, argv, pool);
+    }
+
+    public nvlist_t zpool_find_import_cached(libzfs_handle_t lib, String cachefile, String poolname, long guid) {
+        return LIBZFS.zpool_find_import_cached(lib, cachefile, poolname, guid);
+    }
+
+    public nvlist_t zpool_find_vdev(zpool_handle_t pool, String path, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        return LIBZFS.zpool_find_vdev(pool, path, avail_spare, l2cache, log);
+    }
+
+    public nvlist_t zpool_find_vdev_by_physpath(zpool_handle_t pool, String ppath, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        return LIBZFS.zpool_find_vdev_by_physpath(pool, ppath, avail_spare, l2cache, log);
+    }
+
+    public void zpool_free_handles(libzfs_handle_t lib) {
+        LIBZFS.zpool_free_handles(lib);
+    }
+
+    public nvlist_t zpool_get_config(zpool_handle_t pool, PointerByReference ppchNVList) {
+        return LIBZFS.zpool_get_config(pool, ppchNVList);
+    }
+
+    public int zpool_get_errlog(zpool_handle_t pool, PointerByReference ppchNVList) {
+        return LIBZFS.zpool_get_errlog(pool, ppchNVList);
+    }
+
+    public libzfs_handle_t zpool_get_handle(zpool_handle_t handle) {
+        return LIBZFS.zpool_get_handle(handle);
+    }
+
+    public int zpool_get_history(zpool_handle_t pool, PointerByReference ppNVList) {
+        return LIBZFS.zpool_get_history(pool, ppNVList);
+    }
+
+    public String zpool_get_name(zpool_handle_t pool) {
+        return LIBZFS.zpool_get_name(pool);
+    }
+
+    public int zpool_get_state(zpool_handle_t pool) {
+        return LIBZFS.zpool_get_state(pool);
+    }
+
+    public int zpool_get_status(zpool_handle_t handle, PointerByReference msgid) {
+        return LIBZFS.zpool_get_status(handle, msgid);
+    }
+
+    public int zpool_import(libzfs_handle_t lib, nvlist_t config, String newname, String altroot) {
+        return LIBZFS.zpool_import(lib, config, newname, altroot);
+    }
+
+    public int zpool_import_props(libzfs_handle_t lib, nvlist_t config, String newname, nvlist_t props, BooleanByReference importfaulted) {
+        return LIBZFS.zpool_import_props(lib, config, newname, props, importfaulted);
+    }
+
+    public int zpool_import_status(nvlist_t config, PointerByReference misgid) {
+        return LIBZFS.zpool_import_status(config, misgid);
+    }
+
+    public int zpool_in_use(libzfs_handle_t lib, int _2, IntByReference r, PointerByReference ppch, BooleanByReference _5) {
+        return LIBZFS.zpool_in_use(lib, _2, r, ppch, _5);
+    }
+
+    public int zpool_label_disk(libzfs_handle_t lib, zpool_handle_t pool, String label) {
+        return LIBZFS.zpool_label_disk(lib, pool, label);
+    }
+
+    public void zpool_obj_to_path(zpool_handle_t pool, long _2, long _3, String _4, NativeLong len) {
+        LIBZFS.zpool_obj_to_path(pool, _2, _3, _4, len);
+    }
+
+    public zpool_handle_t zpool_open(libzfs_handle_t lib, String name) {
+        return LIBZFS.zpool_open(lib, name);
+    }
+
+    public zpool_handle_t zpool_open_canfail(libzfs_handle_t lib, String name) {
+        return LIBZFS.zpool_open_canfail(lib, name);
+    }
+
+    public boolean zpool_prop_align_right(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_align_right(prop);
+    }
+
+    public String zpool_prop_column_name(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_column_name(prop);
+    }
+
+    public long zpool_prop_default_numeric(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_default_numeric(prop);
+    }
+
+    public String zpool_prop_default_string(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_default_string(prop);
+    }
+
+    public String zpool_prop_to_name(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_to_name(prop);
+    }
+
+    public String zpool_prop_values(zpool_prop_t prop) {
+        return LIBZFS.zpool_prop_values(prop);
+    }
+
+    public int zpool_read_label(int _1, PointerByReference ppnvlist) {
+        return LIBZFS.zpool_read_label(_1, ppnvlist);
+    }
+
+    public int zpool_refresh_stats(zpool_handle_t pool, BooleanByReference missing) {
+        return LIBZFS.zpool_refresh_stats(pool, missing);
+    }
+
+    public int zpool_remove_zvol_links(zpool_handle_t pool) {
+        return LIBZFS.zpool_remove_zvol_links(pool);
+    }
+
+    public int zpool_scrub(zpool_handle_t pool, pool_scrub_type_t scrub) {
+        return LIBZFS.zpool_scrub(pool, scrub);
+    }
+
+    public void zpool_set_history_str(String subcommand, int argc, String[] argv, String history_str) {
+        LIBZFS.zpool_set_history_str(subcommand, argc, argv, history_str);
+    }
+
+    public int zpool_set_prop(zpool_handle_t pool, String name, String value) {
+        return LIBZFS.zpool_set_prop(pool, name, value);
+    }
+
+    public int zpool_stage_history(libzfs_handle_t lib, String _2) {
+        return LIBZFS.zpool_stage_history(lib, _2);
+    }
+
+    public String zpool_state_to_name(vdev_state_t state, vdev_aux_t aux) {
+        return LIBZFS.zpool_state_to_name(state, aux);
+    }
+
+    public int zpool_upgrade(zpool_handle_t pool, long new_version) {
+        return LIBZFS.zpool_upgrade(pool, new_version);
+    }
+
+    public int zpool_vdev_attach(zpool_handle_t pool, String old_disk, String new_disk, nvlist_t nvroot, int replacing) {
+        return LIBZFS.zpool_vdev_attach(pool, old_disk, new_disk, nvroot, replacing);
+    }
+
+    public int zpool_vdev_clear(zpool_handle_t pool, long guid) {
+        return LIBZFS.zpool_vdev_clear(pool, guid);
+    }
+
+    public int zpool_vdev_degrade(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        return LIBZFS.zpool_vdev_degrade(pool, guid, aux);
+    }
+
+    public int zpool_vdev_detach(zpool_handle_t pool, String path) {
+        return LIBZFS.zpool_vdev_detach(pool, path);
+    }
+
+    public int zpool_vdev_fault(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        return LIBZFS.zpool_vdev_fault(pool, guid, aux);
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv) {
+        return LIBZFS.zpool_vdev_name(lib, pool, nv);
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv, BooleanByReference verbose) {
+        return LIBZFS.zpool_vdev_name(lib, pool, nv, verbose);
+    }
+
+    public int zpool_vdev_offline(zpool_handle_t pool, String path, boolean istmp) {
+        return LIBZFS.zpool_vdev_offline(pool, path, istmp);
+    }
+
+    public int zpool_vdev_online(zpool_handle_t pool, String path, int flags, vdev_state_t newstate) {
+        return LIBZFS.zpool_vdev_online(pool, path, flags, newstate);
+    }
+
+    public int zpool_vdev_remove(zpool_handle_t pool, String path) {
+        return LIBZFS.zpool_vdev_remove(pool, path);
+    }
+
+    public void zprop_free_list(zprop_list_t arg) {
+        LIBZFS.zprop_free_list(arg);
+    }
+
+    public int zprop_get_list(libzfs_handle_t lib, String buf, PointerByReference result, int type) {
+        return LIBZFS.zprop_get_list(lib, buf, result, type);
+    }
+
+    public int zprop_iter(libzfs.zprop_func func, Pointer arg, boolean show_all, boolean ordered, zfs_type_t type) {
+        return LIBZFS.zprop_iter(func, arg, show_all, ordered, type);
+    }
+
+    public void zprop_print_one_property(String _1, zprop_get_cbdata_t _2, String _3, String _4, zprop_source_t _5, String _6) {
+        LIBZFS.zprop_print_one_property(_1, _2, _3, _4, _5, _6);
+    }
+
+    public int zvol_check_dump_config(String _1) {
+        return LIBZFS.zvol_check_dump_config(_1);
+    }
+}
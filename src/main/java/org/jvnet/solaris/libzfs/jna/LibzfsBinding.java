@@ -0,0 +1,52 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.jna;
+
+import java.util.Map;
+
+import org.jvnet.solaris.nvlist.jna.libnvpair;
+
+/**
+ * {@link libzfs} that isn't backed by the native libzfs, such as a simulated one
+ * for tests, and tells {@link org.jvnet.solaris.libzfs.LibZFS} how to work with it.
+ *
+ * <p>
+ * Bindings that don't implement this interface are assumed to call the native
+ * libraries, and get their name/value pair lists from {@link libnvpair#LIBNVPAIR}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public interface LibzfsBinding extends libzfs {
+    /**
+     * Gets the {@link libnvpair} that works with the name/value pair lists
+     * this binding takes and returns.
+     */
+    libnvpair getLibnvpair();
+
+    /**
+     * Gets the ABI variants this binding implements, keyed by the {@code LIBZFS4J_ABI*}
+     * setting names, such as "LIBZFS4J_ABI" → "openzfs".
+     *
+     * @return
+     *      null to have them detected by probing the native libraries.
+     */
+    Map<String,String> getAbiFeatures();
+}
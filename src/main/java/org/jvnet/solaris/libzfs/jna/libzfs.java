@@ -192,7 +192,7 @@ int zpool_label_disk(libzfs_handle_t lib, zpool_handle_t pool, String label);
 int zpool_set_prop(zpool_handle_t pool, String name, String value);
 int zpool_get_prop(zpool_handle_t pool, /* zpool_prop_t */ NativeLong prop, /*char[] */ Pointer buf,
     NativeLong len, EnumByReference<zprop_source_t> srctype);
-long zpool_get_prop_int(zpool_handle_t pool, zpool_prop_t prop, EnumByReference<zprop_source_t> src);
+long zpool_get_prop_int(zpool_handle_t pool, /* zpool_prop_t */ NativeLong prop, EnumByReference<zprop_source_t> src);
 
 String zpool_prop_to_name(zpool_prop_t prop);
 String zpool_prop_values(zpool_prop_t prop);
@@ -287,7 +287,7 @@ String zfs_prop_to_name(zfs_prop_t prop);
     int zfs_prop_set(zfs_handle_t handle, String propertyName, String propertyValue);
 int zfs_prop_get(zfs_handle_t handle, /* zfs_prop_t */ NativeLong prop, Pointer _4, int cbSize,
     /*zprop_source_t* */ IntByReference _5, char[] _6, NativeLong _7, boolean _8);
-int zfs_prop_get_numeric(zfs_handle_t handle, zfs_prop_t prop, LongByReference r,
+int zfs_prop_get_numeric(zfs_handle_t handle, /* zfs_prop_t */ NativeLong prop, LongByReference r,
     /*zprop_source_t* */ IntByReference _4, char[] _5, NativeLong _6);
 long zfs_prop_get_int(zfs_handle_t handle, zfs_prop_t prop);
 int zfs_prop_inherit(zfs_handle_t handle, String _2);
@@ -20,7 +20,7 @@
  */
 package org.jvnet.solaris.libzfs.jna;
 
-enum zprop_source_t {
+public enum zprop_source_t {
     // TODO: is this bit mask?
         ZPROP_SRC_NONE, // = 0x1,
 	ZPROP_SRC_DEFAULT, // = 0x2,
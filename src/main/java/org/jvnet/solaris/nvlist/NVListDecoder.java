@@ -0,0 +1,536 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.nvlist;
+
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_NATIVE;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_XDR;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jvnet.solaris.nvlist.jna.NVListException;
+import org.jvnet.solaris.nvlist.jna.libnvpair.data_type_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+import org.jvnet.solaris.nvlist.jna.nvpair_t;
+
+/**
+ * Decodes a packed name/value pair list entirely in Java.
+ *
+ * <p>
+ * Reading a big list like a pool configuration or the pool history through
+ * {@link nvlist_t} takes a native call per pair or per lookup. Packing it with
+ * {@link nvlist_t#pack(int)} copies the whole list into a {@link ByteBuffer}
+ * in one call instead, which is then parsed here. Both the native encoding
+ * (of either byte order) and the XDR encoding are understood, although like
+ * in libnvpair, the native encoding is only meant to be read on the host that wrote it.
+ *
+ * <p>
+ * Values are decoded the same way {@link nvpair_t#getValue()} does, except that
+ * doubles, which that can't read, come back as {@link Double}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class NVListDecoder {
+    /**
+     * Receives the pairs of a list as they are decoded.
+     */
+    public interface Handler {
+        /**
+         * Called for each pair, except those that hold nested lists.
+         *
+         * @param value
+         *      Decoded as {@link nvpair_t#getValue()} does. An empty array of lists
+         *      comes here as an empty {@link List}, since there are no lists to pass to
+         *      {@link #list(String, data_type_t, int, int)}.
+         */
+        void pair(String name, data_type_t type, Object value);
+
+        /**
+         * Called for a nested list, or for each list of an array of them, before its pairs are decoded.
+         *
+         * @param type
+         *      {@link data_type_t#DATA_TYPE_NVLIST} or {@link data_type_t#DATA_TYPE_NVLIST_ARRAY}.
+         * @param index
+         *      Index of the list in the array, 0 for a single nested list.
+         * @param count
+         *      Number of lists in the array, 1 for a single nested list.
+         * @return
+         *      Handler that receives the pairs of the nested list, or null to skip them.
+         */
+        Handler list(String name, data_type_t type, int index, int count);
+    }
+
+    /**
+     * Same as the limit libnvpair puts on nesting.
+     */
+    private static final int MAX_DEPTH = 20;
+
+    private static final Handler IGNORE = new Handler() {
+        public void pair(String name, data_type_t type, Object value) {
+        }
+
+        public Handler list(String name, data_type_t type, int index, int count) {
+            return this;
+        }
+    };
+
+    private final ByteBuffer buf;
+    /**
+     * Another view of {@link #buf} for bulk reads, which need to move the position.
+     */
+    private final ByteBuffer view;
+    private byte[] scratch = new byte[64];
+    private int pos;
+    private int depth;
+
+    private NVListDecoder(ByteBuffer buf) {
+        this.buf = buf;
+        this.view = buf.duplicate();
+    }
+
+    /**
+     * Decodes the packed list into a map, in the order the pairs were added.
+     *
+     * @param buf
+     *      Packed list from its position to its limit. The position isn't changed.
+     * @throws NVListException
+     *      if the data isn't a valid packed list.
+     */
+    public static Map<String,Object> decode(ByteBuffer buf) {
+        MapHandler h = new MapHandler();
+        decode(buf, h);
+        return h.map;
+    }
+
+    /**
+     * Packs the given list and decodes it into a map, with a single call into libnvpair.
+     *
+     * <p>
+     * The list is packed in the XDR encoding, whose layout doesn't depend on
+     * how the host or libnvpair lays out its structures.
+     *
+     * @see nvlist_t#toMap()
+     */
+    public static Map<String,Object> decode(nvlist_t list) {
+        return decode(list.pack(NV_ENCODE_XDR));
+    }
+
+    /**
+     * Decodes the packed list into the given handler.
+     *
+     * @param buf
+     *      Packed list from its position to its limit. The position isn't changed.
+     * @throws NVListException
+     *      if the data isn't a valid packed list.
+     */
+    public static void decode(ByteBuffer buf, Handler handler) {
+        NVListDecoder d = new NVListDecoder(buf.slice());
+        try {
+            d.decode(handler);
+        } catch (IndexOutOfBoundsException e) {
+            throw new NVListException("Truncated packed nvlist");
+        } catch (BufferUnderflowException e) {
+            throw new NVListException("Truncated packed nvlist");
+        }
+    }
+
+    private void decode(Handler handler) {
+        // nvs_header_t
+        int encoding = buf.get(0);
+        int endian = buf.get(1);
+        pos = 4;
+        switch (encoding) {
+        case NV_ENCODE_NATIVE:
+            buf.order(endian==1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            // nvl_version and nvl_nvflag, only for the outermost list
+            pos += 8;
+            nativePairs(handler);
+            break;
+        case NV_ENCODE_XDR:
+            buf.order(ByteOrder.BIG_ENDIAN);
+            xdrList(handler);
+            break;
+        default:
+            throw new NVListException("Unknown nvlist encoding "+encoding);
+        }
+    }
+
+    /**
+     * Decodes the pairs of a list in the native encoding, where each pair is a copy
+     * of its in-memory nvpair_t, and the lists nested in a pair follow it.
+     */
+    private void nativePairs(Handler h) {
+        enter();
+        while (true) {
+            int start = pos;
+            int size = buf.getInt(start);
+            if (size==0) {
+                pos += 4;
+                break;
+            }
+            if (size<16 || size>buf.limit()-start)
+                throw corrupt();
+            int nameSize = buf.getShort(start+4);
+            int n = buf.getInt(start+8);
+            data_type_t type = type(buf.getInt(start+12));
+            if (nameSize<=0 || 16+nameSize>size)
+                throw corrupt();
+            String name = string(start+16, nameSize-1);
+            int v = start+align8(16+nameSize);
+            int end = start+size;
+            checkCount(n, end-v);
+            pos = end;
+
+            switch (type) {
+            case DATA_TYPE_NVLIST:
+                nativePairs(child(h, name, type, 0, 1));
+                break;
+            case DATA_TYPE_NVLIST_ARRAY:
+                if (n==0)
+                    h.pair(name, type, Collections.emptyList());
+                for (int i=0; i<n; i++)
+                    nativePairs(child(h, name, type, i, n));
+                break;
+            case DATA_TYPE_STRING_ARRAY: {
+                String[] r = new String[n];
+                // skip the pointers, which are zeroed out. libnvpair reserves
+                // a uint64_t for each of them, whatever the size of a pointer
+                int p = v+n*8;
+                for (int i=0; i<n; i++) {
+                    int len = strlen(p, end);
+                    r[i] = string(p, len);
+                    p += len+1;
+                }
+                h.pair(name, type, r);
+                break;
+            }
+            case DATA_TYPE_STRING:
+                h.pair(name, type, string(v, strlen(v, end)));
+                break;
+            default:
+                h.pair(name, type, nativeValue(type, v, n));
+            }
+        }
+        depth--;
+    }
+
+    private Object nativeValue(data_type_t type, int v, int n) {
+        switch (type) {
+        case DATA_TYPE_BOOLEAN:         return Boolean.TRUE;
+        case DATA_TYPE_BOOLEAN_VALUE:   return buf.getInt(v)!=0;
+        case DATA_TYPE_BYTE:
+        case DATA_TYPE_INT8:
+        case DATA_TYPE_UINT8:           return buf.get(v);
+        case DATA_TYPE_INT16:
+        case DATA_TYPE_UINT16:          return buf.getShort(v);
+        case DATA_TYPE_INT32:
+        case DATA_TYPE_UINT32:          return buf.getInt(v);
+        case DATA_TYPE_INT64:
+        case DATA_TYPE_UINT64:
+        case DATA_TYPE_HRTIME:          return buf.getLong(v);
+        case DATA_TYPE_DOUBLE:          return buf.getDouble(v);
+        case DATA_TYPE_BOOLEAN_ARRAY: {
+            boolean[] r = new boolean[n];
+            for (int i=0; i<n; i++)
+                r[i] = buf.getInt(v+i*4)!=0;
+            return r;
+        }
+        case DATA_TYPE_BYTE_ARRAY:
+        case DATA_TYPE_INT8_ARRAY:
+        case DATA_TYPE_UINT8_ARRAY:     return bytes(v, n);
+        case DATA_TYPE_INT16_ARRAY:
+        case DATA_TYPE_UINT16_ARRAY: {
+            short[] r = new short[n];
+            for (int i=0; i<n; i++)
+                r[i] = buf.getShort(v+i*2);
+            return r;
+        }
+        case DATA_TYPE_INT32_ARRAY:
+        case DATA_TYPE_UINT32_ARRAY: {
+            int[] r = new int[n];
+            for (int i=0; i<n; i++)
+                r[i] = buf.getInt(v+i*4);
+            return r;
+        }
+        case DATA_TYPE_INT64_ARRAY:
+        case DATA_TYPE_UINT64_ARRAY: {
+            long[] r = new long[n];
+            for (int i=0; i<n; i++)
+                r[i] = buf.getLong(v+i*8);
+            return r;
+        }
+        default:
+            throw new NVListException("Unsupported nvpair type "+type);
+        }
+    }
+
+    /**
+     * Decodes a list in the XDR encoding, where every item takes a multiple of 4 bytes,
+     * and a pair is followed by its value, including the lists nested in it.
+     */
+    private void xdrList(Handler h) {
+        enter();
+        // nvl_version and nvl_nvflag
+        pos += 8;
+        while (true) {
+            // encoded size and decoded size, both 0 at the end of the list
+            int decodedSize = buf.getInt(pos+4);
+            pos += 8;
+            if (decodedSize==0)
+                break;
+
+            String name = xdrString();
+            data_type_t type = type(xdrInt());
+            int n = xdrInt();
+            checkCount(n, buf.limit()-pos);
+
+            switch (type) {
+            case DATA_TYPE_NVLIST:
+                xdrList(child(h, name, type, 0, 1));
+                break;
+            case DATA_TYPE_NVLIST_ARRAY:
+                if (n==0)
+                    h.pair(name, type, Collections.emptyList());
+                for (int i=0; i<n; i++)
+                    xdrList(child(h, name, type, i, n));
+                break;
+            default:
+                h.pair(name, type, xdrValue(type, n));
+            }
+        }
+        depth--;
+    }
+
+    private Object xdrValue(data_type_t type, int n) {
+        switch (type) {
+        case DATA_TYPE_BOOLEAN:         return Boolean.TRUE;
+        case DATA_TYPE_BOOLEAN_VALUE:   return xdrInt()!=0;
+        // XDR has no types smaller than 4 bytes
+        case DATA_TYPE_BYTE:
+        case DATA_TYPE_INT8:
+        case DATA_TYPE_UINT8:           return (byte)xdrInt();
+        case DATA_TYPE_INT16:
+        case DATA_TYPE_UINT16:          return (short)xdrInt();
+        case DATA_TYPE_INT32:
+        case DATA_TYPE_UINT32:          return xdrInt();
+        case DATA_TYPE_INT64:
+        case DATA_TYPE_UINT64:
+        case DATA_TYPE_HRTIME:          return xdrLong();
+        case DATA_TYPE_DOUBLE: {
+            double d = buf.getDouble(pos);
+            pos += 8;
+            return d;
+        }
+        case DATA_TYPE_STRING:          return xdrString();
+        case DATA_TYPE_BYTE_ARRAY: {
+            // opaque data, without the length
+            byte[] r = bytes(pos, n);
+            pos += align4(n);
+            return r;
+        }
+        case DATA_TYPE_INT8_ARRAY:
+        case DATA_TYPE_UINT8_ARRAY: {
+            byte[] r = new byte[xdrCount(n)];
+            for (int i=0; i<r.length; i++)
+                r[i] = (byte)xdrInt();
+            return r;
+        }
+        case DATA_TYPE_INT16_ARRAY:
+        case DATA_TYPE_UINT16_ARRAY: {
+            short[] r = new short[xdrCount(n)];
+            for (int i=0; i<r.length; i++)
+                r[i] = (short)xdrInt();
+            return r;
+        }
+        case DATA_TYPE_BOOLEAN_ARRAY: {
+            boolean[] r = new boolean[xdrCount(n)];
+            for (int i=0; i<r.length; i++)
+                r[i] = xdrInt()!=0;
+            return r;
+        }
+        case DATA_TYPE_INT32_ARRAY:
+        case DATA_TYPE_UINT32_ARRAY: {
+            int[] r = new int[xdrCount(n)];
+            for (int i=0; i<r.length; i++)
+                r[i] = xdrInt();
+            return r;
+        }
+        case DATA_TYPE_INT64_ARRAY:
+        case DATA_TYPE_UINT64_ARRAY: {
+            long[] r = new long[xdrCount(n)];
+            for (int i=0; i<r.length; i++)
+                r[i] = xdrLong();
+            return r;
+        }
+        case DATA_TYPE_STRING_ARRAY: {
+            // just the strings one after another
+            String[] r = new String[n];
+            for (int i=0; i<n; i++)
+                r[i] = xdrString();
+            return r;
+        }
+        default:
+            throw new NVListException("Unsupported nvpair type "+type);
+        }
+    }
+
+    private int xdrInt() {
+        int i = buf.getInt(pos);
+        pos += 4;
+        return i;
+    }
+
+    private long xdrLong() {
+        long l = buf.getLong(pos);
+        pos += 8;
+        return l;
+    }
+
+    /**
+     * Reads the element count of an XDR array.
+     *
+     * @param nelem
+     *      Number of elements recorded for the pair. libnvpair writes nothing
+     *      after it for an empty array, not even the count.
+     */
+    private int xdrCount(int nelem) {
+        if (nelem==0)
+            return 0;
+        int n = xdrInt();
+        checkCount(n, buf.limit()-pos);
+        return n;
+    }
+
+    private String xdrString() {
+        int len = xdrInt();
+        checkCount(len, buf.limit()-pos);
+        String s = string(pos, len);
+        pos += align4(len);
+        return s;
+    }
+
+    private void enter() {
+        if (++depth>MAX_DEPTH)
+            throw new NVListException("nvlist nested too deep");
+    }
+
+    private static Handler child(Handler h, String name, data_type_t type, int index, int count) {
+        Handler c = h.list(name, type, index, count);
+        return c!=null ? c : IGNORE;
+    }
+
+    /**
+     * Guards against allocating huge arrays for a corrupted count.
+     * Every element takes at least a byte.
+     */
+    private static void checkCount(int n, int available) {
+        if (n<0 || n>available)
+            throw corrupt();
+    }
+
+    private int strlen(int p, int end) {
+        for (int i=p; i<end; i++)
+            if (buf.get(i)==0)
+                return i-p;
+        throw corrupt();
+    }
+
+    private String string(int p, int len) {
+        if (buf.hasArray())
+            return new String(buf.array(), buf.arrayOffset()+p, len);
+        if (scratch.length<len)
+            scratch = new byte[Math.max(len, scratch.length*2)];
+        read(p, scratch, len);
+        return new String(scratch, 0, len);
+    }
+
+    private byte[] bytes(int p, int len) {
+        byte[] r = new byte[len];
+        if (buf.hasArray())
+            System.arraycopy(buf.array(), buf.arrayOffset()+p, r, 0, len);
+        else
+            read(p, r, len);
+        return r;
+    }
+
+    /**
+     * Bulk read from a direct buffer, which is much faster than a byte at a time.
+     */
+    private void read(int p, byte[] dst, int len) {
+        view.position(p);
+        view.get(dst, 0, len);
+    }
+
+    private static data_type_t type(int code) {
+        if (code<=0 || code>=TYPES.length)
+            throw new NVListException("Unknown nvpair type "+code);
+        return TYPES[code];
+    }
+
+    private static final data_type_t[] TYPES = data_type_t.values();
+
+    private static int align8(int x) {
+        return (x+7)&~7;
+    }
+
+    private static int align4(int x) {
+        return (x+3)&~3;
+    }
+
+    private static NVListException corrupt() {
+        return new NVListException("Corrupt packed nvlist");
+    }
+
+    /**
+     * Builds up the maps {@link #decode(ByteBuffer)} returns.
+     */
+    private static final class MapHandler implements Handler {
+        final Map<String,Object> map = new LinkedHashMap<String,Object>();
+
+        public void pair(String name, data_type_t type, Object value) {
+            map.put(name, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        public Handler list(String name, data_type_t type, int index, int count) {
+            MapHandler c = new MapHandler();
+            if (type==data_type_t.DATA_TYPE_NVLIST) {
+                map.put(name, c.map);
+            } else {
+                List<Object> l;
+                if (index==0) {
+                    l = new ArrayList<Object>(count);
+                    map.put(name, l);
+                } else {
+                    l = (List<Object>)map.get(name);
+                }
+                l.add(c.map);
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.nvlist;
+
+import static org.jvnet.solaris.nvlist.jna.libnvpair.LIBNVPAIR;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_NATIVE;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_XDR;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_UNIQUE_NAME;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.data_type_t.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jvnet.solaris.nvlist.jna.libnvpair;
+import org.jvnet.solaris.nvlist.jna.libnvpair.data_type_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+
+/**
+ * Builds up a name/value pair list on the Java heap, then creates the native {@link nvlist_t}
+ * from it with a single call into libnvpair.
+ *
+ * <p>
+ * Filling an {@link nvlist_t} directly takes a native call per pair. This class
+ * instead writes the pairs in the packed form that {@link nvlist_t#unpack(ByteBuffer)}
+ * reads, and {@link NVListDecoder} too. The methods mirror those of {@link nvlist_t},
+ * and like a list allocated with {@link libnvpair#NV_UNIQUE_NAME}, putting a name again replaces
+ * the earlier pair. Nested lists are copied when they are put, just like libnvpair does.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class NVListEncoder {
+    /**
+     * Pairs by their name, in the order libnvpair would keep them.
+     */
+    private final Map<String,Entry> entries;
+
+    public NVListEncoder() {
+        entries = new LinkedHashMap<String,Entry>();
+    }
+
+    private NVListEncoder(NVListEncoder that) {
+        entries = new LinkedHashMap<String,Entry>(that.entries);
+    }
+
+    /**
+     * One pair, with everything already turned into bytes.
+     */
+    private static final class Entry {
+        final byte[] name;
+        final data_type_t type;
+        /**
+         * Boxed scalar, byte[] for a string, an array (int[] for booleans, byte[][] for strings),
+         * or {@link NVListEncoder} or {@link NVListEncoder}[] for nested lists.
+         */
+        final Object value;
+        /**
+         * Number of elements libnvpair records for the pair.
+         */
+        final int nelem;
+
+        Entry(byte[] name, data_type_t type, Object value, int nelem) {
+            this.name = name;
+            this.type = type;
+            this.value = value;
+            this.nelem = nelem;
+        }
+    }
+
+    private NVListEncoder add(String name, data_type_t type, Object value, int nelem) {
+        if (name==null || value==null)
+            throw new IllegalArgumentException("null name or value");
+        // like libnvpair, a replaced pair moves to the end
+        entries.remove(name);
+        entries.put(name, new Entry(name.getBytes(), type, value, nelem));
+        return this;
+    }
+
+    public NVListEncoder put(String key, String value) {
+        return add(key, DATA_TYPE_STRING, value==null ? null : value.getBytes(), 1);
+    }
+
+    /**
+     * Puts the given strings, in one go.
+     */
+    public NVListEncoder putAll(Map<String,String> values) {
+        for (Map.Entry<String,String> e : values.entrySet())
+            put(e.getKey(), e.getValue());
+        return this;
+    }
+
+    /**
+     * Same as {@link nvlist_t#put(String, boolean)}: true is a boolean flag without a value,
+     * and false a boolean value.
+     */
+    public NVListEncoder put(String key, boolean value) {
+        if (value)
+            return add(key, DATA_TYPE_BOOLEAN, Boolean.TRUE, 0);
+        return putBooleanValue(key, false);
+    }
+
+    public NVListEncoder putBooleanValue(String key, boolean value) {
+        return add(key, DATA_TYPE_BOOLEAN_VALUE, value, 1);
+    }
+
+    /**
+     * Puts a copy of the given list, so later changes to it don't show up in this one.
+     */
+    public NVListEncoder put(String key, NVListEncoder value) {
+        return add(key, DATA_TYPE_NVLIST, value==null ? null : new NVListEncoder(value), 1);
+    }
+
+    public NVListEncoder putByte(String key, byte value) {
+        return add(key, DATA_TYPE_BYTE, value, 1);
+    }
+
+    public NVListEncoder putInt8(String key, byte value) {
+        return add(key, DATA_TYPE_INT8, value, 1);
+    }
+
+    public NVListEncoder putUInt8(String key, byte value) {
+        return add(key, DATA_TYPE_UINT8, value, 1);
+    }
+
+    public NVListEncoder putInt16(String key, short value) {
+        return add(key, DATA_TYPE_INT16, value, 1);
+    }
+
+    public NVListEncoder putUInt16(String key, short value) {
+        return add(key, DATA_TYPE_UINT16, value, 1);
+    }
+
+    public NVListEncoder putInt32(String key, int value) {
+        return add(key, DATA_TYPE_INT32, value, 1);
+    }
+
+    public NVListEncoder putUInt32(String key, int value) {
+        return add(key, DATA_TYPE_UINT32, value, 1);
+    }
+
+    public NVListEncoder putInt64(String key, long value) {
+        return add(key, DATA_TYPE_INT64, value, 1);
+    }
+
+    public NVListEncoder putUInt64(String key, long value) {
+        return add(key, DATA_TYPE_UINT64, value, 1);
+    }
+
+    public NVListEncoder putHrtime(String key, long value) {
+        return add(key, DATA_TYPE_HRTIME, value, 1);
+    }
+
+    public NVListEncoder putDouble(String key, double value) {
+        return add(key, DATA_TYPE_DOUBLE, value, 1);
+    }
+
+    public NVListEncoder putBooleanArray(String key, boolean[] values) {
+        int[] v = new int[values.length];
+        for (int i=0; i<v.length; i++)
+            v[i] = values[i] ? 1 : 0;
+        return add(key, DATA_TYPE_BOOLEAN_ARRAY, v, v.length);
+    }
+
+    public NVListEncoder putByteArray(String key, byte[] values) {
+        return add(key, DATA_TYPE_BYTE_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putInt8Array(String key, byte[] values) {
+        return add(key, DATA_TYPE_INT8_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putUInt8Array(String key, byte[] values) {
+        return add(key, DATA_TYPE_UINT8_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putInt16Array(String key, short[] values) {
+        return add(key, DATA_TYPE_INT16_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putUInt16Array(String key, short[] values) {
+        return add(key, DATA_TYPE_UINT16_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putInt32Array(String key, int[] values) {
+        return add(key, DATA_TYPE_INT32_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putUInt32Array(String key, int[] values) {
+        return add(key, DATA_TYPE_UINT32_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putInt64Array(String key, long[] values) {
+        return add(key, DATA_TYPE_INT64_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putUInt64Array(String key, long[] values) {
+        return add(key, DATA_TYPE_UINT64_ARRAY, values.clone(), values.length);
+    }
+
+    public NVListEncoder putStringArray(String key, String[] values) {
+        byte[][] v = new byte[values.length][];
+        for (int i=0; i<v.length; i++) {
+            if (values[i]==null)
+                throw new IllegalArgumentException("null value in "+key);
+            v[i] = values[i].getBytes();
+        }
+        return add(key, DATA_TYPE_STRING_ARRAY, v, v.length);
+    }
+
+    public NVListEncoder putNVListArray(String key, NVListEncoder[] values) {
+        NVListEncoder[] v = new NVListEncoder[values.length];
+        for (int i=0; i<v.length; i++)
+            v[i] = new NVListEncoder(values[i]);
+        return add(key, DATA_TYPE_NVLIST_ARRAY, v, v.length);
+    }
+
+    public boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Removes the pair of the given name.
+     *
+     * @return
+     *      false if there was no such pair.
+     */
+    public boolean remove(String key) {
+        return entries.remove(key)!=null;
+    }
+
+    /**
+     * Number of pairs, not counting those in nested lists.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Creates the native list, which the caller owns.
+     */
+    public nvlist_t toNVList() {
+        return toNVList(LIBNVPAIR);
+    }
+
+    /**
+     * Creates the list in the given {@link libnvpair} implementation, which the caller owns.
+     */
+    public nvlist_t toNVList(libnvpair nvpair) {
+        // XDR, since unlike the native encoding, its layout doesn't depend on the host
+        return nvlist_t.unpack(nvpair, encode(NV_ENCODE_XDR));
+    }
+
+    /**
+     * Size of the packed form in the given encoding.
+     *
+     * @param encoding
+     *      {@link libnvpair#NV_ENCODE_NATIVE} or {@link libnvpair#NV_ENCODE_XDR}.
+     */
+    public int encodedSize(int encoding) {
+        switch (encoding) {
+        case NV_ENCODE_NATIVE:  return 4+8+nativeSize();
+        case NV_ENCODE_XDR:     return 4+xdrSize();
+        default:                throw new IllegalArgumentException("Unknown nvlist encoding "+encoding);
+        }
+    }
+
+    /**
+     * Writes the packed form in the given encoding, just like {@link nvlist_t#pack(int)} does.
+     *
+     * @param encoding
+     *      {@link libnvpair#NV_ENCODE_NATIVE} or {@link libnvpair#NV_ENCODE_XDR}.
+     * @return
+     *      Direct buffer that holds just the packed list.
+     */
+    public ByteBuffer encode(int encoding) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(encodedSize(encoding));
+        buf.order(encoding==NV_ENCODE_XDR ? ByteOrder.BIG_ENDIAN : ByteOrder.nativeOrder());
+        // nvs_header_t
+        buf.put((byte)encoding);
+        // the byte order of the host, even for XDR
+        buf.put((byte)(ByteOrder.nativeOrder()==ByteOrder.LITTLE_ENDIAN ? 1 : 0));
+        buf.putShort((short)0);
+        if (encoding==NV_ENCODE_XDR) {
+            writeXdr(buf);
+        } else {
+            // nvl_version and nvl_nvflag, only for the outermost list
+            buf.putInt(0);
+            buf.putInt(NV_UNIQUE_NAME);
+            writeNative(buf);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Size of the pairs in the native encoding, including those of nested lists, and the terminator.
+     */
+    private int nativeSize() {
+        int n = 4;
+        for (Entry e : entries.values()) {
+            n += nativePairSize(e);
+            if (e.type==DATA_TYPE_NVLIST)
+                n += ((NVListEncoder)e.value).nativeSize();
+            if (e.type==DATA_TYPE_NVLIST_ARRAY)
+                for (NVListEncoder l : (NVListEncoder[])e.value)
+                    n += l.nativeSize();
+        }
+        return n;
+    }
+
+    /**
+     * Size of the in-memory nvpair_t, which the native encoding copies.
+     */
+    private static int nativePairSize(Entry e) {
+        return align8(16+e.name.length+1)+align8(nativeValueSize(e));
+    }
+
+    private static int nativeValueSize(Entry e) {
+        switch (e.type) {
+        case DATA_TYPE_BOOLEAN:
+            return 0;
+        case DATA_TYPE_STRING:
+            return ((byte[])e.value).length+1;
+        case DATA_TYPE_STRING_ARRAY: {
+            int n = SLOT_SIZE*e.nelem;
+            for (byte[] s : (byte[][])e.value)
+                n += s.length+1;
+            return n;
+        }
+        case DATA_TYPE_NVLIST:
+            return NVLIST_SIZE;
+        case DATA_TYPE_NVLIST_ARRAY:
+            return (SLOT_SIZE+NVLIST_SIZE)*e.nelem;
+        default:
+            return elementSize(e.type)*e.nelem;
+        }
+    }
+
+    private static int elementSize(data_type_t type) {
+        switch (type) {
+        case DATA_TYPE_BYTE:
+        case DATA_TYPE_INT8:
+        case DATA_TYPE_UINT8:
+        case DATA_TYPE_BYTE_ARRAY:
+        case DATA_TYPE_INT8_ARRAY:
+        case DATA_TYPE_UINT8_ARRAY:
+            return 1;
+        case DATA_TYPE_INT16:
+        case DATA_TYPE_UINT16:
+        case DATA_TYPE_INT16_ARRAY:
+        case DATA_TYPE_UINT16_ARRAY:
+            return 2;
+        case DATA_TYPE_INT64:
+        case DATA_TYPE_UINT64:
+        case DATA_TYPE_HRTIME:
+        case DATA_TYPE_DOUBLE:
+        case DATA_TYPE_INT64_ARRAY:
+        case DATA_TYPE_UINT64_ARRAY:
+            return 8;
+        default:
+            // boolean_t and 32-bit integers
+            return 4;
+        }
+    }
+
+    private void writeNative(ByteBuffer buf) {
+        for (Entry e : entries.values()) {
+            int start = buf.position();
+            int size = nativePairSize(e);
+            buf.putInt(size);
+            buf.putShort((short)(e.name.length+1));
+            buf.putShort((short)0);
+            buf.putInt(e.nelem);
+            buf.putInt(e.type.ordinal());
+            buf.put(e.name);
+            // direct buffers start zeroed out, so skipping over is enough for padding and pointers
+            buf.position(start+align8(16+e.name.length+1));
+            writeNativeValue(buf, e);
+            buf.position(start+size);
+
+            if (e.type==DATA_TYPE_NVLIST)
+                ((NVListEncoder)e.value).writeNative(buf);
+            if (e.type==DATA_TYPE_NVLIST_ARRAY)
+                for (NVListEncoder l : (NVListEncoder[])e.value)
+                    l.writeNative(buf);
+        }
+        buf.putInt(0);
+    }
+
+    private static void writeNativeValue(ByteBuffer buf, Entry e) {
+        switch (e.type) {
+        case DATA_TYPE_BOOLEAN:
+            return;
+        case DATA_TYPE_STRING:
+            buf.put((byte[])e.value);
+            return;
+        case DATA_TYPE_STRING_ARRAY:
+            buf.position(buf.position()+SLOT_SIZE*e.nelem);
+            for (byte[] s : (byte[][])e.value) {
+                buf.put(s);
+                buf.put((byte)0);
+            }
+            return;
+        case DATA_TYPE_NVLIST:
+            writeNativeHeader(buf);
+            return;
+        case DATA_TYPE_NVLIST_ARRAY: {
+            buf.position(buf.position()+SLOT_SIZE*e.nelem);
+            for (int i=0; i<e.nelem; i++)
+                writeNativeHeader(buf);
+            return;
+        }
+        }
+
+        Object v = e.value;
+        if (v instanceof Boolean)       buf.putInt((Boolean)v ? 1 : 0);
+        else if (v instanceof Byte)     buf.put((Byte)v);
+        else if (v instanceof Short)    buf.putShort((Short)v);
+        else if (v instanceof Integer)  buf.putInt((Integer)v);
+        else if (v instanceof Long)     buf.putLong((Long)v);
+        else if (v instanceof Double)   buf.putDouble((Double)v);
+        else if (v instanceof byte[])   buf.put((byte[])v);
+        else if (v instanceof short[])
+            for (short s : (short[])v)  buf.putShort(s);
+        else if (v instanceof int[])
+            for (int i : (int[])v)      buf.putInt(i);
+        else if (v instanceof long[])
+            for (long l : (long[])v)    buf.putLong(l);
+    }
+
+    /**
+     * The nvlist_t of a nested list, of which only the version and the flags survive unpacking.
+     */
+    private static void writeNativeHeader(ByteBuffer buf) {
+        int start = buf.position();
+        buf.putInt(0);
+        buf.putInt(NV_UNIQUE_NAME);
+        buf.position(start+NVLIST_SIZE);
+    }
+
+    /**
+     * Size of the list in the XDR encoding, including its header and terminator.
+     */
+    private int xdrSize() {
+        int n = 8+8;
+        for (Entry e : entries.values())
+            n += xdrPairSize(e);
+        return n;
+    }
+
+    private static int xdrPairSize(Entry e) {
+        return 8 + 4+align4(e.name.length) + 8 + xdrValueSize(e);
+    }
+
+    private static int xdrValueSize(Entry e) {
+        // like libnvpair, nothing follows the element count of an empty array
+        if (e.nelem==0)
+            return 0;
+        switch (e.type) {
+        case DATA_TYPE_BOOLEAN:
+            return 0;
+        case DATA_TYPE_STRING:
+            return 4+align4(((byte[])e.value).length);
+        case DATA_TYPE_STRING_ARRAY: {
+            int n = 0;
+            for (byte[] s : (byte[][])e.value)
+                n += 4+align4(s.length);
+            return n;
+        }
+        case DATA_TYPE_NVLIST:
+            return ((NVListEncoder)e.value).xdrSize();
+        case DATA_TYPE_NVLIST_ARRAY: {
+            int n = 0;
+            for (NVListEncoder l : (NVListEncoder[])e.value)
+                n += l.xdrSize();
+            return n;
+        }
+        case DATA_TYPE_BYTE_ARRAY:
+            // opaque, without the length
+            return align4(e.nelem);
+        case DATA_TYPE_INT64:
+        case DATA_TYPE_UINT64:
+        case DATA_TYPE_HRTIME:
+        case DATA_TYPE_DOUBLE:
+            return 8;
+        case DATA_TYPE_INT64_ARRAY:
+        case DATA_TYPE_UINT64_ARRAY:
+            return 4+8*e.nelem;
+        default:
+            if (e.type.name().endsWith("_ARRAY"))
+                return 4+4*e.nelem;
+            // XDR has no types smaller than 4 bytes
+            return 4;
+        }
+    }
+
+    private void writeXdr(ByteBuffer buf) {
+        buf.putInt(0);
+        buf.putInt(NV_UNIQUE_NAME);
+        for (Entry e : entries.values()) {
+            // encoded and decoded sizes, the latter of which libnvpair allocates for the nvpair_t
+            buf.putInt(xdrPairSize(e));
+            buf.putInt(nativePairSize(e));
+            writeXdrString(buf, e.name);
+            buf.putInt(e.type.ordinal());
+            buf.putInt(e.nelem);
+            writeXdrValue(buf, e);
+        }
+        buf.putInt(0);
+        buf.putInt(0);
+    }
+
+    private static void writeXdrValue(ByteBuffer buf, Entry e) {
+        if (e.nelem==0)
+            return;
+        Object v = e.value;
+        switch (e.type) {
+        case DATA_TYPE_BOOLEAN:
+            return;
+        case DATA_TYPE_STRING:
+            writeXdrString(buf, (byte[])v);
+            return;
+        case DATA_TYPE_STRING_ARRAY:
+            for (byte[] s : (byte[][])v)
+                writeXdrString(buf, s);
+            return;
+        case DATA_TYPE_NVLIST:
+            ((NVListEncoder)v).writeXdr(buf);
+            return;
+        case DATA_TYPE_NVLIST_ARRAY:
+            for (NVListEncoder l : (NVListEncoder[])v)
+                l.writeXdr(buf);
+            return;
+        case DATA_TYPE_BYTE_ARRAY:
+            buf.put((byte[])v);
+            buf.position(buf.position()+align4(e.nelem)-e.nelem);
+            return;
+        }
+
+        if (v instanceof Boolean)       buf.putInt((Boolean)v ? 1 : 0);
+        else if (v instanceof Byte)     buf.putInt((Byte)v);
+        else if (v instanceof Short)    buf.putInt((Short)v);
+        else if (v instanceof Integer)  buf.putInt((Integer)v);
+        else if (v instanceof Long)     buf.putLong((Long)v);
+        else if (v instanceof Double)   buf.putDouble((Double)v);
+        else {
+            // counted arrays
+            buf.putInt(e.nelem);
+            if (v instanceof byte[])
+                for (byte b : (byte[])v)    buf.putInt(b);
+            else if (v instanceof short[])
+                for (short s : (short[])v)  buf.putInt(s);
+            else if (v instanceof int[])
+                for (int i : (int[])v)      buf.putInt(i);
+            else if (v instanceof long[])
+                for (long l : (long[])v)    buf.putLong(l);
+        }
+    }
+
+    private static void writeXdrString(ByteBuffer buf, byte[] s) {
+        buf.putInt(s.length);
+        buf.put(s);
+        buf.position(buf.position()+align4(s.length)-s.length);
+    }
+
+    private static int align8(int x) {
+        return (x+7)&~7;
+    }
+
+    private static int align4(int x) {
+        return (x+3)&~3;
+    }
+
+    /**
+     * sizeof(nvlist_t)
+     */
+    private static final int NVLIST_SIZE = 24;
+
+    /**
+     * sizeof(uint64_t), which libnvpair reserves for each pointer of a string or list array,
+     * whatever the size of a pointer.
+     */
+    private static final int SLOT_SIZE = 8;
+}
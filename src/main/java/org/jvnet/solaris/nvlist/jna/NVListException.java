@@ -30,4 +30,11 @@ public class NVListException extends RuntimeException {
      */
     private static final long serialVersionUID = 7417001311982153763L;
 
+    public NVListException() {
+    }
+
+    public NVListException(String message) {
+        super(message);
+    }
+
 }
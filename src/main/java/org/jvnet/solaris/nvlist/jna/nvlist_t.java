@@ -23,26 +23,61 @@ package org.jvnet.solaris.nvlist.jna;
 import static org.jvnet.solaris.nvlist.jna.libnvpair.LIBNVPAIR;
 import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_UNIQUE_NAME;
 
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.NativeCleaner;
 import org.jvnet.solaris.jna.PtrByReference;
 
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
 import com.sun.jna.PointerType;
+import com.sun.jna.ptr.ByteByReference;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.NativeLongByReference;
 import com.sun.jna.ptr.PointerByReference;
+import com.sun.jna.ptr.ShortByReference;
 
 /**
  * Opaque handle type that represents name/value pair list.
  * @author Kohsuke Kawaguchi
  */
-public class nvlist_t extends PointerType {
-    private boolean owner;
+public class nvlist_t extends PointerType implements Closeable {
+    /**
+     * Non-null if this object owns the native memory.
+     */
+    private Releaser releaser;
+    /**
+     * {@link libnvpair} implementation this list belongs to,
+     * or null for {@link libnvpair#LIBNVPAIR}.
+     */
+    private libnvpair nvpair;
+
     /**
      * Allocates a new {@link nvlist_t}.
      */
     public static nvlist_t alloc(int nvflag) {
+        return alloc(LIBNVPAIR,nvflag);
+    }
+
+    /**
+     * Allocates a new {@link nvlist_t} from the given {@link libnvpair} implementation.
+     */
+    public static nvlist_t alloc(libnvpair nvpair, int nvflag) {
         PtrByReference<nvlist_t> buf = new PtrByReference<nvlist_t>();
-        if(LIBNVPAIR.nvlist_alloc(buf,nvflag,0)!=0)
+        if(nvpair.nvlist_alloc(buf,nvflag,0)!=0)
             throw new NVListException();
         nvlist_t r = buf.getValue(nvlist_t.class);
-        r.owner = true;
+        r.nvpair = nvpair;
+        r.releaser = new Releaser(r);
         return r;
     }
 
@@ -50,49 +85,576 @@ public class nvlist_t extends PointerType {
         return alloc(NV_UNIQUE_NAME);
     }
 
+    /**
+     * Wraps a list that belongs to the given {@link libnvpair} implementation, without taking over its ownership.
+     */
+    public static nvlist_t wrap(libnvpair nvpair, Pointer p) {
+        nvlist_t r = new nvlist_t();
+        r.setPointer(p);
+        r.nvpair = nvpair;
+        return r;
+    }
+
+    private libnvpair lib() {
+        return nvpair!=null ? nvpair : LIBNVPAIR;
+    }
+
     public void put(String key, String value) {
-        if(LIBNVPAIR.nvlist_add_string(this,key,value)!=0)
+        if(lib().nvlist_add_string(this,key,value)!=0)
             throw new NVListException();
     }
 
     public void put(String key, boolean value) {
         if(value) {
-            if(LIBNVPAIR.nvlist_add_boolean(this,key)!=0)
+            if(lib().nvlist_add_boolean(this,key)!=0)
                 throw new NVListException();
         } else {
-            if(LIBNVPAIR.nvlist_add_boolean_value(this,key,value)!=0)
+            if(lib().nvlist_add_boolean_value(this,key,value)!=0)
                 throw new NVListException();
         }
     }
 
     public void put(String key, nvlist_t value) {
-        if(LIBNVPAIR.nvlist_add_nvlist(this,key,value)!=0)
+        if(lib().nvlist_add_nvlist(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putByte(String key, byte value) {
+        if(lib().nvlist_add_byte(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt8(String key, byte value) {
+        if(lib().nvlist_add_int8(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt8(String key, byte value) {
+        if(lib().nvlist_add_uint8(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt16(String key, short value) {
+        if(lib().nvlist_add_int16(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt16(String key, short value) {
+        if(lib().nvlist_add_uint16(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt32(String key, int value) {
+        if(lib().nvlist_add_int32(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt32(String key, int value) {
+        if(lib().nvlist_add_uint32(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt64(String key, long value) {
+        if(lib().nvlist_add_int64(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt64(String key, long value) {
+        if(lib().nvlist_add_uint64(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putHrtime(String key, long value) {
+        if(lib().nvlist_add_hrtime(this,key,value)!=0)
+            throw new NVListException();
+    }
+
+    public void putBooleanArray(String key, boolean[] values) {
+        int[] v = new int[values.length];
+        for (int i=0; i<values.length; i++)
+            v[i] = values[i] ? 1 : 0;
+        if(lib().nvlist_add_boolean_array(this,key,v,v.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putByteArray(String key, byte[] values) {
+        if(lib().nvlist_add_byte_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt8Array(String key, byte[] values) {
+        if(lib().nvlist_add_int8_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt8Array(String key, byte[] values) {
+        if(lib().nvlist_add_uint8_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt16Array(String key, short[] values) {
+        if(lib().nvlist_add_int16_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt16Array(String key, short[] values) {
+        if(lib().nvlist_add_uint16_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt32Array(String key, int[] values) {
+        if(lib().nvlist_add_int32_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt32Array(String key, int[] values) {
+        if(lib().nvlist_add_uint32_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putInt64Array(String key, long[] values) {
+        if(lib().nvlist_add_int64_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putUInt64Array(String key, long[] values) {
+        if(lib().nvlist_add_uint64_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    public void putStringArray(String key, String[] values) {
+        if(lib().nvlist_add_string_array(this,key,values,values.length)!=0)
+            throw new NVListException();
+    }
+
+    /**
+     * Adds copies of the given lists.
+     */
+    public void putNVListArray(String key, nvlist_t[] values) {
+        if(lib().nvlist_add_nvlist_array(this,key,values,values.length)!=0)
             throw new NVListException();
     }
 
     public String getString(String key) {
         PointerByReference r = new PointerByReference();
-        if(LIBNVPAIR.nvlist_lookup_string(this,key,r)!=0)
+        if(lib().nvlist_lookup_string(this,key,r)!=0)
             return null;
         return r.getValue().getString(0);
     }
 
     public nvlist_t getNVList(String key) {
         PtrByReference<nvlist_t> r = new PtrByReference<nvlist_t>();
-        if(LIBNVPAIR.nvlist_lookup_nvlist(this,key,r)!=0)
+        if(lib().nvlist_lookup_nvlist(this,key,r)!=0)
+            return null;
+        nvlist_t v = r.getValue(nvlist_t.class);  // don't set the owner flag
+        v.nvpair = nvpair;
+        return v;
+    }
+
+    /**
+     * Gets a boolean added by {@link #put(String, boolean)}, which is either
+     * a boolean without a value, or a boolean with the value false.
+     *
+     * @return
+     *      false if this list has neither.
+     */
+    public boolean getBoolean(String key) {
+        if(lib().nvlist_lookup_boolean(this,key)==0)
+            return true;
+        BooleanByReference r = new BooleanByReference();
+        return lib().nvlist_lookup_boolean_value(this,key,r)==0 && r.getValue();
+    }
+
+    public Byte getByte(String key) {
+        ByteByReference r = new ByteByReference();
+        if(lib().nvlist_lookup_byte(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Byte getInt8(String key) {
+        ByteByReference r = new ByteByReference();
+        if(lib().nvlist_lookup_int8(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Byte getUInt8(String key) {
+        ByteByReference r = new ByteByReference();
+        if(lib().nvlist_lookup_uint8(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Short getInt16(String key) {
+        ShortByReference r = new ShortByReference();
+        if(lib().nvlist_lookup_int16(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Short getUInt16(String key) {
+        ShortByReference r = new ShortByReference();
+        if(lib().nvlist_lookup_uint16(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Integer getInt32(String key) {
+        IntByReference r = new IntByReference();
+        if(lib().nvlist_lookup_int32(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Integer getUInt32(String key) {
+        IntByReference r = new IntByReference();
+        if(lib().nvlist_lookup_uint32(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Long getInt64(String key) {
+        LongByReference r = new LongByReference();
+        if(lib().nvlist_lookup_int64(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Long getUInt64(String key) {
+        LongByReference r = new LongByReference();
+        if(lib().nvlist_lookup_uint64(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public Long getHrtime(String key) {
+        LongByReference r = new LongByReference();
+        if(lib().nvlist_lookup_hrtime(this,key,r)!=0)
+            return null;
+        return r.getValue();
+    }
+
+    public boolean[] getBooleanArray(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_boolean_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toBooleanArray(r,n);
+    }
+
+    public byte[] getByteArray(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_byte_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toByteArray(r,n);
+    }
+
+    public byte[] getInt8Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_int8_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toByteArray(r,n);
+    }
+
+    public byte[] getUInt8Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_uint8_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toByteArray(r,n);
+    }
+
+    public short[] getInt16Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_int16_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toShortArray(r,n);
+    }
+
+    public short[] getUInt16Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_uint16_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toShortArray(r,n);
+    }
+
+    public int[] getInt32Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_int32_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toIntArray(r,n);
+    }
+
+    public int[] getUInt32Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_uint32_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toIntArray(r,n);
+    }
+
+    public long[] getInt64Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_int64_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toLongArray(r,n);
+    }
+
+    public long[] getUInt64Array(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_uint64_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toLongArray(r,n);
+    }
+
+    public String[] getStringArray(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_string_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toStringArray(r,n);
+    }
+
+    /**
+     * Gets the nested lists, which belong to this list.
+     */
+    public nvlist_t[] getNVListArray(String key) {
+        PointerByReference r = new PointerByReference();
+        IntByReference n = new IntByReference();
+        if(lib().nvlist_lookup_nvlist_array(this,key,r,n)!=0)
+            return null;
+        return nvpair_t.toNVListArray(nvpair,r,n);
+    }
+
+    /**
+     * Does this list have a pair of the given name, of any type?
+     */
+    public boolean contains(String key) {
+        return lib().nvlist_exists(this,key);
+    }
+
+    /**
+     * Removes all the pairs of the given name.
+     *
+     * @return
+     *      false if there was no such pair.
+     */
+    public boolean remove(String key) {
+        return lib().nvlist_remove_all(this,key)==0;
+    }
+
+    /**
+     * Creates a copy of this list, which the caller owns.
+     */
+    public nvlist_t dup() {
+        PtrByReference<nvlist_t> buf = new PtrByReference<nvlist_t>();
+        if(lib().nvlist_dup(this,buf,0)!=0)
+            throw new NVListException();
+        nvlist_t r = buf.getValue(nvlist_t.class);
+        r.nvpair = nvpair;
+        r.releaser = new Releaser(r);
+        return r;
+    }
+
+    /**
+     * Adds copies of all the pairs of the given list to this list.
+     */
+    public void merge(nvlist_t other) {
+        if(lib().nvlist_merge(this,other,0)!=0)
+            throw new NVListException();
+    }
+
+    /**
+     * Packs this list into a new direct buffer, which libnvpair writes into
+     * without any intermediate copy.
+     *
+     * @param encoding
+     *      {@link libnvpair#NV_ENCODE_NATIVE} or {@link libnvpair#NV_ENCODE_XDR}.
+     * @see org.jvnet.solaris.nvlist.NVListDecoder
+     */
+    public ByteBuffer pack(int encoding) {
+        NativeLongByReference size = new NativeLongByReference();
+        if(lib().nvlist_size(this,size,encoding)!=0)
+            throw new NVListException();
+        ByteBuffer buf = ByteBuffer.allocateDirect((int)size.getValue().longValue());
+        PointerByReference p = new PointerByReference(Native.getDirectBufferPointer(buf));
+        if(lib().nvlist_pack(this,p,size,encoding,0)!=0)
+            throw new NVListException();
+        return buf;
+    }
+
+    /**
+     * Creates a new list, which the caller owns, from its packed form.
+     */
+    public static nvlist_t unpack(ByteBuffer buf) {
+        return unpack(LIBNVPAIR,buf);
+    }
+
+    /**
+     * Creates a new list in the given {@link libnvpair} implementation from its packed form.
+     *
+     * @param buf
+     *      Packed list from its position to its limit. The position isn't changed.
+     */
+    public static nvlist_t unpack(libnvpair nvpair, ByteBuffer buf) {
+        int size = buf.remaining();
+        if (size==0)
+            throw new NVListException("Empty packed nvlist");
+        Pointer p;
+        if (buf.isDirect()) {
+            p = Native.getDirectBufferPointer(buf).share(buf.position());
+        } else {
+            byte[] data = new byte[size];
+            buf.duplicate().get(data);
+            Memory m = new Memory(size);
+            m.write(0,data,0,size);
+            p = m;
+        }
+
+        PtrByReference<nvlist_t> r = new PtrByReference<nvlist_t>();
+        if(nvpair.nvlist_unpack(p,new NativeLong(size),r,0)!=0)
+            throw new NVListException();
+        nvlist_t l = r.getValue(nvlist_t.class);
+        l.nvpair = nvpair;
+        l.releaser = new Releaser(l);
+        return l;
+    }
+
+    /**
+     * Gets the pair of the given name.
+     *
+     * @return
+     *      null if there's no such pair.
+     */
+    public nvpair_t getPair(String key) {
+        PtrByReference<nvpair_t> r = new PtrByReference<nvpair_t>();
+        if(lib().nvlist_lookup_nvpair(this,key,r)!=0)
             return null;
-        return r.getValue(nvlist_t.class);  // don't set the owner flag
+        return r.getValue(nvpair_t.class).init(nvpair,null);
+    }
+
+    /**
+     * Gets the pair that comes after the given one.
+     *
+     * @param pair
+     *      null to get the first pair.
+     * @return
+     *      null after the last pair.
+     */
+    public nvpair_t next(nvpair_t pair) {
+        nvpair_t r = lib().nvlist_next_nvpair(this,pair);
+        return r==null ? null : r.init(nvpair,null);
+    }
+
+    /**
+     * Iterates the pairs of this list in the order they were added.
+     *
+     * <p>
+     * This reads the whole list with one native call per pair, which is cheaper
+     * than looking up the keys one by one when most of them are needed.
+     */
+    public Iterable<nvpair_t> pairs() {
+        return new Iterable<nvpair_t>() {
+            public Iterator<nvpair_t> iterator() {
+                return new PairIterator(new nvpair_t.Buffers());
+            }
+        };
     }
 
-    @Override
-    protected void finalize() throws Throwable {
+    /**
+     * Decodes all the pairs of this list, and the lists nested in it, in one pass.
+     *
+     * @return
+     *      Map from the name of each pair to its value as {@link nvpair_t#getValue()} decodes it,
+     *      in the order the pairs were added.
+     */
+    public Map<String,Object> toMap() {
+        return toMap(new nvpair_t.Buffers());
+    }
+
+    /*package*/ Map<String,Object> toMap(nvpair_t.Buffers buffers) {
+        Map<String,Object> r = new LinkedHashMap<String,Object>();
+        for (Iterator<nvpair_t> itr = new PairIterator(buffers); itr.hasNext(); ) {
+            nvpair_t p = itr.next();
+            r.put(p.getName(), p.getValue());
+        }
+        return r;
+    }
+
+    private final class PairIterator implements Iterator<nvpair_t> {
+        private final nvpair_t.Buffers buffers;
+        private nvpair_t next;
+
+        PairIterator(nvpair_t.Buffers buffers) {
+            this.buffers = buffers;
+            next = fetch(null);
+        }
+
+        private nvpair_t fetch(nvpair_t pair) {
+            nvpair_t r = lib().nvlist_next_nvpair(nvlist_t.this,pair);
+            return r==null ? null : r.init(nvpair,buffers);
+        }
+
+        public boolean hasNext() {
+            return next!=null;
+        }
+
+        public nvpair_t next() {
+            if (next==null)
+                throw new NoSuchElementException();
+            nvpair_t r = next;
+            next = fetch(r);
+            return r;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Frees the native memory now if this object owns it,
+     * instead of waiting for GC to take care of it.
+     */
+    public synchronized void dispose() {
+        if(releaser!=null)
+            releaser.clean();
+        releaser = null;
+    }
+
+    /**
+     * Same as {@link #dispose()}.
+     */
+    public void close() {
         dispose();
-        super.finalize();
     }
 
-    private synchronized void dispose() {
-        if(owner)
-            LIBNVPAIR.nvlist_free(this);
-        owner = false;
+    /**
+     * Frees the native memory once the owning {@link nvlist_t} is closed or collected.
+     */
+    private static final class Releaser extends NativeCleaner.Cleanable {
+        private final libnvpair nvpair;
+        private final Pointer pointer;
+
+        Releaser(nvlist_t owner) {
+            super(owner, "nvlist");
+            this.nvpair = owner.lib();
+            this.pointer = owner.getPointer();
+        }
+
+        @Override
+        protected void release() {
+            nvlist_t nv = new nvlist_t();
+            nv.setPointer(pointer);
+            nvpair.nvlist_free(nv);
+        }
     }
 }
@@ -0,0 +1,360 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.nvlist.jna;
+
+import static org.jvnet.solaris.nvlist.jna.libnvpair.LIBNVPAIR;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.PtrByReference;
+import org.jvnet.solaris.nvlist.jna.libnvpair.data_type_t;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.PointerType;
+import com.sun.jna.ptr.ByteByReference;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import com.sun.jna.ptr.ShortByReference;
+
+/**
+ * Opaque handle type that represents one name/value pair in a {@link nvlist_t}.
+ *
+ * <p>
+ * Pairs are obtained by iterating a list with {@link nvlist_t#pairs()} or {@link nvlist_t#next(nvpair_t)},
+ * and are only valid as long as the list they came from. Unsigned values are returned in the
+ * signed Java type of the same size, so callers need to mask them, like {@code getUInt32() & 0xFFFFFFFFL}.
+ * Accessors throw {@link NVListException} if the pair is of a different type.
+ *
+ * <p>
+ * The pairs of one pass over a list share the buffers values are read into,
+ * so they shouldn't be read from multiple threads at once.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class nvpair_t extends PointerType {
+    /**
+     * {@link libnvpair} implementation this pair belongs to,
+     * or null for {@link libnvpair#LIBNVPAIR}.
+     */
+    private libnvpair nvpair;
+    private Buffers buffers;
+
+    /*package*/ nvpair_t init(libnvpair nvpair, Buffers buffers) {
+        this.nvpair = nvpair;
+        this.buffers = buffers;
+        return this;
+    }
+
+    private libnvpair lib() {
+        return nvpair!=null ? nvpair : LIBNVPAIR;
+    }
+
+    private Buffers buffers() {
+        if (buffers==null)
+            buffers = new Buffers();
+        return buffers;
+    }
+
+    public String getName() {
+        return lib().nvpair_name(this);
+    }
+
+    public data_type_t getType() {
+        return typeOf(lib().nvpair_type(this));
+    }
+
+    public boolean getBooleanValue() {
+        BooleanByReference r = buffers().b;
+        check(lib().nvpair_value_boolean_value(this,r));
+        return r.getValue();
+    }
+
+    public byte getByte() {
+        ByteByReference r = buffers().i8;
+        check(lib().nvpair_value_byte(this,r));
+        return r.getValue();
+    }
+
+    public byte getInt8() {
+        ByteByReference r = buffers().i8;
+        check(lib().nvpair_value_int8(this,r));
+        return r.getValue();
+    }
+
+    public byte getUInt8() {
+        ByteByReference r = buffers().i8;
+        check(lib().nvpair_value_uint8(this,r));
+        return r.getValue();
+    }
+
+    public short getInt16() {
+        ShortByReference r = buffers().i16;
+        check(lib().nvpair_value_int16(this,r));
+        return r.getValue();
+    }
+
+    public short getUInt16() {
+        ShortByReference r = buffers().i16;
+        check(lib().nvpair_value_uint16(this,r));
+        return r.getValue();
+    }
+
+    public int getInt32() {
+        IntByReference r = buffers().i32;
+        check(lib().nvpair_value_int32(this,r));
+        return r.getValue();
+    }
+
+    public int getUInt32() {
+        IntByReference r = buffers().i32;
+        check(lib().nvpair_value_uint32(this,r));
+        return r.getValue();
+    }
+
+    public long getInt64() {
+        LongByReference r = buffers().i64;
+        check(lib().nvpair_value_int64(this,r));
+        return r.getValue();
+    }
+
+    public long getUInt64() {
+        LongByReference r = buffers().i64;
+        check(lib().nvpair_value_uint64(this,r));
+        return r.getValue();
+    }
+
+    public long getHrtime() {
+        LongByReference r = buffers().i64;
+        check(lib().nvpair_value_hrtime(this,r));
+        return r.getValue();
+    }
+
+    public String getString() {
+        PointerByReference r = buffers().p;
+        check(lib().nvpair_value_string(this,r));
+        return r.getValue().getString(0);
+    }
+
+    /**
+     * Gets the nested list, which belongs to the list this pair came from.
+     */
+    public nvlist_t getNVList() {
+        PtrByReference<nvlist_t> r = buffers().nvl;
+        check(lib().nvpair_value_nvlist(this,r));
+        return nvlist_t.wrap(nvpair, r.getValue(nvlist_t.class).getPointer());
+    }
+
+    public boolean[] getBooleanArray() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_boolean_array(this,b.p,b.n));
+        return toBooleanArray(b.p, b.n);
+    }
+
+    public byte[] getByteArray() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_byte_array(this,b.p,b.n));
+        return toByteArray(b.p, b.n);
+    }
+
+    public byte[] getInt8Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_int8_array(this,b.p,b.n));
+        return toByteArray(b.p, b.n);
+    }
+
+    public byte[] getUInt8Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_uint8_array(this,b.p,b.n));
+        return toByteArray(b.p, b.n);
+    }
+
+    public short[] getInt16Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_int16_array(this,b.p,b.n));
+        return toShortArray(b.p, b.n);
+    }
+
+    public short[] getUInt16Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_uint16_array(this,b.p,b.n));
+        return toShortArray(b.p, b.n);
+    }
+
+    public int[] getInt32Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_int32_array(this,b.p,b.n));
+        return toIntArray(b.p, b.n);
+    }
+
+    public int[] getUInt32Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_uint32_array(this,b.p,b.n));
+        return toIntArray(b.p, b.n);
+    }
+
+    public long[] getInt64Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_int64_array(this,b.p,b.n));
+        return toLongArray(b.p, b.n);
+    }
+
+    public long[] getUInt64Array() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_uint64_array(this,b.p,b.n));
+        return toLongArray(b.p, b.n);
+    }
+
+    public String[] getStringArray() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_string_array(this,b.p,b.n));
+        return toStringArray(b.p, b.n);
+    }
+
+    public nvlist_t[] getNVListArray() {
+        Buffers b = buffers();
+        check(lib().nvpair_value_nvlist_array(this,b.p,b.n));
+        return toNVListArray(nvpair, b.p, b.n);
+    }
+
+    /**
+     * Decodes the value of this pair into a Java object according to its type.
+     *
+     * <p>
+     * Integers become {@link Byte}, {@link Short}, {@link Integer} or {@link Long}
+     * and arrays of them the corresponding primitive arrays. A boolean that's just
+     * a name without a value is {@link Boolean#TRUE}. Nested lists are decoded
+     * with {@link nvlist_t#toMap()}, and arrays of them into a {@link List} of maps.
+     *
+     * @throws NVListException
+     *      if the pair is of a type this binding doesn't know, like a double.
+     */
+    public Object getValue() {
+        data_type_t t = getType();
+        switch (t) {
+        case DATA_TYPE_BOOLEAN:         return Boolean.TRUE;
+        case DATA_TYPE_BOOLEAN_VALUE:   return getBooleanValue();
+        case DATA_TYPE_BYTE:            return getByte();
+        case DATA_TYPE_INT8:            return getInt8();
+        case DATA_TYPE_UINT8:           return getUInt8();
+        case DATA_TYPE_INT16:           return getInt16();
+        case DATA_TYPE_UINT16:          return getUInt16();
+        case DATA_TYPE_INT32:           return getInt32();
+        case DATA_TYPE_UINT32:          return getUInt32();
+        case DATA_TYPE_INT64:           return getInt64();
+        case DATA_TYPE_UINT64:          return getUInt64();
+        case DATA_TYPE_HRTIME:          return getHrtime();
+        case DATA_TYPE_STRING:          return getString();
+        case DATA_TYPE_NVLIST:
+            PtrByReference<nvlist_t> r = buffers().nvl;
+            check(lib().nvpair_value_nvlist(this,r));
+            return nvlist_t.wrap(nvpair, r.getValue(nvlist_t.class).getPointer()).toMap(buffers());
+        case DATA_TYPE_BOOLEAN_ARRAY:   return getBooleanArray();
+        case DATA_TYPE_BYTE_ARRAY:      return getByteArray();
+        case DATA_TYPE_INT8_ARRAY:      return getInt8Array();
+        case DATA_TYPE_UINT8_ARRAY:     return getUInt8Array();
+        case DATA_TYPE_INT16_ARRAY:     return getInt16Array();
+        case DATA_TYPE_UINT16_ARRAY:    return getUInt16Array();
+        case DATA_TYPE_INT32_ARRAY:     return getInt32Array();
+        case DATA_TYPE_UINT32_ARRAY:    return getUInt32Array();
+        case DATA_TYPE_INT64_ARRAY:     return getInt64Array();
+        case DATA_TYPE_UINT64_ARRAY:    return getUInt64Array();
+        case DATA_TYPE_STRING_ARRAY:    return getStringArray();
+        case DATA_TYPE_NVLIST_ARRAY:
+            nvlist_t[] lists = getNVListArray();
+            List<Object> maps = new ArrayList<Object>(lists.length);
+            for (nvlist_t l : lists)
+                maps.add(l.toMap(buffers()));
+            return maps;
+        default:
+            throw new NVListException("Unsupported type "+t+" of "+getName());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName()+'='+getValue();
+    }
+
+    private static void check(int r) {
+        if (r!=0)
+            throw new NVListException();
+    }
+
+    /*package*/ static data_type_t typeOf(int code) {
+        data_type_t[] types = data_type_t.values();
+        return code>=0 && code<types.length ? types[code] : data_type_t.DATA_TYPE_UNKNOWN;
+    }
+
+    /*package*/ static boolean[] toBooleanArray(PointerByReference p, IntByReference n) {
+        int[] v = toIntArray(p, n);
+        boolean[] r = new boolean[v.length];
+        for (int i=0; i<v.length; i++)
+            r[i] = v[i]!=0;
+        return r;
+    }
+
+    /*package*/ static byte[] toByteArray(PointerByReference p, IntByReference n) {
+        return n.getValue()==0 ? new byte[0] : p.getValue().getByteArray(0, n.getValue());
+    }
+
+    /*package*/ static short[] toShortArray(PointerByReference p, IntByReference n) {
+        return n.getValue()==0 ? new short[0] : p.getValue().getShortArray(0, n.getValue());
+    }
+
+    /*package*/ static int[] toIntArray(PointerByReference p, IntByReference n) {
+        return n.getValue()==0 ? new int[0] : p.getValue().getIntArray(0, n.getValue());
+    }
+
+    /*package*/ static long[] toLongArray(PointerByReference p, IntByReference n) {
+        return n.getValue()==0 ? new long[0] : p.getValue().getLongArray(0, n.getValue());
+    }
+
+    /*package*/ static String[] toStringArray(PointerByReference p, IntByReference n) {
+        return n.getValue()==0 ? new String[0] : p.getValue().getStringArray(0, n.getValue());
+    }
+
+    /*package*/ static nvlist_t[] toNVListArray(libnvpair nvpair, PointerByReference p, IntByReference n) {
+        if (n.getValue()==0)
+            return new nvlist_t[0];
+        Pointer[] ptrs = p.getValue().getPointerArray(0, n.getValue());
+        nvlist_t[] r = new nvlist_t[ptrs.length];
+        for (int i=0; i<ptrs.length; i++)
+            r[i] = nvlist_t.wrap(nvpair, ptrs[i]);
+        return r;
+    }
+
+    /**
+     * Buffers that libnvpair writes values into, reused for all the pairs of one pass.
+     */
+    /*package*/ static final class Buffers {
+        final BooleanByReference b = new BooleanByReference();
+        final ByteByReference i8 = new ByteByReference();
+        final ShortByReference i16 = new ShortByReference();
+        final IntByReference i32 = new IntByReference();
+        final LongByReference i64 = new LongByReference();
+        final PointerByReference p = new PointerByReference();
+        final IntByReference n = new IntByReference();
+        final PtrByReference<nvlist_t> nvl = new PtrByReference<nvlist_t>();
+    }
+}
@@ -21,22 +21,46 @@
 package org.jvnet.solaris.libzfs;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
 import java.util.logging.*;
 
 import org.jvnet.solaris.libzfs.ACLBuilder;
+import org.jvnet.solaris.libzfs.ErrorCode;
+import org.jvnet.solaris.libzfs.LatencyHistogram;
 import org.jvnet.solaris.libzfs.LibZFS;
+import org.jvnet.solaris.libzfs.NativeCallMetrics;
+import org.jvnet.solaris.libzfs.NativeCallStats;
+import org.jvnet.solaris.libzfs.UserProperty;
+import org.jvnet.solaris.libzfs.ZFSException;
 import org.jvnet.solaris.libzfs.ZFSFileSystem;
 import org.jvnet.solaris.libzfs.ZFSObject;
+import org.jvnet.solaris.libzfs.ZFSOperation;
+import org.jvnet.solaris.libzfs.ZFSOperationListener;
 import org.jvnet.solaris.libzfs.ZFSPermission;
 import org.jvnet.solaris.libzfs.ZFSPool;
+import org.jvnet.solaris.libzfs.ZFSSnapshot;
 import org.jvnet.solaris.libzfs.ZFSType;
+import org.jvnet.solaris.libzfs.ZFSVisitor;
+import org.jvnet.solaris.libzfs.fake.FakeLibnvpair;
+import org.jvnet.solaris.libzfs.fake.FakeLibzfs;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
 import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
 import org.jvnet.solaris.libzfs.jna.zpool_prop_t;
+import org.jvnet.solaris.nvlist.NVListDecoder;
+import org.jvnet.solaris.nvlist.NVListEncoder;
+import org.jvnet.solaris.nvlist.jna.libnvpair;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+import org.jvnet.solaris.nvlist.jna.nvpair_t;
 
 /**
  * Unit test for simple ZFS-aware App.
@@ -64,6 +88,8 @@ public class LibZFSTest extends TestCase {
 
     private String ZFS_TEST_FUNCNAME;
 
+    private static final String ZFS_TEST_BACKEND_OVERRIDE_PROPERTY = "libzfs.test.backend";
+
     private static final String ZFS_TEST_TIMESTAMP = String.valueOf(System.currentTimeMillis());
 
     private LibZFS zfs = null;
@@ -108,7 +134,17 @@ public class LibZFSTest extends TestCase {
         if (zfs == null) {
             try {
                 //System.out.println("Setting up a LibZFS instance for this test run...");
-                zfs = new LibZFS();
+                if (System.getProperty(ZFS_TEST_BACKEND_OVERRIDE_PROPERTY, "").equals("fake")) {
+                    /* run against a simulated libzfs that has just the test pool base */
+                    String base = System.getProperty(ZFS_TEST_POOL_OVERRIDE_PROPERTY,
+                            ZFS_TEST_POOL_BASENAME_DEFAULT).replaceAll("/+$", "");
+                    FakeLibzfs fake = new FakeLibzfs();
+                    fake.createPool(base.split("/")[0]);
+                    fake.createFileSystem(base);
+                    zfs = new LibZFS(fake);
+                } else {
+                    zfs = new LibZFS();
+                }
             } catch (Exception e) {
                 System.out.println("Aborted " + getName() + " because: " + e.toString());
                 throw new Exception("Aborted " + getName() + " because: " + e.toString());
@@ -187,6 +223,300 @@ public class LibZFSTest extends TestCase {
         }
     }
 
+    public void testWalk() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSFileSystem fs = zfs.create(dataSet, ZFSFileSystem.class);
+        fs.createFileSystem("a", null);
+        fs.createFileSystem("b", null);
+
+        final List<String> names = new ArrayList<String>();
+        assertTrue(fs.walk(ZFSFileSystem.class, new ZFSVisitor<ZFSFileSystem>() {
+            public boolean visit(ZFSFileSystem child) {
+                names.add(child.getName());
+                return true;
+            }
+        }));
+        assertEquals(2, names.size());
+
+        // stop at the first match, and keep it
+        final List<ZFSFileSystem> found = new ArrayList<ZFSFileSystem>();
+        assertFalse(fs.walk(ZFSFileSystem.class, new ZFSVisitor<ZFSFileSystem>() {
+            public boolean visit(ZFSFileSystem child) {
+                child.retain();
+                found.add(child);
+                return false;
+            }
+        }));
+        assertEquals(1, found.size());
+        assertNotNull(found.get(0).getZfsProperty(zfs_prop_t.ZFS_PROP_NAME));
+    }
+
+    public void testListNames() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSFileSystem fs = zfs.create(dataSet, ZFSFileSystem.class);
+        fs.createFileSystem("a", null).createFileSystem("b", null);
+        fs.createSnapshot("s");
+
+        List<String> expected = new ArrayList<String>();
+        for (ZFSFileSystem o : fs.descendants(ZFSFileSystem.class))
+            expected.add(o.getName());
+        assertEquals(expected, fs.listNames(ZFSFileSystem.class, true));
+
+        assertEquals(Arrays.asList(dataSet+"@s"), fs.listNames(ZFSSnapshot.class, false));
+        assertEquals(Arrays.asList(dataSet+"@s", dataSet+"/a"), fs.listNames(ZFSObject.class, false));
+        assertTrue(zfs.listNames(ZFSObject.class, true).contains(dataSet+"/a/b"));
+    }
+
+    public void testSession() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        zfs.create(dataSet, ZFSFileSystem.class);
+
+        ZFSObject closed, kept;
+        ZFSSession session = zfs.openSession();
+        try {
+            closed = zfs.open(dataSet);
+            kept = session.keep(zfs.open(dataSet));
+        } finally {
+            session.close();
+        }
+        assertNull(closed.handle);
+        assertNotNull(kept.handle);
+
+        kept.close();
+        assertNull(kept.handle);
+    }
+
+    public void testIdentityMap() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        zfs.create(dataSet, ZFSFileSystem.class);
+
+        // separately opened objects are still equal
+        assertEquals(zfs.open(dataSet), zfs.open(dataSet));
+        assertNotSame(zfs.open(dataSet), zfs.open(dataSet));
+
+        zfs.setIdentityMapEnabled(true);
+        try {
+            ZFSObject o = zfs.open(dataSet);
+            assertSame(o, zfs.open(dataSet));
+
+            o.dispose();
+            ZFSObject p = zfs.open(dataSet);
+            assertNotSame(o, p);
+            assertNotNull(p.handle);
+        } finally {
+            zfs.setIdentityMapEnabled(false);
+        }
+    }
+
+    public void testIdentityMapWalkClosesHandles() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.populate("tank", 3, 2, 2);
+
+        LibZFS lib = new LibZFS(fake);
+        lib.setIdentityMapEnabled(true);
+        try {
+            ZFSFileSystem tank = lib.open("tank", ZFSFileSystem.class);
+            ZFSObject kept = lib.open("tank/fs0");
+            final int[] n = new int[1];
+            assertTrue(tank.walk(ZFSSnapshot.class, new ZFSVisitor<ZFSSnapshot>() {
+                public boolean visit(ZFSSnapshot snapshot) {
+                    n[0]++;
+                    return true;
+                }
+            }));
+            assertEquals(24, n[0]);
+
+            // the file systems opened only to walk through them are closed again,
+            // but not the one that the caller holds
+            assertEquals(2, fake.getOpenHandles());
+            assertNotNull(kept.handle);
+            assertSame(kept, lib.open("tank/fs0"));
+        } finally {
+            lib.dispose();
+        }
+    }
+
+    public void testIdentityMapRefreshKeepsHandle() throws Exception {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.createFileSystem("tank/a");
+
+        final LibZFS lib = new LibZFS(fake);
+        lib.setIdentityMapEnabled(true);
+        try {
+            final ZFSObject fs = lib.open("tank/a");
+            zfs_handle_t h = fs.handle;
+
+            // another thread reads through the shared object while this one refreshes it
+            final Throwable[] failure = new Throwable[1];
+            Thread reader = new Thread() {
+                public void run() {
+                    try {
+                        for (int i=0; i<2000; i++)
+                            lib.open("tank/a").getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION);
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            reader.start();
+            for (int i=0; i<2000; i++) {
+                fake.setProperty("tank/a", "my:count", String.valueOf(i));
+                fs.refresh();
+            }
+            reader.join();
+            assertNull(failure[0]);
+
+            assertSame(h, fs.handle);
+            assertEquals("1999", fs.getUserProperty("my:count"));
+            fs.inheritProperty("my:count");
+            assertSame(h, fs.handle);
+            assertEquals(1, fake.getOpenHandles());
+        } finally {
+            lib.dispose();
+        }
+    }
+
+    public void testGetFileSystemByMountPoint() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSFileSystem fs = zfs.create(dataSet, ZFSFileSystem.class);
+        File mp = fs.getMountPoint();
+        assertNotNull(mp);
+
+        assertEquals(fs, zfs.getFileSystemByMountPoint(mp));
+        assertEquals(fs, zfs.getFileSystemContaining(new File(mp, "no/such/file")));
+        assertNull(zfs.getFileSystemByMountPoint(new File(mp, "sub")));
+
+        // the index picks up file systems created after it was built
+        ZFSFileSystem child = fs.createFileSystem("sub", null);
+        assertEquals(child, zfs.getFileSystemByMountPoint(new File(mp, "sub")));
+    }
+
+    public void testGetFileSystemByChangedMountPoint() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.createFileSystem("tank/a");
+
+        LibZFS lib = new LibZFS(fake);
+        try {
+            assertEquals("tank/a", lib.getFileSystemByMountPoint(new File("/tank/a")).getName());
+
+            // changed by someone else after the index got built, which a miss doesn't look for
+            fake.setProperty("tank/a", "mountpoint", "/srv/a");
+            fake.createFileSystem("tank/b");
+            assertNull(lib.getFileSystemByMountPoint(new File("/srv/a")));
+            assertNull(lib.getFileSystemByMountPoint(new File("/tank/b")));
+            // but a stale hit is noticed
+            assertNull(lib.getFileSystemByMountPoint(new File("/tank/a")));
+            assertEquals("tank/a", lib.getFileSystemByMountPoint(new File("/srv/a")).getName());
+            assertEquals("tank/b", lib.getFileSystemByMountPoint(new File("/tank/b")).getName());
+
+            // a mount through the library picks up what others changed before it
+            fake.setProperty("tank/b", "mountpoint", "/srv/b");
+            ZFSFileSystem b = lib.open("tank/b", ZFSFileSystem.class);
+            b.unmount();
+            b.mount();
+            assertEquals("tank/b", lib.getFileSystemByMountPoint(new File("/srv/b")).getName());
+
+            // and so does an explicit refresh
+            fake.setProperty("tank/a", "mountpoint", "/srv/c");
+            assertNull(lib.getFileSystemByMountPoint(new File("/srv/c")));
+            lib.refreshMountPoints();
+            assertEquals("tank/a", lib.getFileSystemByMountPoint(new File("/srv/c")).getName());
+
+            // as do changes made through the library
+            lib.open("tank/a").inheritProperty("mountpoint");
+            assertEquals("tank/a", lib.getFileSystemByMountPoint(new File("/tank/a")).getName());
+            lib.open("tank/a").rename("tank/d", false);
+            assertEquals("tank/d", lib.getFileSystemByMountPoint(new File("/tank/d")).getName());
+        } finally {
+            lib.dispose();
+        }
+    }
+
+    public void testParallelDescendants() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSFileSystem fs = zfs.create(dataSet, ZFSFileSystem.class);
+        fs.createFileSystem("a", null).createFileSystem("b", null);
+        fs.createSnapshot("s");
+
+        List<String> expected = new ArrayList<String>();
+        for (ZFSObject o : zfs.descendants(ZFSObject.class))
+            expected.add(o.getName());
+
+        List<String> actual = new ArrayList<String>();
+        for (ZFSObject o : zfs.descendants(ZFSObject.class, 4))
+            actual.add(o.getName());
+
+        assertEquals(expected, actual);
+    }
+
+    public void testParallelDescendantsReleaseWorkers() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.populate("tank", 3, 2, 2);
+
+        LibZFS lib = new LibZFS(fake);
+        try {
+            List<ZFSObject> all = lib.descendants(ZFSObject.class, 4);
+            assertEquals(37, all.size());
+            // the listed datasets outlive the walk, and so must the libraries they call into
+            for (ZFSObject o : all) {
+                o.refresh();
+                o.getPool().dispose();
+                try {
+                    o.setProperty("used", "0");
+                    fail();
+                } catch (ZFSException e) {
+                    assertEquals(ErrorCode.EZFS_PROPREADONLY, e.getCode());
+                }
+            }
+            for (ZFSObject o : all)
+                o.dispose();
+            // only the caller's own handle is left once the listed datasets are gone
+            assertEquals(1, fake.getOpenLibraries());
+            assertEquals(0, fake.getOpenHandles());
+        } finally {
+            lib.dispose();
+        }
+        assertEquals(0, fake.getOpenLibraries());
+    }
+
     /* Note: here and below we assume, validly for Solarish systems
      * (global zones at least), that an /rpool exists and is mountable */
     public void testGetFilesystemTree() {
@@ -419,6 +749,42 @@ public class LibZFSTest extends TestCase {
         }
     }
 
+    public void testPropertySnapshot() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSObject o = zfs.open(ZFS_TEST_POOL_BASENAME);
+        PropertySnapshot snapshot = o.getPropertySnapshot();
+        assertEquals(o.getName(), snapshot.getDatasetName());
+
+        Map<zfs_prop_t, String> props = o.getZfsProperty(EnumSet.allOf(zfs_prop_t.class));
+        for (zfs_prop_t prop : snapshot.keySet()) {
+            if (prop != zfs_prop_t.ZFS_PROP_USED && prop != zfs_prop_t.ZFS_PROP_AVAILABLE
+             && prop != zfs_prop_t.ZFS_PROP_REFERENCED)  // these may change between the two reads
+                assertEquals(prop.toString(), props.get(prop), snapshot.get(prop));
+        }
+
+        PropertySnapshot.Template t = PropertySnapshot.template(zfs_prop_t.ZFS_PROP_NAME, zfs_prop_t.ZFS_PROP_TYPE);
+        snapshot = o.getPropertySnapshot(t);
+        assertEquals(o.getName(), snapshot.get(zfs_prop_t.ZFS_PROP_NAME));
+        assertFalse(snapshot.has(zfs_prop_t.ZFS_PROP_MOUNTPOINT));
+    }
+
+    public void testNumericProperties() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSObject o = zfs.open(ZFS_TEST_POOL_BASENAME);
+        long txg = o.getLong(zfs_prop_t.ZFS_PROP_CREATETXG);
+        assertEquals(Long.parseLong(o.getZfsProperty(zfs_prop_t.ZFS_PROP_CREATETXG)), txg);
+
+        Map<zfs_prop_t, Long> values = o.getLongs(EnumSet.of(zfs_prop_t.ZFS_PROP_CREATETXG, zfs_prop_t.ZFS_PROP_USED));
+        assertEquals(Long.valueOf(txg), values.get(zfs_prop_t.ZFS_PROP_CREATETXG));
+        assertTrue(o.getUsedSize() > 0);
+    }
+
     public void testGetZpoolProperties() {
         /* TODO: Real func name */
         if (!ZFS_TEST_FUNCNAME.isEmpty())
@@ -434,6 +800,69 @@ public class LibZFSTest extends TestCase {
             System.out.println("  status:"+o.getStatus());
 
             System.out.println(" size:"+o.getSize()+" used:"+o.getUsedSize()+" available:"+o.getAvailableSize());
+
+            PoolSpace space = o.getSpace();
+            System.out.println("  space:"+space);
+            assertTrue(space.getSize() > 0);
+            assertTrue(space.getFree() <= space.getSize());
+        }
+    }
+
+    public void testPoolRefresh() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        for (ZFSPool o : zfs.pools()) {
+            o.getSpace();
+            o.refresh();
+            assertTrue(o.getSize() > 0);
+
+            o.dispose();
+            try {
+                o.getSpace();
+                fail("a disposed pool shouldn't be usable");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try {
+                o.refresh();
+                fail("refresh shouldn't bring a disposed pool back");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testPoolRefreshReadsCurrentProperties() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        LibZFS lib = new LibZFS(fake);
+        try {
+            ZFSPool pool = lib.getPool("tank");
+            assertEquals(0L, pool.getLong(zpool_prop_t.ZPOOL_PROP_ALLOCATED));
+
+            // the handle keeps the properties it has read, like in libzfs
+            fake.setPoolProperty("tank", zpool_prop_t.ZPOOL_PROP_ALLOCATED, "4096");
+            fake.setPoolProperty("tank", zpool_prop_t.ZPOOL_PROP_FREE, "1099511623680");
+            assertEquals(0L, pool.getLong(zpool_prop_t.ZPOOL_PROP_ALLOCATED));
+
+            pool.refresh();
+            assertEquals(4096L, pool.getLong(zpool_prop_t.ZPOOL_PROP_ALLOCATED));
+            assertEquals(4096L, pool.getUsedSize());
+
+            fake.setPoolProperty("tank", zpool_prop_t.ZPOOL_PROP_ALLOCATED, "8192");
+            assertEquals(8192L, pool.getSpace().getAllocated());
+
+            // the old handles are closed
+            pool.dispose();
+            assertEquals(0, fake.getOpenHandles());
+        } finally {
+            lib.dispose();
         }
     }
 
@@ -527,6 +956,67 @@ public class LibZFSTest extends TestCase {
         assertEquals(time,v);
     }
 
+    public void testUserProperties() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSFileSystem o = zfs.create(dataSet, ZFSFileSystem.class);
+        o.setProperty("my:owner", "kohsuke");
+        o.setProperty("my:purpose", "test");
+        ZFSFileSystem o2 = zfs.create(dataSet+"/child", ZFSFileSystem.class);
+        o2.setProperty("my:purpose", "child");
+
+        Map<String,UserProperty> props = o2.getUserProperties();
+        assertEquals("kohsuke", props.get("my:owner").getValue());
+        assertTrue(props.get("my:owner").isInherited());
+        assertEquals(dataSet, props.get("my:owner").getSource());
+        assertEquals("child", props.get("my:purpose").getValue());
+        assertFalse(props.get("my:purpose").isInherited());
+        assertNull(props.get("my:none"));
+
+        // read once, until it's changed
+        assertSame(props, o2.getUserProperties());
+        assertEquals("child", o2.getUserProperty("my:purpose"));
+        assertNull(o2.getUserProperty(Arrays.asList("my:owner", "my:none")));
+
+        o2.setProperty("my:purpose", "changed");
+        assertEquals("changed", o2.getUserProperty("my:purpose"));
+        o2.inheritProperty("my:purpose");
+        assertEquals("test", o2.getUserProperty("my:purpose"));
+        assertTrue(o2.getUserProperties().get("my:purpose").isInherited());
+    }
+
+    public void testInheritedUserProperty() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        ZFSFileSystem o = zfs.create(dataSet, ZFSFileSystem.class);
+        o.setProperty("my:owner", "kohsuke");
+        zfs.create(dataSet+"/child", ZFSFileSystem.class);
+        ZFSFileSystem grandchild = zfs.create(dataSet+"/child/grandchild", ZFSFileSystem.class);
+
+        // inherited through a dataset that doesn't set it
+        UserProperty p = grandchild.getUserProperties().get("my:owner");
+        assertEquals("kohsuke", p.getValue());
+        assertEquals(dataSet, p.getSource());
+        assertTrue(p.isInherited());
+
+        // set locally, then inherited again
+        grandchild.setProperty("my:owner", "someone");
+        p = grandchild.getUserProperties().get("my:owner");
+        assertEquals("someone", p.getValue());
+        assertEquals(grandchild.getName(), p.getSource());
+        assertFalse(p.isInherited());
+
+        grandchild.inheritProperty("my:owner");
+        p = grandchild.getUserProperties().get("my:owner");
+        assertEquals("kohsuke", p.getValue());
+        assertEquals(dataSet, p.getSource());
+        assertTrue(p.isInherited());
+    }
+
     public void test_zfsObject_exists() {
         /* TODO: Real func name */
         if (!ZFS_TEST_FUNCNAME.isEmpty() && !ZFS_TEST_FUNCNAME.matches(".*\\b" + "zfs_destroy" + "\\b.*") && !ZFS_TEST_FUNCNAME.matches(".*\\b" + "zfs_create" + "\\b.*") )
@@ -598,6 +1088,66 @@ public class LibZFSTest extends TestCase {
                 .isMounted());
     }
 
+    public void test_zfsObject_isMountedCached() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty() &&
+            !ZFS_TEST_FUNCNAME.matches(".*\\b" + "zfs_mount" + "\\b.*") &&
+            !ZFS_TEST_FUNCNAME.matches(".*\\b" + "zfs_unmount" + "\\b.*") &&
+            !ZFS_TEST_FUNCNAME.matches(".*\\b" + "zfs_create" + "\\b.*") )
+            return;
+
+        final ZFSFileSystem fs = zfs.create(dataSet, ZFSFileSystem.class);
+        final List<String> names = Arrays.asList(dataSet);
+
+        zfs.setMountTableCached(true);
+        try {
+            assertFalse(fs.isMounted());
+            assertTrue(zfs.getMounted(names).isEmpty());
+
+            fs.mount();
+            assertTrue("cached mount table wasn't updated on mount", fs.isMounted());
+            assertEquals(names.size(), zfs.getMounted(names).size());
+
+            fs.unmount();
+            assertFalse("cached mount table wasn't updated on unmount", fs.isMounted());
+        } finally {
+            zfs.setMountTableCached(false);
+        }
+    }
+
+    public void testMountTableCache() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.createFileSystem("tank/a");
+        fake.createFileSystem("tank/b");
+        final List<String> names = Arrays.asList("tank/a", "tank/b");
+
+        LibZFS lib = new LibZFS(fake);
+        LibZFS other = new LibZFS(fake);
+        try {
+            // without the cache, every call sees what others did in between
+            assertEquals(new HashSet<String>(names), lib.getMounted(names));
+            other.open("tank/a", ZFSFileSystem.class).unmount();
+            assertEquals(Collections.singleton("tank/b"), lib.getMounted(names));
+
+            // with it, changes made behind our back show up only after a refresh
+            lib.setMountTableCached(true);
+            ZFSFileSystem b = lib.open("tank/b", ZFSFileSystem.class);
+            assertTrue(b.isMounted());
+            other.open("tank/b", ZFSFileSystem.class).unmount();
+            assertTrue("the cached mount table was read again", b.isMounted());
+            lib.refreshMountTable();
+            assertFalse(b.isMounted());
+        } finally {
+            other.dispose();
+            lib.dispose();
+        }
+    }
+
     public void xtest_zfsObject_isShared() {
         /* TODO: Real func name */
         if (!ZFS_TEST_FUNCNAME.isEmpty() &&
@@ -631,4 +1181,748 @@ public class LibZFSTest extends TestCase {
                 .isShared());
     }
 
+    public void testFakeLibzfs() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        assertEquals(3*(1+2) + 9*(1+2), fake.populate("tank", 3, 2, 2));
+
+        LibZFS lib = new LibZFS(fake);
+        try {
+            ZFSFileSystem tank = lib.open("tank", ZFSFileSystem.class);
+            assertEquals(36, tank.descendants().size());
+            assertEquals(36, tank.listNames(ZFSObject.class, true).size());
+
+            try {
+                lib.open("tank/no-such-dataset");
+                fail();
+            } catch (ZFSException e) {
+                assertEquals(ErrorCode.EZFS_NOENT, e.getCode());
+            }
+
+            try {
+                lib.open("tank/fs0", ZFSFileSystem.class).destroy();
+                fail();
+            } catch (ZFSException e) {
+                assertEquals(ErrorCode.EZFS_EXISTS, e.getCode());
+            }
+
+            fake.setProperty("tank/fs0", "compression", "lz4");
+            assertEquals("lz4", lib.open("tank/fs0/fs1").getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertEquals("/tank/fs0/fs1", lib.open("tank/fs0/fs1").getZfsProperty(zfs_prop_t.ZFS_PROP_MOUNTPOINT));
+
+            // like libzfs, handles see the properties as of when they were opened or refreshed
+            ZFSObject fs = lib.open("tank/fs0/fs1");
+            fake.setProperty("tank/fs0", "compression", "gzip");
+            fake.setProperty("tank/fs0", "my:owner", "kohsuke");
+            assertEquals("lz4", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertNull(fs.getUserProperty("my:owner"));
+            fs.refreshProperties();
+            assertEquals("gzip", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertEquals("kohsuke", fs.getUserProperty("my:owner"));
+
+            fake.setProperty("tank/fs0", "compression", "off");
+            assertEquals("gzip", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            fs.refresh();
+            assertEquals("off", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+        } finally {
+            lib.dispose();
+        }
+    }
+
+    public void testNativeCallMetrics() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+
+        LibZFS lib;
+        System.setProperty("LIBZFS4J_METRICS", "on");
+        try {
+            lib = new LibZFS(fake);
+        } finally {
+            System.clearProperty("LIBZFS4J_METRICS");
+        }
+        try {
+            NativeCallMetrics metrics = lib.getNativeCallMetrics();
+            assertNotNull(metrics);
+
+            lib.open("tank").dispose();
+            try {
+                lib.open("tank/no-such-dataset");
+                fail();
+            } catch (ZFSException e) {
+                // expected
+            }
+
+            NativeCallStats stats = metrics.snapshot().get("zfs_open");
+            assertEquals(2, stats.getCount());
+            assertEquals(1, stats.getFailures());
+            assertEquals(Long.valueOf(1), stats.getErrors().get(ErrorCode.EZFS_NOENT));
+
+            metrics.setEnabled(false);
+            lib.open("tank").dispose();
+            assertEquals(2, metrics.snapshot().get("zfs_open").getCount());
+
+            metrics.reset();
+            assertTrue(metrics.snapshot().isEmpty());
+        } finally {
+            lib.dispose();
+        }
+
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i=1; i<=1000; i++)
+            h.record(i*1000L);
+        assertEquals(1000, h.getCount());
+        assertEquals(1000000L, h.getMax());
+        assertEquals(500000, h.getValueAtPercentile(50), 500000/8);
+        assertEquals(990000, h.getValueAtPercentile(99), 990000/8);
+        assertEquals(1000000L, h.getValueAtPercentile(100));
+    }
+
+    public void testOperationListener() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.createFileSystem("tank/a");
+
+        final List<String> events = new ArrayList<String>();
+        LibZFS lib = new LibZFS(fake);
+        try {
+            assertNull(lib.getOperationListener());
+            lib.setOperationListener(new ZFSOperationListener() {
+                public Object begin(ZFSOperation operation, String dataset) {
+                    return operation;
+                }
+
+                public void end(Object context, ZFSOperation operation, String dataset, long durationNanos, ErrorCode error) {
+                    assertSame(operation, context);
+                    assertTrue(durationNanos >= 0);
+                    events.add(operation + " " + dataset + (error == null ? "" : " " + error));
+                }
+            });
+
+            ZFSFileSystem fs = lib.open("tank/a", ZFSFileSystem.class);
+            fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION);
+            fs.createSnapshot("s");
+            fs.unmount();
+            fs.mount();
+            fs.destroySnapshot("s");
+            try {
+                lib.open("tank/none");
+                fail();
+            } catch (ZFSException e) {
+                // expected
+            }
+            fs.dispose();
+            lib.roots();
+            lib.getPool("tank").getLong(zpool_prop_t.ZPOOL_PROP_SIZE);
+
+            assertEquals(Arrays.asList(
+                    "OPEN tank/a",
+                    "GET_PROPERTY tank/a",
+                    "CREATE_SNAPSHOT tank/a@s",
+                    "OPEN tank/a@s",
+                    "UNMOUNT tank/a",
+                    "MOUNT tank/a",
+                    "DESTROY tank/a@s",
+                    "OPEN tank/none " + ErrorCode.EZFS_NOENT,
+                    "CLOSE tank/a",
+                    "ITERATE null",
+                    "GET_POOL_PROPERTY tank"), events);
+
+            lib.setOperationListener(null);
+            lib.open("tank/a").dispose();
+            assertEquals(11, events.size());
+        } finally {
+            lib.dispose();
+        }
+    }
+
+    public void testPropertyCache() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibzfs fake = new FakeLibzfs();
+        fake.createPool("tank");
+        fake.populate("tank", 1, 1, 0);
+        LibZFS lib = new LibZFS(fake);
+        try {
+            final List<ZFSOperation> reads = new ArrayList<ZFSOperation>();
+            lib.setOperationListener(new ZFSOperationListener() {
+                public Object begin(ZFSOperation operation, String dataset) {
+                    return null;
+                }
+
+                public void end(Object context, ZFSOperation operation, String dataset, long durationNanos, ErrorCode error) {
+                    if (operation == ZFSOperation.GET_PROPERTY)
+                        reads.add(operation);
+                }
+            });
+            lib.setPropertyCacheTtl(1, TimeUnit.HOURS);
+            ZFSObject fs = lib.open("tank/fs0");
+            assertEquals(3600000, fs.getPropertyCacheTtl(TimeUnit.MILLISECONDS));
+
+            String compression = fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION);
+            long used = fs.getLong(zfs_prop_t.ZFS_PROP_USED);
+            assertEquals(2, reads.size());  // all the strings at once, then the number
+
+            // changes made behind its back don't show up
+            fake.setProperty("tank/fs0", "compression", "gzip");
+            fake.setProperty("tank/fs0", "used", String.valueOf(used+1));
+            assertEquals(compression, fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertEquals(used, fs.getLong(zfs_prop_t.ZFS_PROP_USED));
+            assertEquals(compression, fs.getPropertySnapshot().get(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertEquals(compression, fs.getZfsProperty(EnumSet.of(zfs_prop_t.ZFS_PROP_COMPRESSION)).get(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertEquals(Long.valueOf(used), fs.getLongs(EnumSet.of(zfs_prop_t.ZFS_PROP_USED)).get(zfs_prop_t.ZFS_PROP_USED));
+            assertEquals(2, reads.size());
+
+            fs.refreshProperties();
+            assertEquals("gzip", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            assertEquals(used+1, fs.getLong(zfs_prop_t.ZFS_PROP_USED));
+
+            fs.setProperty("compression", "lz4");
+            assertEquals("lz4", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+
+            // expires right away
+            fs.setPropertyCacheTtl(1, TimeUnit.NANOSECONDS);
+            fake.setProperty("tank/fs0", "compression", "off");
+            assertEquals("off", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+
+            // not cached at all, so only libzfs keeps what it read into the handle
+            fs.setPropertyCacheTtl(0, TimeUnit.SECONDS);
+            fake.setProperty("tank/fs0", "compression", "on");
+            assertEquals("off", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            fs.refreshProperties();
+            assertEquals("on", fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION));
+            int n = reads.size();
+            fs.getZfsProperty(zfs_prop_t.ZFS_PROP_COMPRESSION);
+            assertEquals(n+1, reads.size());
+        } finally {
+            lib.dispose();
+        }
+    }
+
+    public void testTypedNVList() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibnvpair nvpair = new FakeLibnvpair();
+        nvlist_t child = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+        child.putUInt64("guid", -1L);
+        child.put("path", "/dev/sda");
+
+        nvlist_t nv = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+        try {
+            nv.put("name", "tank");
+            nv.putInt32("state", 7);
+            nv.putUInt64("txg", 12345678901L);
+            nv.put("enabled", true);
+            nv.put("disabled", false);
+            nv.putUInt64Array("stats", new long[]{1, 2, 3});
+            nv.putStringArray("names", new String[]{"a", "b"});
+            nv.putNVListArray("children", new nvlist_t[]{child, child});
+            nv.put("vdev", child);
+
+            assertEquals(Integer.valueOf(7), nv.getInt32("state"));
+            assertEquals(Long.valueOf(12345678901L), nv.getUInt64("txg"));
+            assertNull(nv.getInt64("txg"));     // different type
+            assertNull(nv.getUInt64("no-such-key"));
+            assertTrue(nv.getBoolean("enabled"));
+            assertFalse(nv.getBoolean("disabled"));
+            assertTrue(Arrays.equals(new long[]{1, 2, 3}, nv.getUInt64Array("stats")));
+            assertEquals(Arrays.asList("a", "b"), Arrays.asList(nv.getStringArray("names")));
+            assertEquals("/dev/sda", nv.getNVListArray("children")[1].getString("path"));
+
+            List<String> names = new ArrayList<String>();
+            for (nvpair_t p : nv.pairs())
+                names.add(p.getName());
+            assertEquals(Arrays.asList("name", "state", "txg", "enabled", "disabled", "stats", "names", "children", "vdev"), names);
+            assertEquals(libnvpair.data_type_t.DATA_TYPE_UINT64, nv.getPair("txg").getType());
+            try {
+                nv.getPair("txg").getInt32();
+                fail();
+            } catch (org.jvnet.solaris.nvlist.jna.NVListException e) {
+                // expected
+            }
+
+            Map<String,Object> m = nv.toMap();
+            assertEquals("tank", m.get("name"));
+            assertEquals(12345678901L, m.get("txg"));
+            assertEquals(Boolean.TRUE, m.get("enabled"));
+            assertEquals(Boolean.FALSE, m.get("disabled"));
+            assertEquals(-1L, ((Map<?,?>)m.get("vdev")).get("guid"));
+            assertEquals("/dev/sda", ((Map<?,?>)((List<?>)m.get("children")).get(0)).get("path"));
+
+            assertTrue(nv.remove("vdev"));
+            assertFalse(nv.contains("vdev"));
+            assertFalse(nv.remove("vdev"));
+        } finally {
+            nv.dispose();
+            child.dispose();
+        }
+        assertEquals(0, nvpair.size());
+    }
+
+    public void testNVListEncoder() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        NVListEncoder child = new NVListEncoder().putUInt64("guid", -1L).put("path", "/dev/sda");
+        NVListEncoder e = new NVListEncoder()
+                .put("name", "tank")
+                .put("flag", true)
+                .putBooleanValue("enabled", true)
+                .putInt16("short", (short)-2)
+                .putUInt32("state", 7)
+                .putHrtime("time", 12345678901L)
+                .putDouble("ratio", 1.5)
+                .putByteArray("bytes", new byte[]{1, 2, 3, 4, 5})
+                .putBooleanArray("booleans", new boolean[]{true, false})
+                .putUInt64Array("stats", new long[]{1, 2, 3})
+                .putStringArray("names", new String[]{"a", "bcdefghij", ""})
+                .put("vdev", child)
+                .putNVListArray("children", new NVListEncoder[]{child, child})
+                .putInt32("last", 1)
+                .putInt32("state", 8);
+        child.put("path", "/dev/sdb"); // copied when put, so this doesn't change e
+
+        for (int encoding : new int[]{libnvpair.NV_ENCODE_NATIVE, libnvpair.NV_ENCODE_XDR}) {
+            java.nio.ByteBuffer buf = e.encode(encoding);
+            assertEquals(e.encodedSize(encoding), buf.remaining());
+            Map<String,Object> m = NVListDecoder.decode(buf);
+            // replacing a pair moves it to the end, like libnvpair does
+            assertEquals(Arrays.asList("name", "flag", "enabled", "short", "time", "ratio", "bytes", "booleans",
+                    "stats", "names", "vdev", "children", "last", "state"), new ArrayList<String>(m.keySet()));
+            assertEquals(8, m.get("state"));
+            assertEquals(1.5, m.get("ratio"));
+            assertTrue(Arrays.equals(new byte[]{1, 2, 3, 4, 5}, (byte[])m.get("bytes")));
+            assertTrue(Arrays.equals(new boolean[]{true, false}, (boolean[])m.get("booleans")));
+            assertEquals(Arrays.asList("a", "bcdefghij", ""), Arrays.asList((String[])m.get("names")));
+            assertEquals("/dev/sda", ((Map<?,?>)m.get("vdev")).get("path"));
+            assertEquals(-1L, ((Map<?,?>)((List<?>)m.get("children")).get(1)).get("guid"));
+        }
+
+        FakeLibnvpair nvpair = new FakeLibnvpair();
+        nvlist_t nv = e.toNVList(nvpair);
+        try {
+            assertEquals("tank", nv.getString("name"));
+            assertTrue(nv.getBoolean("enabled"));
+            assertEquals(Integer.valueOf(8), nv.getInt32("state"));
+            assertEquals(Long.valueOf(12345678901L), nv.getHrtime("time"));
+            assertEquals("/dev/sda", nv.getNVListArray("children")[0].getString("path"));
+            assertTrue(Arrays.equals(new long[]{1, 2, 3}, nv.getUInt64Array("stats")));
+        } finally {
+            nv.dispose();
+        }
+        assertEquals(0, nvpair.size());
+    }
+
+    public void testCreateWithProperties() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        Map<String,String> props = new java.util.HashMap<String,String>();
+        props.put("libzfs4j:owner", "kohsuke");
+        props.put("libzfs4j:purpose", "test");
+        ZFSObject fs = zfs.create(dataSet, ZFSType.FILESYSTEM, props);
+        assertNotNull(fs);
+        assertEquals("kohsuke", fs.getUserProperty("libzfs4j:owner"));
+        assertEquals("test", fs.getUserProperty("libzfs4j:purpose"));
+    }
+
+    public void testPackedNVList() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        FakeLibnvpair nvpair = new FakeLibnvpair();
+        nvlist_t child = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+        child.putUInt64("guid", -1L);
+        child.put("path", "/dev/sda");
+
+        nvlist_t nv = nvlist_t.alloc(nvpair, libnvpair.NV_UNIQUE_NAME);
+        try {
+            nv.put("name", "tank");
+            nv.put("flag", true);
+            nv.put("enabled", true);
+            nv.putUInt8("version", (byte)5);
+            nv.putInt16("short", (short)-2);
+            nv.putInt32("state", 7);
+            nv.putHrtime("time", 12345678901L);
+            nv.putByteArray("bytes", new byte[]{1, 2, 3, 4, 5});
+            nv.putInt16Array("shorts", new short[]{-1, 1});
+            nv.putBooleanArray("booleans", new boolean[]{true, false, true});
+            nv.putUInt64Array("stats", new long[]{1, 2, 3});
+            nv.putStringArray("names", new String[]{"a", "bcdefghij", ""});
+            nv.putNVListArray("children", new nvlist_t[]{child, child});
+            nv.putNVListArray("none", new nvlist_t[0]);
+            nv.put("vdev", child);
+            nv.putInt32("last", 42);
+
+            for (int encoding : new int[]{libnvpair.NV_ENCODE_NATIVE, libnvpair.NV_ENCODE_XDR}) {
+                java.nio.ByteBuffer buf = nv.pack(encoding);
+                Map<String,Object> m = NVListDecoder.decode(buf);
+                assertEquals(Arrays.asList("name", "flag", "enabled", "version", "short", "state", "time", "bytes", "shorts",
+                        "booleans", "stats", "names", "children", "none", "vdev", "last"), new ArrayList<String>(m.keySet()));
+                assertEquals("tank", m.get("name"));
+                assertEquals(Boolean.TRUE, m.get("enabled"));
+                assertEquals((byte)5, m.get("version"));
+                assertEquals((short)-2, m.get("short"));
+                assertEquals(7, m.get("state"));
+                assertEquals(12345678901L, m.get("time"));
+                assertTrue(Arrays.equals(new byte[]{1, 2, 3, 4, 5}, (byte[])m.get("bytes")));
+                assertTrue(Arrays.equals(new short[]{-1, 1}, (short[])m.get("shorts")));
+                assertTrue(Arrays.equals(new boolean[]{true, false, true}, (boolean[])m.get("booleans")));
+                assertTrue(Arrays.equals(new long[]{1, 2, 3}, (long[])m.get("stats")));
+                assertEquals(Arrays.asList("a", "bcdefghij", ""), Arrays.asList((String[])m.get("names")));
+                assertEquals("/dev/sda", ((Map<?,?>)((List<?>)m.get("children")).get(1)).get("path"));
+                assertTrue(((List<?>)m.get("none")).isEmpty());
+                assertEquals(-1L, ((Map<?,?>)m.get("vdev")).get("guid"));
+                assertEquals(42, m.get("last"));
+
+                // heap buffers decode the same, and the position is left alone
+                java.nio.ByteBuffer heap = java.nio.ByteBuffer.allocate(buf.capacity());
+                heap.put(buf.duplicate());
+                heap.flip();
+                assertEquals(m.keySet(), NVListDecoder.decode(heap).keySet());
+                assertEquals(0, heap.position());
+
+                nvlist_t copy = nvlist_t.unpack(nvpair, buf);
+                try {
+                    assertEquals("tank", copy.getString("name"));
+                    assertEquals(Long.valueOf(12345678901L), copy.getHrtime("time"));
+                    assertEquals(Arrays.asList("a", "bcdefghij", ""), Arrays.asList(copy.getStringArray("names")));
+                    assertEquals("/dev/sda", copy.getNVListArray("children")[0].getString("path"));
+                    assertEquals(m.keySet(), copy.toMap().keySet());
+                } finally {
+                    copy.dispose();
+                }
+
+                java.nio.ByteBuffer truncated = buf.duplicate();
+                truncated.limit(buf.limit()/2);
+                try {
+                    NVListDecoder.decode(truncated);
+                    fail();
+                } catch (org.jvnet.solaris.nvlist.jna.NVListException e) {
+                    // expected
+                }
+            }
+        } finally {
+            nv.dispose();
+            child.dispose();
+        }
+        assertEquals(0, nvpair.size());
+    }
+
+    public void testDecodeLibnvpairFixtures() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        for (String[] fixture : new String[][]{PACKED_NATIVE_LE, PACKED_NATIVE_BE, PACKED_XDR}) {
+            Map<String,Object> m = NVListDecoder.decode(packed(fixture));
+            assertEquals(Arrays.asList("name", "guid", "tags", "vdev", "children", "on"), new ArrayList<String>(m.keySet()));
+            assertEquals("tank", m.get("name"));
+            assertEquals(0x0123456789abcdefL, m.get("guid"));
+            assertEquals(Arrays.asList("a", "bc"), Arrays.asList((String[])m.get("tags")));
+            assertEquals(java.util.Collections.singletonMap("path", "/dev/sda"), m.get("vdev"));
+            List<?> children = (List<?>)m.get("children");
+            assertEquals(2, children.size());
+            assertEquals(1, ((Map<?,?>)children.get(0)).get("id"));
+            assertEquals(2, ((Map<?,?>)children.get(1)).get("id"));
+            assertEquals(Boolean.TRUE, m.get("on"));
+        }
+
+        Map<String,Object> m = NVListDecoder.decode(packed(PACKED_XDR_EMPTY_ARRAYS));
+        assertEquals(Arrays.asList("none", "flags", "stats", "tags", "last"), new ArrayList<String>(m.keySet()));
+        assertEquals(0, ((int[])m.get("none")).length);
+        assertEquals(0, ((boolean[])m.get("flags")).length);
+        assertEquals(0, ((long[])m.get("stats")).length);
+        assertEquals(0, ((String[])m.get("tags")).length);
+        assertEquals("x", m.get("last"));
+    }
+
+    public void testEncodeLibnvpairFixtures() {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        NVListEncoder e = new NVListEncoder()
+                .put("name", "tank")
+                .putUInt64("guid", 0x0123456789abcdefL)
+                .putStringArray("tags", new String[]{"a", "bc"})
+                .put("vdev", new NVListEncoder().put("path", "/dev/sda"))
+                .putNVListArray("children", new NVListEncoder[]{
+                        new NVListEncoder().putInt32("id", 1), new NVListEncoder().putInt32("id", 2)})
+                .putBooleanValue("on", true);
+
+        boolean littleEndian = java.nio.ByteOrder.nativeOrder()==java.nio.ByteOrder.LITTLE_ENDIAN;
+        assertEquals(packed(littleEndian ? PACKED_NATIVE_LE : PACKED_NATIVE_BE), e.encode(libnvpair.NV_ENCODE_NATIVE));
+
+        // the header of the XDR encoding still records the byte order of the host
+        java.nio.ByteBuffer xdr = packed(PACKED_XDR);
+        xdr.put(1, (byte)(littleEndian ? 1 : 0));
+        assertEquals(xdr, e.encode(libnvpair.NV_ENCODE_XDR));
+
+        e = new NVListEncoder()
+                .putInt32Array("none", new int[0])
+                .putBooleanArray("flags", new boolean[0])
+                .putUInt64Array("stats", new long[0])
+                .putStringArray("tags", new String[0])
+                .put("last", "x");
+        xdr = packed(PACKED_XDR_EMPTY_ARRAYS);
+        xdr.put(1, (byte)(littleEndian ? 1 : 0));
+        assertEquals(xdr.remaining(), e.encodedSize(libnvpair.NV_ENCODE_XDR));
+        assertEquals(xdr, e.encode(libnvpair.NV_ENCODE_XDR));
+    }
+
+    /*
+     * The same list packed by nvlist_pack() in each of the encodings:
+     *
+     *   name=tank (string), guid=0x0123456789abcdef (uint64), tags=[a, bc] (string array),
+     *   vdev={path=/dev/sda} (nvlist), children=[{id=1}, {id=2}] (nvlist array, int32), on=true (boolean value)
+     *
+     * These are laid out field by field from nvpair.c, rather than written by
+     * NVListEncoder, so that they keep the encoder and the decoder honest.
+     */
+    private static final String[] PACKED_NATIVE_LE = {
+        "00010000",                           // nvs_header_t: NV_ENCODE_NATIVE, little-endian
+        "0000000001000000",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "20000000050000000100000009000000",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6e616d6500000000",                   // "name"
+        "74616e6b00000000",                   // "tank"
+        "20000000050000000100000008000000",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6775696400000000",                   // "guid"
+        "efcdab8967452301",                   // 0x123456789abcdef
+        "30000000050000000200000011000000",   // nvp_size=48, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "7461677300000000",                   // "tags"
+        "00000000000000000000000000000000",   // a uint64_t slot for each string pointer, zeroed
+        "6100626300000000",                   // the strings
+        "30000000050000000100000013000000",   // nvp_size=48, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "7664657600000000",                   // "vdev"
+        "00000000010000000000000000000000",   // nvlist_t with nvl_priv zeroed
+        "0000000000000000",                   
+        "28000000050000000100000009000000",   // nvp_size=40, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "7061746800000000",                   // "path"
+        "2f6465762f7364610000000000000000",   // "/dev/sda"
+        "00000000",                           // end of list
+        "60000000090000000200000014000000",   // nvp_size=96, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6368696c6472656e0000000000000000",   // "children"
+        "00000000000000000000000000000000",   // a uint64_t slot for each nvlist_t pointer, zeroed
+        "00000000010000000000000000000000",   // nvlist_t with nvl_priv zeroed
+        "0000000000000000",                   
+        "00000000010000000000000000000000",   // nvlist_t with nvl_priv zeroed
+        "0000000000000000",                   
+        "20000000030000000100000005000000",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6964000000000000",                   // "id"
+        "0100000000000000",                   // 1
+        "00000000",                           // end of list
+        "20000000030000000100000005000000",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6964000000000000",                   // "id"
+        "0200000000000000",                   // 2
+        "00000000",                           // end of list
+        "20000000030000000100000015000000",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6f6e000000000000",                   // "on"
+        "0100000000000000",                   // 1
+        "00000000"                            // end of list
+    };
+
+    private static final String[] PACKED_NATIVE_BE = {
+        "00000000",                           // nvs_header_t: NV_ENCODE_NATIVE, big-endian
+        "0000000000000001",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "00000020000500000000000100000009",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6e616d6500000000",                   // "name"
+        "74616e6b00000000",                   // "tank"
+        "00000020000500000000000100000008",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6775696400000000",                   // "guid"
+        "0123456789abcdef",                   // 0x123456789abcdef
+        "00000030000500000000000200000011",   // nvp_size=48, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "7461677300000000",                   // "tags"
+        "00000000000000000000000000000000",   // a uint64_t slot for each string pointer, zeroed
+        "6100626300000000",                   // the strings
+        "00000030000500000000000100000013",   // nvp_size=48, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "7664657600000000",                   // "vdev"
+        "00000000000000010000000000000000",   // nvlist_t with nvl_priv zeroed
+        "0000000000000000",                   
+        "00000028000500000000000100000009",   // nvp_size=40, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "7061746800000000",                   // "path"
+        "2f6465762f7364610000000000000000",   // "/dev/sda"
+        "00000000",                           // end of list
+        "00000060000900000000000200000014",   // nvp_size=96, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6368696c6472656e0000000000000000",   // "children"
+        "00000000000000000000000000000000",   // a uint64_t slot for each nvlist_t pointer, zeroed
+        "00000000000000010000000000000000",   // nvlist_t with nvl_priv zeroed
+        "0000000000000000",                   
+        "00000000000000010000000000000000",   // nvlist_t with nvl_priv zeroed
+        "0000000000000000",                   
+        "00000020000300000000000100000005",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6964000000000000",                   // "id"
+        "0000000100000000",                   // 1
+        "00000000",                           // end of list
+        "00000020000300000000000100000005",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6964000000000000",                   // "id"
+        "0000000200000000",                   // 2
+        "00000000",                           // end of list
+        "00000020000300000000000100000015",   // nvp_size=32, nvp_name_sz, nvp_reserve, nvp_value_elem, nvp_type
+        "6f6e000000000000",                   // "on"
+        "0000000100000000",                   // 1
+        "00000000"                            // end of list
+    };
+
+    private static final String[] PACKED_XDR = {
+        "01010000",                           // nvs_header_t: NV_ENCODE_XDR, written on a little-endian host
+        "0000000000000001",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "0000002000000020",                   // encoded size, decoded size
+        "000000046e616d65",                   // "name"
+        "0000000900000001",                   // type, nelem
+        "0000000474616e6b",                   // "tank"
+        "0000002000000020",                   // encoded size, decoded size
+        "0000000467756964",                   // "guid"
+        "0000000800000001",                   // type, nelem
+        "0123456789abcdef",                   // 0x123456789abcdef
+        "0000002800000030",                   // encoded size, decoded size
+        "0000000474616773",                   // "tags"
+        "0000001100000002",                   // type, nelem
+        "00000001610000000000000262630000",   // the strings, without a count
+        "0000004c00000030",                   // encoded size, decoded size
+        "0000000476646576",                   // "vdev"
+        "0000001300000001",                   // type, nelem
+        "0000000000000001",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "0000002400000028",                   // encoded size, decoded size
+        "0000000470617468",                   // "path"
+        "0000000900000001",                   // type, nelem
+        "000000082f6465762f736461",           // "/dev/sda"
+        "0000000000000000",                   // end of list
+        "0000007400000060",                   // encoded size, decoded size
+        "000000086368696c6472656e",           // "children"
+        "0000001400000002",                   // type, nelem
+        "0000000000000001",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "0000001c00000020",                   // encoded size, decoded size
+        "0000000269640000",                   // "id"
+        "0000000500000001",                   // type, nelem
+        "00000001",                           // 1
+        "0000000000000000",                   // end of list
+        "0000000000000001",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "0000001c00000020",                   // encoded size, decoded size
+        "0000000269640000",                   // "id"
+        "0000000500000001",                   // type, nelem
+        "00000002",                           // 2
+        "0000000000000000",                   // end of list
+        "0000001c00000020",                   // encoded size, decoded size
+        "000000026f6e0000",                   // "on"
+        "0000001500000001",                   // type, nelem
+        "00000001",                           // 1
+        "0000000000000000"                    // end of list
+    };
+
+    /*
+     * Empty arrays of int32, boolean_t, uint64 and strings, then a string, in XDR.
+     * nvs_xdr_nvp_op() writes nothing after the element count of an empty array,
+     * not even the count that non-empty int and boolean arrays have.
+     */
+    private static final String[] PACKED_XDR_EMPTY_ARRAYS = {
+        "01010000",                           // nvs_header_t: NV_ENCODE_XDR, written on a little-endian host
+        "0000000000000001",                   // nvl_version, nvl_nvflag = NV_UNIQUE_NAME
+        "0000001800000018",                   // encoded size, decoded size
+        "000000046e6f6e65",                   // "none"
+        "0000000d00000000",                   // type, nelem
+        "0000001c00000018",                   // encoded size, decoded size
+        "00000005666c616773000000",           // "flags"
+        "0000001800000000",                   // type, nelem
+        "0000001c00000018",                   // encoded size, decoded size
+        "000000057374617473000000",           // "stats"
+        "0000001000000000",                   // type, nelem
+        "0000001800000018",                   // encoded size, decoded size
+        "0000000474616773",                   // "tags"
+        "0000001100000000",                   // type, nelem
+        "0000002000000020",                   // encoded size, decoded size
+        "000000046c617374",                   // "last"
+        "0000000900000001",                   // type, nelem
+        "0000000178000000",                   // "x"
+        "0000000000000000"                    // end of list
+    };
+
+    private static java.nio.ByteBuffer packed(String... hex) {
+        StringBuilder s = new StringBuilder();
+        for (String h : hex)
+            s.append(h);
+        byte[] b = new byte[s.length()/2];
+        for (int i=0; i<b.length; i++)
+            b[i] = (byte)Integer.parseInt(s.substring(i*2, i*2+2), 16);
+        return java.nio.ByteBuffer.wrap(b);
+    }
+
+    public void testAbiCache() throws Exception {
+        /* TODO: Real func name */
+        if (!ZFS_TEST_FUNCNAME.isEmpty())
+            return;
+
+        File dir = File.createTempFile("abi-cache", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        try {
+            File libzfs = write(new File(dir, "libzfs.so"), "zfs");
+            File libnvpair = write(new File(dir, "libnvpair.so"), "nvpair");
+            File file = new File(dir, "abi-cache.properties");
+
+            AbiCache cache = new AbiCache(file, libzfs, libnvpair);
+            assertNull(cache.get("abi"));
+            cache.put("abi", "openzfs");
+            cache.save();
+            assertTrue(file.exists());
+
+            // hit
+            assertEquals("openzfs", new AbiCache(file, libzfs, libnvpair).get("abi"));
+
+            // miss once a library is replaced by one of a different size
+            write(libzfs, "zfs, but newer");
+            assertNull(new AbiCache(file, libzfs, libnvpair).get("abi"));
+
+            // miss once a library is replaced by one of the same size
+            cache = new AbiCache(file, libzfs, libnvpair);
+            cache.put("abi", "legacy");
+            cache.save();
+            assertEquals("legacy", new AbiCache(file, libzfs, libnvpair).get("abi"));
+            assertTrue(libnvpair.setLastModified(libnvpair.lastModified()-60000));
+            assertNull(new AbiCache(file, libzfs, libnvpair).get("abi"));
+
+            // a location that can't be written to is silently ignored
+            cache = new AbiCache(new File(libzfs, "abi-cache.properties"), libzfs, libnvpair);
+            cache.put("abi", "openzfs");
+            cache.save();
+
+            // off
+            cache = AbiCache.open("off");
+            cache.put("abi", "openzfs");
+            cache.save();
+            assertNull(AbiCache.open("off").get("abi"));
+            assertNull(AbiCache.open("").get("abi"));
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    private static File write(File f, String content) throws java.io.IOException {
+        java.io.FileOutputStream out = new java.io.FileOutputStream(f);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return f;
+    }
 }
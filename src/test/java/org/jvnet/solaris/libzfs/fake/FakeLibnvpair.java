@@ -0,0 +1,1138 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.fake;
+
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_NATIVE;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.NV_ENCODE_XDR;
+import static org.jvnet.solaris.nvlist.jna.libnvpair.data_type_t.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.PtrByReference;
+import org.jvnet.solaris.nvlist.NVListDecoder;
+import org.jvnet.solaris.nvlist.NVListEncoder;
+import org.jvnet.solaris.nvlist.jna.NVListException;
+import org.jvnet.solaris.nvlist.jna.libnvpair;
+import org.jvnet.solaris.nvlist.jna.libnvpair.data_type_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+import org.jvnet.solaris.nvlist.jna.nvpair_t;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.ByteByReference;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.NativeLongByReference;
+import com.sun.jna.ptr.PointerByReference;
+import com.sun.jna.ptr.ShortByReference;
+
+/**
+ * {@link libnvpair} that keeps name/value pair lists on the Java heap, for {@link FakeLibzfs}.
+ *
+ * <p>
+ * The {@link nvlist_t} and {@link nvpair_t} handed out carry made-up addresses that only mean
+ * something to this object, so they must not be passed to the real libnvpair. Names are always unique,
+ * whether or not {@link libnvpair#NV_UNIQUE_NAME} is given.
+ *
+ * <p>
+ * {@link #nvlist_pack} writes the same packed forms as libnvpair through {@link NVListEncoder},
+ * but only into a buffer that the caller provides, and {@link #setLatency(long)} makes every call take at least the given time.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FakeLibnvpair implements libnvpair {
+    private static final int ENOENT = 2;
+    private static final int EINVAL = 22;
+
+    private volatile long latency;
+
+    private final Map<Long,NVList> lists = new ConcurrentHashMap<Long,NVList>();
+    private final Map<Long,Pair> pairs = new ConcurrentHashMap<Long,Pair>();
+
+    /**
+     * One name/value pair. Strings and arrays are kept in native memory,
+     * since lookups have to hand out pointers to them.
+     */
+    /*package*/ final class Pair {
+        final Pointer address = FakeLibzfs.newAddress();
+        final String name;
+        final data_type_t type;
+        /**
+         * Boxed scalar, {@link Memory} for strings and arrays,
+         * {@link NVList} or {@link NVList}[] for nested lists.
+         */
+        final Object value;
+        /**
+         * Number of elements of an array.
+         */
+        final int count;
+        /**
+         * Pointers of an array of strings or lists.
+         */
+        Memory pointers;
+        Pair prev, next;
+
+        Pair(String name, data_type_t type, Object value) {
+            this(name, type, value, 0);
+        }
+
+        Pair(String name, data_type_t type, Object value, int count) {
+            this.name = name;
+            this.type = type;
+            this.value = value;
+            this.count = count;
+        }
+
+        Pair copy() {
+            if (value instanceof NVList)
+                return new Pair(name, type, ((NVList)value).copy());
+            if (value instanceof NVList[]) {
+                NVList[] src = (NVList[])value;
+                NVList[] dst = new NVList[src.length];
+                for (int i=0; i<src.length; i++)
+                    dst[i] = src[i].copy();
+                return nvlists(name, dst);
+            }
+            Pair r = new Pair(name, type, value, count);
+            r.pointers = pointers;
+            return r;
+        }
+
+        void free() {
+            pairs.remove(Pointer.nativeValue(address));
+            if (value instanceof NVList)
+                ((NVList)value).free();
+            if (value instanceof NVList[])
+                for (NVList l : (NVList[])value)
+                    l.free();
+        }
+
+        nvpair_t handle() {
+            nvpair_t r = new nvpair_t();
+            r.setPointer(address);
+            return r;
+        }
+    }
+
+    /**
+     * Contents of one list, in the order the pairs were added.
+     */
+    /*package*/ final class NVList {
+        final Pointer address = FakeLibzfs.newAddress();
+        private final Map<String,Pair> values = new HashMap<String,Pair>();
+        private Pair first, last;
+
+        NVList() {
+            lists.put(Pointer.nativeValue(address), this);
+        }
+
+        nvlist_t handle() {
+            return nvlist_t.wrap(FakeLibnvpair.this, address);
+        }
+
+        /**
+         * Adds the pair at the end, replacing the existing one of the same name.
+         */
+        void add(Pair p) {
+            Pair old = values.put(p.name, p);
+            if (old!=null) {
+                unlink(old);
+                old.free();
+            }
+            p.prev = last;
+            if (last!=null)
+                last.next = p;
+            else
+                first = p;
+            last = p;
+            pairs.put(Pointer.nativeValue(p.address), p);
+        }
+
+        boolean remove(String name) {
+            Pair p = values.remove(name);
+            if (p==null)
+                return false;
+            unlink(p);
+            p.free();
+            return true;
+        }
+
+        private void unlink(Pair p) {
+            if (p.prev!=null)
+                p.prev.next = p.next;
+            else
+                first = p.next;
+            if (p.next!=null)
+                p.next.prev = p.prev;
+            else
+                last = p.prev;
+            p.prev = p.next = null;
+        }
+
+        Pair get(String name) {
+            return values.get(name);
+        }
+
+        void put(String name, String value) {
+            add(new Pair(name, DATA_TYPE_STRING, toMemory(value)));
+        }
+
+        /**
+         * Adds the given list itself, not a copy.
+         */
+        void put(String name, NVList value) {
+            add(new Pair(name, DATA_TYPE_NVLIST, value));
+        }
+
+        void putBoolean(String name) {
+            add(new Pair(name, DATA_TYPE_BOOLEAN, Boolean.TRUE));
+        }
+
+        NVList copy() {
+            NVList r = new NVList();
+            for (Pair p=first; p!=null; p=p.next)
+                r.add(p.copy());
+            return r;
+        }
+
+        /**
+         * Turns this list into {@link NVListEncoder}, which writes the packed forms.
+         */
+        NVListEncoder encoder() {
+            NVListEncoder e = new NVListEncoder();
+            for (Pair p=first; p!=null; p=p.next) {
+                String n = p.name;
+                Memory m = (Memory)(p.value instanceof Memory ? p.value : null);
+                int c = p.count;
+                switch (p.type) {
+                case DATA_TYPE_BOOLEAN:         e.put(n, true); break;
+                case DATA_TYPE_BOOLEAN_VALUE:   e.putBooleanValue(n, (Boolean)p.value); break;
+                case DATA_TYPE_BYTE:            e.putByte(n, (Byte)p.value); break;
+                case DATA_TYPE_INT8:            e.putInt8(n, (Byte)p.value); break;
+                case DATA_TYPE_UINT8:           e.putUInt8(n, (Byte)p.value); break;
+                case DATA_TYPE_INT16:           e.putInt16(n, (Short)p.value); break;
+                case DATA_TYPE_UINT16:          e.putUInt16(n, (Short)p.value); break;
+                case DATA_TYPE_INT32:           e.putInt32(n, (Integer)p.value); break;
+                case DATA_TYPE_UINT32:          e.putUInt32(n, (Integer)p.value); break;
+                case DATA_TYPE_INT64:           e.putInt64(n, (Long)p.value); break;
+                case DATA_TYPE_UINT64:          e.putUInt64(n, (Long)p.value); break;
+                case DATA_TYPE_HRTIME:          e.putHrtime(n, (Long)p.value); break;
+                case DATA_TYPE_DOUBLE:          e.putDouble(n, (Double)p.value); break;
+                case DATA_TYPE_STRING:          e.put(n, m.getString(0)); break;
+                case DATA_TYPE_BYTE_ARRAY:      e.putByteArray(n, c==0 ? new byte[0] : m.getByteArray(0, c)); break;
+                case DATA_TYPE_INT8_ARRAY:      e.putInt8Array(n, c==0 ? new byte[0] : m.getByteArray(0, c)); break;
+                case DATA_TYPE_UINT8_ARRAY:     e.putUInt8Array(n, c==0 ? new byte[0] : m.getByteArray(0, c)); break;
+                case DATA_TYPE_INT16_ARRAY:     e.putInt16Array(n, c==0 ? new short[0] : m.getShortArray(0, c)); break;
+                case DATA_TYPE_UINT16_ARRAY:    e.putUInt16Array(n, c==0 ? new short[0] : m.getShortArray(0, c)); break;
+                case DATA_TYPE_INT32_ARRAY:     e.putInt32Array(n, c==0 ? new int[0] : m.getIntArray(0, c)); break;
+                case DATA_TYPE_UINT32_ARRAY:    e.putUInt32Array(n, c==0 ? new int[0] : m.getIntArray(0, c)); break;
+                case DATA_TYPE_INT64_ARRAY:     e.putInt64Array(n, c==0 ? new long[0] : m.getLongArray(0, c)); break;
+                case DATA_TYPE_UINT64_ARRAY:    e.putUInt64Array(n, c==0 ? new long[0] : m.getLongArray(0, c)); break;
+                case DATA_TYPE_BOOLEAN_ARRAY: {
+                    boolean[] b = new boolean[c];
+                    for (int i=0; i<c; i++)
+                        b[i] = m.getInt(i*4L)!=0;
+                    e.putBooleanArray(n, b);
+                    break;
+                }
+                case DATA_TYPE_STRING_ARRAY: {
+                    Memory[] src = (Memory[])p.value;
+                    String[] v = new String[src.length];
+                    for (int i=0; i<v.length; i++)
+                        v[i] = src[i].getString(0);
+                    e.putStringArray(n, v);
+                    break;
+                }
+                case DATA_TYPE_NVLIST:
+                    e.put(n, ((NVList)p.value).encoder());
+                    break;
+                case DATA_TYPE_NVLIST_ARRAY: {
+                    NVList[] src = (NVList[])p.value;
+                    NVListEncoder[] v = new NVListEncoder[src.length];
+                    for (int i=0; i<v.length; i++)
+                        v[i] = src[i].encoder();
+                    e.putNVListArray(n, v);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException(p.type.toString());
+                }
+            }
+            return e;
+        }
+
+        void free() {
+            lists.remove(Pointer.nativeValue(address));
+            for (Pair p=first; p!=null; p=p.next)
+                p.free();
+        }
+    }
+
+    /**
+     * Finds the list behind the given handle.
+     *
+     * @throws IllegalArgumentException
+     *      if the handle doesn't come from this object, or has already been freed.
+     */
+    /*package*/ NVList get(nvlist_t list) {
+        NVList l = list==null ? null : lists.get(Pointer.nativeValue(list.getPointer()));
+        if (l==null)
+            throw new IllegalArgumentException("Unknown nvlist: "+list);
+        return l;
+    }
+
+    /**
+     * Finds the pair behind the given handle.
+     */
+    private Pair get(nvpair_t pair) {
+        Pair p = pair==null ? null : pairs.get(Pointer.nativeValue(pair.getPointer()));
+        if (p==null)
+            throw new IllegalArgumentException("Unknown nvpair: "+pair);
+        return p;
+    }
+
+    private Pair get(nvpair_t pair, data_type_t type) {
+        Pair p = get(pair);
+        return p.type==type ? p : null;
+    }
+
+    /**
+     * Finds the pair of the given name and type, just like libnvpair does for lookups.
+     */
+    private Pair find(nvlist_t list, String name, data_type_t type) {
+        Pair p = get(list).get(name);
+        return p!=null && p.type==type ? p : null;
+    }
+
+    /**
+     * Reads the string values of the given list, skipping values of other types.
+     */
+    /*package*/ Map<String,String> getStrings(nvlist_t list) {
+        Map<String,String> r = new LinkedHashMap<String,String>();
+        if (list==null)
+            return r;
+        for (Pair p=get(list).first; p!=null; p=p.next) {
+            if (p.type==DATA_TYPE_STRING)
+                r.put(p.name, ((Memory)p.value).getString(0));
+        }
+        return r;
+    }
+
+    /**
+     * Makes every call take at least this many nanoseconds, like {@link FakeLibzfs#setLatency(long)}.
+     */
+    public void setLatency(long nanos) {
+        this.latency = nanos;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    private void pause() {
+        FakeLibzfs.pause(latency);
+    }
+
+    /**
+     * Number of lists that are allocated and not yet freed, including nested ones.
+     */
+    public int size() {
+        return lists.size();
+    }
+
+    private static Memory toMemory(String value) {
+        Memory m = new Memory(value.getBytes().length+1);
+        m.setString(0, value);
+        return m;
+    }
+
+    private static Memory toMemory(byte[] values, int n) {
+        if (n==0)   return null;
+        Memory m = new Memory(n);
+        m.write(0, values, 0, n);
+        return m;
+    }
+
+    private static Memory toMemory(short[] values, int n) {
+        if (n==0)   return null;
+        Memory m = new Memory(n*2L);
+        m.write(0, values, 0, n);
+        return m;
+    }
+
+    private static Memory toMemory(int[] values, int n) {
+        if (n==0)   return null;
+        Memory m = new Memory(n*4L);
+        m.write(0, values, 0, n);
+        return m;
+    }
+
+    private static Memory toMemory(long[] values, int n) {
+        if (n==0)   return null;
+        Memory m = new Memory(n*8L);
+        m.write(0, values, 0, n);
+        return m;
+    }
+
+    private Pair nvlists(String name, NVList[] values) {
+        Pair p = new Pair(name, DATA_TYPE_NVLIST_ARRAY, values, values.length);
+        if (values.length>0) {
+            p.pointers = new Memory((long)Pointer.SIZE*values.length);
+            for (int i=0; i<values.length; i++)
+                p.pointers.setPointer((long)Pointer.SIZE*i, values[i].address);
+        }
+        return p;
+    }
+
+    private Pair strings(String name, String[] values) {
+        int n = values.length;
+        Memory[] strings = new Memory[n];
+        for (int i=0; i<n; i++)
+            strings[i] = toMemory(values[i]);
+        Pair p = new Pair(name, DATA_TYPE_STRING_ARRAY, strings, n);
+        if (n>0) {
+            p.pointers = new Memory((long)Pointer.SIZE*n);
+            for (int i=0; i<n; i++)
+                p.pointers.setPointer((long)Pointer.SIZE*i, strings[i]);
+        }
+        return p;
+    }
+
+    /**
+     * Hands out the array in the given pair.
+     */
+    private static int array(Pair p, PointerByReference result, IntByReference n, int notFound) {
+        if (p==null)
+            return notFound;
+        if (p.count==0)
+            result.setValue(null);
+        else
+            result.setValue(p.pointers!=null ? p.pointers : (Pointer)p.value);
+        n.setValue(p.count);
+        return 0;
+    }
+
+    public int nvlist_alloc(PtrByReference<nvlist_t> result, int nvflag, int kmflag) {
+        pause();
+        result.setValue(new NVList().handle());
+        return 0;
+    }
+
+    public void nvlist_free(nvlist_t list) {
+        pause();
+        if (list!=null)
+            get(list).free();
+    }
+
+    public int nvlist_dup(nvlist_t list, PtrByReference<nvlist_t> result, int kmflag) {
+        pause();
+        result.setValue(get(list).copy().handle());
+        return 0;
+    }
+
+    public int nvlist_merge(nvlist_t dst, nvlist_t nvl, int flag) {
+        pause();
+        NVList d = get(dst);
+        for (Pair p=get(nvl).first; p!=null; p=p.next)
+            d.add(p.copy());
+        return 0;
+    }
+
+    public int nvlist_size(nvlist_t list, NativeLongByReference size, int encoding) {
+        pause();
+        if (encoding!=NV_ENCODE_NATIVE && encoding!=NV_ENCODE_XDR)
+            return EINVAL;
+        size.setValue(new NativeLong(get(list).encoder().encodedSize(encoding)));
+        return 0;
+    }
+
+    public int nvlist_pack(nvlist_t list, PointerByReference buf, NativeLongByReference size, int encoding, int kmflag) {
+        pause();
+        if (encoding!=NV_ENCODE_NATIVE && encoding!=NV_ENCODE_XDR)
+            return EINVAL;
+        ByteBuffer data = get(list).encoder().encode(encoding);
+        int n = data.remaining();
+        // handing out memory that the caller would free with the real libc isn't going to work
+        if (buf.getValue()==null || size.getValue().longValue()<n)
+            return EINVAL;
+        byte[] bytes = new byte[n];
+        data.get(bytes);
+        buf.getValue().write(0, bytes, 0, n);
+        return 0;
+    }
+
+    public int nvlist_unpack(Pointer buf, NativeLong size, PtrByReference<nvlist_t> result, int kmflag) {
+        pause();
+        NVList l = new NVList();
+        try {
+            NVListDecoder.decode(buf.getByteBuffer(0, size.longValue()), new Unpacker(l));
+        } catch (NVListException e) {
+            l.free();
+            return EINVAL;
+        }
+        result.setValue(l.handle());
+        return 0;
+    }
+
+    public int nvlist_add_boolean(nvlist_t list, String name) {
+        pause();
+        get(list).putBoolean(name);
+        return 0;
+    }
+
+    public int nvlist_add_boolean_value(nvlist_t list, String name, boolean value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_BOOLEAN_VALUE, value));
+        return 0;
+    }
+
+    public int nvlist_add_string(nvlist_t list, String key, String value) {
+        pause();
+        if (value==null)
+            return EINVAL;
+        get(list).put(key, value);
+        return 0;
+    }
+
+    public int nvlist_add_nvlist(nvlist_t list, String key, nvlist_t value) {
+        pause();
+        // just like libnvpair, this stores a copy
+        get(list).put(key, get(value).copy());
+        return 0;
+    }
+
+    public int nvlist_add_byte(nvlist_t list, String name, byte value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_BYTE, value));
+        return 0;
+    }
+
+    public int nvlist_add_int8(nvlist_t list, String name, byte value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT8, value));
+        return 0;
+    }
+
+    public int nvlist_add_uint8(nvlist_t list, String name, byte value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT8, value));
+        return 0;
+    }
+
+    public int nvlist_add_int16(nvlist_t list, String name, short value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT16, value));
+        return 0;
+    }
+
+    public int nvlist_add_uint16(nvlist_t list, String name, short value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT16, value));
+        return 0;
+    }
+
+    public int nvlist_add_int32(nvlist_t list, String name, int value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT32, value));
+        return 0;
+    }
+
+    public int nvlist_add_uint32(nvlist_t list, String name, int value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT32, value));
+        return 0;
+    }
+
+    public int nvlist_add_int64(nvlist_t list, String name, long value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT64, value));
+        return 0;
+    }
+
+    public int nvlist_add_uint64(nvlist_t list, String name, long value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT64, value));
+        return 0;
+    }
+
+    public int nvlist_add_hrtime(nvlist_t list, String name, long value) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_HRTIME, value));
+        return 0;
+    }
+
+    public int nvlist_add_boolean_array(nvlist_t list, String name, int[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_BOOLEAN_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_byte_array(nvlist_t list, String name, byte[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_BYTE_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_int8_array(nvlist_t list, String name, byte[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT8_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_uint8_array(nvlist_t list, String name, byte[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT8_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_int16_array(nvlist_t list, String name, short[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT16_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_uint16_array(nvlist_t list, String name, short[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT16_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_int32_array(nvlist_t list, String name, int[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT32_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_uint32_array(nvlist_t list, String name, int[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT32_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_int64_array(nvlist_t list, String name, long[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_INT64_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_uint64_array(nvlist_t list, String name, long[] values, int n) {
+        pause();
+        get(list).add(new Pair(name, DATA_TYPE_UINT64_ARRAY, toMemory(values, n), n));
+        return 0;
+    }
+
+    public int nvlist_add_string_array(nvlist_t list, String name, String[] values, int n) {
+        pause();
+        String[] copy = new String[n];
+        for (int i=0; i<n; i++) {
+            if (values[i]==null)
+                return EINVAL;
+            copy[i] = values[i];
+        }
+        get(list).add(strings(name, copy));
+        return 0;
+    }
+
+    public int nvlist_add_nvlist_array(nvlist_t list, String name, nvlist_t[] values, int n) {
+        pause();
+        NVList[] copies = new NVList[n];
+        for (int i=0; i<n; i++)
+            copies[i] = get(values[i]).copy();
+        get(list).add(nvlists(name, copies));
+        return 0;
+    }
+
+    public int nvlist_remove(nvlist_t list, String name, int type) {
+        pause();
+        NVList l = get(list);
+        Pair p = l.get(name);
+        if (p==null || p.type.ordinal()!=type)
+            return ENOENT;
+        l.remove(name);
+        return 0;
+    }
+
+    public int nvlist_remove_all(nvlist_t list, String name) {
+        pause();
+        return get(list).remove(name) ? 0 : ENOENT;
+    }
+
+    public int nvlist_lookup_boolean(nvlist_t list, String name) {
+        pause();
+        return find(list, name, DATA_TYPE_BOOLEAN)!=null ? 0 : ENOENT;
+    }
+
+    public int nvlist_lookup_boolean_value(nvlist_t list, String name, BooleanByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_BOOLEAN_VALUE);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Boolean)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_byte(nvlist_t list, String name, ByteByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_BYTE);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Byte)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_int8(nvlist_t list, String name, ByteByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_INT8);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Byte)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_uint8(nvlist_t list, String name, ByteByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_UINT8);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Byte)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_int16(nvlist_t list, String name, ShortByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_INT16);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Short)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_uint16(nvlist_t list, String name, ShortByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_UINT16);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Short)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_int32(nvlist_t list, String name, IntByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_INT32);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Integer)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_uint32(nvlist_t list, String name, IntByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_UINT32);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Integer)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_int64(nvlist_t list, String name, LongByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_INT64);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Long)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_uint64(nvlist_t list, String name, LongByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_UINT64);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Long)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_hrtime(nvlist_t list, String name, LongByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_HRTIME);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Long)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_boolean_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_BOOLEAN_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_byte_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_BYTE_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_int8_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_INT8_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_uint8_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_UINT8_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_int16_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_INT16_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_uint16_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_UINT16_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_int32_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_INT32_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_uint32_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_UINT32_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_int64_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_INT64_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_uint64_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_UINT64_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_string_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_STRING_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_nvlist_array(nvlist_t list, String name, PointerByReference result, IntByReference n) {
+        pause();
+        return array(find(list, name, DATA_TYPE_NVLIST_ARRAY), result, n, ENOENT);
+    }
+
+    public int nvlist_lookup_string(nvlist_t list, String name, PointerByReference result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_STRING);
+        if (p==null)
+            return ENOENT;
+        result.setValue((Memory)p.value);
+        return 0;
+    }
+
+    public int nvlist_lookup_nvlist(nvlist_t list, String name, PtrByReference<nvlist_t> result) {
+        pause();
+        Pair p = find(list, name, DATA_TYPE_NVLIST);
+        if (p==null)
+            return ENOENT;
+        result.setValue(((NVList)p.value).handle());
+        return 0;
+    }
+
+    public int nvlist_lookup_nvpair(nvlist_t list, String name, PtrByReference<nvpair_t> result) {
+        pause();
+        Pair p = get(list).get(name);
+        if (p==null)
+            return ENOENT;
+        result.setValue(p.handle());
+        return 0;
+    }
+
+    public boolean nvlist_exists(nvlist_t list, String name) {
+        pause();
+        return get(list).get(name)!=null;
+    }
+
+    public nvpair_t nvlist_next_nvpair(nvlist_t list, nvpair_t pair) {
+        pause();
+        NVList l = get(list);
+        Pair p = pair==null ? l.first : get(pair).next;
+        return p==null ? null : p.handle();
+    }
+
+    public String nvpair_name(nvpair_t pair) {
+        pause();
+        return get(pair).name;
+    }
+
+    public int nvpair_type(nvpair_t pair) {
+        pause();
+        return get(pair).type.ordinal();
+    }
+
+    public int nvpair_value_boolean_value(nvpair_t pair, BooleanByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_BOOLEAN_VALUE)
+            return EINVAL;
+        result.setValue((Boolean)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_byte(nvpair_t pair, ByteByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_BYTE)
+            return EINVAL;
+        result.setValue((Byte)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_int8(nvpair_t pair, ByteByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_INT8)
+            return EINVAL;
+        result.setValue((Byte)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_uint8(nvpair_t pair, ByteByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_UINT8)
+            return EINVAL;
+        result.setValue((Byte)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_int16(nvpair_t pair, ShortByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_INT16)
+            return EINVAL;
+        result.setValue((Short)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_uint16(nvpair_t pair, ShortByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_UINT16)
+            return EINVAL;
+        result.setValue((Short)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_int32(nvpair_t pair, IntByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_INT32)
+            return EINVAL;
+        result.setValue((Integer)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_uint32(nvpair_t pair, IntByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_UINT32)
+            return EINVAL;
+        result.setValue((Integer)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_int64(nvpair_t pair, LongByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_INT64)
+            return EINVAL;
+        result.setValue((Long)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_uint64(nvpair_t pair, LongByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_UINT64)
+            return EINVAL;
+        result.setValue((Long)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_hrtime(nvpair_t pair, LongByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_HRTIME)
+            return EINVAL;
+        result.setValue((Long)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_boolean_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_BOOLEAN_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_byte_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_BYTE_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_int8_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_INT8_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_uint8_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_UINT8_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_int16_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_INT16_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_uint16_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_UINT16_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_int32_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_INT32_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_uint32_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_UINT32_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_int64_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_INT64_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_uint64_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_UINT64_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_string_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_STRING_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_nvlist_array(nvpair_t pair, PointerByReference result, IntByReference n) {
+        pause();
+        return array(get(pair, DATA_TYPE_NVLIST_ARRAY), result, n, EINVAL);
+    }
+
+    public int nvpair_value_string(nvpair_t pair, PointerByReference result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_STRING)
+            return EINVAL;
+        result.setValue((Memory)p.value);
+        return 0;
+    }
+
+    public int nvpair_value_nvlist(nvpair_t pair, PtrByReference<nvlist_t> result) {
+        pause();
+        Pair p = get(pair);
+        if (p.type!=DATA_TYPE_NVLIST)
+            return EINVAL;
+        result.setValue(((NVList)p.value).handle());
+        return 0;
+    }
+
+    /**
+     * Rebuilds a list from what {@link NVListDecoder} reads.
+     */
+    private final class Unpacker implements NVListDecoder.Handler {
+        private final NVList list;
+        private NVList[] array;
+
+        Unpacker(NVList list) {
+            this.list = list;
+        }
+
+        public void pair(String name, data_type_t type, Object value) {
+            list.add(toPair(name, type, value));
+        }
+
+        public NVListDecoder.Handler list(String name, data_type_t type, int index, int count) {
+            if (type==DATA_TYPE_NVLIST) {
+                NVList l = new NVList();
+                list.put(name, l);
+                return new Unpacker(l);
+            }
+            if (index==0) {
+                array = new NVList[count];
+                for (int i=0; i<count; i++)
+                    array[i] = new NVList();
+                list.add(nvlists(name, array));
+            }
+            return new Unpacker(array[index]);
+        }
+
+        private Pair toPair(String name, data_type_t type, Object v) {
+            if (v instanceof byte[]) {
+                byte[] a = (byte[])v;
+                return new Pair(name, type, toMemory(a, a.length), a.length);
+            }
+            if (v instanceof short[]) {
+                short[] a = (short[])v;
+                return new Pair(name, type, toMemory(a, a.length), a.length);
+            }
+            if (v instanceof int[]) {
+                int[] a = (int[])v;
+                return new Pair(name, type, toMemory(a, a.length), a.length);
+            }
+            if (v instanceof long[]) {
+                long[] a = (long[])v;
+                return new Pair(name, type, toMemory(a, a.length), a.length);
+            }
+            if (v instanceof boolean[]) {
+                boolean[] a = (boolean[])v;
+                int[] b = new int[a.length];
+                for (int i=0; i<a.length; i++)
+                    b[i] = a[i] ? 1 : 0;
+                return new Pair(name, type, toMemory(b, b.length), b.length);
+            }
+            if (v instanceof String[])
+                return strings(name, (String[])v);
+            if (v instanceof String)
+                return new Pair(name, type, toMemory((String)v));
+            if (v instanceof List)  // empty array of lists
+                return nvlists(name, new NVList[0]);
+            return new Pair(name, type, v);
+        }
+    }
+}
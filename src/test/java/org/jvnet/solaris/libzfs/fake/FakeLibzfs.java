@@ -0,0 +1,2041 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at usr/src/OPENSOLARIS.LICENSE
+ * or http://www.opensolaris.org/os/licensing.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at usr/src/OPENSOLARIS.LICENSE.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+package org.jvnet.solaris.libzfs.fake;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jvnet.solaris.jna.BooleanByReference;
+import org.jvnet.solaris.jna.EnumByReference;
+import org.jvnet.solaris.jna.PtrByReference;
+import org.jvnet.solaris.libzfs.ErrorCode;
+import org.jvnet.solaris.libzfs.ZPoolStatus;
+import org.jvnet.solaris.libzfs.jna.LibzfsBinding;
+import org.jvnet.solaris.libzfs.jna.libzfs;
+import org.jvnet.solaris.libzfs.jna.libzfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.pool_scrub_type_t;
+import org.jvnet.solaris.libzfs.jna.vdev_aux_t;
+import org.jvnet.solaris.libzfs.jna.vdev_state_t;
+import org.jvnet.solaris.libzfs.jna.zfs_cmd;
+import org.jvnet.solaris.libzfs.jna.zfs_handle_t;
+import org.jvnet.solaris.libzfs.jna.zfs_prop_t;
+import org.jvnet.solaris.libzfs.jna.zfs_type_t;
+import org.jvnet.solaris.libzfs.jna.zpool_handle_t;
+import org.jvnet.solaris.libzfs.jna.zpool_prop_t;
+import org.jvnet.solaris.libzfs.jna.zprop_get_cbdata_t;
+import org.jvnet.solaris.libzfs.jna.zprop_list_t;
+import org.jvnet.solaris.libzfs.jna.zprop_source_t;
+import org.jvnet.solaris.nvlist.jna.nvlist_t;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.LongByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * {@link libzfs} that simulates pools, datasets, snapshots and their properties on the Java heap.
+ *
+ * <p>
+ * This lets the library run, be tested and be benchmarked without ZFS on the host,
+ * with as many datasets as the heap allows:
+ *
+ * <pre>
+ * FakeLibzfs fake = new FakeLibzfs();
+ * fake.createPool("rpool");
+ * fake.populate("rpool", 10, 5, 2);   // 111110 file systems with 2 snapshots each
+ * LibZFS zfs = new LibZFS(fake);
+ * </pre>
+ *
+ * <p>
+ * Failing calls set the error code and description of the libzfs handle they were made on,
+ * just like libzfs does, so {@link org.jvnet.solaris.libzfs.ZFSException} reports them the same way.
+ * Handles carry made-up addresses that only mean something to this object. Name/value
+ * pair lists come from {@link #getLibnvpair()}. The functions that the library doesn't use,
+ * and the ABI variants it doesn't pick for this backend ({@code zfs_perm_*}), throw
+ * {@link UnsupportedOperationException}.
+ *
+ * <p>
+ * Properties are kept as strings, with sizes in bytes, as libzfs reports them in literal mode.
+ * Every native property that can be set is inherited by descendants, and user properties
+ * (those with a ':' in their names) work as in ZFS. Like in libzfs, a dataset handle sees the
+ * properties as of when it was opened, until {@code zfs_refresh_properties} or a change made through
+ * it, and a pool handle sees them as of when it first read one. Mount table lookups with the cache of a
+ * libzfs handle turned on are answered from that cache until it's discarded. {@link #setLatency(long)} makes every
+ * call take at least the given time, to approximate the cost of the real library.
+ *
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class FakeLibzfs implements LibzfsBinding {
+    private static final AtomicLong ADDRESSES = new AtomicLong(0x10000);
+
+    /**
+     * Makes up a unique non-null address for a handle.
+     */
+    /*package*/ static Pointer newAddress() {
+        return new Pointer(ADDRESSES.addAndGet(16));
+    }
+
+    /**
+     * Native properties that can't be set.
+     */
+    private static final EnumSet<zfs_prop_t> READ_ONLY = EnumSet.of(
+            zfs_prop_t.ZFS_PROP_TYPE, zfs_prop_t.ZFS_PROP_CREATION, zfs_prop_t.ZFS_PROP_USED,
+            zfs_prop_t.ZFS_PROP_AVAILABLE, zfs_prop_t.ZFS_PROP_REFERENCED, zfs_prop_t.ZFS_PROP_COMPRESSRATIO,
+            zfs_prop_t.ZFS_PROP_MOUNTED, zfs_prop_t.ZFS_PROP_ORIGIN, zfs_prop_t.ZFS_PROP_CREATETXG,
+            zfs_prop_t.ZFS_PROP_NAME);
+
+    /**
+     * Values of native properties that are neither set nor inherited.
+     */
+    private static final Map<zfs_prop_t,String> DEFAULTS = new HashMap<zfs_prop_t,String>();
+
+    static {
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_USED, "24576");   // what an empty file system takes
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_AVAILABLE, "1099511627776");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_REFERENCED, "24576");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_COMPRESSRATIO, "1.00x");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_QUOTA, "0");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_RESERVATION, "0");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_RECORDSIZE, "131072");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_SHARENFS, "off");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_CHECKSUM, "on");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_COMPRESSION, "off");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_ATIME, "on");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_DEVICES, "on");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_EXEC, "on");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_SETUID, "on");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_READONLY, "off");
+        DEFAULTS.put(zfs_prop_t.ZFS_PROP_CANMOUNT, "on");
+    }
+
+    /* zprop_source_t as libzfs defines it */
+    private static final int SRC_NONE = 0x1;
+    private static final int SRC_DEFAULT = 0x2;
+    private static final int SRC_LOCAL = 0x8;
+    private static final int SRC_INHERITED = 0x10;
+
+    private final FakeLibnvpair nvpair = new FakeLibnvpair();
+
+    private volatile long latency;
+
+    /**
+     * Guards the pools and datasets, and the state in them.
+     * Callbacks are never called while holding this lock.
+     */
+    private final Object lock = new Object();
+    private final Map<String,Pool> pools = new TreeMap<String,Pool>();
+    private final Map<String,Dataset> datasets = new HashMap<String,Dataset>();
+    private long txg = 1;
+
+    private final Map<Long,Lib> libs = new ConcurrentHashMap<Long,Lib>();
+    private final Map<Long,Handle> handles = new ConcurrentHashMap<Long,Handle>();
+    private final Map<Long,PoolHandle> poolHandles = new ConcurrentHashMap<Long,PoolHandle>();
+
+    private static final class Pool {
+        final String name;
+        final Dataset root;
+        final Map<zpool_prop_t,String> props = new HashMap<zpool_prop_t,String>();
+
+        Pool(String name, Dataset root) {
+            this.name = name;
+            this.root = root;
+            props.put(zpool_prop_t.ZPOOL_PROP_NAME, name);
+            props.put(zpool_prop_t.ZPOOL_PROP_SIZE, "1099511627776");
+            props.put(zpool_prop_t.ZPOOL_PROP_FREE, "1099511627776");
+            props.put(zpool_prop_t.ZPOOL_PROP_ALLOCATED, "0");
+            props.put(zpool_prop_t.ZPOOL_PROP_CAPACITY, "0");
+            props.put(zpool_prop_t.ZPOOL_PROP_HEALTH, "ONLINE");
+            props.put(zpool_prop_t.ZPOOL_PROP_GUID, String.valueOf(name.hashCode() & 0x7fffffffL));
+            props.put(zpool_prop_t.ZPOOL_PROP_VERSION, "5000");
+            props.put(zpool_prop_t.ZPOOL_PROP_READONLY, "off");
+        }
+    }
+
+    private static final class Dataset {
+        String name;
+        final int type;
+        /**
+         * Parent file system, or for a snapshot, the dataset it was taken of.
+         */
+        Dataset parent;
+        /**
+         * For a clone, the snapshot it was created from.
+         */
+        final Dataset origin;
+        List<Dataset> children;
+        List<Dataset> snapshots;
+        Map<String,String> props;
+        final long createtxg;
+        final long creation = System.currentTimeMillis()/1000;
+        int clones;
+        boolean mounted, shared, destroyed;
+
+        Dataset(String name, int type, Dataset parent, Dataset origin, long createtxg) {
+            this.name = name;
+            this.type = type;
+            this.parent = parent;
+            this.origin = origin;
+            this.createtxg = createtxg;
+        }
+
+        boolean isSnapshot() {
+            return type==zfs_type_t.SNAPSHOT;
+        }
+
+        String getLocal(String key) {
+            return props==null ? null : props.get(key);
+        }
+
+        /**
+         * Replaces rather than modifies {@link #props}, so that {@link Stats} can hold on to it.
+         */
+        void setLocal(String key, String value) {
+            Map<String,String> m = props==null ? new HashMap<String,String>(4) : new HashMap<String,String>(props);
+            m.put(key, value);
+            props = m;
+        }
+
+        void removeLocal(String key) {
+            if (props!=null && props.containsKey(key)) {
+                Map<String,String> m = new HashMap<String,String>(props);
+                m.remove(key);
+                props = m;
+            }
+        }
+
+        List<Dataset> children() {
+            if (children==null)
+                children = new ArrayList<Dataset>(2);
+            return children;
+        }
+
+        List<Dataset> snapshots() {
+            if (snapshots==null)
+                snapshots = new ArrayList<Dataset>(2);
+            return snapshots;
+        }
+
+        boolean hasChildren() {
+            return children!=null && !children.isEmpty();
+        }
+
+        boolean hasSnapshots() {
+            return snapshots!=null && !snapshots.isEmpty();
+        }
+    }
+
+    /**
+     * The properties set on a dataset and its ancestors at one point in time.
+     * libzfs reads them into a handle when it's opened, and keeps them until the
+     * handle is refreshed, by {@code zfs_refresh_properties} or by a change made through it.
+     */
+    private static final class Stats {
+        /**
+         * The dataset, then its parent, and so on.
+         */
+        final Dataset[] chain;
+        final Map<?,?>[] props;
+
+        /**
+         * Must be called with the lock held.
+         */
+        Stats(Dataset ds) {
+            int n = 0;
+            for (Dataset a=ds; a!=null; a=a.parent)
+                n++;
+            chain = new Dataset[n];
+            props = new Map<?,?>[n];
+            n = 0;
+            for (Dataset a=ds; a!=null; a=a.parent) {
+                chain[n] = a;
+                // never modified, since Dataset replaces the map on every change
+                props[n++] = a.props;
+            }
+        }
+
+        Dataset dataset() {
+            return chain[0];
+        }
+
+        String getLocal(int i, String key) {
+            return props[i]==null ? null : (String)props[i].get(key);
+        }
+    }
+
+    private static final class Lib {
+        int errno;
+        String description = "no error";
+        /**
+         * Guarded by the lock of {@link FakeLibzfs}, like the rest below.
+         */
+        boolean mnttabCache;
+        /**
+         * Mount points of the mounted file systems by name, as cached by this handle.
+         * Empty until the first lookup with the cache on, after which it's only updated
+         * through {@code libzfs_mnttab_add} and {@code libzfs_mnttab_remove}.
+         */
+        final Map<String,String> mnttab = new HashMap<String,String>();
+    }
+
+    private static final class Handle {
+        final Lib lib;
+        final Dataset dataset;
+        /**
+         * Guarded by the lock of {@link FakeLibzfs}.
+         */
+        Stats stats;
+        /**
+         * Owned by this handle, like in libzfs.
+         */
+        nvlist_t userProps;
+        /**
+         * Strings handed out through char** that need to stay alive while the handle is open.
+         */
+        List<Memory> strings;
+
+        Handle(Lib lib, Dataset dataset, Stats stats) {
+            this.lib = lib;
+            this.dataset = dataset;
+            this.stats = stats;
+        }
+    }
+
+    private static final class PoolHandle {
+        final Lib lib;
+        final Pool pool;
+        /**
+         * Properties as of when they were first read through this handle,
+         * which libzfs keeps until the handle is closed.
+         */
+        Map<zpool_prop_t,String> props;
+
+        PoolHandle(Lib lib, Pool pool) {
+            this.lib = lib;
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * {@link org.jvnet.solaris.nvlist.jna.libnvpair} to use with the name/value pair lists of this object.
+     */
+    public FakeLibnvpair getLibnvpair() {
+        return nvpair;
+    }
+
+    /**
+     * There's nothing native to probe; this follows the OpenZFS signatures,
+     * and doesn't have the {@code zfs_perm_*} functions of old Solaris.
+     */
+    public Map<String,String> getAbiFeatures() {
+        Map<String,String> r = new HashMap<String,String>();
+        for (String f : new String[]{"", "_zfs_iter_snapshots", "_zfs_destroy", "_zfs_destroy_snaps", "_zfs_snapshot"})
+            r.put("LIBZFS4J_ABI"+f, "openzfs");
+        r.put("LIBZFS4J_ABI_zfs_perm_set", "NO-OP");
+        r.put("LIBZFS4J_ABI_zfs_perm_remove", "NO-OP");
+        return r;
+    }
+
+    /**
+     * Makes every call take at least this many nanoseconds.
+     * Below a millisecond this spins, so that short delays are accurate.
+     */
+    public void setLatency(long nanos) {
+        this.latency = nanos;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Number of dataset and pool handles that are open right now, to find leaks.
+     */
+    public int getOpenHandles() {
+        return handles.size()+poolHandles.size();
+    }
+
+    /**
+     * Number of libzfs handles that are open right now, to find leaks.
+     */
+    public int getOpenLibraries() {
+        return libs.size();
+    }
+
+    /**
+     * Number of file systems, volumes and snapshots.
+     */
+    public int size() {
+        synchronized (lock) {
+            return datasets.size();
+        }
+    }
+
+    /*
+     * Setting up the simulated state
+     */
+
+    /**
+     * Creates a pool along with its root file system.
+     *
+     * @throws IllegalArgumentException
+     *      if the name is not valid, or the pool already exists.
+     */
+    public void createPool(String name) {
+        synchronized (lock) {
+            if (!isValidName(name) || name.indexOf('/')>=0 || name.indexOf('@')>=0)
+                throw new IllegalArgumentException("Invalid pool name: "+name);
+            if (pools.containsKey(name))
+                throw new IllegalArgumentException("Pool already exists: "+name);
+            Dataset root = new Dataset(name, zfs_type_t.FILESYSTEM, null, null, txg++);
+            root.mounted = true;
+            datasets.put(name, root);
+            pools.put(name, new Pool(name, root));
+        }
+    }
+
+    /**
+     * Creates and mounts a file system, along with any missing parents, like "zfs create -p" does.
+     *
+     * @throws IllegalArgumentException
+     *      if the name is not valid, or its pool doesn't exist.
+     */
+    public void createFileSystem(String name) {
+        synchronized (lock) {
+            if (!isValidName(name) || name.indexOf('@')>=0)
+                throw new IllegalArgumentException("Invalid file system name: "+name);
+            if (datasets.containsKey(name))
+                return;
+            int idx = name.lastIndexOf('/');
+            if (idx<0)
+                throw new IllegalArgumentException("No such pool: "+name);
+            createFileSystem(name.substring(0,idx));
+            addChild(datasets.get(name.substring(0,idx)), name, zfs_type_t.FILESYSTEM, null).mounted = true;
+        }
+    }
+
+    /**
+     * Creates a snapshot like "rpool/foo@bar" of an existing dataset.
+     *
+     * @throws IllegalArgumentException
+     *      if the name is not valid, the dataset doesn't exist, or the snapshot already exists.
+     */
+    public void createSnapshot(String name) {
+        synchronized (lock) {
+            int idx = name.indexOf('@');
+            Dataset ds = idx<0 ? null : datasets.get(name.substring(0,idx));
+            if (ds==null || ds.isSnapshot() || !isValidName(name))
+                throw new IllegalArgumentException("Invalid snapshot name: "+name);
+            if (datasets.containsKey(name))
+                throw new IllegalArgumentException("Snapshot already exists: "+name);
+            addSnapshot(ds, name);
+        }
+    }
+
+    /**
+     * Sets a property of a dataset, including the ones that can't be set through libzfs,
+     * like "used" or "referenced".
+     *
+     * @throws IllegalArgumentException
+     *      if there's no such dataset or native property.
+     */
+    public void setProperty(String dataset, String key, String value) {
+        synchronized (lock) {
+            Dataset ds = datasets.get(dataset);
+            if (ds==null)
+                throw new IllegalArgumentException("No such dataset: "+dataset);
+            if (key.indexOf(':')<0 && toProp(key)==null)
+                throw new IllegalArgumentException("No such property: "+key);
+            ds.setLocal(key, value);
+        }
+    }
+
+    /**
+     * Sets a property of a pool.
+     *
+     * @throws IllegalArgumentException
+     *      if there's no such pool.
+     */
+    public void setPoolProperty(String pool, zpool_prop_t prop, String value) {
+        synchronized (lock) {
+            Pool p = pools.get(pool);
+            if (p==null)
+                throw new IllegalArgumentException("No such pool: "+pool);
+            p.props.put(prop, value);
+        }
+    }
+
+    /**
+     * Creates a tree of file systems under the given one, which must exist.
+     * Every file system gets {@code fanout} children named "fs0", "fs1", and so on,
+     * down to the given depth, and every new file system gets {@code snapshots}
+     * snapshots named "snap0", "snap1", and so on. The new file systems are mounted.
+     *
+     * @return
+     *      number of file systems and snapshots created.
+     */
+    public int populate(String root, int fanout, int depth, int snapshots) {
+        synchronized (lock) {
+            Dataset ds = datasets.get(root);
+            if (ds==null || ds.isSnapshot())
+                throw new IllegalArgumentException("No such file system: "+root);
+            return populate(ds, fanout, depth, snapshots);
+        }
+    }
+
+    private int populate(Dataset parent, int fanout, int depth, int snapshots) {
+        if (depth<=0)
+            return 0;
+        int n = 0;
+        for (int i=0; i<fanout; i++) {
+            String name = parent.name+"/fs"+i;
+            if (datasets.containsKey(name))
+                continue;
+            Dataset ds = addChild(parent, name, zfs_type_t.FILESYSTEM, null);
+            ds.mounted = true;
+            for (int j=0; j<snapshots; j++)
+                addSnapshot(ds, name+"@snap"+j);
+            n += 1+snapshots+populate(ds, fanout, depth-1, snapshots);
+        }
+        return n;
+    }
+
+    /*
+     * Internals, all called with the lock held
+     */
+
+    private Dataset addChild(Dataset parent, String name, int type, Dataset origin) {
+        Dataset ds = new Dataset(name, type, parent, origin, txg++);
+        parent.children().add(ds);
+        datasets.put(name, ds);
+        if (origin!=null)
+            origin.clones++;
+        return ds;
+    }
+
+    private Dataset addSnapshot(Dataset parent, String name) {
+        Dataset ds = new Dataset(name, zfs_type_t.SNAPSHOT, parent, null, txg++);
+        parent.snapshots().add(ds);
+        datasets.put(name, ds);
+        return ds;
+    }
+
+    private void remove(Dataset ds) {
+        ds.destroyed = true;
+        ds.mounted = false;
+        datasets.remove(ds.name);
+        if (ds.isSnapshot())
+            ds.parent.snapshots.remove(ds);
+        else
+            ds.parent.children.remove(ds);
+        if (ds.origin!=null)
+            ds.origin.clones--;
+    }
+
+    private Pool poolOf(Dataset ds) {
+        String name = ds.name;
+        int idx = name.indexOf('/');
+        if (idx<0)  idx = name.indexOf('@');
+        return pools.get(idx<0 ? name : name.substring(0,idx));
+    }
+
+    private static boolean isValidName(String name) {
+        if (name==null || name.length()==0 || name.length()>=MAXNAMELEN)
+            return false;
+        boolean at = false;
+        for (String c : name.split("/",-1)) {
+            if (c.length()==0)
+                return false;
+        }
+        for (int i=0; i<name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch=='@') {
+                if (at) return false;
+                at = true;
+                continue;
+            }
+            if (at && ch=='/')
+                return false;
+            if (!(Character.isLetterOrDigit(ch) || ch=='_' || ch=='-' || ch=='.' || ch==':' || ch==' ' || ch=='/'))
+                return false;
+        }
+        return !name.endsWith("@");
+    }
+
+    private static zfs_prop_t toProp(String name) {
+        try {
+            zfs_prop_t p = zfs_prop_t.valueOf("ZFS_PROP_"+name.toUpperCase());
+            return p==zfs_prop_t.ZFS_NUM_PROPS ? null : p;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String propName(zfs_prop_t p) {
+        return p.name().substring("ZFS_PROP_".length()).toLowerCase();
+    }
+
+    private static String typeName(int type) {
+        switch (type) {
+        case zfs_type_t.FILESYSTEM: return "filesystem";
+        case zfs_type_t.SNAPSHOT:   return "snapshot";
+        case zfs_type_t.VOLUME:     return "volume";
+        default:                    return "unknown";
+        }
+    }
+
+    /**
+     * Value of a native property, and where it came from.
+     *
+     * @return
+     *      null if the property doesn't apply to the dataset.
+     */
+    private String getProperty(Stats st, zfs_prop_t prop, int[] source) {
+        Dataset ds = st.dataset();
+        source[0] = SRC_NONE;
+        switch (prop) {
+        case ZFS_PROP_TYPE:         return typeName(ds.type);
+        case ZFS_PROP_NAME:         return ds.name;
+        case ZFS_PROP_CREATION:     return String.valueOf(ds.creation);
+        case ZFS_PROP_CREATETXG:    return String.valueOf(ds.createtxg);
+        case ZFS_PROP_ORIGIN:       return ds.origin==null ? null : ds.origin.name;
+        case ZFS_PROP_MOUNTED:
+            return ds.type==zfs_type_t.FILESYSTEM ? (ds.mounted ? "yes" : "no") : null;
+        case ZFS_PROP_MOUNTPOINT:
+            if (ds.type!=zfs_type_t.FILESYSTEM)
+                return null;
+            return getMountPoint(st, source);
+        case ZFS_PROP_VOLSIZE:
+        case ZFS_PROP_VOLBLOCKSIZE:
+            if (ds.type!=zfs_type_t.VOLUME)
+                return null;
+            break;
+        }
+
+        String key = propName(prop);
+        String v = st.getLocal(0, key);
+        if (v!=null) {
+            source[0] = SRC_LOCAL;
+            return v;
+        }
+        if (!READ_ONLY.contains(prop)) {
+            for (int i=1; i<st.chain.length; i++) {
+                v = st.getLocal(i, key);
+                if (v!=null) {
+                    source[0] = SRC_INHERITED;
+                    return v;
+                }
+            }
+        }
+        v = DEFAULTS.get(prop);
+        if (v!=null)
+            source[0] = SRC_DEFAULT;
+        return v;
+    }
+
+    private String getMountPoint(Stats st, int[] source) {
+        String suffix = "";
+        for (int i=0; i<st.chain.length; i++) {
+            Dataset a = st.chain[i];
+            String v = st.getLocal(i, "mountpoint");
+            if (v!=null) {
+                source[0] = i==0 ? SRC_LOCAL : SRC_INHERITED;
+                if (v.equals("none") || v.equals("legacy") || suffix.length()==0)
+                    return v;
+                return v.equals("/") ? suffix : v+suffix;
+            }
+            if (i+1<st.chain.length)
+                suffix = a.name.substring(a.name.lastIndexOf('/'))+suffix;
+        }
+        source[0] = SRC_DEFAULT;
+        return "/"+st.dataset().name;
+    }
+
+    private void pause() {
+        pause(latency);
+    }
+
+    /**
+     * Takes at least the given time, spinning below a millisecond.
+     */
+    /*package*/ static void pause(long l) {
+        if (l<=0)
+            return;
+        if (l>=1000000) {
+            LockSupport.parkNanos(l);
+            return;
+        }
+        long end = System.nanoTime()+l;
+        while (System.nanoTime()<end)
+            ;
+    }
+
+    /**
+     * Records the error on the libzfs handle, like libzfs does.
+     *
+     * @return -1
+     */
+    private static int fail(Lib lib, ErrorCode code, String description) {
+        lib.errno = 2000+code.ordinal();
+        lib.description = description;
+        return -1;
+    }
+
+    private Lib lib(libzfs_handle_t lib) {
+        Lib l = lib==null ? null : libs.get(Pointer.nativeValue(lib.getPointer()));
+        if (l==null)
+            throw new IllegalArgumentException("Unknown libzfs handle: "+lib);
+        return l;
+    }
+
+    private Handle handle(zfs_handle_t handle) {
+        Handle h = handle==null ? null : handles.get(Pointer.nativeValue(handle.getPointer()));
+        if (h==null)
+            throw new IllegalArgumentException("Unknown or closed zfs handle: "+handle);
+        return h;
+    }
+
+    private PoolHandle pool(zpool_handle_t handle) {
+        PoolHandle h = handle==null ? null : poolHandles.get(Pointer.nativeValue(handle.getPointer()));
+        if (h==null)
+            throw new IllegalArgumentException("Unknown or closed zpool handle: "+handle);
+        return h;
+    }
+
+    private zfs_handle_t open(Lib lib, Dataset ds) {
+        Stats st;
+        synchronized (lock) {
+            st = new Stats(ds);
+        }
+        Pointer p = newAddress();
+        handles.put(Pointer.nativeValue(p), new Handle(lib, ds, st));
+        zfs_handle_t h = new zfs_handle_t();
+        h.setPointer(p);
+        return h;
+    }
+
+    private zpool_handle_t open(Lib lib, Pool pool) {
+        Pointer p = newAddress();
+        poolHandles.put(Pointer.nativeValue(p), new PoolHandle(lib, pool));
+        zpool_handle_t h = new zpool_handle_t();
+        h.setPointer(p);
+        return h;
+    }
+
+    /**
+     * Hands out a C string that stays valid while the given handle is open.
+     */
+    private static Pointer string(Handle h, String s) {
+        Memory m = new Memory(s.getBytes().length+1);
+        m.setString(0, s);
+        if (h.strings==null)
+            h.strings = new ArrayList<Memory>(1);
+        h.strings.add(m);
+        return m;
+    }
+
+    /**
+     * Opens a new handle for each of the given datasets and passes it to the callback, like libzfs does.
+     * Called without the lock held.
+     */
+    private int iterate(Lib lib, Dataset[] list, zfs_iter_f callback, Pointer arg) {
+        for (Dataset ds : list) {
+            int r = callback.callback(open(lib, ds), arg);
+            if (r!=0)
+                return r;
+        }
+        return 0;
+    }
+
+    private static final Dataset[] NO_DATASET = new Dataset[0];
+
+    private static Dataset[] toArray(List<Dataset> list) {
+        return list==null ? NO_DATASET : list.toArray(new Dataset[list.size()]);
+    }
+
+    /**
+     * Checks that the dataset behind a handle hasn't been destroyed in the mean time.
+     */
+    private static boolean gone(Handle h) {
+        if (h.dataset.destroyed) {
+            fail(h.lib, ErrorCode.EZFS_NOENT, "dataset does not exist: "+h.dataset.name);
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Simulated libzfs functions
+     */
+
+    public libzfs_handle_t libzfs_init() {
+        pause();
+        Pointer p = newAddress();
+        libs.put(Pointer.nativeValue(p), new Lib());
+        libzfs_handle_t h = new libzfs_handle_t();
+        h.setPointer(p);
+        return h;
+    }
+
+    public void libzfs_fini(libzfs_handle_t handle) {
+        pause();
+        lib(handle);
+        libs.remove(Pointer.nativeValue(handle.getPointer()));
+    }
+
+    public int libzfs_errno(libzfs_handle_t lib) {
+        pause();
+        return lib(lib).errno;
+    }
+
+    public String libzfs_error_action(libzfs_handle_t lib) {
+        pause();
+        return "cannot complete the operation";
+    }
+
+    public String libzfs_error_description(libzfs_handle_t lib) {
+        pause();
+        return lib(lib).description;
+    }
+
+    public void libzfs_mnttab_init(libzfs_handle_t lib) {
+        pause();
+    }
+
+    public void libzfs_mnttab_fini(libzfs_handle_t lib) {
+        pause();
+        Lib l = lib(lib);
+        synchronized (lock) {
+            l.mnttab.clear();
+        }
+    }
+
+    public void libzfs_mnttab_cache(libzfs_handle_t lib, boolean flag) {
+        pause();
+        Lib l = lib(lib);
+        synchronized (lock) {
+            // like in libzfs, this only decides what the next lookup does
+            l.mnttabCache = flag;
+        }
+    }
+
+    public void libzfs_mnttab_add(libzfs_handle_t lib, String special, String mountp, String mntopts) {
+        pause();
+        Lib l = lib(lib);
+        synchronized (lock) {
+            // an empty table gets read in full on the next lookup anyway
+            if (!l.mnttab.isEmpty())
+                l.mnttab.put(special, mountp);
+        }
+    }
+
+    public void libzfs_mnttab_remove(libzfs_handle_t lib, String fsname) {
+        pause();
+        Lib l = lib(lib);
+        synchronized (lock) {
+            l.mnttab.remove(fsname);
+        }
+    }
+
+    public zpool_handle_t zpool_open(libzfs_handle_t lib, String name) {
+        pause();
+        Lib l = lib(lib);
+        Pool p;
+        synchronized (lock) {
+            p = pools.get(name);
+        }
+        if (p==null) {
+            fail(l, ErrorCode.EZFS_NOENT, "no such pool: "+name);
+            return null;
+        }
+        return open(l, p);
+    }
+
+    public void zpool_close(zpool_handle_t pool) {
+        pause();
+        pool(pool);
+        poolHandles.remove(Pointer.nativeValue(pool.getPointer()));
+    }
+
+    public String zpool_get_name(zpool_handle_t pool) {
+        pause();
+        return pool(pool).pool.name;
+    }
+
+    public int zpool_iter(libzfs_handle_t lib, zpool_iter_f callback, Pointer arg) {
+        pause();
+        Lib l = lib(lib);
+        Pool[] list;
+        synchronized (lock) {
+            list = pools.values().toArray(new Pool[pools.size()]);
+        }
+        for (Pool p : list) {
+            int r = callback.callback(open(l, p), arg);
+            if (r!=0)
+                return r;
+        }
+        return 0;
+    }
+
+    /**
+     * Reads a pool property through the handle, loading them all the first time like libzfs does.
+     */
+    private String getProperty(PoolHandle h, NativeLong prop) {
+        synchronized (lock) {
+            if (h.props==null)
+                h.props = new HashMap<zpool_prop_t,String>(h.pool.props);
+            return h.props.get(zpool_prop_t.values()[prop.intValue()]);
+        }
+    }
+
+    public int zpool_get_prop(zpool_handle_t pool, NativeLong prop, Pointer buf, NativeLong len, EnumByReference<zprop_source_t> srctype) {
+        pause();
+        String v = getProperty(pool(pool), prop);
+        if (v==null)
+            return -1;
+        writeString(buf, len.intValue(), v);
+        return 0;
+    }
+
+    public long zpool_get_prop_int(zpool_handle_t pool, NativeLong prop, EnumByReference<zprop_source_t> src) {
+        pause();
+        return toLong(getProperty(pool(pool), prop));
+    }
+
+    public int zpool_get_status(zpool_handle_t handle, PointerByReference msgid) {
+        pause();
+        pool(handle);
+        if (msgid!=null)
+            msgid.setValue(null);
+        return ZPoolStatus.ZPOOL_STATUS_OK.ordinal();
+    }
+
+    public int zpool_export(zpool_handle_t pool, boolean force) {
+        pause();
+        PoolHandle h = pool(pool);
+        synchronized (lock) {
+            if (pools.remove(h.pool.name)==null)
+                return fail(h.lib, ErrorCode.EZFS_NOENT, "no such pool: "+h.pool.name);
+            String prefix = h.pool.name;
+            for (Dataset ds : new ArrayList<Dataset>(datasets.values())) {
+                if (ds.name.equals(prefix) || ds.name.startsWith(prefix+"/") || ds.name.startsWith(prefix+"@")) {
+                    ds.destroyed = true;
+                    datasets.remove(ds.name);
+                }
+            }
+        }
+        return 0;
+    }
+
+    public int zpool_export_force(zpool_handle_t pool) {
+        return zpool_export(pool, true);
+    }
+
+    public int zpool_disable_datasets(zpool_handle_t pool, boolean force) {
+        pause();
+        PoolHandle h = pool(pool);
+        synchronized (lock) {
+            unmountAll(h.pool.root);
+        }
+        return 0;
+    }
+
+    private void unmountAll(Dataset ds) {
+        ds.mounted = false;
+        ds.shared = false;
+        if (ds.children!=null)
+            for (Dataset c : ds.children)
+                unmountAll(c);
+    }
+
+    public zfs_handle_t zfs_open(libzfs_handle_t lib, String name, int typeMask) {
+        pause();
+        Lib l = lib(lib);
+        Dataset ds;
+        synchronized (lock) {
+            ds = datasets.get(name);
+        }
+        if (ds==null) {
+            fail(l, ErrorCode.EZFS_NOENT, "dataset does not exist: "+name);
+            return null;
+        }
+        if ((ds.type&typeMask)==0) {
+            fail(l, ErrorCode.EZFS_BADTYPE, "operation not applicable to datasets of this type: "+name);
+            return null;
+        }
+        return open(l, ds);
+    }
+
+    public void zfs_close(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        handles.remove(Pointer.nativeValue(handle.getPointer()));
+        if (h.userProps!=null)
+            nvpair.nvlist_free(h.userProps);
+    }
+
+    public int zfs_get_type(zfs_handle_t handle) {
+        pause();
+        return handle(handle).dataset.type;
+    }
+
+    public String zfs_get_name(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            return h.dataset.name;
+        }
+    }
+
+    public boolean zfs_dataset_exists(libzfs_handle_t lib, String name, int type) {
+        pause();
+        lib(lib);
+        synchronized (lock) {
+            Dataset ds = datasets.get(name);
+            return ds!=null && (ds.type&type)!=0;
+        }
+    }
+
+    public zfs_handle_t zfs_path_to_zhandle(libzfs_handle_t lib, String path, int type) {
+        pause();
+        Lib l = lib(lib);
+        Dataset best = null;
+        String bestMount = null;
+        int[] source = new int[1];
+        synchronized (lock) {
+            for (Dataset ds : datasets.values()) {
+                if (!ds.mounted || (ds.type&type)==0)
+                    continue;
+                // from the mount table, so as it is now
+                String mp = getMountPoint(new Stats(ds), source);
+                if (!mp.startsWith("/"))
+                    continue;
+                boolean contains = path.equals(mp) || mp.equals("/") || path.startsWith(mp+"/");
+                if (contains && (bestMount==null || mp.length()>bestMount.length())) {
+                    best = ds;
+                    bestMount = mp;
+                }
+            }
+        }
+        if (best==null) {
+            fail(l, ErrorCode.EZFS_NOENT, "no ZFS file system mounted at "+path);
+            return null;
+        }
+        return open(l, best);
+    }
+
+    public int zfs_prop_get(zfs_handle_t handle, NativeLong prop, Pointer _4, int cbSize, IntByReference _5, char[] _6, NativeLong _7, boolean _8) {
+        pause();
+        Handle h = handle(handle);
+        int[] source = new int[1];
+        String v;
+        synchronized (lock) {
+            v = getProperty(h.stats, zfs_prop_t.values()[prop.intValue()], source);
+        }
+        if (v==null)
+            return -1;
+        writeString(_4, cbSize, v);
+        if (_5!=null)
+            _5.setValue(source[0]);
+        return 0;
+    }
+
+    public int zfs_prop_get_numeric(zfs_handle_t handle, NativeLong prop, LongByReference r, IntByReference _4, char[] _5, NativeLong _6) {
+        pause();
+        Handle h = handle(handle);
+        int[] source = new int[1];
+        String v;
+        synchronized (lock) {
+            v = getProperty(h.stats, zfs_prop_t.values()[prop.intValue()], source);
+        }
+        if (v==null)
+            return -1;
+        try {
+            r.setValue(toLong(v));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (_4!=null)
+            _4.setValue(source[0]);
+        return 0;
+    }
+
+    private static long toLong(String v) {
+        if (v==null || v.equals("no") || v.equals("off"))
+            return 0;
+        if (v.equals("yes") || v.equals("on"))
+            return 1;
+        return Long.parseLong(v);
+    }
+
+    private static void writeString(Pointer buf, int size, String v) {
+        if (v.length()>=size)
+            v = v.substring(0, size-1);
+        buf.setString(0, v);
+    }
+
+    public int zfs_prop_set(zfs_handle_t handle, String propertyName, String propertyValue) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            if (propertyName.indexOf(':')<0) {
+                zfs_prop_t p = toProp(propertyName);
+                if (p==null)
+                    return fail(h.lib, ErrorCode.EZFS_BADPROP, "invalid property '"+propertyName+"'");
+                if (READ_ONLY.contains(p))
+                    return fail(h.lib, ErrorCode.EZFS_PROPREADONLY, "'"+propertyName+"' is readonly");
+                if (h.dataset.isSnapshot())
+                    return fail(h.lib, ErrorCode.EZFS_PROPTYPE, "this property can not be modified for snapshots");
+            }
+            h.dataset.setLocal(propertyName, propertyValue);
+            // libzfs reloads the properties of the handle the change was made through
+            h.stats = new Stats(h.dataset);
+        }
+        return 0;
+    }
+
+    public int zfs_prop_inherit(zfs_handle_t handle, String _2) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            if (_2.indexOf(':')<0) {
+                zfs_prop_t p = toProp(_2);
+                if (p==null)
+                    return fail(h.lib, ErrorCode.EZFS_BADPROP, "invalid property '"+_2+"'");
+                if (READ_ONLY.contains(p))
+                    return fail(h.lib, ErrorCode.EZFS_PROPNONINHERIT, "'"+_2+"' property cannot be inherited");
+            }
+            h.dataset.removeLocal(_2);
+            h.stats = new Stats(h.dataset);
+        }
+        return 0;
+    }
+
+    public nvlist_t zfs_get_user_props(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        Map<String,String[]> props = new TreeMap<String,String[]>();
+        synchronized (lock) {
+            Stats st = h.stats;
+            for (int i=0; i<st.chain.length; i++) {
+                if (st.props[i]==null)
+                    continue;
+                for (Map.Entry<?,?> e : st.props[i].entrySet()) {
+                    String key = (String)e.getKey();
+                    if (key.indexOf(':')>=0 && !props.containsKey(key))
+                        props.put(key, new String[]{(String)e.getValue(), st.chain[i].name});
+                }
+            }
+        }
+
+        if (h.userProps!=null)
+            nvpair.nvlist_free(h.userProps);
+        FakeLibnvpair.NVList list = nvpair.new NVList();
+        for (Map.Entry<String,String[]> e : props.entrySet()) {
+            FakeLibnvpair.NVList v = nvpair.new NVList();
+            v.put("value", e.getValue()[0]);
+            v.put("source", e.getValue()[1]);
+            list.put(e.getKey(), v);
+        }
+        h.userProps = list.handle();
+        return h.userProps;
+    }
+
+    public int zfs_iter_root(libzfs_handle_t lib, zfs_iter_f callback, Pointer arg) {
+        pause();
+        Lib l = lib(lib);
+        Dataset[] list;
+        synchronized (lock) {
+            list = new Dataset[pools.size()];
+            int i=0;
+            for (Pool p : pools.values())
+                list[i++] = p.root;
+        }
+        return iterate(l, list, callback, arg);
+    }
+
+    public int zfs_iter_children(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        pause();
+        Handle h = handle(handle);
+        Dataset[] children, snapshots;
+        synchronized (lock) {
+            children = toArray(h.dataset.children);
+            snapshots = toArray(h.dataset.snapshots);
+        }
+        int r = iterate(h.lib, children, callback, arg);
+        if (r!=0)
+            return r;
+        return iterate(h.lib, snapshots, callback, arg);
+    }
+
+    public int zfs_iter_filesystems(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        pause();
+        Handle h = handle(handle);
+        Dataset[] list;
+        synchronized (lock) {
+            list = toArray(h.dataset.children);
+        }
+        return iterate(h.lib, list, callback, arg);
+    }
+
+    public int zfs_iter_snapshots(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        pause();
+        Handle h = handle(handle);
+        Dataset[] list;
+        synchronized (lock) {
+            list = toArray(h.dataset.snapshots);
+        }
+        return iterate(h.lib, list, callback, arg);
+    }
+
+    public int zfs_iter_snapshots(zfs_handle_t handle, boolean simple, zfs_iter_f callback, Pointer arg) {
+        return zfs_iter_snapshots(handle, callback, arg);
+    }
+
+    public int zfs_iter_snapshots_sorted(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        // snapshots are kept in the order of creation
+        return zfs_iter_snapshots(handle, callback, arg);
+    }
+
+    public int zfs_create(libzfs_handle_t lib, String name, int type, nvlist_t props) {
+        pause();
+        Lib l = lib(lib);
+        Map<String,String> values = nvpair.getStrings(props);
+        synchronized (lock) {
+            if (!isValidName(name) || name.indexOf('@')>=0)
+                return fail(l, ErrorCode.EZFS_INVALIDNAME, "invalid dataset name: "+name);
+            if (type!=zfs_type_t.FILESYSTEM && type!=zfs_type_t.VOLUME)
+                return fail(l, ErrorCode.EZFS_BADTYPE, "invalid dataset type: "+type);
+            if (datasets.containsKey(name))
+                return fail(l, ErrorCode.EZFS_EXISTS, "dataset already exists: "+name);
+            int idx = name.lastIndexOf('/');
+            Dataset parent = idx<0 ? null : datasets.get(name.substring(0,idx));
+            if (parent==null || parent.type!=zfs_type_t.FILESYSTEM)
+                return fail(l, ErrorCode.EZFS_NOENT, "parent does not exist: "+name);
+            for (String key : values.keySet()) {
+                zfs_prop_t p = toProp(key);
+                if (key.indexOf(':')<0 && (p==null || READ_ONLY.contains(p)))
+                    return fail(l, ErrorCode.EZFS_BADPROP, "invalid property '"+key+"'");
+            }
+            Dataset ds = addChild(parent, name, type, null);
+            for (Map.Entry<String,String> e : values.entrySet())
+                ds.setLocal(e.getKey(), e.getValue());
+        }
+        return 0;
+    }
+
+    public int zfs_clone(zfs_handle_t handle, String name, nvlist_t _3) {
+        pause();
+        Handle h = handle(handle);
+        Map<String,String> values = nvpair.getStrings(_3);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            if (!h.dataset.isSnapshot())
+                return fail(h.lib, ErrorCode.EZFS_BADTYPE, "only snapshots can be cloned");
+            if (!isValidName(name) || name.indexOf('@')>=0)
+                return fail(h.lib, ErrorCode.EZFS_INVALIDNAME, "invalid dataset name: "+name);
+            if (datasets.containsKey(name))
+                return fail(h.lib, ErrorCode.EZFS_EXISTS, "dataset already exists: "+name);
+            int idx = name.lastIndexOf('/');
+            Dataset parent = idx<0 ? null : datasets.get(name.substring(0,idx));
+            if (parent==null || parent.type!=zfs_type_t.FILESYSTEM)
+                return fail(h.lib, ErrorCode.EZFS_NOENT, "parent does not exist: "+name);
+            if (poolOf(parent)!=poolOf(h.dataset))
+                return fail(h.lib, ErrorCode.EZFS_CROSSTARGET, "cannot create a clone in another pool: "+name);
+            Dataset ds = addChild(parent, name, h.dataset.parent.type, h.dataset);
+            for (Map.Entry<String,String> e : values.entrySet())
+                ds.setLocal(e.getKey(), e.getValue());
+        }
+        return 0;
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive, nvlist_t props) {
+        pause();
+        Lib l = lib(lib);
+        Map<String,String> values = nvpair.getStrings(props);
+        String name = fullNameWithAtSnapShot;
+        synchronized (lock) {
+            int idx = name.indexOf('@');
+            if (idx<0 || !isValidName(name))
+                return fail(l, ErrorCode.EZFS_INVALIDNAME, "invalid snapshot name: "+name);
+            Dataset ds = datasets.get(name.substring(0,idx));
+            if (ds==null)
+                return fail(l, ErrorCode.EZFS_NOENT, "dataset does not exist: "+name);
+
+            List<Dataset> targets = new ArrayList<Dataset>();
+            collect(ds, recursive, targets);
+            String snap = name.substring(idx);
+            for (Dataset t : targets) {
+                if (datasets.containsKey(t.name+snap))
+                    return fail(l, ErrorCode.EZFS_EXISTS, "snapshot already exists: "+t.name+snap);
+            }
+            for (Dataset t : targets) {
+                Dataset s = addSnapshot(t, t.name+snap);
+                for (Map.Entry<String,String> e : values.entrySet())
+                    s.setLocal(e.getKey(), e.getValue());
+            }
+        }
+        return 0;
+    }
+
+    public int zfs_snapshot(libzfs_handle_t lib, String fullNameWithAtSnapShot, boolean recursive) {
+        return zfs_snapshot(lib, fullNameWithAtSnapShot, recursive, null);
+    }
+
+    /**
+     * Lists the given file system or volume, and if recursive, all its descendants.
+     */
+    private static void collect(Dataset ds, boolean recursive, List<Dataset> result) {
+        result.add(ds);
+        if (recursive && ds.children!=null)
+            for (Dataset c : ds.children)
+                collect(c, true, result);
+    }
+
+    public int zfs_destroy(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            Dataset ds = h.dataset;
+            if (ds.parent==null)
+                return fail(h.lib, ErrorCode.EZFS_BADTYPE, "cannot destroy the root file system of a pool: "+ds.name);
+            if (ds.hasChildren())
+                return fail(h.lib, ErrorCode.EZFS_EXISTS, "filesystem has children: "+ds.name);
+            if (ds.hasSnapshots())
+                return fail(h.lib, ErrorCode.EZFS_EXISTS, "filesystem has snapshots: "+ds.name);
+            if (ds.clones>0)
+                return fail(h.lib, ErrorCode.EZFS_EXISTS, "snapshot has dependent clones: "+ds.name);
+            remove(ds);
+        }
+        return 0;
+    }
+
+    public int zfs_destroy(zfs_handle_t handle, boolean defer) {
+        return zfs_destroy(handle);
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            List<Dataset> targets = new ArrayList<Dataset>();
+            collect(h.dataset, true, targets);
+            List<Dataset> snapshots = new ArrayList<Dataset>();
+            for (Dataset t : targets) {
+                Dataset s = datasets.get(t.name+"@"+name);
+                if (s==null)
+                    continue;
+                if (s.clones>0)
+                    return fail(h.lib, ErrorCode.EZFS_EXISTS, "snapshot has dependent clones: "+s.name);
+                snapshots.add(s);
+            }
+            if (snapshots.isEmpty())
+                return fail(h.lib, ErrorCode.EZFS_NOENT, "could not find any snapshots to destroy: "+h.dataset.name+"@"+name);
+            for (Dataset s : snapshots)
+                remove(s);
+        }
+        return 0;
+    }
+
+    public int zfs_destroy_snaps(zfs_handle_t handle, String name, boolean defer) {
+        return zfs_destroy_snaps(handle, name);
+    }
+
+    public int zfs_rollback(zfs_handle_t handle1, zfs_handle_t handle2, boolean _3) {
+        pause();
+        Handle fs = handle(handle1);
+        Handle snap = handle(handle2);
+        synchronized (lock) {
+            if (gone(fs) || gone(snap))
+                return -1;
+            if (!snap.dataset.isSnapshot() || snap.dataset.parent!=fs.dataset)
+                return fail(fs.lib, ErrorCode.EZFS_BADTYPE, "not a snapshot of "+fs.dataset.name+": "+snap.dataset.name);
+            List<Dataset> list = fs.dataset.snapshots;
+            if (list.get(list.size()-1)!=snap.dataset)
+                return fail(fs.lib, ErrorCode.EZFS_EXISTS, "more recent snapshots exist: "+snap.dataset.name);
+        }
+        return 0;
+    }
+
+    public int zfs_rename(zfs_handle_t handle, String name, boolean _3) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            Dataset ds = h.dataset;
+            if (!isValidName(name))
+                return fail(h.lib, ErrorCode.EZFS_INVALIDNAME, "invalid dataset name: "+name);
+            if (datasets.containsKey(name))
+                return fail(h.lib, ErrorCode.EZFS_EXISTS, "dataset already exists: "+name);
+
+            if (ds.isSnapshot()) {
+                String fs = ds.parent.name;
+                if (!name.startsWith(fs+"@"))
+                    return fail(h.lib, ErrorCode.EZFS_CROSSTARGET, "snapshots must be part of the same dataset: "+name);
+                String from = ds.name.substring(fs.length());
+                String to = name.substring(fs.length());
+                List<Dataset> targets = new ArrayList<Dataset>();
+                collect(ds.parent, _3, targets);
+                for (Dataset t : targets) {
+                    if (datasets.containsKey(t.name+to))
+                        return fail(h.lib, ErrorCode.EZFS_EXISTS, "dataset already exists: "+t.name+to);
+                }
+                for (Dataset t : targets) {
+                    Dataset s = datasets.remove(t.name+from);
+                    if (s!=null) {
+                        s.name = t.name+to;
+                        datasets.put(s.name, s);
+                    }
+                }
+                return 0;
+            }
+
+            if (ds.parent==null)
+                return fail(h.lib, ErrorCode.EZFS_INVALIDNAME, "cannot rename the root file system of a pool: "+ds.name);
+            if (name.indexOf('@')>=0)
+                return fail(h.lib, ErrorCode.EZFS_INVALIDNAME, "invalid dataset name: "+name);
+            if (name.startsWith(ds.name+"/"))
+                return fail(h.lib, ErrorCode.EZFS_INVALIDNAME, "cannot rename a dataset to be a descendant of itself: "+name);
+            int idx = name.lastIndexOf('/');
+            Dataset parent = idx<0 ? null : datasets.get(name.substring(0,idx));
+            if (parent==null || parent.type!=zfs_type_t.FILESYSTEM)
+                return fail(h.lib, ErrorCode.EZFS_NOENT, "parent does not exist: "+name);
+            if (poolOf(parent)!=poolOf(ds))
+                return fail(h.lib, ErrorCode.EZFS_CROSSTARGET, "cannot rename to a different pool: "+name);
+
+            ds.parent.children.remove(ds);
+            parent.children().add(ds);
+            ds.parent = parent;
+            rename(ds, ds.name, name);
+        }
+        return 0;
+    }
+
+    private void rename(Dataset ds, String from, String to) {
+        datasets.remove(ds.name);
+        ds.name = to+ds.name.substring(from.length());
+        datasets.put(ds.name, ds);
+        if (ds.snapshots!=null)
+            for (Dataset s : ds.snapshots)
+                rename(s, from, to);
+        if (ds.children!=null)
+            for (Dataset c : ds.children)
+                rename(c, from, to);
+    }
+
+    public boolean is_mounted(libzfs_handle_t lib, String special, PointerByReference _2) {
+        pause();
+        Lib l = lib(lib);
+        synchronized (lock) {
+            if (findMount(l, special)==null)
+                return false;
+            if (_2!=null)
+                _2.setValue(null);  // no one to free it
+            return true;
+        }
+    }
+
+    public boolean zfs_is_mounted(zfs_handle_t handle, PointerByReference _3) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            String mp = findMount(h.lib, h.dataset.name);
+            if (mp==null)
+                return false;
+            if (_3!=null)
+                _3.setValue(string(h, mp));
+            return true;
+        }
+    }
+
+    /**
+     * Looks up the mount point of a mounted file system the way {@code libzfs_mnttab_find} does.
+     *
+     * <p>
+     * With the cache on, an empty table is read in full and then answers until it's
+     * discarded, so mounts made behind the handle's back go unseen. With the cache off,
+     * the table is dropped and the current state is read.
+     *
+     * @return null if not mounted.
+     */
+    private String findMount(Lib lib, String name) {
+        if (!lib.mnttabCache) {
+            lib.mnttab.clear();
+            Dataset ds = datasets.get(name);
+            return ds!=null && ds.mounted ? getMountPoint(new Stats(ds), new int[1]) : null;
+        }
+        if (lib.mnttab.isEmpty()) {
+            for (Dataset ds : datasets.values())
+                if (ds.mounted)
+                    lib.mnttab.put(ds.name, getMountPoint(new Stats(ds), new int[1]));
+        }
+        return lib.mnttab.get(name);
+    }
+
+    public int zfs_mount(zfs_handle_t handle, String options, int mountFlags) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            if (h.dataset.type!=zfs_type_t.FILESYSTEM)
+                return fail(h.lib, ErrorCode.EZFS_BADTYPE, "only file systems can be mounted: "+h.dataset.name);
+            String mp = getMountPoint(h.stats, new int[1]);
+            if (mp.equals("none") || mp.equals("legacy"))
+                return fail(h.lib, ErrorCode.EZFS_MOUNTFAILED, "mountpoint is "+mp+": "+h.dataset.name);
+            h.dataset.mounted = true;
+        }
+        return 0;
+    }
+
+    public int zfs_unmount(zfs_handle_t handle, String _2, int umountFlags) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            h.dataset.mounted = false;
+            h.dataset.shared = false;
+        }
+        return 0;
+    }
+
+    public boolean zfs_is_shared(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            return h.dataset.shared;
+        }
+    }
+
+    public int zfs_share(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            if (!h.dataset.mounted)
+                return fail(h.lib, ErrorCode.EZFS_SHARENFSFAILED, "file system is not mounted: "+h.dataset.name);
+            h.dataset.shared = true;
+        }
+        return 0;
+    }
+
+    public int zfs_unshare(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            h.dataset.shared = false;
+        }
+        return 0;
+    }
+
+    public int zfs_share_iscsi(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            if (h.dataset.type!=zfs_type_t.VOLUME)
+                return fail(h.lib, ErrorCode.EZFS_BADTYPE, "only volumes can be shared over iSCSI: "+h.dataset.name);
+            h.dataset.shared = true;
+        }
+        return 0;
+    }
+
+    public int zfs_unshare_iscsi(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            if (gone(h))
+                return -1;
+            h.dataset.shared = false;
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the permission list roughly the way libzfs does: one nested list per
+     * "{who type}{l|d}${who}" key, with each permission as a boolean in it.
+     * Unlike libzfs, users and groups are keyed by name, not by ID.
+     */
+    public int zfs_build_perms(zfs_handle_t handle, String who, String perms, int who_type, int deleg_type, PtrByReference<nvlist_t> ppchNVList) {
+        pause();
+        Handle h = handle(handle);
+        if (perms==null || perms.length()==0)
+            return fail(h.lib, ErrorCode.EZFS_BADPERM, "no permissions specified");
+
+        FakeLibnvpair.NVList r = nvpair.new NVList();
+        String[] names = perms.split(",");
+        char[] scopes = {'l','d'};
+        for (int i=0; i<scopes.length; i++) {
+            if ((deleg_type&(1<<i))==0)
+                continue;
+            FakeLibnvpair.NVList p = nvpair.new NVList();
+            for (String n : names)
+                p.putBoolean(n);
+            r.put(""+(char)who_type+scopes[i]+"$"+(who==null ? "" : who), p);
+        }
+        ppchNVList.setValue(r.handle());
+        return 0;
+    }
+
+    /*
+     * Not simulated
+     */
+
+    private static UnsupportedOperationException unsupported(String name) {
+        return new UnsupportedOperationException(name+"() is not simulated by "+FakeLibzfs.class.getSimpleName());
+    }
+
+    public void libzfs_print_on_error(libzfs_handle_t lib, boolean flag) {
+        throw unsupported("libzfs_print_on_error");
+    }
+
+    public int zfs_create_ancestors(libzfs_handle_t lib, String _2) {
+        throw unsupported("zfs_create_ancestors");
+    }
+
+    public void zfs_deleg_permissions() {
+        throw unsupported("zfs_deleg_permissions");
+    }
+
+    public int zfs_expand_proplist(zfs_handle_t handle, PointerByReference _2) {
+        throw unsupported("zfs_expand_proplist");
+    }
+
+    public void zfs_free_allows(zfs_allow_t p) {
+        throw unsupported("zfs_free_allows");
+    }
+
+    public libzfs_handle_t zfs_get_handle(zfs_handle_t handle) {
+        throw unsupported("zfs_get_handle");
+    }
+
+    public zpool_handle_t zfs_get_pool_handle(zfs_handle_t h) {
+        throw unsupported("zfs_get_pool_handle");
+    }
+
+    public zfs_handle_t zfs_handle_dup(zfs_handle_t src) {
+        throw unsupported("zfs_handle_dup");
+    }
+
+    public int zfs_ioctl(libzfs_handle_t lib, int _2, zfs_cmd cmd) {
+        throw unsupported("zfs_ioctl");
+    }
+
+    public boolean zfs_is_shared_iscsi(zfs_handle_t handle) {
+        throw unsupported("zfs_is_shared_iscsi");
+    }
+
+    public boolean zfs_is_shared_nfs(zfs_handle_t handle, PointerByReference ppch) {
+        throw unsupported("zfs_is_shared_nfs");
+    }
+
+    public boolean zfs_is_shared_smb(zfs_handle_t handle, PointerByReference ppch) {
+        throw unsupported("zfs_is_shared_smb");
+    }
+
+    public int zfs_iter_dependents(zfs_handle_t handle, boolean _2, zfs_iter_f callback, Pointer arg) {
+        throw unsupported("zfs_iter_dependents");
+    }
+
+    public int zfs_iter_snapspec(zfs_handle_t handle, zfs_iter_f callback, Pointer arg) {
+        throw unsupported("zfs_iter_snapspec");
+    }
+
+    public int zfs_name_valid(String name, zfs_type_t type) {
+        throw unsupported("zfs_name_valid");
+    }
+
+    public void zfs_nicenum(long _1, char[] buf, NativeLong size) {
+        throw unsupported("zfs_nicenum");
+    }
+
+    public int zfs_nicestrtonum(libzfs_handle_t lib, String _2, LongByReference r) {
+        throw unsupported("zfs_nicestrtonum");
+    }
+
+    public int zfs_perm_get(zfs_handle_t handle, PointerByReference _2) {
+        throw unsupported("zfs_perm_get");
+    }
+
+    public int zfs_perm_remove(zfs_handle_t handle, nvlist_t perms) {
+        throw unsupported("zfs_perm_remove");
+    }
+
+    public int zfs_perm_set(zfs_handle_t handle, nvlist_t perms) {
+        throw unsupported("zfs_perm_set");
+    }
+
+    public int zfs_promote(zfs_handle_t handle) {
+        throw unsupported("zfs_promote");
+    }
+
+    public boolean zfs_prop_align_right(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_align_right");
+    }
+
+    public String zfs_prop_column_name(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_column_name");
+    }
+
+    public long zfs_prop_default_numeric(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_default_numeric");
+    }
+
+    public String zfs_prop_default_string(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_default_string");
+    }
+
+    public long zfs_prop_get_int(zfs_handle_t handle, zfs_prop_t prop) {
+        throw unsupported("zfs_prop_get_int");
+    }
+
+    public int zfs_prop_is_string(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_is_string");
+    }
+
+    public String zfs_prop_to_name(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_to_name");
+    }
+
+    public String zfs_prop_values(zfs_prop_t prop) {
+        throw unsupported("zfs_prop_values");
+    }
+
+    public void zfs_refresh_properties(zfs_handle_t handle) {
+        pause();
+        Handle h = handle(handle);
+        synchronized (lock) {
+            h.stats = new Stats(h.dataset);
+        }
+    }
+
+    public int zfs_share_nfs(zfs_handle_t handle) {
+        throw unsupported("zfs_share_nfs");
+    }
+
+    public int zfs_share_smb(zfs_handle_t handle) {
+        throw unsupported("zfs_share_smb");
+    }
+
+    public int zfs_shareall(zfs_handle_t handle) {
+        throw unsupported("zfs_shareall");
+    }
+
+    public int zfs_spa_version(zfs_handle_t handle, IntByReference r) {
+        throw unsupported("zfs_spa_version");
+    }
+
+    public String zfs_type_to_name(zfs_type_t type) {
+        throw unsupported("zfs_type_to_name");
+    }
+
+    public int zfs_unmountall(zfs_handle_t handle, int umountFlags) {
+        throw unsupported("zfs_unmountall");
+    }
+
+    public int zfs_unshare_nfs(zfs_handle_t handle, String _2) {
+        throw unsupported("zfs_unshare_nfs");
+    }
+
+    public int zfs_unshare_smb(zfs_handle_t handle, String _2) {
+        throw unsupported("zfs_unshare_smb");
+    }
+
+    public int zfs_unshareall(zfs_handle_t handle) {
+        throw unsupported("zfs_unshareall");
+    }
+
+    public int zfs_unshareall_bypath(zfs_handle_t handle, String _2) {
+        throw unsupported("zfs_unshareall_bypath");
+    }
+
+    public int zfs_unshareall_nfs(zfs_handle_t handle) {
+        throw unsupported("zfs_unshareall_nfs");
+    }
+
+    public int zfs_unshareall_smb(zfs_handle_t handle) {
+        throw unsupported("zfs_unshareall_smb");
+    }
+
+    public int zpool_add(zpool_handle_t pool, nvlist_t _1) {
+        throw unsupported("zpool_add");
+    }
+
+    public int zpool_clear(zpool_handle_t pool, String name) {
+        throw unsupported("zpool_clear");
+    }
+
+    public int zpool_create(libzfs_handle_t lib, String poolName, nvlist_t nvroot, nvlist_t props) {
+        throw unsupported("zpool_create");
+    }
+
+    public int zpool_create_zvol_links(zpool_handle_t pool) {
+        throw unsupported("zpool_create_zvol_links");
+    }
+
+    public int zpool_destroy(zpool_handle_t pool) {
+        throw unsupported("zpool_destroy");
+    }
+
+    public int zpool_enable_datasets(zpool_handle_t pool, String _2, int _3) {
+        throw unsupported("zpool_enable_datasets");
+    }
+
+    public int zpool_expand_proplist(zpool_handle_t pool, PointerByReference _2) {
+        throw unsupported("zpool_expand_proplist");
+    }
+
+    public nvlist_t zpool_find_import(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        throw unsupported("zpool_find_import");
+    }
+
+    public nvlist_t zpool_find_import_activeok(libzfs_handle_t lib, int argc, PointerByReference argv) {
+        throw unsupported("zpool_find_import_activeok");
+    }
+
+    public nvlist_t zpool_find_import_byguid(libzfs_handle_t lib, int argc, PointerByReference argv, long guid) {
+        throw unsupported("zpool_find_import_byguid");
+    }
+
+    public nvlist_t zpool_find_import_byname(libzfs_handle_t lib, int argc, PointerByReference argv, String pool) {
+        throw unsupported("zpool_find_import_byname");
+    }
+
+    public nvlist_t zpool_find_import_cached(libzfs_handle_t lib, String cachefile, String poolname, long guid) {
+        throw unsupported("zpool_find_import_cached");
+    }
+
+    public nvlist_t zpool_find_vdev(zpool_handle_t pool, String path, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        throw unsupported("zpool_find_vdev");
+    }
+
+    public nvlist_t zpool_find_vdev_by_physpath(zpool_handle_t pool, String ppath, BooleanByReference avail_spare, BooleanByReference l2cache, BooleanByReference log) {
+        throw unsupported("zpool_find_vdev_by_physpath");
+    }
+
+    public void zpool_free_handles(libzfs_handle_t lib) {
+        throw unsupported("zpool_free_handles");
+    }
+
+    public nvlist_t zpool_get_config(zpool_handle_t pool, PointerByReference ppchNVList) {
+        throw unsupported("zpool_get_config");
+    }
+
+    public int zpool_get_errlog(zpool_handle_t pool, PointerByReference ppchNVList) {
+        throw unsupported("zpool_get_errlog");
+    }
+
+    public libzfs_handle_t zpool_get_handle(zpool_handle_t handle) {
+        throw unsupported("zpool_get_handle");
+    }
+
+    public int zpool_get_history(zpool_handle_t pool, PointerByReference ppNVList) {
+        throw unsupported("zpool_get_history");
+    }
+
+    public int zpool_get_state(zpool_handle_t pool) {
+        throw unsupported("zpool_get_state");
+    }
+
+    public int zpool_import(libzfs_handle_t lib, nvlist_t config, String newname, String altroot) {
+        throw unsupported("zpool_import");
+    }
+
+    public int zpool_import_props(libzfs_handle_t lib, nvlist_t config, String newname, nvlist_t props, BooleanByReference importfaulted) {
+        throw unsupported("zpool_import_props");
+    }
+
+    public int zpool_import_status(nvlist_t config, PointerByReference misgid) {
+        throw unsupported("zpool_import_status");
+    }
+
+    public int zpool_in_use(libzfs_handle_t lib, int _2, IntByReference r, PointerByReference ppch, BooleanByReference _5) {
+        throw unsupported("zpool_in_use");
+    }
+
+    public int zpool_label_disk(libzfs_handle_t lib, zpool_handle_t pool, String label) {
+        throw unsupported("zpool_label_disk");
+    }
+
+    public void zpool_obj_to_path(zpool_handle_t pool, long _2, long _3, String _4, NativeLong len) {
+        throw unsupported("zpool_obj_to_path");
+    }
+
+    public zpool_handle_t zpool_open_canfail(libzfs_handle_t lib, String name) {
+        throw unsupported("zpool_open_canfail");
+    }
+
+    public boolean zpool_prop_align_right(zpool_prop_t prop) {
+        throw unsupported("zpool_prop_align_right");
+    }
+
+    public String zpool_prop_column_name(zpool_prop_t prop) {
+        throw unsupported("zpool_prop_column_name");
+    }
+
+    public long zpool_prop_default_numeric(zpool_prop_t prop) {
+        throw unsupported("zpool_prop_default_numeric");
+    }
+
+    public String zpool_prop_default_string(zpool_prop_t prop) {
+        throw unsupported("zpool_prop_default_string");
+    }
+
+    public String zpool_prop_to_name(zpool_prop_t prop) {
+        throw unsupported("zpool_prop_to_name");
+    }
+
+    public String zpool_prop_values(zpool_prop_t prop) {
+        throw unsupported("zpool_prop_values");
+    }
+
+    public int zpool_read_label(int _1, PointerByReference ppnvlist) {
+        throw unsupported("zpool_read_label");
+    }
+
+    public int zpool_refresh_stats(zpool_handle_t pool, BooleanByReference missing) {
+        // this only reloads the configuration, of which there is none here.
+        // like in libzfs, the properties the handle has read stay as they are
+        pause();
+        PoolHandle h = pool(pool);
+        boolean gone;
+        synchronized (lock) {
+            gone = pools.get(h.pool.name)!=h.pool;
+        }
+        if (missing!=null)
+            missing.setValue(gone);
+        return 0;
+    }
+
+    public int zpool_remove_zvol_links(zpool_handle_t pool) {
+        throw unsupported("zpool_remove_zvol_links");
+    }
+
+    public int zpool_scrub(zpool_handle_t pool, pool_scrub_type_t scrub) {
+        throw unsupported("zpool_scrub");
+    }
+
+    public void zpool_set_history_str(String subcommand, int argc, String[] argv, String history_str) {
+        throw unsupported("zpool_set_history_str");
+    }
+
+    public int zpool_set_prop(zpool_handle_t pool, String name, String value) {
+        throw unsupported("zpool_set_prop");
+    }
+
+    public int zpool_stage_history(libzfs_handle_t lib, String _2) {
+        throw unsupported("zpool_stage_history");
+    }
+
+    public String zpool_state_to_name(vdev_state_t state, vdev_aux_t aux) {
+        throw unsupported("zpool_state_to_name");
+    }
+
+    public int zpool_upgrade(zpool_handle_t pool, long new_version) {
+        throw unsupported("zpool_upgrade");
+    }
+
+    public int zpool_vdev_attach(zpool_handle_t pool, String old_disk, String new_disk, nvlist_t nvroot, int replacing) {
+        throw unsupported("zpool_vdev_attach");
+    }
+
+    public int zpool_vdev_clear(zpool_handle_t pool, long guid) {
+        throw unsupported("zpool_vdev_clear");
+    }
+
+    public int zpool_vdev_degrade(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        throw unsupported("zpool_vdev_degrade");
+    }
+
+    public int zpool_vdev_detach(zpool_handle_t pool, String path) {
+        throw unsupported("zpool_vdev_detach");
+    }
+
+    public int zpool_vdev_fault(zpool_handle_t pool, long guid, vdev_aux_t aux) {
+        throw unsupported("zpool_vdev_fault");
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv) {
+        throw unsupported("zpool_vdev_name");
+    }
+
+    public String zpool_vdev_name(libzfs_handle_t lib, zpool_handle_t pool, nvlist_t nv, BooleanByReference verbose) {
+        throw unsupported("zpool_vdev_name");
+    }
+
+    public int zpool_vdev_offline(zpool_handle_t pool, String path, boolean istmp) {
+        throw unsupported("zpool_vdev_offline");
+    }
+
+    public int zpool_vdev_online(zpool_handle_t pool, String path, int flags, vdev_state_t newstate) {
+        throw unsupported("zpool_vdev_online");
+    }
+
+    public int zpool_vdev_remove(zpool_handle_t pool, String path) {
+        throw unsupported("zpool_vdev_remove");
+    }
+
+    public void zprop_free_list(zprop_list_t arg) {
+        throw unsupported("zprop_free_list");
+    }
+
+    public int zprop_get_list(libzfs_handle_t lib, String buf, PointerByReference result, int type) {
+        throw unsupported("zprop_get_list");
+    }
+
+    public int zprop_iter(zprop_func func, Pointer arg, boolean show_all, boolean ordered, zfs_type_t type) {
+        throw unsupported("zprop_iter");
+    }
+
+    public void zprop_print_one_property(String _1, zprop_get_cbdata_t _2, String _3, String _4, zprop_source_t _5, String _6) {
+        throw unsupported("zprop_print_one_property");
+    }
+
+    public int zvol_check_dump_config(String _1) {
+        throw unsupported("zvol_check_dump_config");
+    }
+}